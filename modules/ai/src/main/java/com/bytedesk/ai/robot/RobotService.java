@@ -33,6 +33,7 @@ import com.bytedesk.ai.springai.siliconflow.SpringAISiliconFlowService;
 import com.bytedesk.ai.springai.tencent.SpringAITencentService;
 import com.bytedesk.ai.springai.volcengine.SpringAIVolcengineService;
 import com.bytedesk.ai.springai.zhipuai.SpringAIZhipuaiService;
+import com.bytedesk.core.message.MessageEnvelope;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageService;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -67,8 +68,8 @@ public class RobotService {
         Assert.notNull(messageJson, "messageJson is null");
         Assert.notNull(emitter, "emitter is null");
         //
-        messageJson = messageService.processMessageJson(messageJson);
-        MessageProtobuf messageProtobufQuery = MessageProtobuf.fromJson(messageJson);
+        MessageEnvelope envelope = messageService.processMessage(MessageEnvelope.fromJson(messageJson));
+        MessageProtobuf messageProtobufQuery = envelope.getProtobuf();
         MessageTypeEnum messageType = messageProtobufQuery.getType();
         //
         String query = messageProtobufQuery.getContent();
@@ -140,9 +141,9 @@ public class RobotService {
         Assert.notNull(messageJson, "messageJson is null");
         Assert.notNull(emitter, "emitter is null");
         //
-        messageJson = messageService.processMessageJson(messageJson);
+        MessageEnvelope envelope = messageService.processMessage(MessageEnvelope.fromJson(messageJson));
         //
-        MessageProtobuf messageProtobufQuery = MessageProtobuf.fromJson(messageJson); 
+        MessageProtobuf messageProtobufQuery = envelope.getProtobuf();
         MessageTypeEnum messageType = messageProtobufQuery.getType();
         String query = messageProtobufQuery.getContent();
         log.info("processSseVisitorMessage robot processSseMessage {}", query);
@@ -3,10 +3,15 @@ package com.bytedesk.ai.springai.base;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
@@ -19,18 +24,23 @@ import com.bytedesk.ai.robot.RobotProtobuf;
 import com.bytedesk.ai.robot.RobotRestService;
 import com.bytedesk.ai.robot_message.RobotMessageCache;
 import com.bytedesk.ai.robot_message.RobotMessageRequest;
+import com.bytedesk.ai.springai.cache.SpringAIAnswerCache;
+import com.bytedesk.ai.springai.cache.SpringAIAnswerCache.AnswerQuery;
 import com.bytedesk.ai.springai.spring.SpringAIService;
 import com.bytedesk.ai.springai.spring.SpringAIVectorService;
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
 import com.bytedesk.core.enums.ClientEnum;
 import com.bytedesk.core.message.IMessageSendService;
 import com.bytedesk.core.message.MessageExtra;
 import com.bytedesk.core.message.MessagePersistCache;
 import com.bytedesk.core.message.MessageProtobuf;
+import com.bytedesk.core.message.MessageStreamAccumulator;
 import com.bytedesk.core.message.MessageTypeEnum;
 import com.bytedesk.core.thread.ThreadRestService;
 import com.bytedesk.core.uid.UidUtils;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 
 @Slf4j
 public abstract class BaseSpringAIService implements SpringAIService {
@@ -56,6 +66,15 @@ public abstract class BaseSpringAIService implements SpringAIService {
     @Autowired
     protected RobotMessageCache robotMessageCache;
 
+    @Autowired
+    protected MessageStreamAccumulator messageStreamAccumulator;
+
+    @Autowired
+    protected BytedeskMetrics bytedeskMetrics;
+
+    @Autowired
+    protected SpringAIAnswerCache springAIAnswerCache;
+
     // 可以添加更多自动注入的依赖，而不需要修改子类构造函数
 
     // 保留一个无参构造函数，或者只接收特定的必需依赖
@@ -79,6 +98,12 @@ public abstract class BaseSpringAIService implements SpringAIService {
 
         String prompt = "";
         if (StringUtils.hasText(robot.getKbUid()) && robot.isKbEnabled()) {
+            AnswerQuery cacheQuery = springAIAnswerCache.query(robot.getKbUid(), robot.getLlm(), query);
+            Optional<String> cachedAnswer = springAIAnswerCache.get(cacheQuery);
+            if (cachedAnswer.isPresent()) {
+                replayAnswer(cachedAnswer.get(), messageProtobuf);
+                return;
+            }
             List<String> contentList = springAIVectorService.get().searchText(query, robot.getKbUid());
             String context = String.join("\n", contentList);
             prompt = buildKbPrompt(robot.getLlm().getPrompt(), query, context);
@@ -115,7 +140,15 @@ public abstract class BaseSpringAIService implements SpringAIService {
             MessageProtobuf messageProtobufReply, SseEmitter emitter) {
         //
         String prompt = "";
+        AnswerQuery cacheQuery = null;
         if (StringUtils.hasText(robot.getKbUid()) && robot.getIsKbEnabled()) {
+            // 相同或相似的问题直接回放缓存的答案，不再检索和调用大模型
+            cacheQuery = springAIAnswerCache.query(robot.getKbUid(), robot.getLlm(), query);
+            Optional<String> cachedAnswer = springAIAnswerCache.get(cacheQuery);
+            if (cachedAnswer.isPresent()) {
+                replayAnswerSSE(cachedAnswer.get(), messageProtobufQuery, messageProtobufReply, emitter);
+                return;
+            }
             List<String> contentList = springAIVectorService.get().searchText(query, robot.getKbUid());
             if (contentList.isEmpty()) {
                 // 直接返回未找到相关问题答案
@@ -138,6 +171,7 @@ public abstract class BaseSpringAIService implements SpringAIService {
         log.info("BaseSpringAIService sendSseMemberMessage messages {}", messages);
         //
         Prompt aiPrompt = new Prompt(messages);
+        springAIAnswerCache.pending(messageProtobufReply.getUid(), cacheQuery);
         processPromptSSE(aiPrompt, messageProtobufQuery, messageProtobufReply, emitter);
     }
 
@@ -184,6 +218,45 @@ public abstract class BaseSpringAIService implements SpringAIService {
         }
     }
 
+    // 缓存的答案按STREAM消息逐段发送，最后发送STREAM_END，与大模型实时生成的消息序列一致
+    private void replayAnswerSSE(String answer, MessageProtobuf messageProtobufQuery,
+            MessageProtobuf messageProtobufReply, SseEmitter emitter) {
+        try {
+            for (String chunk : springAIAnswerCache.split(answer)) {
+                messageProtobufReply.setType(MessageTypeEnum.STREAM);
+                messageProtobufReply.setContent(chunk);
+                persistMessage(messageProtobufQuery, messageProtobufReply);
+                emitter.send(SseEmitter.event()
+                        .data(messageProtobufReply.toJson())
+                        .id(messageProtobufReply.getUid())
+                        .name("message"));
+            }
+            messageProtobufReply.setType(MessageTypeEnum.STREAM_END);
+            messageProtobufReply.setContent("");
+            persistMessage(messageProtobufQuery, messageProtobufReply);
+            emitter.send(SseEmitter.event()
+                    .data(messageProtobufReply.toJson())
+                    .id(messageProtobufReply.getUid())
+                    .name("message"));
+            emitter.complete();
+        } catch (Exception e) {
+            log.error("BaseSpringAIService replay cached answer error: ", e);
+            emitter.completeWithError(e);
+        }
+    }
+
+    // 同replayAnswerSSE，最后发送内容为空的STREAM_END，客户端据此结束流式消息
+    private void replayAnswer(String answer, MessageProtobuf messageProtobuf) {
+        for (String chunk : springAIAnswerCache.split(answer)) {
+            messageProtobuf.setType(MessageTypeEnum.STREAM);
+            messageProtobuf.setContent(chunk);
+            messageSendService.sendProtobufMessage(messageProtobuf);
+        }
+        messageProtobuf.setType(MessageTypeEnum.STREAM_END);
+        messageProtobuf.setContent("");
+        messageSendService.sendProtobufMessage(messageProtobuf);
+    }
+
     @Override
     public String generateFaqPairsAsync(String chunk) {
         if (!StringUtils.hasText(chunk)) {
@@ -228,12 +301,39 @@ public abstract class BaseSpringAIService implements SpringAIService {
     public void persistMessage(MessageProtobuf messageProtobufQuery, MessageProtobuf messageProtobufReply) {
         Assert.notNull(messageProtobufQuery, "MessageProtobufQuery must not be null");
         Assert.notNull(messageProtobufReply, "MessageProtobufReply must not be null");
+        MessageTypeEnum type = messageProtobufReply.getType();
+        // 流式token在内存中合并，结束或超时后再写入，避免每个token都写一次数据库
+        if (MessageTypeEnum.STREAM.equals(type)) {
+            RobotMessageRequest robotMessage = buildRobotMessage(messageProtobufQuery, messageProtobufReply);
+            String replyUid = messageProtobufReply.getUid();
+            messageStreamAccumulator.append(messageProtobufReply, answer -> {
+                robotMessage.setAnswer(answer);
+                robotMessage.setIsUnAnswered(RobotConsts.ROBOT_UNMATCHED.equals(answer));
+                robotMessageCache.pushRequest(robotMessage);
+                springAIAnswerCache.complete(replyUid, answer);
+            });
+            return;
+        }
+        if (MessageTypeEnum.STREAM_END.equals(type)) {
+            springAIAnswerCache.streamEnded(messageProtobufReply.getUid());
+        } else {
+            // 出错等情况下的部分内容不缓存
+            springAIAnswerCache.discard(messageProtobufReply.getUid());
+        }
+        boolean streamed = messageStreamAccumulator.complete(messageProtobufReply.getUid()).isPresent();
+        if (streamed && MessageTypeEnum.STREAM_END.equals(type)) {
+            // 结束标记不包含内容，剩余内容已由累加器写入
+            return;
+        }
         messagePersistCache.pushForPersist(messageProtobufReply.toJson());
-        //
+        // 记录未找到相关答案的问题到另外一个表，便于梳理问题
+        robotMessageCache.pushRequest(buildRobotMessage(messageProtobufQuery, messageProtobufReply));
+    }
+
+    private RobotMessageRequest buildRobotMessage(MessageProtobuf messageProtobufQuery, MessageProtobuf messageProtobufReply) {
         MessageExtra extraObject = MessageExtra.fromJson(messageProtobufReply.getExtra());
         //
-        // 记录未找到相关答案的问题到另外一个表，便于梳理问题
-        RobotMessageRequest robotMessage = RobotMessageRequest.builder()
+        return RobotMessageRequest.builder()
                 .uid(messageProtobufReply.getUid()) // 使用机器人回复消息作为uid
                 .type(messageProtobufQuery.getType().name())
                 .status(messageProtobufReply.getStatus().name())
@@ -251,8 +351,6 @@ public abstract class BaseSpringAIService implements SpringAIService {
                 .orgUid(extraObject.getOrgUid())
                 //
                 .build();
-        robotMessageCache.pushRequest(robotMessage);
-
     }
 
     // private void sendSseTypingMessage(MessageProtobuf messageProtobuf, SseEmitter
@@ -273,6 +371,46 @@ public abstract class BaseSpringAIService implements SpringAIService {
     // }
     // }
 
+    /**
+     * 统计流式响应：请求数、错误数、首token延迟和每秒token数
+     * 每个含文本的响应片段按一个token计，订阅时开始计时
+     *
+     * @param provider LlmProviderConsts中的供应商名称
+     */
+    protected Flux<ChatResponse> withMetrics(String provider, Flux<ChatResponse> flux) {
+        return withMetrics(provider, flux, BaseSpringAIService::hasText);
+    }
+
+    protected <T> Flux<T> withMetrics(String provider, Flux<T> flux, Predicate<T> isToken) {
+        return Flux.defer(() -> {
+            bytedeskMetrics.aiRequestMade();
+            long start = System.nanoTime();
+            AtomicLong firstTokenNanos = new AtomicLong(-1);
+            AtomicInteger tokens = new AtomicInteger();
+            return flux
+                    .doOnNext(item -> {
+                        if (isToken.test(item) && tokens.getAndIncrement() == 0) {
+                            firstTokenNanos.set(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnComplete(() -> bytedeskMetrics.recordAiStream(provider, firstTokenNanos.get(),
+                            System.nanoTime() - start, tokens.get()))
+                    .doOnError(error -> bytedeskMetrics.aiError());
+        });
+    }
+
+    private static boolean hasText(ChatResponse response) {
+        if (response == null) {
+            return false;
+        }
+        for (Generation generation : response.getResults()) {
+            if (generation.getOutput() != null && StringUtils.hasLength(generation.getOutput().getText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String buildKbPrompt(String systemPrompt, String query, String context) {
         return systemPrompt + "\n" +
                 "用户查询: " + query + "\n" +
@@ -0,0 +1,410 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-23 16:40:18
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-23 16:40:18
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ai.springai.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.ai.robot.RobotLlm;
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+import com.bytedesk.core.redis.RedisConsts;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 机器人答案缓存，按知识库缓存大模型生成的完整答案
+ *
+ * 第一级按归一化后的问题精确匹配；未命中时计算问题的embedding，与同一知识库已缓存问题比较余弦相似度，
+ * 超过阈值即命中。答案还与机器人提示词、模型相关，不同配置的机器人即使使用同一知识库也互不命中。
+ * 知识库内容版本号保存在redis中，向量化完成或删除内容时递增，各节点据此丢弃旧版本的答案；
+ * 查询开始时记录版本号，生成期间知识库发生变化的答案写入时即已过期。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SpringAIAnswerCache {
+
+    public static final String RESULT_EXACT = "exact";
+
+    public static final String RESULT_SEMANTIC = "semantic";
+
+    public static final String RESULT_MISS = "miss";
+
+    private final Optional<EmbeddingModel> bytedeskOllamaEmbeddingModel;
+
+    private final Optional<EmbeddingModel> bytedeskZhipuaiEmbeddingModel;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final BytedeskMetrics bytedeskMetrics;
+
+    @Value("${bytedesk.ai.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${bytedesk.ai.answer-cache.semantic-enabled:true}")
+    private boolean semanticEnabled;
+
+    // 余弦相似度阈值，越接近1越严格
+    @Value("${bytedesk.ai.answer-cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    @Value("${bytedesk.ai.answer-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${bytedesk.ai.answer-cache.max-size:10000}")
+    private long maxSize;
+
+    // 每个知识库参与相似度比较的最大答案数
+    @Value("${bytedesk.ai.answer-cache.max-entries-per-kb:500}")
+    private int maxEntriesPerKb;
+
+    // 回放答案时每个STREAM消息的字符数
+    @Value("${bytedesk.ai.answer-cache.chunk-size:20}")
+    private int chunkSize;
+
+    // kbUid + scope + 归一化问题 -> 答案
+    private Cache<String, AnswerEntry> exactCache;
+
+    // kbUid -> 最近缓存的答案，用于相似度匹配
+    private Cache<String, KbAnswers> semanticCache;
+
+    // 回复消息uid -> 等待写入缓存的查询，流结束后写入
+    private Cache<String, PendingAnswer> pendingAnswers;
+
+    @PostConstruct
+    public void init() {
+        Duration ttl = Duration.ofMinutes(ttlMinutes);
+        exactCache = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+        semanticCache = Caffeine.newBuilder().expireAfterAccess(ttl).build();
+        pendingAnswers = Caffeine.newBuilder().expireAfterWrite(Duration.ofMinutes(10)).build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 构建查询，问题归一化后为空或读取版本号失败时返回null，不使用缓存
+     */
+    public AnswerQuery query(String kbUid, RobotLlm llm, String question) {
+        if (!enabled || !StringUtils.hasText(kbUid) || llm == null) {
+            return null;
+        }
+        String normalized = normalize(question);
+        if (!StringUtils.hasText(normalized)) {
+            return null;
+        }
+        try {
+            String scope = DigestUtils.md5DigestAsHex((llm.getProvider() + "\u0001" + llm.getModel() + "\u0001"
+                    + llm.getPrompt()).getBytes(StandardCharsets.UTF_8));
+            return new AnswerQuery(kbUid, scope, normalized, question, getVersion(kbUid));
+        } catch (Exception e) {
+            log.warn("answer cache query {} error: {}", kbUid, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 查找缓存的答案：先精确匹配，再相似度匹配
+     */
+    public Optional<String> get(AnswerQuery query) {
+        if (query == null) {
+            return Optional.empty();
+        }
+        AnswerEntry entry = exactCache.getIfPresent(query.getKey());
+        if (entry != null && entry.version == query.version) {
+            bytedeskMetrics.aiAnswerCacheLookup(RESULT_EXACT);
+            return Optional.of(entry.answer);
+        }
+        if (semanticEnabled) {
+            KbAnswers kbAnswers = semanticCache.getIfPresent(query.kbUid);
+            if (kbAnswers != null && kbAnswers.hasScope(query.scope, query.version)) {
+                float[] embedding = query.getEmbedding(this);
+                AnswerEntry similar = embedding != null
+                        ? kbAnswers.findSimilar(query.scope, query.version, embedding, similarityThreshold, ttlMinutes)
+                        : null;
+                if (similar != null) {
+                    log.debug("answer cache semantic hit: {} -> {}", query.question, similar.question);
+                    bytedeskMetrics.aiAnswerCacheLookup(RESULT_SEMANTIC);
+                    return Optional.of(similar.answer);
+                }
+            }
+        }
+        bytedeskMetrics.aiAnswerCacheLookup(RESULT_MISS);
+        return Optional.empty();
+    }
+
+    /**
+     * 大模型开始生成回复时登记，流正常结束后由complete写入缓存
+     */
+    public void pending(String replyUid, AnswerQuery query) {
+        if (query != null && replyUid != null) {
+            pendingAnswers.put(replyUid, new PendingAnswer(query));
+        }
+    }
+
+    // 收到STREAM_END，流正常结束
+    public void streamEnded(String replyUid) {
+        PendingAnswer pending = replyUid != null ? pendingAnswers.getIfPresent(replyUid) : null;
+        if (pending != null) {
+            pending.ended = true;
+        }
+    }
+
+    // 生成出错，不缓存
+    public void discard(String replyUid) {
+        if (replyUid != null) {
+            pendingAnswers.invalidate(replyUid);
+        }
+    }
+
+    /**
+     * 流结束后写入完整答案，流超时或出错结束时忽略
+     */
+    public void complete(String replyUid, String answer) {
+        PendingAnswer pending = replyUid != null ? pendingAnswers.asMap().remove(replyUid) : null;
+        if (pending == null || !pending.ended || !StringUtils.hasText(answer)) {
+            return;
+        }
+        AnswerQuery query = pending.query;
+        try {
+            if (query.version != getVersion(query.kbUid)) {
+                // 生成期间知识库内容已变化
+                return;
+            }
+            float[] embedding = semanticEnabled ? query.getEmbedding(this) : null;
+            AnswerEntry entry = new AnswerEntry(query.scope, query.normalized, answer, query.version, embedding);
+            exactCache.put(query.getKey(), entry);
+            if (embedding != null) {
+                semanticCache.get(query.kbUid, key -> new KbAnswers()).add(entry, maxEntriesPerKb);
+            }
+        } catch (Exception e) {
+            log.warn("answer cache put {} error: {}", query.kbUid, e.getMessage());
+        }
+    }
+
+    /**
+     * 知识库内容变化，所有节点上该知识库的答案失效
+     */
+    public void invalidate(String kbUid) {
+        if (!StringUtils.hasText(kbUid)) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().increment(RedisConsts.AI_ANSWER_CACHE_VERSION_PREFIX + kbUid);
+        } catch (Exception e) {
+            log.warn("answer cache invalidate {} error: {}", kbUid, e.getMessage());
+        }
+        // 本节点立即清理，其他节点在下次查询时按版本号丢弃
+        semanticCache.invalidate(kbUid);
+        exactCache.asMap().keySet().removeIf(key -> key.startsWith(kbUid + "\u0001"));
+    }
+
+    /**
+     * 将答案切分为STREAM消息内容，回放时客户端与实时生成的表现一致
+     */
+    public List<String> split(String answer) {
+        List<String> chunks = new ArrayList<>();
+        int size = Math.max(chunkSize, 1);
+        int start = 0;
+        while (start < answer.length()) {
+            int end = Math.min(start + size, answer.length());
+            // 不拆开代理对
+            if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(answer.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private long getVersion(String kbUid) {
+        String value = stringRedisTemplate.opsForValue().get(RedisConsts.AI_ANSWER_CACHE_VERSION_PREFIX + kbUid);
+        return value != null ? Long.parseLong(value) : 0L;
+    }
+
+    private float[] embed(String question) {
+        Optional<EmbeddingModel> model = bytedeskOllamaEmbeddingModel.isPresent() ? bytedeskOllamaEmbeddingModel
+                : bytedeskZhipuaiEmbeddingModel;
+        if (!model.isPresent()) {
+            return null;
+        }
+        try {
+            return model.get().embed(question);
+        } catch (Exception e) {
+            log.warn("answer cache embed error: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // 全角转半角、转小写，去掉空白和标点
+    static String normalize(String question) {
+        if (question == null) {
+            return null;
+        }
+        String normalized = Normalizer.normalize(question, Normalizer.Form.NFKC).toLowerCase();
+        return normalized.replaceAll("[\\p{P}\\p{S}\\s]+", "");
+    }
+
+    static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return 0;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Getter
+    public static class AnswerQuery {
+
+        private final String kbUid;
+
+        private final String scope;
+
+        private final String normalized;
+
+        private final String question;
+
+        private final long version;
+
+        // 相似度匹配和写入缓存共用，只计算一次
+        private float[] embedding;
+
+        private boolean embedded;
+
+        AnswerQuery(String kbUid, String scope, String normalized, String question, long version) {
+            this.kbUid = kbUid;
+            this.scope = scope;
+            this.normalized = normalized;
+            this.question = question;
+            this.version = version;
+        }
+
+        String getKey() {
+            return kbUid + "\u0001" + scope + "\u0001" + normalized;
+        }
+
+        synchronized float[] getEmbedding(SpringAIAnswerCache cache) {
+            if (!embedded) {
+                embedding = cache.embed(question);
+                embedded = true;
+            }
+            return embedding;
+        }
+    }
+
+    private static class PendingAnswer {
+
+        private final AnswerQuery query;
+
+        private volatile boolean ended;
+
+        PendingAnswer(AnswerQuery query) {
+            this.query = query;
+        }
+    }
+
+    private static class AnswerEntry {
+
+        private final String scope;
+
+        private final String question;
+
+        private final String answer;
+
+        private final long version;
+
+        private final float[] embedding;
+
+        private final long createdAt = System.currentTimeMillis();
+
+        AnswerEntry(String scope, String question, String answer, long version, float[] embedding) {
+            this.scope = scope;
+            this.question = question;
+            this.answer = answer;
+            this.version = version;
+            this.embedding = embedding;
+        }
+    }
+
+    // 单个知识库最近缓存的答案，超出上限时淘汰最早的
+    private static class KbAnswers {
+
+        private final Deque<AnswerEntry> entries = new ArrayDeque<>();
+
+        synchronized void add(AnswerEntry entry, int maxEntries) {
+            entries.removeIf(existing -> existing.version != entry.version
+                    || (existing.scope.equals(entry.scope) && existing.question.equals(entry.question)));
+            entries.addLast(entry);
+            while (entries.size() > maxEntries) {
+                entries.removeFirst();
+            }
+        }
+
+        synchronized boolean hasScope(String scope, long version) {
+            for (AnswerEntry entry : entries) {
+                if (entry.version == version && entry.scope.equals(scope)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized AnswerEntry findSimilar(String scope, long version, float[] embedding, double threshold,
+                long ttlMinutes) {
+            long expireBefore = System.currentTimeMillis() - Duration.ofMinutes(ttlMinutes).toMillis();
+            AnswerEntry best = null;
+            double bestScore = threshold;
+            for (AnswerEntry entry : entries) {
+                if (entry.version != version || !entry.scope.equals(scope) || entry.createdAt < expireBefore) {
+                    continue;
+                }
+                double score = cosine(entry.embedding, embedding);
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+    }
+
+}
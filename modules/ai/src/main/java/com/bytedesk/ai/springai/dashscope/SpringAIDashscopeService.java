@@ -22,6 +22,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.util.StringUtils;
 
+import com.bytedesk.ai.provider.LlmProviderConsts;
 import com.bytedesk.ai.springai.base.BaseSpringAIService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -61,9 +62,9 @@ public class SpringAIDashscopeService extends BaseSpringAIService {
 
         Timer.Sample sample = Timer.start();
         try {
-            bytedeskDashScopeChatClient.prompt(prompt.toString())
+            withMetrics(LlmProviderConsts.DASHSCOPE, bytedeskDashScopeChatClient.prompt(prompt.toString())
                     .stream()
-                    .content()
+                    .content(), StringUtils::hasLength)
                     .subscribe(
                             content -> {
                                 log.info("DashScope API response  text {}", content);
@@ -110,9 +111,9 @@ public class SpringAIDashscopeService extends BaseSpringAIService {
             MessageProtobuf messageProtobufReply, SseEmitter emitter) {
 
         try {
-            bytedeskDashScopeChatClient.prompt(messageProtobufReply.getContent())
+            withMetrics(LlmProviderConsts.DASHSCOPE, bytedeskDashScopeChatClient.prompt(messageProtobufReply.getContent())
                     .stream()
-                    .content()
+                    .content(), StringUtils::hasLength)
                     .subscribe(
                             textContent -> {
                                 try {
@@ -26,6 +26,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.bytedesk.ai.provider.LlmProviderConsts;
 import com.bytedesk.ai.springai.base.BaseSpringAIService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -46,7 +47,7 @@ public class SpringAIGiteeService extends BaseSpringAIService {
 
     @Override
     protected void processPrompt(Prompt prompt, MessageProtobuf messageProtobuf) {
-        giteeChatModel.ifPresent(model -> model.stream(prompt).subscribe(
+        giteeChatModel.ifPresent(model -> withMetrics(LlmProviderConsts.GITEE, model.stream(prompt)).subscribe(
                 response -> {
                     if (response != null) {
                         log.info("Gitee API response metadata: {}", response.getMetadata());
@@ -96,7 +97,7 @@ public class SpringAIGiteeService extends BaseSpringAIService {
     protected void processPromptSSE(Prompt prompt, MessageProtobuf messageProtobufQuery, MessageProtobuf messageProtobufReply, SseEmitter emitter) {
         giteeChatModel.ifPresentOrElse(
                 model -> {
-                    model.stream(prompt).subscribe(
+                    withMetrics(LlmProviderConsts.GITEE, model.stream(prompt)).subscribe(
                             response -> {
                                 try {
                                     if (response != null) {
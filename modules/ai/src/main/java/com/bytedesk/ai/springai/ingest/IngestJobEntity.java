@@ -0,0 +1,91 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-23 14:05:12
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-23 14:05:12
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ai.springai.ingest;
+
+import java.time.LocalDateTime;
+
+import com.bytedesk.core.base.BaseEntity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * 知识库向量化任务
+ *
+ * 每个来源(file/text/qa/faq/website)一条记录，来源变化时重置为PENDING，
+ * 节点重启后未完成的任务继续执行；已写入的分块按内容哈希跳过，不会重复向量化
+ */
+@Entity
+@Data
+@SuperBuilder
+@Accessors(chain = true)
+@EqualsAndHashCode(callSuper = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "bytedesk_ai_ingest_job", indexes = {
+    @Index(name = "idx_ingest_job_target_uid", columnList = "target_uid"),
+    @Index(name = "idx_ingest_job_status", columnList = "job_status, next_run_at")
+})
+public class IngestJobEntity extends BaseEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    @Column(name = "job_type")
+    private String type;
+
+    // 来源 uid
+    private String targetUid;
+
+    private String kbUid;
+
+    // 入队时来源内容的md5，内容未变化的更新不重复入队
+    private String contentHash;
+
+    @Builder.Default
+    @Column(name = "job_status")
+    private String status = IngestJobStatusEnum.PENDING.name();
+
+    // 已失败次数
+    @Builder.Default
+    private int attempts = 0;
+
+    @Builder.Default
+    private LocalDateTime nextRunAt = LocalDateTime.now();
+
+    // 进度
+    @Builder.Default
+    private int totalChunks = 0;
+
+    @Builder.Default
+    private int processedChunks = 0;
+
+    @Builder.Default
+    private int skippedChunks = 0;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @Column(length = 512)
+    private String errorMessage;
+}
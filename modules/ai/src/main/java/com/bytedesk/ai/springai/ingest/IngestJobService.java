@@ -0,0 +1,321 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-23 14:05:12
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-23 14:05:12
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ai.springai.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import com.bytedesk.ai.springai.cache.SpringAIAnswerCache;
+import com.bytedesk.ai.springai.spring.SpringAIVectorService;
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
+import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
+import com.bytedesk.core.uid.UidUtils;
+import com.bytedesk.kbase.faq.FaqRepository;
+import com.bytedesk.kbase.llm.file.FileRepository;
+import com.bytedesk.kbase.llm.qa.QaRepository;
+import com.bytedesk.kbase.llm.text.TextRepository;
+import com.bytedesk.kbase.llm.website.WebsiteRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 知识库向量化任务队列
+ *
+ * 任务持久化在数据库中，每5秒领取到期的PENDING任务交给固定大小的线程池执行，线程池满时不再领取。
+ * 领取和进度更新都依赖实体版本号：多个节点同时领取同一任务时只有一个成功；
+ * 执行期间来源再次变化时任务被重置为PENDING，执行线程下一次保存进度失败后放弃，由新一轮执行处理。
+ * 失败按指数退避重试，超过最大次数后标记为FAILED；节点宕机遗留的RUNNING任务超时后重置为PENDING。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestJobService {
+
+    private final IngestJobRepository ingestJobRepository;
+
+    private final SpringAIVectorService springAIVectorService;
+
+    private final FileRepository fileRepository;
+
+    private final TextRepository textRepository;
+
+    private final QaRepository qaRepository;
+
+    private final FaqRepository faqRepository;
+
+    private final WebsiteRepository websiteRepository;
+
+    private final SpringAIAnswerCache springAIAnswerCache;
+
+    private final UidUtils uidUtils;
+
+    @Value("${bytedesk.ai.ingest.workers:2}")
+    private int workers;
+
+    @Value("${bytedesk.ai.ingest.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${bytedesk.ai.ingest.stale-minutes:10}")
+    private int staleMinutes;
+
+    private ExecutorService executor;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    // 本节点正在执行的任务uid，停机时重置为PENDING
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("BytedeskIngest-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        for (String uid : runningJobs) {
+            try {
+                ingestJobRepository.findByUid(uid).ifPresent(job -> {
+                    job.setStatus(IngestJobStatusEnum.PENDING.name());
+                    ingestJobRepository.save(job);
+                });
+            } catch (Exception e) {
+                log.warn("reset ingest job {} error: {}", uid, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 入队：每个来源只保留一条任务，内容未变化且未失败时忽略
+     *
+     * @param contentHash 来源内容的哈希，见{@link #hash(Object...)}
+     */
+    public void enqueue(IngestJobTypeEnum type, String targetUid, String kbUid, String orgUid, String contentHash) {
+        try {
+            doEnqueue(type, targetUid, kbUid, orgUid, contentHash);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // 执行线程同时更新了任务，基于最新版本重试一次
+            doEnqueue(type, targetUid, kbUid, orgUid, contentHash);
+        }
+    }
+
+    private void doEnqueue(IngestJobTypeEnum type, String targetUid, String kbUid, String orgUid, String contentHash) {
+        IngestJobEntity job = ingestJobRepository.findByTargetUid(targetUid).orElse(null);
+        if (job == null) {
+            job = IngestJobEntity.builder()
+                    .uid(uidUtils.getUid())
+                    .targetUid(targetUid)
+                    .build();
+        } else if (Objects.equals(job.getContentHash(), contentHash)
+                && !IngestJobStatusEnum.FAILED.name().equals(job.getStatus())) {
+            return;
+        }
+        job.setType(type.name());
+        job.setKbUid(kbUid);
+        job.setOrgUid(orgUid);
+        job.setContentHash(contentHash);
+        job.setStatus(IngestJobStatusEnum.PENDING.name());
+        job.setAttempts(0);
+        job.setNextRunAt(LocalDateTime.now());
+        job.setTotalChunks(0);
+        job.setProcessedChunks(0);
+        job.setSkippedChunks(0);
+        job.setErrorMessage(null);
+        ingestJobRepository.save(job);
+        log.info("ingest job enqueued: {} {}", type, targetUid);
+    }
+
+    // 来源被删除，不再需要向量化
+    public void cancel(String targetUid) {
+        ingestJobRepository.findByTargetUid(targetUid).ifPresent(ingestJobRepository::delete);
+    }
+
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        int free = workers - running.get();
+        if (free <= 0) {
+            return;
+        }
+        List<IngestJobEntity> jobs = ingestJobRepository.findByStatusAndNextRunAtBeforeOrderByIdAsc(
+                IngestJobStatusEnum.PENDING.name(), LocalDateTime.now(), PageRequest.of(0, free));
+        for (IngestJobEntity job : jobs) {
+            IngestJobEntity claimed = claim(job);
+            if (claimed == null) {
+                continue;
+            }
+            running.incrementAndGet();
+            runningJobs.add(claimed.getUid());
+            executor.execute(() -> {
+                try {
+                    run(claimed);
+                } finally {
+                    runningJobs.remove(claimed.getUid());
+                    running.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    @EventListener
+    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
+        // 执行节点宕机，任务长时间没有进度
+        LocalDateTime staleTime = LocalDateTime.now().minusMinutes(staleMinutes);
+        for (IngestJobEntity job : ingestJobRepository.findByStatusAndUpdatedAtBefore(IngestJobStatusEnum.RUNNING.name(), staleTime)) {
+            try {
+                log.warn("ingest job {} stale, reset to pending", job.getTargetUid());
+                job.setStatus(IngestJobStatusEnum.PENDING.name());
+                ingestJobRepository.save(job);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // 执行线程恰好更新了进度
+            }
+        }
+    }
+
+    // 领取任务，已被其他节点领取时返回null
+    private IngestJobEntity claim(IngestJobEntity job) {
+        try {
+            job.setStatus(IngestJobStatusEnum.RUNNING.name());
+            job.setStartedAt(LocalDateTime.now());
+            job.setFinishedAt(null);
+            return ingestJobRepository.save(job);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return null;
+        }
+    }
+
+    private void run(IngestJobEntity claimed) {
+        AtomicReference<IngestJobEntity> current = new AtomicReference<>(claimed);
+        IngestProgress progress = (processed, skipped, total) -> {
+            IngestJobEntity job = current.get();
+            job.setTotalChunks(total);
+            job.setProcessedChunks(processed);
+            job.setSkippedChunks(skipped);
+            // 任务被重新入队时版本冲突，抛出异常终止本次执行
+            current.set(ingestJobRepository.save(job));
+        };
+        try {
+            boolean found = process(IngestJobTypeEnum.valueOf(claimed.getType()), claimed.getTargetUid(), progress);
+            IngestJobEntity job = current.get();
+            job.setStatus(IngestJobStatusEnum.SUCCESS.name());
+            job.setFinishedAt(LocalDateTime.now());
+            job.setErrorMessage(found ? null : "source not found");
+            ingestJobRepository.save(job);
+            // 知识库内容已变化，基于旧内容生成的答案失效
+            springAIAnswerCache.invalidate(job.getKbUid());
+            log.info("ingest job done: {} {}, chunks {}, skipped {}", job.getType(), job.getTargetUid(),
+                    job.getTotalChunks(), job.getSkippedChunks());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            log.info("ingest job {} changed while running, will run again", claimed.getTargetUid());
+        } catch (Exception e) {
+            log.error("ingest job {} {} error: {}", claimed.getType(), claimed.getTargetUid(), e.getMessage(), e);
+            fail(current.get(), e);
+        }
+    }
+
+    private void fail(IngestJobEntity job, Exception e) {
+        try {
+            int attempts = job.getAttempts() + 1;
+            job.setAttempts(attempts);
+            job.setErrorMessage(truncate(e.getMessage()));
+            if (attempts >= maxAttempts) {
+                job.setStatus(IngestJobStatusEnum.FAILED.name());
+                job.setFinishedAt(LocalDateTime.now());
+            } else {
+                // 1, 2, 4, 8 ... 分钟后重试
+                job.setStatus(IngestJobStatusEnum.PENDING.name());
+                job.setNextRunAt(LocalDateTime.now().plusMinutes(1L << (attempts - 1)));
+            }
+            ingestJobRepository.save(job);
+        } catch (ObjectOptimisticLockingFailureException ex) {
+            // 已被重新入队
+        }
+    }
+
+    // 按uid重新查询来源，来源不存在或已删除时返回false
+    private boolean process(IngestJobTypeEnum type, String targetUid, IngestProgress progress) {
+        switch (type) {
+            case FILE:
+                return fileRepository.findByUid(targetUid).filter(file -> !file.isDeleted())
+                        .map(file -> {
+                            springAIVectorService.readSplitWriteToVectorStore(file, progress);
+                            return true;
+                        }).orElse(false);
+            case TEXT:
+                return textRepository.findByUid(targetUid).filter(text -> !text.isDeleted())
+                        .map(text -> {
+                            springAIVectorService.readText(text, progress);
+                            return true;
+                        }).orElse(false);
+            case QA:
+                return qaRepository.findByUid(targetUid).filter(qa -> !qa.isDeleted())
+                        .map(qa -> {
+                            springAIVectorService.readQa(qa, progress);
+                            return true;
+                        }).orElse(false);
+            case FAQ:
+                return faqRepository.findByUid(targetUid).filter(faq -> !faq.isDeleted())
+                        .map(faq -> {
+                            springAIVectorService.readFaq(faq, progress);
+                            return true;
+                        }).orElse(false);
+            case WEBSITE:
+                return websiteRepository.findByUid(targetUid).filter(website -> !website.isDeleted())
+                        .map(website -> {
+                            springAIVectorService.readWebsite(website, progress);
+                            return true;
+                        }).orElse(false);
+            default:
+                return false;
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    /**
+     * 来源内容的哈希，参与向量化的字段变化时才重新入队
+     */
+    public static String hash(Object... parts) {
+        StringJoiner joiner = new StringJoiner("\u0001");
+        for (Object part : parts) {
+            joiner.add(String.valueOf(part));
+        }
+        return DigestUtils.md5DigestAsHex(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -27,6 +27,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.util.StringUtils;
 
+import com.bytedesk.ai.provider.LlmProviderConsts;
 import com.bytedesk.ai.springai.base.BaseSpringAIService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -48,7 +49,7 @@ public class SpringAIOllamaService extends BaseSpringAIService {
 
     @Override
     protected void processPrompt(Prompt prompt, MessageProtobuf messageProtobuf) {
-        bytedeskOllamaChatModel.ifPresent(model -> model.stream(prompt).subscribe(
+        bytedeskOllamaChatModel.ifPresent(model -> withMetrics(LlmProviderConsts.OLLAMA, model.stream(prompt)).subscribe(
                 response -> {
                     if (response != null) {
                         log.info("Ollama API response metadata: {}", response.getMetadata());
@@ -99,7 +100,7 @@ public class SpringAIOllamaService extends BaseSpringAIService {
         //
         bytedeskOllamaChatModel.ifPresentOrElse(
                 model -> {
-                    model.stream(prompt).subscribe(
+                    withMetrics(LlmProviderConsts.OLLAMA, model.stream(prompt)).subscribe(
                             response -> {
                                 try {
                                     if (response != null) {
@@ -13,6 +13,7 @@
  */
 package com.bytedesk.ai.springai.siliconflow;
 
+import com.bytedesk.ai.provider.LlmProviderConsts;
 import com.bytedesk.ai.springai.base.BaseSpringAIService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -48,7 +49,7 @@ public class SpringAISiliconFlowService extends BaseSpringAIService {
 
     @Override
     protected void processPrompt(Prompt prompt, MessageProtobuf messageProtobuf) {
-        siliconFlowChatModel.ifPresent(model -> model.stream(prompt).subscribe(
+        siliconFlowChatModel.ifPresent(model -> withMetrics(LlmProviderConsts.SILICONFLOW, model.stream(prompt)).subscribe(
                 response -> {
                     if (response != null) {
                         log.info("siliconFlow API response metadata: {}", response.getMetadata());
@@ -98,7 +99,7 @@ public class SpringAISiliconFlowService extends BaseSpringAIService {
     protected void processPromptSSE(Prompt prompt, MessageProtobuf messageProtobufQuery, MessageProtobuf messageProtobufReply, SseEmitter emitter) {
         siliconFlowChatModel.ifPresentOrElse(
                 model -> {
-                    model.stream(prompt).subscribe(
+                    withMetrics(LlmProviderConsts.SILICONFLOW, model.stream(prompt)).subscribe(
                             response -> {
                                 try {
                                     if (response != null) {
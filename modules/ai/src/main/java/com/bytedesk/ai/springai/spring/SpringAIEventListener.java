@@ -13,15 +13,15 @@
  */
 package com.bytedesk.ai.springai.spring;
 
-import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
+import com.bytedesk.ai.springai.cache.SpringAIAnswerCache;
+import com.bytedesk.ai.springai.ingest.IngestJobService;
+import com.bytedesk.ai.springai.ingest.IngestJobTypeEnum;
 import com.bytedesk.core.redis.pubsub.RedisPubsubParseFileErrorEvent;
 import com.bytedesk.core.redis.pubsub.RedisPubsubParseFileSuccessEvent;
 import com.bytedesk.core.redis.pubsub.message.RedisPubsubMessageFile;
@@ -45,51 +45,40 @@ import com.bytedesk.kbase.llm.website.event.WebsiteDeleteEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * 知识库内容变化时提交向量化任务，由IngestJobService持久化并异步执行；删除时立即删除向量
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class SpringAIEventListener {
     
     private final Optional<SpringAIVectorService> springAiVectorService;
-    
-    // 存储收集到的FAQ实体，用于批量处理
-    private final ConcurrentHashMap<String, FaqEntity> faqCreateMap = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, FaqEntity> faqUpdateMap = new ConcurrentHashMap<>();
-    
-    // 存储收集到的QA实体，用于批量处理
-    private final ConcurrentHashMap<String, QaEntity> qaCreateMap = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, QaEntity> qaUpdateMap = new ConcurrentHashMap<>();
-    
-    // 存储收集到的Text实体，用于批量处理
-    private final ConcurrentHashMap<String, TextEntity> textCreateMap = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, TextEntity> textUpdateMap = new ConcurrentHashMap<>();
-    
-    // 存储收集到的File实体，用于批量处理
-    private final ConcurrentHashMap<String, FileEntity> fileCreateMap = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, FileEntity> fileDeleteMap = new ConcurrentHashMap<>();
+
+    private final IngestJobService ingestJobService;
+
+    private final SpringAIAnswerCache springAIAnswerCache;
 
     @EventListener
     public void onFileCreateEvent(FileCreateEvent event) {
         FileEntity file = event.getFile();
         log.info("SpringAIEventListener onFileCreateEvent: {}", file.getFileName());
-        // 将File实体添加到创建缓存中，而不是立即处理
-        fileCreateMap.put(file.getUid(), file);
+        ingestJobService.enqueue(IngestJobTypeEnum.FILE, file.getUid(), file.getKbUid(), file.getOrgUid(),
+                IngestJobService.hash(file.getFileUrl()));
     }
 
     @EventListener
     public void onFileDeleteEvent(FileDeleteEvent event) {
         FileEntity file = event.getFile();
         log.info("SpringAIEventListener onFileDeleteEvent: {}", file.getFileName());
-        // 将File实体添加到删除缓存中，而不是立即处理
-        fileDeleteMap.put(file.getUid(), file);
+        deleteDocs(file.getUid(), file.getKbUid(), file.getDocIdList());
     }
 
     @EventListener
     public void onTextCreateEvent(TextCreateEvent event) {
         TextEntity text = event.getText();
         log.info("SpringAIEventListener onTextCreateEvent: {}", text.getName());
-        // 将Text实体添加到创建缓存中
-        textCreateMap.put(text.getUid(), text);
+        enqueueText(text);
     }
 
     @EventListener
@@ -97,8 +86,8 @@ public class SpringAIEventListener {
         TextEntity text = event.getText();
         log.info("SpringAIEventListener onTextUpdateEvent: {}", text.getName());
         if (!text.isDeleted()) {
-            // 将Text实体添加到更新缓存中
-            textUpdateMap.put(text.getUid(), text);
+            // 向量化完成后回写状态也会触发更新事件，内容未变化时不会重复入队
+            enqueueText(text);
         }
     }
 
@@ -107,20 +96,14 @@ public class SpringAIEventListener {
         TextEntity text = event.getText();
         log.info("SpringAIEventListener onTextDeleteEvent: {}", text.getName());
         // 删除text对应的document，以及redis中缓存的document
-        springAiVectorService.ifPresent(service -> {
-            service.deleteDocs(text.getDocIdList());
-        });
-        // 从缓存中移除
-        textCreateMap.remove(text.getUid());
-        textUpdateMap.remove(text.getUid());
+        deleteDocs(text.getUid(), text.getKbUid(), text.getDocIdList());
     }
 
     @EventListener
     public void onQaCreateEvent(QaCreateEvent event) {
         QaEntity qa = event.getQa();
         log.info("SpringAIEventListener onQaCreateEvent: {}", qa.getQuestion());
-        // 将QA实体添加到创建缓存中
-        qaCreateMap.put(qa.getUid(), qa);
+        enqueueQa(qa);
     }
 
     @EventListener
@@ -128,8 +111,7 @@ public class SpringAIEventListener {
         QaEntity qa = event.getQa();
         log.info("SpringAIEventListener onQaUpdateEvent: {}", qa.getQuestion());
         if (!qa.isDeleted()) {
-            // 将QA实体添加到更新缓存中
-            qaUpdateMap.put(qa.getUid(), qa);
+            enqueueQa(qa);
         }
     }
 
@@ -138,30 +120,16 @@ public class SpringAIEventListener {
         QaEntity qa = event.getQa();
         log.info("SpringAIEventListener onQaDeleteEvent: {}", qa.getQuestion());
         // 删除qa对应的document，以及redis中缓存的document
-        springAiVectorService.ifPresent(service -> {
-            service.deleteDocs(qa.getDocIdList());
-        });
-        // 从缓存中移除
-        qaCreateMap.remove(qa.getUid());
-        qaUpdateMap.remove(qa.getUid());
+        deleteDocs(qa.getUid(), qa.getKbUid(), qa.getDocIdList());
     }
 
     // @EventListener
     // public void onFaqCreateEvent(FaqCreateEvent event) {
     //     FaqEntity faq = event.getFaq();
     //     log.info("SpringAIEventListener onFaqCreateEvent: {}", faq.getQuestion());
-    //     // 将FAQ实体添加到创建缓存中，而不是立即处理
-    //     faqCreateMap.put(faq.getUid(), faq);
-    // }
-
-    // @EventListener
-    // public void onFaqUpdateEvent(FaqUpdateEvent event) {
-    //     FaqEntity faq = event.getFaq();
-    //     log.info("SpringAIEventListener onFaqUpdateEvent: {}", faq.getQuestion());
-    //     if (!faq.isDeleted()) {
-    //         // 将FAQ实体添加到更新缓存中，而不是立即处理
-    //         faqUpdateMap.put(faq.getUid(), faq);
-    //     }
+    //     ingestJobService.enqueue(IngestJobTypeEnum.FAQ, faq.getUid(), faq.getKbUid(), faq.getOrgUid(),
+    //             IngestJobService.hash(faq.getQuestion(), faq.getAnswer(), faq.getCategoryUid(),
+    //                     faq.isEnabled(), faq.getStartDate(), faq.getEndDate()));
     // }
 
     @EventListener
@@ -169,22 +137,15 @@ public class SpringAIEventListener {
         FaqEntity faq = event.getFaq();
         log.info("SpringAIEventListener onFaqDeleteEvent: {}", faq.getQuestion());
         // 删除faq对应的document，以及redis中缓存的document
-        springAiVectorService.ifPresent(service -> {
-            service.deleteDocs(faq.getDocIdList());
-        });
-        // 从缓存中移除
-        faqCreateMap.remove(faq.getUid());
-        faqUpdateMap.remove(faq.getUid());
+        deleteDocs(faq.getUid(), faq.getKbUid(), faq.getDocIdList());
     }
 
     @EventListener
     public void onWebsiteCreateEvent(WebsiteCreateEvent event) {
         WebsiteEntity website = event.getWebsite();
         log.info("SpringAIEventListener onWebsiteCreateEvent: {}", website.getName());
-        // 生成document
-        springAiVectorService.ifPresent(service -> {
-            service.readWebsite(website);
-        });
+        ingestJobService.enqueue(IngestJobTypeEnum.WEBSITE, website.getUid(), website.getKbUid(), website.getOrgUid(),
+                IngestJobService.hash(website.getUrl()));
     }
 
     @EventListener
@@ -192,207 +153,30 @@ public class SpringAIEventListener {
         WebsiteEntity website = event.getWebsite();
         log.info("SpringAIEventListener onWebsiteDeleteEvent: {}", website.getName());
         // 删除text对应的document，以及redis中缓存的document
-        springAiVectorService.ifPresent(service -> {
-            service.deleteDocs(website.getDocIdList());
-        });
+        deleteDocs(website.getUid(), website.getKbUid(), website.getDocIdList());
     }
 
-    @EventListener
-    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
-        // 批量处理FAQ创建
-        processFaqCreations();
-        
-        // 批量处理FAQ更新
-        processFaqUpdates();
-        
-        // 批量处理QA创建
-        processQaCreations();
-        
-        // 批量处理QA更新
-        processQaUpdates();
-        
-        // 批量处理Text创建
-        processTextCreations();
-        
-        // 批量处理Text更新
-        processTextUpdates();
-        
-        // 批量处理File创建
-        processFileCreations();
-        
-        // 批量处理File删除
-        processFileDeletions();
+    private void enqueueText(TextEntity text) {
+        ingestJobService.enqueue(IngestJobTypeEnum.TEXT, text.getUid(), text.getKbUid(), text.getOrgUid(),
+                IngestJobService.hash(text.getName(), text.getContent(), text.getCategoryUid(),
+                        text.isEnabled(), text.getStartDate(), text.getEndDate()));
     }
-    
-    private void processFaqCreations() {
-        if (!faqCreateMap.isEmpty()) {
-            log.info("处理FAQ创建: 数量: {}", faqCreateMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            faqCreateMap.forEach((uid, faq) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.readFaq(faq);
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理FAQ创建失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(faqCreateMap::remove);
-        }
-    }
-    
-    private void processFaqUpdates() {
-        if (!faqUpdateMap.isEmpty()) {
-            log.info("处理FAQ更新: 数量: {}", faqUpdateMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            faqUpdateMap.forEach((uid, faq) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.deleteDocs(faq.getDocIdList());
-                        service.readFaq(faq);
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理FAQ更新失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(faqUpdateMap::remove);
-        }
-    }
-    
-    private void processQaCreations() {
-        if (!qaCreateMap.isEmpty()) {
-            log.info("处理QA创建: 数量: {}", qaCreateMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            qaCreateMap.forEach((uid, qa) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.readQa(qa);
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理QA创建失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(qaCreateMap::remove);
-        }
-    }
-    
-    private void processQaUpdates() {
-        if (!qaUpdateMap.isEmpty()) {
-            log.info("处理QA更新: 数量: {}", qaUpdateMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            qaUpdateMap.forEach((uid, qa) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.deleteDocs(qa.getDocIdList());
-                        service.readQa(qa);
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理QA更新失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(qaUpdateMap::remove);
-        }
-    }
-    
-    private void processTextCreations() {
-        if (!textCreateMap.isEmpty()) {
-            log.info("处理Text创建: 数量: {}", textCreateMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            textCreateMap.forEach((uid, text) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.readText(text);
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理Text创建失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(textCreateMap::remove);
-        }
-    }
-    
-    private void processTextUpdates() {
-        if (!textUpdateMap.isEmpty()) {
-            log.info("处理Text更新: 数量: {}", textUpdateMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            textUpdateMap.forEach((uid, text) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.deleteDocs(text.getDocIdList());
-                        service.readText(text);
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理Text更新失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(textUpdateMap::remove);
-        }
-    }
-    
-    private void processFileCreations() {
-        if (!fileCreateMap.isEmpty()) {
-            log.info("处理File创建: 数量: {}", fileCreateMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            fileCreateMap.forEach((uid, file) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.readSplitWriteToVectorStore(file);
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理File创建失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(fileCreateMap::remove);
-        }
+
+    private void enqueueQa(QaEntity qa) {
+        ingestJobService.enqueue(IngestJobTypeEnum.QA, qa.getUid(), qa.getKbUid(), qa.getOrgUid(),
+                IngestJobService.hash(qa.getQuestion(), qa.getAnswer(), qa.getCategoryUid(),
+                        qa.isEnabled(), qa.getStartDate(), qa.getEndDate()));
     }
-    
-    private void processFileDeletions() {
-        if (!fileDeleteMap.isEmpty()) {
-            log.info("处理File删除: 数量: {}", fileDeleteMap.size());
-            Set<String> processedKeys = new HashSet<>();
-            
-            fileDeleteMap.forEach((uid, file) -> {
-                try {
-                    springAiVectorService.ifPresent(service -> {
-                        service.deleteDocs(file.getDocIdList());
-                    });
-                    processedKeys.add(uid);
-                } catch (Exception e) {
-                    log.error("处理File删除失败: {} - {}", uid, e.getMessage());
-                }
-            });
-            
-            // 移除已处理的实体
-            processedKeys.forEach(fileDeleteMap::remove);
+
+    private void deleteDocs(String targetUid, String kbUid, List<String> docIdList) {
+        ingestJobService.cancel(targetUid);
+        if (docIdList == null || docIdList.isEmpty()) {
+            return;
         }
+        springAiVectorService.ifPresent(service -> {
+            service.deleteDocs(docIdList);
+        });
+        springAIAnswerCache.invalidate(kbUid);
     }
 
     @EventListener
@@ -13,10 +13,14 @@
  */
 package com.bytedesk.ai.springai.spring;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Deque;
 import java.util.List;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
 import org.springframework.ai.reader.ExtractedTextFormatter;
 import org.springframework.ai.reader.JsonReader;
 import org.springframework.ai.reader.TextReader;
@@ -31,6 +35,7 @@ import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.filter.Filter.Expression;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.ai.vectorstore.redis.RedisVectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
@@ -41,6 +46,7 @@ import java.util.Optional;
 import java.util.HashMap;
 import java.time.LocalDateTime;
 
+import com.bytedesk.ai.springai.ingest.IngestProgress;
 import com.bytedesk.ai.utils.reader.WebDocumentReader;
 import com.bytedesk.core.upload.UploadRestService;
 import com.bytedesk.kbase.config.KbaseConst;
@@ -50,6 +56,7 @@ import com.bytedesk.kbase.llm.file.FileEntity;
 import com.bytedesk.kbase.llm.file.FileRestService;
 import com.bytedesk.kbase.llm.qa.QaEntity;
 import com.bytedesk.kbase.llm.qa.QaRestService;
+import com.bytedesk.kbase.llm.split.SplitEntity;
 import com.bytedesk.kbase.llm.split.SplitRequest;
 import com.bytedesk.kbase.llm.split.SplitRestService;
 import com.bytedesk.kbase.llm.split.SplitStatusEnum;
@@ -58,15 +65,19 @@ import com.bytedesk.kbase.llm.text.TextEntity;
 import com.bytedesk.kbase.llm.text.TextRestService;
 import com.bytedesk.kbase.llm.website.WebsiteEntity;
 import com.bytedesk.kbase.llm.website.WebsiteRestService;
+import com.knuddels.jtokkit.api.EncodingType;
 
-import lombok.AllArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
 
 @Slf4j
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class SpringAIVectorService {
 
 	private final Optional<RedisVectorStore> bytedeskOllamaRedisVectorStore;
@@ -87,10 +98,30 @@ public class SpringAIVectorService {
 
 	private final UploadRestService uploadRestService;
 
+	// 每次embedding调用的token上限
+	@Value("${bytedesk.ai.ingest.max-batch-tokens:8000}")
+	private int maxBatchTokens;
+
+	// 每批写入向量库的最大尝试次数
+	@Value("${bytedesk.ai.ingest.max-retries:3}")
+	private int maxRetries;
+
+	private BatchingStrategy batchingStrategy;
+
+	@PostConstruct
+	public void init() {
+		// 预留10%余量，避免token估算误差导致超出模型上限
+		batchingStrategy = new TokenCountBatchingStrategy(EncodingType.CL100K_BASE, maxBatchTokens, 0.1);
+	}
+
 	/**
 	 * https://docs.spring.io/spring-ai/reference/api/etl-pipeline.html
 	 */
 	public void readSplitWriteToVectorStore(@NonNull FileEntity file) {
+		readSplitWriteToVectorStore(file, IngestProgress.NONE);
+	}
+
+	public void readSplitWriteToVectorStore(@NonNull FileEntity file, IngestProgress progress) {
 		String fileUrl = file.getFileUrl();
 		log.info("Loading document from URL: {}", fileUrl);
 		Assert.hasText(fileUrl, "File URL must not be empty");
@@ -101,19 +132,19 @@ public class SpringAIVectorService {
 		log.info("fileName {}", fileName);
 
 		if (fileName.toLowerCase().endsWith(".pdf")) {
-			readPdfPage(fileName, file);
+			readPdfPage(fileName, file, progress);
 		} else if (fileName.toLowerCase().endsWith(".json")) {
-			readJson(fileName, file);
+			readJson(fileName, file, progress);
 		} else if (fileName.toLowerCase().endsWith(".txt")) {
-			readTxt(fileName, file);
+			readTxt(fileName, file, progress);
 		} else if (fileName.toLowerCase().endsWith(".md")) {
-			readMarkdown(fileName, file);
+			readMarkdown(fileName, file, progress);
 		} else {
-			readByTika(fileName, file);
+			readByTika(fileName, file, progress);
 		}
 	}
 
-	public void readPdfPage(String fileName, FileEntity file) {
+	public void readPdfPage(String fileName, FileEntity file, IngestProgress progress) {
 		log.info("Loading document from pdfPage: {}", fileName);
 		Assert.hasText(fileName, "File name must not be empty");
 		Assert.isTrue(fileName.endsWith(".pdf"), String.format("File must end with .pdf, got %s", fileName));
@@ -142,10 +173,10 @@ public class SpringAIVectorService {
 		// 继续原有的分割和存储逻辑
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(documents);
-		storeDocuments(docList, file);
+		storeDocuments(docList, file, progress);
 	}
 
-	public void readPdfParagraph(String fileName, FileEntity file) {
+	public void readPdfParagraph(String fileName, FileEntity file, IngestProgress progress) {
 		log.info("Loading document from pdfParagraph: {}", fileName);
 		Assert.hasText(fileName, "File name must not be empty");
 		Assert.isTrue(fileName.endsWith(".pdf"), String.format("File must end with .pdf, got %s", fileName));
@@ -173,10 +204,10 @@ public class SpringAIVectorService {
 		// 继续原有的分割和存储逻辑
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(documents);
-		storeDocuments(docList, file);
+		storeDocuments(docList, file, progress);
 	}
 
-	public void readJson(String fileName, FileEntity file) {
+	public void readJson(String fileName, FileEntity file, IngestProgress progress) {
 		log.info("Loading document from json: {}", fileName);
 		Assert.hasText(fileName, "File name must not be empty");
 		Assert.isTrue(fileName.endsWith(".json"), String.format("File must end with .json, got %s", fileName));
@@ -196,11 +227,11 @@ public class SpringAIVectorService {
 
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(documents);
-		storeDocuments(docList, file);
+		storeDocuments(docList, file, progress);
 	}
 
 	// 使用spring ai markdown reader
-	public void readMarkdown(String fileName, FileEntity file) {
+	public void readMarkdown(String fileName, FileEntity file, IngestProgress progress) {
 		log.info("Loading document from markdown: {}", fileName);
 		Assert.hasText(fileName, "File name must not be empty");
 		Assert.isTrue(fileName.endsWith(".md"), String.format("File must end with .md, got %s", fileName));
@@ -219,10 +250,10 @@ public class SpringAIVectorService {
 
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(documents);
-		storeDocuments(docList, file);
+		storeDocuments(docList, file, progress);
 	}
 
-	public void readTxt(String fileName, FileEntity file) {
+	public void readTxt(String fileName, FileEntity file, IngestProgress progress) {
 		log.info("Loading document from txt: {}", fileName);
 		Assert.hasText(fileName, "File name must not be empty");
 		Assert.isTrue(fileName.endsWith(".txt"), String.format("File must end with .txt, got %s", fileName));
@@ -243,12 +274,12 @@ public class SpringAIVectorService {
 
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(documents);
-		storeDocuments(docList, file);
+		storeDocuments(docList, file, progress);
 	}
 
 	// https://tika.apache.org/2.9.0/formats.html
 	// PDF, DOC/DOCX, PPT/PPTX, and HTML
-	public void readByTika(String fileName, FileEntity file) {
+	public void readByTika(String fileName, FileEntity file, IngestProgress progress) {
 		log.info("Loading document from tika: {}", fileName);
 		Assert.hasText(fileName, "File name must not be empty");
 		Assert.notNull(file, "FileEntity must not be null");
@@ -268,7 +299,7 @@ public class SpringAIVectorService {
 
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(documents);
-		storeDocuments(docList, file);
+		storeDocuments(docList, file, progress);
 	}
 
 	// string content 转换成 List<Document> documents
@@ -287,33 +318,27 @@ public class SpringAIVectorService {
 			doc.getMetadata().put("enabled", "true");
 			doc.getMetadata().put("startDate", LocalDateTime.now().toString());
 			doc.getMetadata().put("endDate", LocalDateTime.now().plusYears(100).toString());
-			
-			// 将doc写入到splitEntity
-			SplitRequest splitRequest = SplitRequest.builder()
-					.name(name)
-					.content(doc.getText())
-					.type(SplitTypeEnum.TEXT.name())
-					.docId(doc.getId())
-					.kbUid(kbUid)
-					.orgUid(orgUid)
-					.enabled(true) // 默认启用
-					.startDate(LocalDateTime.now()) // 默认从现在开始
-					.endDate(LocalDateTime.now().plusYears(100)) // 默认有效期100年
-					.build();
-			splitRestService.create(splitRequest);
 		});
-		// log.info("Parsing document, this will take a while.");
-		bytedeskOllamaRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		// 当二者都启用的情况下，优先使用ollama，否则使用zhipuai
-		if (!bytedeskOllamaRedisVectorStore.isPresent()) {
-			bytedeskZhipuaiRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		}
+		SplitRequest template = SplitRequest.builder()
+				.name(name)
+				.type(SplitTypeEnum.TEXT.name())
+				.kbUid(kbUid)
+				.orgUid(orgUid)
+				.enabled(true) // 默认启用
+				.startDate(LocalDateTime.now()) // 默认从现在开始
+				.endDate(LocalDateTime.now().plusYears(100)) // 默认有效期100年
+				.build();
+		storeChunks(docList, template, IngestProgress.NONE);
 		//
 		return docList;
 	}
 
-	// 使用reader直接将content字符串，转换成 List<Document> documents
 	public List<Document> readText(TextEntity textEntity) {
+		return readText(textEntity, IngestProgress.NONE);
+	}
+
+	// 使用reader直接将content字符串，转换成 List<Document> documents
+	public List<Document> readText(TextEntity textEntity, IngestProgress progress) {
 		log.info("Converting string content to documents");
 		Assert.notNull(textEntity, "TextEntity must not be null");
 		Assert.hasText(textEntity.getContent(), "Content must not be empty");
@@ -322,50 +347,33 @@ public class SpringAIVectorService {
 		// 使用TokenTextSplitter分割文本
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(List.of(document));
-		List<String> docIdList = new ArrayList<>();
-		Iterator<Document> iterator = docList.iterator();
-		while (iterator.hasNext()) {
-			Document doc = iterator.next();
-			// log.info("doc id: {}", doc.getId());
-			docIdList.add(doc.getId());
-			// 添加元数据: 知识库kb_uid、启用状态、有效期
-			doc.getMetadata().put(KbaseConst.KBASE_KB_UID, textEntity.getKbUid());
-			// doc.getMetadata().put("enabled", String.valueOf(textEntity.isEnabled()));
-			// doc.getMetadata().put("startDate", textEntity.getStartDate() != null ? textEntity.getStartDate().toString() : LocalDateTime.now().toString());
-			// doc.getMetadata().put("endDate", textEntity.getEndDate() != null ? textEntity.getEndDate().toString() : LocalDateTime.now().plusYears(100).toString());
-			
-			// 将doc写入到splitEntity
-			SplitRequest splitRequest = SplitRequest.builder()
-					.name(textEntity.getName())
-					.content(doc.getText())
-					.type(SplitTypeEnum.TEXT.name())
-					.docId(doc.getId())
-					.typeUid(textEntity.getUid())
-					.categoryUid(textEntity.getCategoryUid())
-					.kbUid(textEntity.getKbUid())
-					.userUid(textEntity.getUserUid())
-					.orgUid(textEntity.getOrgUid())
-					.enabled(textEntity.isEnabled())
-					.startDate(textEntity.getStartDate())
-					.endDate(textEntity.getEndDate())
-					.build();
-			splitRestService.create(splitRequest);
-		}
+		// 添加元数据: 知识库kb_uid
+		docList.forEach(doc -> doc.getMetadata().put(KbaseConst.KBASE_KB_UID, textEntity.getKbUid()));
+		SplitRequest template = SplitRequest.builder()
+				.name(textEntity.getName())
+				.type(SplitTypeEnum.TEXT.name())
+				.typeUid(textEntity.getUid())
+				.categoryUid(textEntity.getCategoryUid())
+				.kbUid(textEntity.getKbUid())
+				.userUid(textEntity.getUserUid())
+				.orgUid(textEntity.getOrgUid())
+				.enabled(textEntity.isEnabled())
+				.startDate(textEntity.getStartDate())
+				.endDate(textEntity.getEndDate())
+				.build();
+		List<String> docIdList = storeChunks(docList, template, progress);
 		textEntity.setDocIdList(docIdList);
 		textEntity.setStatus(SplitStatusEnum.SUCCESS.name());
 		textRestService.save(textEntity);
-		// log.info("Parsing document, this will take a while.");
-		bytedeskOllamaRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		// 当二者都启用的情况下，优先使用ollama，否则使用zhipuai
-		if (!bytedeskOllamaRedisVectorStore.isPresent()) {
-			bytedeskZhipuaiRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		}
-
 		return docList;
 	}
 
-	//
 	public List<Document> readQa(QaEntity qaEntity) {
+		return readQa(qaEntity, IngestProgress.NONE);
+	}
+
+	//
+	public List<Document> readQa(QaEntity qaEntity, IngestProgress progress) {
 		log.info("Converting string content to documents");
 		Assert.notNull(qaEntity, "QaEntity must not be null");
 		//
@@ -375,49 +383,33 @@ public class SpringAIVectorService {
 		// 使用TokenTextSplitter分割文本
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(List.of(document));
-		List<String> docIdList = new ArrayList<>();
-		Iterator<Document> iterator = docList.iterator();
-		while (iterator.hasNext()) {
-			Document doc = iterator.next();
-			log.info("faq doc id: {}", doc.getId());
-			docIdList.add(doc.getId());
-			// 添加元数据: 知识库kb_uid、启用状态、有效期
-			doc.getMetadata().put(KbaseConst.KBASE_KB_UID, qaEntity.getKbUid());
-			// doc.getMetadata().put("enabled", String.valueOf(qaEntity.isEnabled()));
-			// doc.getMetadata().put("startDate", qaEntity.getStartDate() != null ? qaEntity.getStartDate().toString() : LocalDateTime.now().toString());
-			// doc.getMetadata().put("endDate", qaEntity.getEndDate() != null ? qaEntity.getEndDate().toString() : LocalDateTime.now().plusYears(100).toString());
-			
-			// 将doc写入到splitEntity
-			SplitRequest splitRequest = SplitRequest.builder()
-					.name(qaEntity.getQuestion())
-					.content(doc.getText())
-					.type(SplitTypeEnum.QA.name())
-					.docId(doc.getId())
-					.typeUid(qaEntity.getUid())
-					.categoryUid(qaEntity.getCategoryUid())
-					.kbUid(qaEntity.getKbUid())
-					.userUid(qaEntity.getUserUid())
-					.orgUid(qaEntity.getOrgUid())
-					.enabled(qaEntity.isEnabled())
-					.startDate(qaEntity.getStartDate() != null ? qaEntity.getStartDate() : LocalDateTime.now())
-					.endDate(qaEntity.getEndDate() != null ? qaEntity.getEndDate() : LocalDateTime.now().plusYears(100))
-					.build();
-			splitRestService.create(splitRequest);
-		}
+		// 添加元数据: 知识库kb_uid
+		docList.forEach(doc -> doc.getMetadata().put(KbaseConst.KBASE_KB_UID, qaEntity.getKbUid()));
+		SplitRequest template = SplitRequest.builder()
+				.name(qaEntity.getQuestion())
+				.type(SplitTypeEnum.QA.name())
+				.typeUid(qaEntity.getUid())
+				.categoryUid(qaEntity.getCategoryUid())
+				.kbUid(qaEntity.getKbUid())
+				.userUid(qaEntity.getUserUid())
+				.orgUid(qaEntity.getOrgUid())
+				.enabled(qaEntity.isEnabled())
+				.startDate(qaEntity.getStartDate() != null ? qaEntity.getStartDate() : LocalDateTime.now())
+				.endDate(qaEntity.getEndDate() != null ? qaEntity.getEndDate() : LocalDateTime.now().plusYears(100))
+				.build();
+		List<String> docIdList = storeChunks(docList, template, progress);
 		qaEntity.setDocIdList(docIdList);
 		qaEntity.setStatus(SplitStatusEnum.SUCCESS.name());
 		qaRestService.save(qaEntity);
-		// log.info("Parsing document, this will take a while.");
-		bytedeskOllamaRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		// 当二者都启用的情况下，优先使用ollama，否则使用zhipuai
-		if (!bytedeskOllamaRedisVectorStore.isPresent()) {
-			bytedeskZhipuaiRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		}
 		return docList;
 	}
 
-	// 使用reader直接将qaEntity字符串，转换成 List<Document> documents
 	public List<Document> readFaq(FaqEntity fqaEntity) {
+		return readFaq(fqaEntity, IngestProgress.NONE);
+	}
+
+	// 使用reader直接将qaEntity字符串，转换成 List<Document> documents
+	public List<Document> readFaq(FaqEntity fqaEntity, IngestProgress progress) {
 		log.info("Converting string content to documents");
 		Assert.notNull(fqaEntity, "FaqEntity must not be null");
 		//
@@ -427,49 +419,33 @@ public class SpringAIVectorService {
 		// 使用TokenTextSplitter分割文本
 		var tokenTextSplitter = new TokenTextSplitter();
 		List<Document> docList = tokenTextSplitter.split(List.of(document));
-		List<String> docIdList = new ArrayList<>();
-		Iterator<Document> iterator = docList.iterator();
-		while (iterator.hasNext()) {
-			Document doc = iterator.next();
-			log.info("faq doc id: {}", doc.getId());
-			docIdList.add(doc.getId());
-			// 添加元数据: 知识库kb_uid、启用状态、有效期
-			doc.getMetadata().put(KbaseConst.KBASE_KB_UID, fqaEntity.getKbUid());
-			// doc.getMetadata().put("enabled", String.valueOf(fqaEntity.isEnabled()));
-			// doc.getMetadata().put("startDate", fqaEntity.getStartDate() != null ? fqaEntity.getStartDate().toString() : LocalDateTime.now().toString());
-			// doc.getMetadata().put("endDate", fqaEntity.getEndDate() != null ? fqaEntity.getEndDate().toString() : LocalDateTime.now().plusYears(100).toString());
-			
-			// 将doc写入到splitEntity
-			SplitRequest splitRequest = SplitRequest.builder()
-					.name(fqaEntity.getQuestion())
-					.content(doc.getText())
-					.type(SplitTypeEnum.FAQ.name())
-					.docId(doc.getId())
-					.typeUid(fqaEntity.getUid())
-					.categoryUid(fqaEntity.getCategoryUid())
-					.kbUid(fqaEntity.getKbUid())
-					.userUid(fqaEntity.getUserUid())
-					.orgUid(fqaEntity.getOrgUid())
-					.enabled(fqaEntity.isEnabled())
-					.startDate(fqaEntity.getStartDate() != null ? fqaEntity.getStartDate() : LocalDateTime.now())
-					.endDate(fqaEntity.getEndDate() != null ? fqaEntity.getEndDate() : LocalDateTime.now().plusYears(100))
-					.build();
-			splitRestService.create(splitRequest);
-		}
+		// 添加元数据: 知识库kb_uid
+		docList.forEach(doc -> doc.getMetadata().put(KbaseConst.KBASE_KB_UID, fqaEntity.getKbUid()));
+		SplitRequest template = SplitRequest.builder()
+				.name(fqaEntity.getQuestion())
+				.type(SplitTypeEnum.FAQ.name())
+				.typeUid(fqaEntity.getUid())
+				.categoryUid(fqaEntity.getCategoryUid())
+				.kbUid(fqaEntity.getKbUid())
+				.userUid(fqaEntity.getUserUid())
+				.orgUid(fqaEntity.getOrgUid())
+				.enabled(fqaEntity.isEnabled())
+				.startDate(fqaEntity.getStartDate() != null ? fqaEntity.getStartDate() : LocalDateTime.now())
+				.endDate(fqaEntity.getEndDate() != null ? fqaEntity.getEndDate() : LocalDateTime.now().plusYears(100))
+				.build();
+		List<String> docIdList = storeChunks(docList, template, progress);
 		fqaEntity.setDocIdList(docIdList);
 		fqaEntity.setStatus(SplitStatusEnum.SUCCESS.name());
 		faqRestService.save(fqaEntity);
-		// log.info("Parsing document, this will take a while.");
-		bytedeskOllamaRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		// 当二者都启用的情况下，优先使用ollama，否则使用zhipuai
-		if (!bytedeskOllamaRedisVectorStore.isPresent()) {
-			bytedeskZhipuaiRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-		}
 		return docList;
 	}
 
-	// 抓取website
 	public List<Document> readWebsite(WebsiteEntity websiteEntity) {
+		return readWebsite(websiteEntity, IngestProgress.NONE);
+	}
+
+	// 抓取website
+	public List<Document> readWebsite(WebsiteEntity websiteEntity, IngestProgress progress) {
 		log.info("Loading document from website: {}", websiteEntity.getUrl());
 		Assert.notNull(websiteEntity, "WebsiteEntity must not be null");
 		Assert.hasText(websiteEntity.getUrl(), "URL must not be empty");
@@ -490,50 +466,30 @@ public class SpringAIVectorService {
 			// 使用TokenTextSplitter分割文本
 			var tokenTextSplitter = new TokenTextSplitter();
 			List<Document> docList = tokenTextSplitter.split(documents);
-			List<String> docIdList = new ArrayList<>();
-			Iterator<Document> iterator = docList.iterator();
-			while (iterator.hasNext()) {
-				Document doc = iterator.next();
-				log.info("doc id: {}", doc.getId());
-				docIdList.add(doc.getId());
+			docList.forEach(doc -> {
 				// 添加元数据: 知识库kb_uid、启用状态、有效期
 				doc.getMetadata().put(KbaseConst.KBASE_KB_UID, websiteEntity.getKbUid());
 				doc.getMetadata().put("enabled", String.valueOf(websiteEntity.isEnabled()));
 				doc.getMetadata().put("startDate", websiteEntity.getStartDate() != null ? websiteEntity.getStartDate().toString() : LocalDateTime.now().toString());
 				doc.getMetadata().put("endDate", websiteEntity.getEndDate() != null ? websiteEntity.getEndDate().toString() : LocalDateTime.now().plusYears(100).toString());
-				
-				// 将doc写入到splitEntity
-				SplitRequest splitRequest = SplitRequest.builder()
-						.name(websiteEntity.getName())
-						.content(doc.getText())
-						.type(SplitTypeEnum.WEBSITE.name())
-						.docId(doc.getId())
-						.typeUid(websiteEntity.getUid())
-						.categoryUid(websiteEntity.getCategoryUid())
-						.kbUid(websiteEntity.getKbUid())
-						.userUid(websiteEntity.getUserUid())
-						.orgUid(websiteEntity.getOrgUid())
-						.enabled(websiteEntity.isEnabled())
-						.startDate(websiteEntity.getStartDate())
-						.endDate(websiteEntity.getEndDate())
-						.build();
-				splitRestService.create(splitRequest);
-			}
-			// 如果需要存储到向量数据库
-			if (websiteEntity.getKbUid() != null) {
-				bytedeskOllamaRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-				log.info("Website content stored in vector store for kbUid: {}", websiteEntity.getKbUid());
-			}
+			});
+			SplitRequest template = SplitRequest.builder()
+					.name(websiteEntity.getName())
+					.type(SplitTypeEnum.WEBSITE.name())
+					.typeUid(websiteEntity.getUid())
+					.categoryUid(websiteEntity.getCategoryUid())
+					.kbUid(websiteEntity.getKbUid())
+					.userUid(websiteEntity.getUserUid())
+					.orgUid(websiteEntity.getOrgUid())
+					.enabled(websiteEntity.isEnabled())
+					.startDate(websiteEntity.getStartDate())
+					.endDate(websiteEntity.getEndDate())
+					.build();
+			List<String> docIdList = storeChunks(docList, template, progress);
 			//
 			websiteEntity.setDocIdList(docIdList);
 			websiteEntity.setStatus(SplitStatusEnum.SUCCESS.name());
 			websiteRestService.save(websiteEntity);
-			// log.info("Parsing document, this will take a while.");
-			bytedeskOllamaRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-			// 当二者都启用的情况下，优先使用ollama，否则使用zhipuai
-			if (!bytedeskOllamaRedisVectorStore.isPresent()) {
-				bytedeskZhipuaiRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
-			}
 
 			return docList;
 
@@ -544,61 +500,156 @@ public class SpringAIVectorService {
 	}
 
 	// 存储到vector store
-	private void storeDocuments(List<Document> docList, FileEntity file) {
+	private void storeDocuments(List<Document> docList, FileEntity file, IngestProgress progress) {
 		Assert.notNull(docList, "Document list must not be null");
 		Assert.notNull(file, "FileEntity must not be null");
 		Assert.notNull(file.getUid(), "File UID must not be null");
 		Assert.notNull(file.getKbUid(), "Knowledge base UID must not be null");
 		// 
 		log.info("Parsing document, this will take a while. docList.size={}", docList.size());
-		List<String> docIdList = new ArrayList<>();
-		Iterator<Document> iterator = docList.iterator();
-		while (iterator.hasNext()) {
-			Document doc = iterator.next();
-			log.info("doc id: {}", doc.getId());
-			docIdList.add(doc.getId());
+		docList.forEach(doc -> {
 			doc.getMetadata().put(KbaseConst.KBASE_FILE_UID, file.getUid());
 			doc.getMetadata().put(KbaseConst.KBASE_KB_UID, file.getKbUid());
-			// 添加元数据: 启用状态和有效期，使用FileEntity中的字段
-			// doc.getMetadata().put("enabled", String.valueOf(file.isEnabled()));
-			// doc.getMetadata().put("startDate", file.getStartDate() != null ? file.getStartDate().toString() : LocalDateTime.now().toString());
-			// doc.getMetadata().put("endDate", file.getEndDate() != null ? file.getEndDate().toString() : LocalDateTime.now().plusYears(100).toString());
-			
-			// 
-			SplitRequest splitRequest = SplitRequest.builder()
-					.name(file.getFileName())
-					.content(doc.getText())
-					.type(SplitTypeEnum.FILE.name())
-					.docId(doc.getId())
-					.typeUid(file.getUid())
-					.categoryUid(file.getCategoryUid())
-					.kbUid(file.getKbUid())
-					.userUid(file.getUserUid())
-					.orgUid(file.getOrgUid())
-					.enabled(file.isEnabled()) // 使用文件的启用状态，默认为true
-					.startDate(file.getStartDate() != null ? file.getStartDate() : LocalDateTime.now()) // 使用文件的开始日期，默认为当前时间
-					.endDate(file.getEndDate() != null ? file.getEndDate() : LocalDateTime.now().plusYears(100)) // 使用文件的结束日期，默认为100年后
-					.build();
-			splitRestService.create(splitRequest);
-		}
+		});
+		SplitRequest template = SplitRequest.builder()
+				.name(file.getFileName())
+				.type(SplitTypeEnum.FILE.name())
+				.typeUid(file.getUid())
+				.categoryUid(file.getCategoryUid())
+				.kbUid(file.getKbUid())
+				.userUid(file.getUserUid())
+				.orgUid(file.getOrgUid())
+				.enabled(file.isEnabled()) // 使用文件的启用状态，默认为true
+				.startDate(file.getStartDate() != null ? file.getStartDate() : LocalDateTime.now()) // 使用文件的开始日期，默认为当前时间
+				.endDate(file.getEndDate() != null ? file.getEndDate() : LocalDateTime.now().plusYears(100)) // 使用文件的结束日期，默认为100年后
+				.build();
+		List<String> docIdList = storeChunks(docList, template, progress);
 		file.setDocIdList(docIdList);
 		file.setStatus(SplitStatusEnum.SUCCESS.name());
 		fileRestService.save(file);
-		// 
-		bytedeskOllamaRedisVectorStore.ifPresent(redisVectorStore -> {
+	}
+
+	/**
+	 * 增量写入分块
+	 * 
+	 * 1. 与来源现有的分块按内容md5比较，未变化的分块复用原docId，不重新向量化；
+	 * 2. 其余分块按token预算分批，每批一次embedding调用写入向量库(失败重试)，成功后批量保存split并回调进度，
+	 *    中途失败重新执行时，已保存的批次因内容哈希相同被跳过；
+	 * 3. 新内容中已不存在的旧分块从向量库和split中删除。
+	 *
+	 * @param template 分块公共字段: name/type/typeUid/categoryUid/kbUid/userUid/orgUid/enabled/startDate/endDate
+	 * @return 全部分块的docId，与docList顺序一致
+	 */
+	private List<String> storeChunks(List<Document> docList, SplitRequest template, IngestProgress progress) {
+		// 现有分块: contentHash -> splits
+		Map<String, Deque<SplitEntity>> existing = new HashMap<>();
+		if (StringUtils.hasText(template.getTypeUid())) {
+			for (SplitEntity split : splitRestService.findByTypeUid(template.getTypeUid())) {
+				existing.computeIfAbsent(String.valueOf(split.getContentHash()), k -> new ArrayDeque<>()).add(split);
+			}
+		}
+		List<String> docIdList = new ArrayList<>(docList.size());
+		List<SplitEntity> reused = new ArrayList<>();
+		List<Document> pending = new ArrayList<>();
+		// docId -> contentHash
+		Map<String, String> hashes = new HashMap<>();
+		for (Document doc : docList) {
+			String hash = DigestUtils.md5DigestAsHex(doc.getText().getBytes(StandardCharsets.UTF_8));
+			Deque<SplitEntity> same = existing.get(hash);
+			SplitEntity split = same != null ? same.poll() : null;
+			if (split != null) {
+				docIdList.add(split.getDocId());
+				reused.add(split);
+			} else {
+				docIdList.add(doc.getId());
+				hashes.put(doc.getId(), hash);
+				pending.add(doc);
+			}
+		}
+		// 复用的分块只更新名称、分类、启用状态和有效期
+		if (!reused.isEmpty()) {
+			reused.forEach(split -> {
+				split.setName(template.getName());
+				split.setCategoryUid(template.getCategoryUid());
+				split.setEnabled(template.isEnabled());
+				split.setStartDate(template.getStartDate());
+				split.setEndDate(template.getEndDate());
+			});
+			splitRestService.saveAll(reused);
+		}
+		int total = docList.size();
+		int skipped = reused.size();
+		int processed = skipped;
+		progress.onProgress(processed, skipped, total);
+		log.info("storeChunks typeUid {}: total {}, unchanged {}", template.getTypeUid(), total, skipped);
+		//
+		if (!pending.isEmpty()) {
+			Optional<RedisVectorStore> vectorStore = getVectorStore();
+			for (List<Document> batch : batchingStrategy.batch(pending)) {
+				vectorStore.ifPresent(store -> writeWithRetry(store, batch));
+				splitRestService.createAll(batch.stream()
+						.map(doc -> toSplitRequest(template, doc, hashes.get(doc.getId())))
+						.toList());
+				processed += batch.size();
+				progress.onProgress(processed, skipped, total);
+			}
+		}
+		// 删除新内容中已不存在的旧分块
+		List<String> staleDocIdList = existing.values().stream()
+				.flatMap(Deque::stream)
+				.map(SplitEntity::getDocId)
+				.filter(StringUtils::hasText)
+				.toList();
+		if (!staleDocIdList.isEmpty()) {
+			deleteDocs(staleDocIdList);
+		}
+		return docIdList;
+	}
+
+	private SplitRequest toSplitRequest(SplitRequest template, Document doc, String contentHash) {
+		return SplitRequest.builder()
+				.name(template.getName())
+				.content(doc.getText())
+				.contentHash(contentHash)
+				.type(template.getType())
+				.docId(doc.getId())
+				.typeUid(template.getTypeUid())
+				.categoryUid(template.getCategoryUid())
+				.kbUid(template.getKbUid())
+				.userUid(template.getUserUid())
+				.orgUid(template.getOrgUid())
+				.enabled(template.isEnabled())
+				.startDate(template.getStartDate())
+				.endDate(template.getEndDate())
+				.build();
+	}
+
+	// 一批分块一次embedding调用，失败时按1s、2s、4s...退避重试
+	private void writeWithRetry(RedisVectorStore vectorStore, List<Document> batch) {
+		for (int attempt = 1;; attempt++) {
 			try {
-				redisVectorStore.write(docList);
-				log.info("Successfully stored documents in vector store");
-			} catch (Exception e) {
-				log.error("Failed to store documents in vector store: {}", e.getMessage());
+				vectorStore.add(batch);
+				return;
+			} catch (RuntimeException e) {
+				if (attempt >= maxRetries) {
+					throw e;
+				}
+				log.warn("write {} documents to vector store failed, attempt {}: {}", batch.size(), attempt, e.getMessage());
+				try {
+					Thread.sleep(1000L << (attempt - 1));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
 			}
-		});
-		// 当二者都启用的情况下，优先使用ollama，否则使用zhipuai
-		if (!bytedeskOllamaRedisVectorStore.isPresent()) {
-			bytedeskZhipuaiRedisVectorStore.ifPresent(redisVectorStore -> redisVectorStore.write(docList));
 		}
 	}
 
+	// 当二者都启用的情况下，优先使用ollama，否则使用zhipuai
+	private Optional<RedisVectorStore> getVectorStore() {
+		return bytedeskOllamaRedisVectorStore.isPresent() ? bytedeskOllamaRedisVectorStore : bytedeskZhipuaiRedisVectorStore;
+	}
+
 	// https://docs.spring.io/spring-ai/reference/api/vectordbs.html
 	// https://docs.spring.io/spring-ai/reference/api/vectordbs/redis.html
 	public List<String> searchText(String query, String kbUid) {
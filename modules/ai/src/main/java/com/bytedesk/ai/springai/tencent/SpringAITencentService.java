@@ -26,6 +26,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.util.StringUtils;
 
+import com.bytedesk.ai.provider.LlmProviderConsts;
 import com.bytedesk.ai.springai.base.BaseSpringAIService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -46,7 +47,7 @@ public class SpringAITencentService extends BaseSpringAIService {
 
     @Override
     protected void processPrompt(Prompt prompt, MessageProtobuf messageProtobuf) {
-        tencentChatModel.ifPresent(model -> model.stream(prompt).subscribe(
+        tencentChatModel.ifPresent(model -> withMetrics(LlmProviderConsts.TENCENT, model.stream(prompt)).subscribe(
                 response -> {
                     if (response != null) {
                         log.info("Tencent API response metadata: {}", response.getMetadata());
@@ -96,7 +97,7 @@ public class SpringAITencentService extends BaseSpringAIService {
     protected void processPromptSSE(Prompt prompt, MessageProtobuf messageProtobufQuery,  MessageProtobuf messageProtobufReply, SseEmitter emitter) {
         tencentChatModel.ifPresentOrElse(
                 model -> {
-                    model.stream(prompt).subscribe(
+                    withMetrics(LlmProviderConsts.TENCENT, model.stream(prompt)).subscribe(
                             response -> {
                                 try {
                                     if (response != null) {
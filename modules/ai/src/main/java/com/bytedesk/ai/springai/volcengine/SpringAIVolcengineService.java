@@ -26,6 +26,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.util.StringUtils;
 
+import com.bytedesk.ai.provider.LlmProviderConsts;
 import com.bytedesk.ai.springai.base.BaseSpringAIService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -45,7 +46,7 @@ public class SpringAIVolcengineService extends BaseSpringAIService {
 
     @Override
     protected void processPrompt(Prompt prompt, MessageProtobuf messageProtobuf) {
-        volcengineChatModel.ifPresent(model -> model.stream(prompt).subscribe(
+        volcengineChatModel.ifPresent(model -> withMetrics(LlmProviderConsts.VOLCENGINE, model.stream(prompt)).subscribe(
                 response -> {
                     if (response != null) {
                         log.info("Volcengine API response metadata: {}", response.getMetadata());
@@ -95,7 +96,7 @@ public class SpringAIVolcengineService extends BaseSpringAIService {
     protected void processPromptSSE(Prompt prompt, MessageProtobuf messageProtobufQuery, MessageProtobuf messageProtobufReply, SseEmitter emitter) {
         volcengineChatModel.ifPresentOrElse(
                 model -> {
-                    model.stream(prompt).subscribe(
+                    withMetrics(LlmProviderConsts.VOLCENGINE, model.stream(prompt)).subscribe(
                             response -> {
                                 try {
                                     if (response != null) {
@@ -27,6 +27,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.bytedesk.ai.provider.LlmProviderConsts;
 import com.bytedesk.ai.springai.base.BaseSpringAIService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
@@ -52,7 +53,7 @@ public class SpringAIZhipuaiService extends BaseSpringAIService {
      */
     @Override
     protected void processPrompt(Prompt prompt, MessageProtobuf messageProtobuf) {
-        bytedeskZhipuaiChatModel.stream(prompt).subscribe(
+        withMetrics(LlmProviderConsts.ZHIPU, bytedeskZhipuaiChatModel.stream(prompt)).subscribe(
                 response -> {
                     if (response != null) {
                         log.info("Zhipuai API response metadata: {}", response.getMetadata());
@@ -102,7 +103,7 @@ public class SpringAIZhipuaiService extends BaseSpringAIService {
     public void processPromptSSE(Prompt prompt, MessageProtobuf messageProtobufQuery,
             MessageProtobuf messageProtobufReply, SseEmitter emitter) {
 
-        Flux<ChatResponse> responseFlux = bytedeskZhipuaiChatModel.stream(prompt);
+        Flux<ChatResponse> responseFlux = withMetrics(LlmProviderConsts.ZHIPU, bytedeskZhipuaiChatModel.stream(prompt));
 
         responseFlux.subscribe(
                 response -> {
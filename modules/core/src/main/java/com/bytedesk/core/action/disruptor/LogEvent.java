@@ -13,12 +13,43 @@
  */
 package com.bytedesk.core.action.disruptor;
 
+import com.bytedesk.core.rbac.user.UserDetailsImpl;
+
 import lombok.Data;
 
+/**
+ * 操作日志事件，由RingBuffer预先分配并循环复用
+ *
+ * 请求线程只填充字段并发布，不做任何IO；ip归属地查询、用户映射和入库在消费线程完成。
+ * 消费者处理完一个槽位后必须调用clear()，避免持有上一条记录的对象引用。
+ */
 // https://lmax-exchange.github.io/disruptor/user-guide/#_getting_started
 @Data
 public class LogEvent {
 
-    private String content;
+    private String title;
+
+    private String action;
+
+    private String description;
+
+    private String type;
+
+    private String ip;
+
+    private String extra;
+
+    // 请求线程上的登录用户，未登录时为null
+    private UserDetailsImpl principal;
+
+    public void clear() {
+        this.title = null;
+        this.action = null;
+        this.description = null;
+        this.type = null;
+        this.ip = null;
+        this.extra = null;
+        this.principal = null;
+    }
 
 }
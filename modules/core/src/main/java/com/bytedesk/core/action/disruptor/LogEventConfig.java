@@ -13,34 +13,88 @@
  */
 package com.bytedesk.core.action.disruptor;
 
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @Configuration
 public class LogEventConfig {
 
+    // 必须为2的幂
+    @Value("${bytedesk.action.log.buffer-size:4096}")
+    private int bufferSize;
+
+    // blocking, sleeping, yielding, busy-spin
+    @Value("${bytedesk.action.log.wait-strategy:blocking}")
+    private String waitStrategy;
+
+    private Disruptor<LogEvent> disruptor;
+
     @Bean
-    public RingBuffer<LogEvent> logEventRingBuffer() {
-        // 消费者线程池
-        // ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("weiyuai-pool-%d").build();
+    public RingBuffer<LogEvent> logEventRingBuffer(LogEventHandler logEventHandler) {
         // 事件工厂
         LogEventFactory eventFactory = new LogEventFactory();
-        // 指定RingBuffer大小
-        int bufferSize = 1024;
-        // 构造事件分发器
-        Disruptor<LogEvent> disruptor = new Disruptor<LogEvent>(eventFactory, bufferSize,
-                Executors.defaultThreadFactory());
+        // 构造事件分发器，多个请求线程同时发布
+        disruptor = new Disruptor<LogEvent>(eventFactory, bufferSize, runnable -> {
+            Thread thread = new Thread(runnable, "BytedeskActionLog");
+            thread.setDaemon(true);
+            return thread;
+        }, ProducerType.MULTI, createWaitStrategy(waitStrategy));
         // 注册消费者
-        disruptor.handleEventsWith(new LogEventHandler());
+        disruptor.handleEventsWith(logEventHandler);
         // 启动事件分发
         disruptor.start();
+        log.info("action log disruptor started, bufferSize {}, waitStrategy {}", bufferSize, waitStrategy);
         // 获取RingBuffer 用于生产事件
-        RingBuffer<LogEvent> ringBuffer = disruptor.getRingBuffer();
-        //
-        return ringBuffer;
+        return disruptor.getRingBuffer();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (disruptor == null) {
+            return;
+        }
+        try {
+            // 等待已发布的日志写入完成
+            disruptor.shutdown(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("action log disruptor shutdown timeout, remaining {}",
+                    bufferSize - disruptor.getRingBuffer().remainingCapacity());
+            disruptor.halt();
+        }
+    }
+
+    /**
+     * blocking：消费者空闲时挂起，CPU占用最低，默认；
+     * sleeping：先自旋再yield再短暂park，延迟与CPU占用折中；
+     * yielding/busy-spin：低延迟但持续占用一个CPU核，只适合独占核的部署
+     */
+    private static WaitStrategy createWaitStrategy(String name) {
+        switch (name == null ? "" : name.trim().toLowerCase()) {
+            case "sleeping":
+                return new SleepingWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            default:
+                return new BlockingWaitStrategy();
+        }
     }
 }
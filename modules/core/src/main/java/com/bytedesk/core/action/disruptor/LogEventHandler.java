@@ -13,17 +13,131 @@
  */
 package com.bytedesk.core.action.disruptor;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.action.ActionEntity;
+import com.bytedesk.core.action.ActionRepository;
+import com.bytedesk.core.action.ActionTypeEnum;
+import com.bytedesk.core.constant.BytedeskConsts;
+import com.bytedesk.core.ip.IpService;
+import com.bytedesk.core.rbac.user.UserEntity;
+import com.bytedesk.core.uid.UidUtils;
 import com.lmax.disruptor.EventHandler;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * 操作日志消费者，运行在单独的disruptor线程
+ *
+ * 逐条把槽位内容复制为ActionEntity后立即释放槽位，累积到一批(endOfBatch或达到batchSize)时：
+ * 同一批内相同ip只查询一次归属地，然后saveAll在一个事务内写入。
+ * 写入失败只记录并丢弃该批，不阻塞RingBuffer。
+ */
 // https://lmax-exchange.github.io/disruptor/user-guide/#_getting_started
 @Slf4j
+@Component
+@RequiredArgsConstructor
 public class LogEventHandler implements EventHandler<LogEvent> {
 
+    private final ActionRepository actionRepository;
+
+    private final IpService ipService;
+
+    private final UidUtils uidUtils;
+
+    private final ModelMapper modelMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${bytedesk.action.log.batch-size:200}")
+    private int batchSize;
+
+    // 仅由消费线程访问
+    private final List<ActionEntity> batch = new ArrayList<>();
+
+    private final Map<String, String> ipLocations = new HashMap<>();
+
+    private Counter persistedCounter;
+
+    private Counter failedCounter;
+
+    @Override
+    public void onStart() {
+        persistedCounter = Counter.builder("bytedesk.action.log.persisted")
+                .description("Number of action logs written to database")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("bytedesk.action.log.failed")
+                .description("Number of action logs failed to write")
+                .register(meterRegistry);
+    }
+
     @Override
     public void onEvent(LogEvent event, long sequence, boolean endOfBatch) throws Exception {
-        log.info("Disruptor LongEventHandler: {}, sequence {}, endOfBatch {}", event.getContent(), sequence, endOfBatch);
+        try {
+            batch.add(toEntity(event));
+        } finally {
+            event.clear();
+        }
+        if (endOfBatch || batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        flush();
+    }
+
+    private ActionEntity toEntity(LogEvent event) {
+        ActionEntity action = ActionEntity.builder()
+                .title(event.getTitle())
+                .action(event.getAction())
+                .description(event.getDescription())
+                .ip(event.getIp())
+                .type(StringUtils.hasText(event.getType()) ? event.getType() : ActionTypeEnum.LOG.name())
+                .extra(StringUtils.hasText(event.getExtra()) ? event.getExtra() : BytedeskConsts.EMPTY_JSON_STRING)
+                .build();
+        if (event.getPrincipal() != null) {
+            UserEntity user = modelMapper.map(event.getPrincipal(), UserEntity.class);
+            action.setUser(user);
+            action.setOrgUid(user.getOrgUid());
+        } else {
+            action.setOrgUid(BytedeskConsts.DEFAULT_ORGANIZATION_UID);
+        }
+        return action;
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (ActionEntity action : batch) {
+                action.setUid(uidUtils.getCacheSerialUid());
+                if (StringUtils.hasText(action.getIp())) {
+                    action.setIpLocation(ipLocations.computeIfAbsent(action.getIp(), ipService::getIpLocation));
+                }
+            }
+            actionRepository.saveAll(batch);
+            persistedCounter.increment(batch.size());
+        } catch (Exception e) {
+            failedCounter.increment(batch.size());
+            log.error("failed to persist {} action logs: ", batch.size(), e);
+        } finally {
+            batch.clear();
+            ipLocations.clear();
+        }
     }
 
 }
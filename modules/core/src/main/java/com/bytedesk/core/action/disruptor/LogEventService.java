@@ -13,36 +13,152 @@
  */
 package com.bytedesk.core.action.disruptor;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import com.bytedesk.core.action.ActionRequest;
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
+import com.bytedesk.core.rbac.user.UserDetailsImpl;
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * 操作日志发布入口，在请求线程调用，只写入RingBuffer槽位，不访问数据库
+ *
+ * RingBuffer已满时不阻塞请求线程，按full-policy处理：
+ * drop：直接丢弃并计数；
+ * spill：暂存到有界溢出队列，每5秒在RingBuffer有空位时重新发布，溢出队列也满时丢弃。
+ */
 @Slf4j
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class LogEventService {
 
     private final RingBuffer<LogEvent> logEventRingBuffer;
 
-    public void testMq(String content) {
-        log.info("record the content: {}", content);
-        // 获取下一个Event槽的下标
-        long sequence = logEventRingBuffer.next();
+    private final MeterRegistry meterRegistry;
+
+    // drop, spill
+    @Value("${bytedesk.action.log.full-policy:spill}")
+    private String fullPolicy;
+
+    @Value("${bytedesk.action.log.spill-capacity:10000}")
+    private int spillCapacity;
+
+    private BlockingQueue<SpilledAction> spillQueue;
+
+    private Counter publishedCounter;
+
+    private Counter spilledCounter;
+
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void init() {
+        spillQueue = new ArrayBlockingQueue<>(Math.max(1, spillCapacity));
+        publishedCounter = Counter.builder("bytedesk.action.log.published")
+                .description("Number of action logs published to ring buffer")
+                .register(meterRegistry);
+        spilledCounter = Counter.builder("bytedesk.action.log.spilled")
+                .description("Number of action logs spilled while ring buffer is full")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("bytedesk.action.log.dropped")
+                .description("Number of action logs dropped while ring buffer is full")
+                .register(meterRegistry);
+        Gauge.builder("bytedesk.action.log.backlog", this,
+                service -> logEventRingBuffer.getBufferSize() - logEventRingBuffer.remainingCapacity()
+                        + service.spillQueue.size())
+                .description("Number of action logs waiting to be persisted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 发布一条操作日志，登录用户取自当前线程的SecurityContext
+     */
+    public void publish(ActionRequest request) {
+        UserDetailsImpl principal = getPrincipal();
+        if (tryPublish(request, principal)) {
+            return;
+        }
+        if ("spill".equalsIgnoreCase(fullPolicy) && spillQueue.offer(new SpilledAction(request, principal))) {
+            spilledCounter.increment();
+            return;
+        }
+        droppedCounter.increment();
+        log.warn("action log buffer full, dropped: title {}, action {}", request.getTitle(), request.getAction());
+    }
+
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        if (spillQueue.isEmpty()) {
+            return;
+        }
+        // 只取当前空位数量，避免取出后发布失败
+        long capacity = logEventRingBuffer.remainingCapacity();
+        for (long i = 0; i < capacity; i++) {
+            SpilledAction spilled = spillQueue.poll();
+            if (spilled == null) {
+                break;
+            }
+            if (!tryPublish(spilled.request(), spilled.principal())) {
+                // 与请求线程竞争空位失败，放回溢出队列下次再试
+                if (!spillQueue.offer(spilled)) {
+                    droppedCounter.increment();
+                }
+                break;
+            }
+        }
+    }
+
+    private boolean tryPublish(ActionRequest request, UserDetailsImpl principal) {
+        long sequence;
+        try {
+            // 获取下一个Event槽的下标，已满时立即返回而不是等待
+            sequence = logEventRingBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
         try {
             // 给Event填充数据
             LogEvent event = logEventRingBuffer.get(sequence);
-            event.setContent(content);
-            log.info("add event to mq: {}", event);
-        } catch (Exception e) {
-            log.error("failed to add event to longEventRingBuffer for : e = {},{}", e, e.getMessage());
+            event.setTitle(request.getTitle());
+            event.setAction(request.getAction());
+            event.setDescription(request.getDescription());
+            event.setType(request.getType());
+            event.setIp(request.getIp());
+            event.setExtra(request.getExtra());
+            event.setPrincipal(principal);
         } finally {
             // 发布Event，激活观察者去消费，将sequence传递给改消费者
             // 注意最后的publish方法必须放在finally中以确保必须得到调用；如果某个请求的sequence未被提交将会堵塞后续的发布操作或者其他的producer
             logEventRingBuffer.publish(sequence);
         }
+        publishedCounter.increment();
+        return true;
+    }
+
+    private static UserDetailsImpl getPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl userDetails) {
+            return userDetails;
+        }
+        return null;
+    }
+
+    private record SpilledAction(ActionRequest request, UserDetailsImpl principal) {
     }
 
 }
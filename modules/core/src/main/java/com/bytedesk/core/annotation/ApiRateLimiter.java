@@ -18,6 +18,8 @@ import java.util.concurrent.TimeUnit;
 
 import org.springframework.core.annotation.AliasFor;
 
+import com.bytedesk.core.rate_limiter.RateLimiterKeyEnum;
+
 /**
  * https://blog.csdn.net/MICHAELKING1/article/details/106058874
  * 
@@ -42,9 +44,29 @@ public @interface ApiRateLimiter {
      * qps
      */
     @AliasFor("value") double qps() default NOT_LIMITED;
+
+    /**
+     * 突发容量，默认为qps向上取整
+     */
+    int capacity() default 0;
+
+    /**
+     * 限流维度
+     */
+    RateLimiterKeyEnum key() default RateLimiterKeyEnum.IP;
+
+    /**
+     * 限流桶名称，默认为类名.方法名
+     */
+    String name() default "";
+
+    /**
+     * 超限时是否抛出异常，否则直接丢弃本次调用，适用于stomp等无法返回错误的场景
+     */
+    boolean throwException() default true;
  
     /**
-     * 超时时长
+     * 超时时长，令牌不足时最多等待该时长
      */
     int timeout() default 0;
  
@@ -25,9 +25,8 @@ import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import com.bytedesk.core.action.ActionRequest;
-import com.bytedesk.core.action.ActionRestService;
+import com.bytedesk.core.action.disruptor.LogEventService;
 import com.bytedesk.core.annotation.ActionAnnotation;
-import com.bytedesk.core.ip.IpService;
 import com.bytedesk.core.ip.IpUtils;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -48,9 +47,7 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public class ActionAspect {
 
-    private final ActionRestService actionService;
-
-    private final IpService ipService;
+    private final LogEventService logEventService;
 
     /**
      * 处理请求前执行
@@ -76,37 +73,31 @@ public class ActionAspect {
                 .build();
         actionRequest.setType(actionAnnotation.type().name());
         // 
-        // 获取方法签名
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        // 获取方法参数列表
-        Object[] args = joinPoint.getArgs();
-        // 遍历参数
-        for (int i = 0; i < args.length; i++) {
-            // 获取参数名
-            String paramName = signature.getParameterNames()[i];
-            // 获取参数值
-            Object paramValue = args[i];
-            // 参数名: authRequest, 参数值: AuthRequest(username=admin@email.com, password=admin,
-            // mobile=null, email=null, code=null, platform=bytedesk)
-            log.debug("TODO: 参数名: {}, 参数值: {}", paramName, paramValue);
+        if (log.isDebugEnabled()) {
+            // 获取方法签名
+            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+            String[] paramNames = signature.getParameterNames();
+            // 获取方法参数列表
+            Object[] args = joinPoint.getArgs();
+            // 遍历参数
+            for (int i = 0; i < args.length; i++) {
+                // 参数名: authRequest, 参数值: AuthRequest(username=admin@email.com, password=admin,
+                // mobile=null, email=null, code=null, platform=bytedesk)
+                log.debug("TODO: 参数名: {}, 参数值: {}", paramNames[i], args[i]);
+            }
         }
         // 
         ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
         if (attributes != null) {
             // 注意：不能在类上注解@Async，否则会获取不到 HttpServletRequest，attributes为空
             HttpServletRequest request = attributes.getRequest();
-            String ipAddress = request.getRemoteAddr();
-            String ip = IpUtils.getClientIp(request);
-            String ipLocation = ipService.getIpLocation(ip);
-            log.info("ipAddress {}, ip {}, ipLocation {}", ipAddress, ip, ipLocation);
-            actionRequest.setIp(ip);
-            actionRequest.setIpLocation(ipLocation);
-            // 接下来的操作...
+            // ip归属地在日志消费线程中查询
+            actionRequest.setIp(IpUtils.getClientIp(request));
         } else {
             // 处理非Web请求情况，比如记录日志或者直接返回
         }
-        // 
-        actionService.create(actionRequest);
+        // 写入RingBuffer后立即返回，入库由LogEventHandler批量完成
+        logEventService.publish(actionRequest);
     }
 
     /**
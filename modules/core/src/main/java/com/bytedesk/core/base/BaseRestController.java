@@ -13,22 +13,27 @@
  */
 package com.bytedesk.core.base;
 
-import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
-
-import com.alibaba.excel.EasyExcel;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.alibaba.excel.support.ExcelTypeEnum;
+import com.bytedesk.core.export.ExportProgress;
+import com.bytedesk.core.export.ExportService;
+import com.bytedesk.core.rbac.auth.AuthService;
+import com.bytedesk.core.rbac.user.UserEntity;
+import com.bytedesk.core.uid.UidUtils;
+import com.bytedesk.core.utils.ApplicationContextHolder;
 import com.bytedesk.core.utils.BdDateUtils;
 import com.bytedesk.core.utils.JsonResult;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * @author jackning 270580156@qq.com
  */
@@ -89,6 +94,9 @@ public abstract class BaseRestController<T> {
     /**
      * 通用导出Excel模板方法
      * 
+     * 分批查询并直接写入响应流，不在内存中保留全部数据。请求参数format=csv时导出csv；
+     * 请求参数exportUid用于查询进度和取消导出，未传入时自动生成，通过响应头X-Export-Uid返回
+     * 
      * @param <E> Excel实体类型
      * @param <S> Service类型
      * @param request 请求参数
@@ -99,6 +107,7 @@ public abstract class BaseRestController<T> {
      * @param filePrefix 文件名前缀
      * @return 导出结果
      */
+    @SuppressWarnings("unchecked")
     protected <E, S> Object exportTemplate(
             T request, 
             HttpServletResponse response,
@@ -106,26 +115,47 @@ public abstract class BaseRestController<T> {
             Class<E> excelClass,
             String sheetName, 
             String filePrefix) {
+        ExportService exportService = ApplicationContextHolder.getBean(ExportService.class);
+        ExportProgress progress = null;
         try {
+            if (!(service instanceof BaseRestServiceWithExcel)) {
+                throw new IllegalArgumentException("Invalid data format or convert method not found");
+            }
+            HttpServletRequest httpRequest = ((ServletRequestAttributes) RequestContextHolder
+                    .currentRequestAttributes()).getRequest();
+            boolean csv = "csv".equalsIgnoreCase(httpRequest.getParameter("format"));
+            String exportUid = httpRequest.getParameter("exportUid");
+            if (!StringUtils.hasText(exportUid)) {
+                exportUid = ApplicationContextHolder.getBean(UidUtils.class).getUid();
+            }
+
             // 设置响应类型
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setContentType(csv ? "text/csv"
+                    : "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
             response.setCharacterEncoding("utf-8");
             
             // 生成文件名
-            String fileName = filePrefix + "-" + BdDateUtils.formatDatetimeUid() + ".xlsx";
+            String fileName = filePrefix + "-" + BdDateUtils.formatDatetimeUid() + (csv ? ".csv" : ".xlsx");
             response.setHeader("Content-disposition", "attachment;filename*=utf-8''" + fileName);
+            response.setHeader("X-Export-Uid", exportUid);
 
-            // 获取数据并转换为Excel格式
-            Object data = invokeMethod(service, "queryByOrgEntity", request);
-            List<E> excelList = convertToExcelList(service, data);
-
-            // 写入Excel
-            EasyExcel.write(response.getOutputStream(), excelClass)
-                    .autoCloseStream(Boolean.FALSE)
-                    .sheet(sheetName)
-                    .doWrite(excelList);
+            // 分批查询、转换并写入Excel
+            UserEntity user = ApplicationContextHolder.getBean(AuthService.class).getUser();
+            if (user == null) {
+                throw new IllegalArgumentException("user not found");
+            }
+            progress = exportService.start(exportUid, fileName, user.getUid(), user.getOrgUid());
+            exportService.export((BaseRestServiceWithExcel<Object, T, ?, E>) service, request, excelClass,
+                    sheetName, csv ? ExcelTypeEnum.CSV : ExcelTypeEnum.XLSX, response.getOutputStream(), progress);
 
         } catch (Exception e) {
+            if (progress != null) {
+                exportService.fail(progress, e);
+            }
+            if (response.isCommitted()) {
+                // 已开始写出文件，无法再改为错误信息
+                return "";
+            }
             // 发生异常时重置响应
             response.reset();
             response.setContentType("application/json");
@@ -135,50 +165,6 @@ public abstract class BaseRestController<T> {
         return "";
     }
 
-    /**
-     * 通过反射调用服务方法
-     */
-    private <S> Object invokeMethod(S service, String methodName, Object... args) throws Exception {
-        Method method = null;
-        for (Method m : service.getClass().getMethods()) {
-            if (m.getName().equals(methodName)) {
-                method = m;
-                break;
-            }
-        }
-        if (method != null) {
-            return method.invoke(service, args);
-        }
-        throw new NoSuchMethodException("Method " + methodName + " not found");
-    }
-
-    /**
-     * 转换数据为Excel列表
-     */
-    @SuppressWarnings("unchecked")
-    private <E, S> List<E> convertToExcelList(S service, Object data) throws Exception {
-        if (data instanceof Page) {
-            Page<?> page = (Page<?>) data;
-            Method convertMethod = null;
-            for (Method m : service.getClass().getMethods()) {
-                if (m.getName().equals("convertToExcel")) {
-                    convertMethod = m;
-                    break;
-                }
-            }
-            
-            if (convertMethod != null) {
-                List<Object> content = (List<Object>) page.getContent();
-                List<E> result = new ArrayList<>();
-                for (Object entity : content) {
-                    result.add((E) convertMethod.invoke(service, entity));
-                }
-                return result;
-            }
-        }
-        throw new IllegalArgumentException("Invalid data format or convert method not found");
-    }
-
     /**
      * export
      *
@@ -13,7 +13,12 @@
  */
 package com.bytedesk.core.base;
 
+import java.util.List;
+
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
 public abstract class BaseRestServiceWithExcel<T, TRequest, TResponse, TExcel> extends BaseRestService<T, TRequest, TResponse> {
     
@@ -21,4 +26,20 @@ public abstract class BaseRestServiceWithExcel<T, TRequest, TResponse, TExcel> e
 
     abstract public TExcel convertToExcel(T entity);
 
+    /**
+     * 导出时按id倒序分批查询，lastId为上一批最后一条记录的id，首批为null
+     * 
+     * 默认返回null，导出时按页调用queryByOrgEntity；数据量大的表覆盖此方法，避免深分页和每页的count查询。
+     * 仅适用于继承BaseEntity的实体
+     */
+    public List<T> queryByOrgEntityBefore(TRequest request, Long lastId, int size) {
+        return null;
+    }
+
+    protected List<T> findByIdBefore(JpaSpecificationExecutor<T> repository, Specification<T> specs, Long lastId, int size) {
+        Specification<T> keyset = lastId == null ? specs
+                : specs.and((root, query, criteriaBuilder) -> criteriaBuilder.lessThan(root.get("id"), lastId));
+        return repository.findBy(keyset, query -> query.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(size).all());
+    }
+
 }
@@ -24,7 +24,8 @@ import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
 import com.bytedesk.core.quartz.event.QuartzHalfHourEvent;
 import com.bytedesk.core.quartz.event.QuartzHourlyEvent;
 import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
-import com.bytedesk.core.message.MessageEntity;
+import com.bytedesk.core.message.MessageEnvelope;
+import com.bytedesk.core.message.MessageSnapshot;
 import com.bytedesk.core.message.event.MessageCreateEvent;
 import com.bytedesk.core.message.event.MessageJsonEvent;
 import com.bytedesk.core.message.event.MessageUpdateEvent;
@@ -37,11 +38,12 @@ import com.bytedesk.core.socket.mqtt.MqttSubscribeEvent;
 import com.bytedesk.core.socket.mqtt.MqttUnsubscribeEvent;
 import com.bytedesk.core.socket.mqtt.event.MqttConnectedEvent;
 import com.bytedesk.core.socket.mqtt.event.MqttDisconnectedEvent;
+import com.bytedesk.core.socket.mqtt.event.MqttPresenceChangeEvent;
 import com.bytedesk.core.socket.stomp.StompConnectedEvent;
 import com.bytedesk.core.socket.stomp.StompDisconnectedEvent;
 import com.bytedesk.core.socket.stomp.StompSubscribeEvent;
 import com.bytedesk.core.socket.stomp.StompUnsubscribeEvent;
-import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadSnapshot;
 import com.bytedesk.core.thread.event.ThreadCreateEvent;
 import com.bytedesk.core.thread.event.ThreadUpdateEvent;
 import com.bytedesk.core.topic.event.TopicCreateEvent;
@@ -84,11 +86,15 @@ public class BytedeskEventPublisher {
         applicationEventPublisher.publishEvent(new MessageJsonEvent(this, json));
     }
 
-    public void publishMessageCreateEvent(MessageEntity message) {
+    public void publishMessageJsonEvent(MessageEnvelope envelope) {
+        applicationEventPublisher.publishEvent(new MessageJsonEvent(this, envelope));
+    }
+
+    public void publishMessageCreateEvent(MessageSnapshot message) {
         applicationEventPublisher.publishEvent(new MessageCreateEvent(this, message));
     }
 
-    public void publishMessageUpdateEvent(MessageEntity message) {
+    public void publishMessageUpdateEvent(MessageSnapshot message) {
         applicationEventPublisher.publishEvent(new MessageUpdateEvent(this, message));
     }
 
@@ -128,6 +134,10 @@ public class BytedeskEventPublisher {
         applicationEventPublisher.publishEvent(new MqttDisconnectedEvent(this, clientId));
     }
 
+    public void publishMqttPresenceChangeEvent(String userUid, boolean online) {
+        applicationEventPublisher.publishEvent(new MqttPresenceChangeEvent(this, userUid, online));
+    }
+
     public void publishMqttSubscribeEvent(String topic, String clientId) {
         applicationEventPublisher.publishEvent(new MqttSubscribeEvent(this, topic, clientId));
     }
@@ -152,11 +162,11 @@ public class BytedeskEventPublisher {
         applicationEventPublisher.publishEvent(new StompUnsubscribeEvent(this, topic, clientId));
     }
 
-    public void publishThreadCreateEvent(ThreadEntity thread) {
+    public void publishThreadCreateEvent(ThreadSnapshot thread) {
         applicationEventPublisher.publishEvent(new ThreadCreateEvent(this, thread));
     }
 
-    public void publishThreadUpdateEvent(ThreadEntity thread) {
+    public void publishThreadUpdateEvent(ThreadSnapshot thread) {
         applicationEventPublisher.publishEvent(new ThreadUpdateEvent(this, thread));
     }
 
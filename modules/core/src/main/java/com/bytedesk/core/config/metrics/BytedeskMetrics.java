@@ -1,16 +1,29 @@
 package com.bytedesk.core.config.metrics;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Cache;
+
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * 统一管理监控指标
+ *
+ * 标签只使用取值固定的维度(阶段、协议、路由模式、模型供应商、缓存名称)，
+ * 不使用uid、topic等，带标签的指标在首次使用时创建并缓存，热点路径上只做一次map查找。
  */
 @Slf4j
 @Component
@@ -43,6 +56,34 @@ public class BytedeskMetrics {
     private final Counter wsMessageCounter;
     private final Gauge wsActiveConnectionGauge;
 
+    // 消息处理阶段：接收 -> 过滤 -> 分发 -> 持久化
+    public static final String STAGE_RECEIVE = "receive";
+    public static final String STAGE_FILTER = "filter";
+    public static final String STAGE_FANOUT = "fanout";
+    public static final String STAGE_PERSIST = "persist";
+
+    // 接入协议
+    public static final String PROTOCOL_MQTT = "mqtt";
+    public static final String PROTOCOL_STOMP = "stomp";
+
+    private final Map<String, Timer> messageStageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> messageReceivedCounters = new ConcurrentHashMap<>();
+
+    // 长连接数量来源，按协议区分，由各协议的会话管理注册
+    private final Map<String, Supplier<Number>> connectionSources = new ConcurrentHashMap<>();
+    private final Set<String> stompSessionIds = ConcurrentHashMap.newKeySet();
+
+    // 路由相关指标，按路由模式
+    private final Map<String, Timer> routingTimers = new ConcurrentHashMap<>();
+
+    // 大模型流式响应指标，按供应商
+    private final Map<String, Timer> aiFirstTokenTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> aiTokenRateSummaries = new ConcurrentHashMap<>();
+    private final Map<String, Counter> aiAnswerCacheCounters = new ConcurrentHashMap<>();
+
+    // 限流相关指标，按限流桶名称和维度分别计数
+    private final Map<String, Counter> rateLimitedCounters = new ConcurrentHashMap<>();
+
     @Autowired
     public BytedeskMetrics(MeterRegistry registry) {
         this.registry = registry;
@@ -110,10 +151,21 @@ public class BytedeskMetrics {
                 .description("Number of WebSocket messages")
                 .register(registry);
 
-        this.wsActiveConnectionGauge = Gauge.builder("bytedesk.ws.active.connections", 
-                () -> 0D)  // 初始值为0
+        this.wsActiveConnectionGauge = Gauge.builder("bytedesk.ws.active.connections",
+                connectionSources, BytedeskMetrics::sumConnections)
                 .description("Number of active WebSocket connections")
                 .register(registry);
+
+        // 初始化消息阶段指标
+        for (String stage : new String[] { STAGE_RECEIVE, STAGE_FILTER, STAGE_FANOUT, STAGE_PERSIST }) {
+            messageStageTimers.put(stage, Timer.builder("bytedesk.message.stage.time")
+                    .description("Message processing time per stage")
+                    .tag("stage", stage)
+                    .register(registry));
+        }
+
+        // stomp会话数由连接、断开事件维护
+        bindActiveConnections(PROTOCOL_STOMP, stompSessionIds::size);
     }
 
     // 系统指标操作方法
@@ -167,6 +219,25 @@ public class BytedeskMetrics {
         sample.stop(messageProcessTimer);
     }
 
+    public void messageReceived(String protocol) {
+        messageCounter.increment();
+        messageReceivedCounters.computeIfAbsent(protocol, key -> Counter.builder("bytedesk.messages.received")
+                .description("Number of messages received per protocol")
+                .tag("protocol", protocol)
+                .register(registry)).increment();
+    }
+
+    public void recordMessageProcess(long nanos) {
+        messageProcessTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordMessageStage(String stage, long nanos) {
+        Timer timer = messageStageTimers.get(stage);
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
     // AI相关指标操作方法
     public void aiRequestMade() {
         aiRequestCounter.increment();
@@ -184,6 +255,42 @@ public class BytedeskMetrics {
         sample.stop(aiResponseTimer);
     }
 
+    /**
+     * 记录一次流式响应
+     *
+     * @param firstTokenNanos 发起请求到收到第一个非空token的耗时，未收到token时小于0
+     * @param durationNanos   发起请求到流结束的耗时
+     * @param tokens          收到的非空token数
+     */
+    public void recordAiStream(String provider, long firstTokenNanos, long durationNanos, int tokens) {
+        aiResponseTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        if (firstTokenNanos >= 0) {
+            aiFirstTokenTimers.computeIfAbsent(provider, key -> Timer.builder("bytedesk.ai.first.token.time")
+                    .description("Time to first token of streaming AI response")
+                    .tag("provider", provider)
+                    .register(registry)).record(firstTokenNanos, TimeUnit.NANOSECONDS);
+        }
+        long generateNanos = durationNanos - Math.max(firstTokenNanos, 0);
+        if (tokens > 1 && generateNanos > 0) {
+            aiTokenRateSummaries.computeIfAbsent(provider, key -> DistributionSummary.builder("bytedesk.ai.tokens.per.second")
+                    .description("Streaming AI tokens per second after first token")
+                    .tag("provider", provider)
+                    .register(registry)).record((tokens - 1) * 1e9 / generateNanos);
+        }
+    }
+
+    /**
+     * 记录一次机器人答案缓存查询
+     *
+     * @param result exact、semantic或miss
+     */
+    public void aiAnswerCacheLookup(String result) {
+        aiAnswerCacheCounters.computeIfAbsent(result, key -> Counter.builder("bytedesk.ai.answer.cache")
+                .description("Robot answer cache lookups")
+                .tag("result", result)
+                .register(registry)).increment();
+    }
+
     // WebSocket相关指标操作方法
     public void wsConnectionOpened() {
         wsConnectionCounter.increment();
@@ -197,8 +304,60 @@ public class BytedeskMetrics {
         wsMessageCounter.increment();
     }
 
-    public void updateWsActiveConnections(int count) {
-        registry.gauge("bytedesk.ws.active.connections", count);
+    /**
+     * 注册某个协议的长连接数量，bytedesk.ws.active.connections为各协议之和
+     */
+    public void bindActiveConnections(String protocol, Supplier<Number> supplier) {
+        if (connectionSources.putIfAbsent(protocol, supplier) != null) {
+            return;
+        }
+        Gauge.builder("bytedesk.ws.sessions", supplier, source -> source.get().doubleValue())
+                .description("Number of active long connections per protocol")
+                .tag("protocol", protocol)
+                .register(registry);
+    }
+
+    public void stompSessionConnected(String sessionId) {
+        if (sessionId != null && stompSessionIds.add(sessionId)) {
+            wsConnectionCounter.increment();
+        }
+    }
+
+    // 同一会话可能收到多次断开事件，按sessionId去重
+    public void stompSessionDisconnected(String sessionId) {
+        if (sessionId != null) {
+            stompSessionIds.remove(sessionId);
+        }
+    }
+
+    private static double sumConnections(Map<String, Supplier<Number>> sources) {
+        double total = 0;
+        for (Supplier<Number> source : sources.values()) {
+            total += source.get().doubleValue();
+        }
+        return total;
+    }
+
+    // 路由相关指标操作方法
+    public void recordRouting(String mode, long nanos) {
+        routingTimers.computeIfAbsent(mode, key -> Timer.builder("bytedesk.routing.decision.time")
+                .description("Workgroup routing decision time per routing mode")
+                .tag("mode", mode)
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // 缓存相关指标操作方法，cache需开启recordStats
+    public <K, V> Cache<K, V> monitorCache(String name, Cache<K, V> cache) {
+        return CaffeineCacheMetrics.monitor(registry, cache, name);
+    }
+
+    // 限流相关指标操作方法
+    public void rateLimited(String name, String keyType) {
+        rateLimitedCounters.computeIfAbsent(name + ":" + keyType, key -> Counter.builder("bytedesk.rate.limiter.rejected")
+                .description("Number of calls rejected by rate limiter")
+                .tag("name", name)
+                .tag("key", keyType)
+                .register(registry)).increment();
     }
 
     // 获取指标值的方法
@@ -258,6 +258,8 @@ public class BytedeskProperties {
     @Data
     public static class Cluster {
         private Boolean enabled;
+        // 当前节点标识，为空时自动生成
+        private String nodeId;
         private List<String> nodes = new ArrayList<>();
         private String host = "230.0.0.0";
         private int port = 6781;
@@ -0,0 +1,31 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 10:06:42
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 10:06:42
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.deadline;
+
+import java.util.List;
+
+/**
+ * 到期回调，同一类型的到期key按批次回调
+ */
+@FunctionalInterface
+public interface DeadlineHandler {
+
+    /**
+     * 在DeadlineScheduler的到期处理线程中执行，回调前应重新读取数据库确认确实到期
+     *
+     * @param keys 本批到期的key
+     */
+    void onExpired(List<String> keys);
+
+}
@@ -0,0 +1,143 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 10:06:42
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 10:06:42
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.deadline;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.uid.utils.NamingThreadFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 到期时间调度
+ *
+ * 替代每分钟全表扫描判断超时：业务在数据变化时登记或取消到期时间，启动时从数据库重建，
+ * 到期的key按类型分批交给DeadlineHandler处理。时间轮只保存在本节点内存中，
+ * DeadlineHandler需重新读取数据库确认状态，多节点重复到期时保证幂等。
+ */
+@Slf4j
+@Component
+public class DeadlineScheduler {
+
+    // 时间轮精度
+    @Value("${bytedesk.deadline.tick-ms:100}")
+    private long tickMs;
+
+    // 每次回调的最大key数
+    @Value("${bytedesk.deadline.batch-size:200}")
+    private int batchSize;
+
+    private final Map<String, DeadlineHandler> handlers = new ConcurrentHashMap<>();
+
+    private TimingWheel timingWheel;
+
+    private ScheduledExecutorService tickSchedule;
+
+    // 回调可能读写数据库，不占用时间轮线程
+    private ExecutorService expireExecutor;
+
+    @PostConstruct
+    public void init() {
+        timingWheel = new TimingWheel(tickMs, System.currentTimeMillis());
+        expireExecutor = Executors.newSingleThreadExecutor(new NamingThreadFactory("DeadlineScheduler-Expire", true));
+        tickSchedule = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("DeadlineScheduler-Tick", true));
+        tickSchedule.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        tickSchedule.shutdownNow();
+        expireExecutor.shutdownNow();
+    }
+
+    public void registerHandler(String type, DeadlineHandler handler) {
+        handlers.put(type, handler);
+    }
+
+    /**
+     * 登记到期时间，同一type和key重复登记时以最后一次为准
+     */
+    public void schedule(String type, String key, long deadlineMillis) {
+        synchronized (timingWheel) {
+            timingWheel.add(type, key, deadlineMillis);
+        }
+    }
+
+    public void schedule(String type, String key, LocalDateTime deadline) {
+        schedule(type, key, deadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    public void cancel(String type, String key) {
+        synchronized (timingWheel) {
+            timingWheel.remove(type, key);
+        }
+    }
+
+    public int size() {
+        synchronized (timingWheel) {
+            return timingWheel.size();
+        }
+    }
+
+    private void tick() {
+        List<TimingWheel.Entry> expired = new ArrayList<>();
+        try {
+            synchronized (timingWheel) {
+                timingWheel.advance(System.currentTimeMillis(), expired);
+            }
+        } catch (Exception e) {
+            log.error("deadline scheduler tick error: {}", e.getMessage(), e);
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> keysByType = new LinkedHashMap<>();
+        for (TimingWheel.Entry entry : expired) {
+            keysByType.computeIfAbsent(entry.getType(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+        keysByType.forEach((type, keys) -> {
+            DeadlineHandler handler = handlers.get(type);
+            if (handler == null) {
+                log.warn("no deadline handler for type {}, drop {} keys", type, keys.size());
+                return;
+            }
+            for (int i = 0; i < keys.size(); i += batchSize) {
+                List<String> batch = keys.subList(i, Math.min(i + batchSize, keys.size()));
+                expireExecutor.execute(() -> {
+                    try {
+                        handler.onExpired(batch);
+                    } catch (Exception e) {
+                        log.error("deadline handler {} error: {}", type, e.getMessage(), e);
+                    }
+                });
+            }
+        });
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 10:06:42
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 10:06:42
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.deadline;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Getter;
+
+/**
+ * 分层时间轮
+ *
+ * 第0层每格一个tick，第n层每格64^n个tick，共5层；tick为100ms时可覆盖约3.4年，更远的到期时间先放在最高层，
+ * 逐层下放时重新计算位置。第0层指针每走完一圈，从上一层取出一格下放，与Linux内核定时器的级联方式一致，
+ * 添加、取消都是O(1)，推进一个tick只处理当前格。
+ *
+ * 非线程安全，由DeadlineScheduler加锁访问
+ */
+class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int MASK = SLOTS - 1;
+
+    private static final int LEVELS = 5;
+
+    private static final long MAX_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickMs;
+
+    private final Set<Entry>[][] wheels;
+
+    // type:key -> entry，用于替换和取消
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    // 下一个待处理的tick
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMs, long startMs) {
+        this.tickMs = tickMs;
+        this.currentTick = startMs / tickMs;
+        this.wheels = new Set[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = new LinkedHashSet<>();
+            }
+        }
+    }
+
+    /**
+     * 添加到期时间，同一type和key已存在时替换
+     */
+    void add(String type, String key, long deadlineMs) {
+        remove(type, key);
+        Entry entry = new Entry(type, key, deadlineMs, deadlineMs / tickMs);
+        entries.put(entry.id(), entry);
+        place(entry);
+    }
+
+    boolean remove(String type, String key) {
+        Entry entry = entries.remove(type + ":" + key);
+        if (entry == null) {
+            return false;
+        }
+        wheels[entry.level][entry.slot].remove(entry);
+        return true;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * 推进到nowMs，到期的entry加入expired
+     */
+    void advance(long nowMs, List<Entry> expired) {
+        long nowTick = nowMs / tickMs;
+        while (currentTick <= nowTick) {
+            int index = (int) (currentTick & MASK);
+            if (index == 0) {
+                cascade(1);
+            }
+            Set<Entry> bucket = wheels[0][index];
+            if (!bucket.isEmpty()) {
+                Iterator<Entry> iterator = bucket.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    iterator.remove();
+                    entries.remove(entry.id());
+                    expired.add(entry);
+                }
+            }
+            currentTick++;
+        }
+    }
+
+    // 上层一格下放到下层，本层也走完一圈时继续级联更上一层
+    private void cascade(int level) {
+        int index = (int) ((currentTick >>> (SLOT_BITS * level)) & MASK);
+        Set<Entry> bucket = wheels[level][index];
+        if (!bucket.isEmpty()) {
+            Entry[] moving = bucket.toArray(new Entry[0]);
+            bucket.clear();
+            for (Entry entry : moving) {
+                place(entry);
+            }
+        }
+        if (index == 0 && level + 1 < LEVELS) {
+            cascade(level + 1);
+        }
+    }
+
+    private void place(Entry entry) {
+        long ticks = entry.deadlineTick - currentTick;
+        long tick = entry.deadlineTick;
+        if (ticks < 0) {
+            // 已到期，放入当前格，本tick处理
+            tick = currentTick;
+            ticks = 0;
+        } else if (ticks > MAX_TICKS) {
+            // 超出范围，先放在最高层最远处，下放时重新计算
+            tick = currentTick + MAX_TICKS;
+            ticks = MAX_TICKS;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && ticks >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        entry.level = level;
+        entry.slot = (int) ((tick >>> (SLOT_BITS * level)) & MASK);
+        wheels[level][entry.slot].add(entry);
+    }
+
+    @Getter
+    static class Entry {
+
+        private final String type;
+
+        private final String key;
+
+        private final long deadlineMs;
+
+        private final long deadlineTick;
+
+        private int level;
+
+        private int slot;
+
+        Entry(String type, String key, long deadlineMs, long deadlineTick) {
+            this.type = type;
+            this.key = key;
+            this.deadlineMs = deadlineMs;
+            this.deadlineTick = deadlineTick;
+        }
+
+        String id() {
+            return type + ":" + key;
+        }
+    }
+
+}
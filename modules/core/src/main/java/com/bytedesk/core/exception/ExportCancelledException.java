@@ -0,0 +1,26 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 15:21:07
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 15:21:07
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.exception;
+
+/**
+ * Exception thrown when a running export is cancelled by the user
+ */
+public class ExportCancelledException extends BaseException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExportCancelledException(String message) {
+        super(message);
+    }
+}
@@ -14,6 +14,7 @@
 package com.bytedesk.core.exception;
 
 import org.eclipse.jetty.websocket.core.exception.WebSocketTimeoutException; // jetty
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 // import org.apache.coyote.BadRequestException; // tomcat
 import org.springframework.http.ResponseEntity;
@@ -89,6 +90,13 @@ public class GlobalControllerAdvice {
         return ResponseEntity.ok().body(JsonResult.error(I18Consts.I18N_FORBIDDEN_ACCESS));
     }
 
+    @ExceptionHandler(RateLimitException.class)
+    public ResponseEntity<?> handleRateLimitException(RateLimitException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(JsonResult.error(I18Consts.I18N_TOO_MANY_REQUESTS, 429));
+    }
+
     @ExceptionHandler(InternalAuthenticationServiceException.class)
     public ResponseEntity<?> handleInternalAuthenticationServiceException(InternalAuthenticationServiceException e) {
         return ResponseEntity.ok().body(JsonResult.error(I18Consts.I18N_USER_BLOCKED));
@@ -0,0 +1,34 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-20 09:20:16
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-20 09:20:16
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.exception;
+
+/**
+ * Exception thrown when a rate limited api is called too frequently
+ */
+public class RateLimitException extends BaseException {
+
+    private static final long serialVersionUID = 1L;
+
+    // 建议客户端重试前等待的秒数，用于Retry-After响应头
+    private final long retryAfterSeconds;
+
+    public RateLimitException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 15:21:07
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 15:21:07
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.export;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 导出进度，保存在redis中，任意节点都可查询
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportProgress implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String uid;
+
+    private String fileName;
+
+    // 发起导出的用户和组织，只有本人可以查询进度或取消
+    private String userUid;
+
+    private String orgUid;
+
+    private String status;
+
+    // 预计导出行数，超过最大行数时为最大行数
+    private long total;
+
+    private long written;
+
+    private long startedAt;
+
+    private long updatedAt;
+
+    private String message;
+}
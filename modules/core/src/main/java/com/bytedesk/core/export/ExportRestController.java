@@ -0,0 +1,65 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 15:21:07
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 15:21:07
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.export;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bytedesk.core.rbac.auth.AuthService;
+import com.bytedesk.core.rbac.user.UserEntity;
+import com.bytedesk.core.utils.JsonResult;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * 导出进度查询和取消，exportUid由导出请求参数传入，或从导出响应头X-Export-Uid读取
+ */
+@RestController
+@RequestMapping("/api/v1/export")
+@AllArgsConstructor
+public class ExportRestController {
+
+    private final ExportService exportService;
+
+    private final AuthService authService;
+
+    // 只能查询本人在当前组织发起的导出
+    @GetMapping("/progress")
+    public ResponseEntity<?> progress(@RequestParam String uid) {
+        UserEntity user = authService.getUser();
+        if (user == null) {
+            return ResponseEntity.ok(JsonResult.error("user not found"));
+        }
+        return exportService.getProgress(uid, user.getUid(), user.getOrgUid())
+                .<ResponseEntity<?>>map(progress -> ResponseEntity.ok(JsonResult.success(progress)))
+                .orElseGet(() -> ResponseEntity.ok(JsonResult.error("export " + uid + " not found")));
+    }
+
+    @PostMapping("/cancel")
+    public ResponseEntity<?> cancel(@RequestParam String uid) {
+        UserEntity user = authService.getUser();
+        if (user == null) {
+            return ResponseEntity.ok(JsonResult.error("user not found"));
+        }
+        if (!exportService.cancel(uid, user.getUid(), user.getOrgUid())) {
+            return ResponseEntity.ok(JsonResult.error("export " + uid + " not found"));
+        }
+        return ResponseEntity.ok(JsonResult.success());
+    }
+
+}
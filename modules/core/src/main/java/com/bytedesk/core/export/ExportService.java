@@ -0,0 +1,211 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 15:21:07
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 15:21:07
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.export;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.alibaba.excel.EasyExcel;
+import com.alibaba.excel.ExcelWriter;
+import com.alibaba.excel.support.ExcelTypeEnum;
+import com.alibaba.excel.write.metadata.WriteSheet;
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.base.BaseEntity;
+import com.bytedesk.core.base.BaseRequest;
+import com.bytedesk.core.base.BaseRequestNoOrg;
+import com.bytedesk.core.base.BaseRestServiceWithExcel;
+import com.bytedesk.core.exception.ExportCancelledException;
+import com.bytedesk.core.redis.RedisConsts;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 流式导出Excel/CSV
+ *
+ * 分批查询、转换、写入响应流，内存中只保留一批数据：xlsx由EasyExcel按SXSSF窗口写出，csv逐行写出。
+ * 覆盖了queryByOrgEntityBefore的服务按id游标查询，其余按页调用queryByOrgEntity。
+ * 进度和取消标记保存在redis中，导出节点每写一批更新进度并检查是否已取消
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+
+    private static final Duration PROGRESS_TTL = Duration.ofHours(1);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 每批查询和写入的行数
+    @Value("${bytedesk.export.batch-size:500}")
+    private int batchSize;
+
+    // 单次导出的最大行数
+    @Value("${bytedesk.export.max-rows:1000000}")
+    private long maxRows;
+
+    /**
+     * exportUid可由客户端指定，已被其他用户使用时拒绝
+     */
+    public ExportProgress start(String exportUid, String fileName, String userUid, String orgUid) {
+        if (getProgress(exportUid).filter(existing -> !isOwner(existing, userUid, orgUid)).isPresent()) {
+            throw new IllegalArgumentException("export " + exportUid + " already exists");
+        }
+        // 清除同一exportUid之前的取消标记
+        stringRedisTemplate.delete(RedisConsts.EXPORT_CANCEL_PREFIX + exportUid);
+        long now = System.currentTimeMillis();
+        ExportProgress progress = ExportProgress.builder()
+                .uid(exportUid)
+                .fileName(fileName)
+                .userUid(userUid)
+                .orgUid(orgUid)
+                .status(ExportStatusEnum.RUNNING.name())
+                .startedAt(now)
+                .updatedAt(now)
+                .build();
+        saveProgress(progress);
+        return progress;
+    }
+
+    /**
+     * 导出到outputStream，不关闭outputStream
+     */
+    public <T, R, E> void export(BaseRestServiceWithExcel<T, R, ?, E> service, R request, Class<E> excelClass,
+            String sheetName, ExcelTypeEnum excelType, OutputStream outputStream, ExportProgress progress) {
+        progress.setTotal(Math.min(queryPage(service, request, 0, 1).getTotalElements(), maxRows));
+        saveProgress(progress);
+
+        ExcelWriter excelWriter = EasyExcel.write(outputStream, excelClass)
+                .excelType(excelType)
+                .autoCloseStream(Boolean.FALSE)
+                .build();
+        try {
+            WriteSheet writeSheet = EasyExcel.writerSheet(sheetName).build();
+            List<E> rows = new ArrayList<>(batchSize);
+            Boolean keyset = null;
+            Long lastId = null;
+            int pageNumber = 0;
+            while (progress.getWritten() < maxRows) {
+                checkCancelled(progress);
+                int size = (int) Math.min(batchSize, maxRows - progress.getWritten());
+                List<T> entities = Boolean.FALSE.equals(keyset) ? null
+                        : service.queryByOrgEntityBefore(request, lastId, size);
+                if (entities == null) {
+                    keyset = Boolean.FALSE;
+                    entities = queryPage(service, request, pageNumber++, size).getContent();
+                } else {
+                    keyset = Boolean.TRUE;
+                }
+                if (entities.isEmpty()) {
+                    break;
+                }
+                rows.clear();
+                for (T entity : entities) {
+                    rows.add(service.convertToExcel(entity));
+                }
+                excelWriter.write(rows, writeSheet);
+                if (keyset) {
+                    lastId = ((BaseEntity) entities.get(entities.size() - 1)).getId();
+                }
+                progress.setWritten(progress.getWritten() + entities.size());
+                saveProgress(progress);
+                if (entities.size() < size) {
+                    break;
+                }
+            }
+            rows.clear();
+        } finally {
+            // 写出文件尾并删除xlsx临时文件
+            excelWriter.finish();
+        }
+        progress.setStatus(ExportStatusEnum.COMPLETED.name());
+        saveProgress(progress);
+        log.info("export {} completed, {} rows", progress.getFileName(), progress.getWritten());
+    }
+
+    public void fail(ExportProgress progress, Exception e) {
+        progress.setStatus(e instanceof ExportCancelledException
+                ? ExportStatusEnum.CANCELLED.name()
+                : ExportStatusEnum.FAILED.name());
+        progress.setMessage(e.getMessage());
+        saveProgress(progress);
+        log.warn("export {} {} after {} rows: {}", progress.getFileName(), progress.getStatus(),
+                progress.getWritten(), e.getMessage());
+    }
+
+    /**
+     * 查询userUid在orgUid下发起的导出进度，其他用户的导出视为不存在
+     */
+    public Optional<ExportProgress> getProgress(String exportUid, String userUid, String orgUid) {
+        return getProgress(exportUid).filter(progress -> isOwner(progress, userUid, orgUid));
+    }
+
+    /**
+     * 取消userUid在orgUid下发起的导出，返回是否找到该导出
+     */
+    public boolean cancel(String exportUid, String userUid, String orgUid) {
+        if (getProgress(exportUid, userUid, orgUid).isEmpty()) {
+            return false;
+        }
+        stringRedisTemplate.opsForValue().set(RedisConsts.EXPORT_CANCEL_PREFIX + exportUid, "1", PROGRESS_TTL);
+        return true;
+    }
+
+    private Optional<ExportProgress> getProgress(String exportUid) {
+        String json = stringRedisTemplate.opsForValue().get(RedisConsts.EXPORT_PROGRESS_PREFIX + exportUid);
+        return Optional.ofNullable(json).map(value -> JSON.parseObject(value, ExportProgress.class));
+    }
+
+    private static boolean isOwner(ExportProgress progress, String userUid, String orgUid) {
+        return userUid != null && userUid.equals(progress.getUserUid())
+                && Objects.equals(orgUid, progress.getOrgUid());
+    }
+
+    private void checkCancelled(ExportProgress progress) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisConsts.EXPORT_CANCEL_PREFIX + progress.getUid()))) {
+            throw new ExportCancelledException("export " + progress.getUid() + " cancelled");
+        }
+    }
+
+    private void saveProgress(ExportProgress progress) {
+        progress.setUpdatedAt(System.currentTimeMillis());
+        stringRedisTemplate.opsForValue().set(RedisConsts.EXPORT_PROGRESS_PREFIX + progress.getUid(),
+                JSON.toJSONString(progress), PROGRESS_TTL);
+    }
+
+    private <T, R> Page<T> queryPage(BaseRestServiceWithExcel<T, R, ?, ?> service, R request, int pageNumber,
+            int pageSize) {
+        if (request instanceof BaseRequest baseRequest) {
+            baseRequest.setPageNumber(pageNumber);
+            baseRequest.setPageSize(pageSize);
+        } else if (request instanceof BaseRequestNoOrg baseRequest) {
+            baseRequest.setPageNumber(pageNumber);
+            baseRequest.setPageSize(pageSize);
+        } else if (pageNumber > 0) {
+            // 无法翻页的请求只导出第一页
+            return Page.empty();
+        }
+        return service.queryByOrgEntity(request);
+    }
+
+}
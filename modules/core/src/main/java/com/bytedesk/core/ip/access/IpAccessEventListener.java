@@ -0,0 +1,55 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-19 10:26:08
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-19 10:26:08
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.ip.access;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
+import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+@AllArgsConstructor
+public class IpAccessEventListener {
+
+    private final IpAccessListIndex ipAccessListIndex;
+
+    private final IpAccessTracker ipAccessTracker;
+
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        ipAccessListIndex.refresh();
+    }
+
+    // 同步集群其他节点对白名单、黑名单的修改
+    @EventListener
+    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
+        try {
+            ipAccessListIndex.refresh();
+        } catch (Exception e) {
+            log.error("refresh ip access list error: ", e);
+        }
+    }
+
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        ipAccessTracker.flush();
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-19 09:21:45
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-19 09:21:45
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.ip.access;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.ip.black.IpBlacklistEntity;
+import com.bytedesk.core.ip.black.IpBlacklistRepository;
+import com.bytedesk.core.ip.white.IpWhitelistEntity;
+import com.bytedesk.core.ip.white.IpWhitelistRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ip白名单、黑名单内存索引
+ *
+ * 白名单为ip集合，黑名单为ip到解封时间的映射，每次请求只做一次哈希查找，不再访问数据库。
+ * 本节点的增删改由实体监听器即时同步，其他节点的变化由定时全量刷新同步。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IpAccessListIndex {
+
+    private final IpWhitelistRepository ipWhitelistRepository;
+
+    private final IpBlacklistRepository ipBlacklistRepository;
+
+    private volatile Set<String> whitelist = ConcurrentHashMap.newKeySet();
+
+    // ip -> 解封时间(毫秒)
+    private volatile Map<String, Long> blacklist = new ConcurrentHashMap<>();
+
+    // 本节点自动封禁、尚未写入数据库的ip
+    private final Map<String, Long> pendingBlocks = new ConcurrentHashMap<>();
+
+    public boolean isWhitelisted(String ip) {
+        return ip != null && whitelist.contains(ip);
+    }
+
+    public boolean isBlacklisted(String ip) {
+        if (ip == null) {
+            return false;
+        }
+        Long endMillis = blacklist.get(ip);
+        return endMillis != null && endMillis > System.currentTimeMillis();
+    }
+
+    // 白名单优先
+    public boolean isBlocked(String ip) {
+        return !isWhitelisted(ip) && isBlacklisted(ip);
+    }
+
+    public void putWhitelist(IpWhitelistEntity entity) {
+        if (entity.isDeleted()) {
+            removeWhitelist(entity);
+        } else if (StringUtils.hasText(entity.getIp())) {
+            whitelist.add(entity.getIp());
+        }
+    }
+
+    public void removeWhitelist(IpWhitelistEntity entity) {
+        if (StringUtils.hasText(entity.getIp())) {
+            whitelist.remove(entity.getIp());
+        }
+    }
+
+    public void putBlacklist(IpBlacklistEntity entity) {
+        if (entity.isDeleted()) {
+            removeBlacklist(entity);
+        } else if (StringUtils.hasText(entity.getIp()) && entity.getEndTime() != null) {
+            blacklist.put(entity.getIp(), toMillis(entity.getEndTime()));
+        }
+    }
+
+    public void removeBlacklist(IpBlacklistEntity entity) {
+        if (StringUtils.hasText(entity.getIp())) {
+            blacklist.remove(entity.getIp());
+        }
+    }
+
+    // 访问频率超限，入库前先在本节点封禁
+    public void blockLocally(String ip, LocalDateTime endTime) {
+        long endMillis = toMillis(endTime);
+        pendingBlocks.put(ip, endMillis);
+        blacklist.put(ip, endMillis);
+    }
+
+    // 自动封禁已写入数据库
+    public void blockPersisted(String ip) {
+        pendingBlocks.remove(ip);
+    }
+
+    /**
+     * 从数据库全量加载，启动时及定时调用
+     */
+    public void refresh() {
+        Set<String> newWhitelist = ConcurrentHashMap.newKeySet();
+        for (IpWhitelistEntity entity : ipWhitelistRepository.findAll()) {
+            if (!entity.isDeleted() && StringUtils.hasText(entity.getIp())) {
+                newWhitelist.add(entity.getIp());
+            }
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Long> newBlacklist = new ConcurrentHashMap<>();
+        for (IpBlacklistEntity entity : ipBlacklistRepository.findAll()) {
+            if (!entity.isDeleted() && StringUtils.hasText(entity.getIp()) && entity.getEndTime() != null) {
+                long endMillis = toMillis(entity.getEndTime());
+                if (endMillis > now) {
+                    newBlacklist.merge(entity.getIp(), endMillis, Math::max);
+                }
+            }
+        }
+        // 保留本节点刚封禁、尚未入库的ip
+        pendingBlocks.forEach((ip, endMillis) -> newBlacklist.merge(ip, endMillis, Math::max));
+        whitelist = newWhitelist;
+        blacklist = newBlacklist;
+        log.debug("ip access list refreshed, whitelist {}, blacklist {}", newWhitelist.size(), newBlacklist.size());
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+}
@@ -16,14 +16,11 @@ package com.bytedesk.core.ip.access;
 import org.springframework.data.domain.Page;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
-import com.bytedesk.core.ip.IpService;
-import com.bytedesk.core.ip.black.IpBlacklistEntity;
 import com.bytedesk.core.ip.black.IpBlacklistRestService;
-import com.bytedesk.core.ip.white.IpWhitelistRepository;
-import com.bytedesk.core.uid.UidUtils;
 import com.bytedesk.core.base.BaseRestService;
 
 import lombok.AllArgsConstructor;
@@ -38,34 +35,25 @@ import java.util.Optional;
 @AllArgsConstructor
 public class IpAccessRestService extends BaseRestService<IpAccessEntity, IpAccessRequest, IpAccessResponse> {
     
-    private static final int MAX_REQUESTS_PER_MINUTE = 60;
-    private static final int MAX_RETRY_COUNT = 3;
+    private static final int MAX_REQUESTS_PER_MINUTE = IpAccessTracker.MAX_REQUESTS_PER_MINUTE;
     
     private final IpAccessRepository ipAccessRepository;
-        
-    private final IpWhitelistRepository whitelistRepository;
 
     private final IpBlacklistRestService ipBlacklistService;
 
-    private final IpService ipService;
+    private final IpAccessListIndex ipAccessListIndex;
 
-    private final UidUtils uidUtils;
+    private final IpAccessTracker ipAccessTracker;
     
+    // 每个请求都会调用，只查内存索引，不开启事务
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean isIpBlocked(String ip) {
-        // 检查是否在白名单中
-        if (whitelistRepository.existsByIp(ip)) {
-            return false;
-        }
-        
-        // 检查是否在黑名单中且未过期
-        Optional<IpBlacklistEntity> blacklist = ipBlacklistService.findByIp(ip);
-        if (blacklist.isPresent() && blacklist.get().getEndTime().isAfter(LocalDateTime.now())) {
-            return true;
-        }
-        
-        return false;
+        // 白名单优先，黑名单未过期则封禁
+        return ipAccessListIndex.isBlocked(ip);
     }
     
+    // 访问记录在内存中聚合，由IpAccessTracker定时批量写入
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void recordAccess(String ip, String endpoint, String params) {
         Assert.notNull(ip, "IP address must not be null");
         Assert.notNull(endpoint, "Endpoint must not be null");
@@ -74,57 +62,7 @@ public class IpAccessRestService extends BaseRestService<IpAccessEntity, IpAcces
             return;
         }
         //
-        int retryCount = 0;
-        while (retryCount < MAX_RETRY_COUNT) {
-            try {
-                LocalDateTime now = LocalDateTime.now();
-                LocalDateTime oneMinuteAgo = now.minusMinutes(1);
-                
-                // 获取最近一分钟的访问记录
-                IpAccessEntity access = ipAccessRepository.findFirstByIpAndEndpointAndAccessTimeAfter(ip, endpoint, oneMinuteAgo);
-                // 如果访问记录不存在，则创建新的访问记录
-                if (access == null) {
-                    String ipLocation = ipService.getIpLocation(ip);
-                    // 
-                    access = new IpAccessEntity();
-                    access.setIp(ip);
-                    access.setIpLocation(ipLocation);
-                    access.setUid(uidUtils.getUid());
-                    access.setEndpoint(endpoint);
-                    access.setParams(params);
-                    access.setAccessTime(now);
-                    access.setAccessCount(1);
-                } else {
-                    access.setAccessCount(access.getAccessCount() + 1);
-                }
-                access.setLastAccessTime(now);
-                // 保存访问记录
-                ipAccessRepository.save(access);
-                // 检查是否需要加入黑名单
-                if (access.getAccessCount() > MAX_REQUESTS_PER_MINUTE) {
-                    // 
-                    ipBlacklistService.addToBlacklistSystem(ip);
-                }
-                // 成功保存，退出重试循环
-                break;
-            } catch (ObjectOptimisticLockingFailureException e) {
-                retryCount++;
-                // 如果已经达到最大重试次数，则处理异常
-                if (retryCount >= MAX_RETRY_COUNT) {
-                    log.warn("Failed to update IP access record after {} retries for IP: {}", MAX_RETRY_COUNT, ip);
-                    // 尝试添加到黑名单，以防止潜在的攻击
-                    ipBlacklistService.addToBlacklistSystem(ip);
-                    break;
-                }
-                // 短暂休眠以避免立即重试
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }
+        ipAccessTracker.record(ip, endpoint, params);
     }
 
     @Override
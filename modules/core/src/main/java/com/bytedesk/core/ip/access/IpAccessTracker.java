@@ -0,0 +1,272 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-19 09:58:12
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-19 09:58:12
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.ip.access;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.ip.IpService;
+import com.bytedesk.core.ip.black.IpBlacklistRestService;
+import com.bytedesk.core.uid.UidUtils;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ip访问频率统计
+ *
+ * 按(ip, endpoint)维护一分钟滑动窗口计数，窗口分为6个10秒的槽，
+ * 计数表按key哈希分段加锁，记录一次访问只涉及一次哈希查找和数组操作，不访问数据库。
+ * 超过每分钟最大请求数时先在IpAccessListIndex中封禁，再随定时任务写入黑名单；
+ * 访问记录在内存中聚合，定时批量写入IpAccessEntity，同一分钟内的访问合并到同一条记录。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IpAccessTracker {
+
+    public static final int MAX_REQUESTS_PER_MINUTE = 60;
+
+    private static final int STRIPES = 64;
+
+    private static final int SLOTS = 6;
+
+    private static final long SLOT_MILLIS = 10_000;
+
+    private static final long WINDOW_MILLIS = SLOTS * SLOT_MILLIS;
+
+    // 超过该时间无访问的记录从内存中移除
+    private static final long IDLE_MILLIS = 2 * WINDOW_MILLIS;
+
+    // 自动封禁时长，同IpBlacklistRestService.addToBlacklistSystem
+    private static final long BLOCK_HOURS = 24;
+
+    private final IpAccessRepository ipAccessRepository;
+
+    private final IpAccessListIndex ipAccessListIndex;
+
+    private final IpBlacklistRestService ipBlacklistService;
+
+    private final IpService ipService;
+
+    private final UidUtils uidUtils;
+
+    private final Stripe[] stripes = createStripes();
+
+    // 待写入黑名单的ip
+    private final Set<String> pendingBlocks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 记录一次访问
+     *
+     * @return 最近一分钟内该ip访问该接口的次数
+     */
+    public int record(String ip, String endpoint, String params) {
+        long now = System.currentTimeMillis();
+        String key = ip + " " + endpoint;
+        Stripe stripe = stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+        int count;
+        synchronized (stripe) {
+            Access access = stripe.accesses.get(key);
+            if (access == null) {
+                access = new Access(ip, endpoint);
+                stripe.accesses.put(key, access);
+            }
+            count = access.increment(now);
+            if (access.pendingCount == 0) {
+                access.pendingParams = params;
+                access.pendingSince = now;
+            }
+            access.pendingCount++;
+            access.lastAccessAt = now;
+        }
+        if (count > MAX_REQUESTS_PER_MINUTE && !ipAccessListIndex.isBlocked(ip)
+                && !ipAccessListIndex.isWhitelisted(ip)) {
+            ipAccessListIndex.blockLocally(ip, LocalDateTime.now().plusHours(BLOCK_HOURS));
+            pendingBlocks.add(ip);
+        }
+        return count;
+    }
+
+    /**
+     * 将聚合的访问记录批量写入数据库，并写入自动封禁的ip
+     */
+    public synchronized void flush() {
+        flushBlocks();
+        //
+        long now = System.currentTimeMillis();
+        List<Access> flushed = new ArrayList<>();
+        List<IpAccessEntity> rows = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Access> iterator = stripe.accesses.values().iterator();
+                while (iterator.hasNext()) {
+                    Access access = iterator.next();
+                    if (access.pendingCount > 0) {
+                        flushed.add(access);
+                        rows.add(toRow(access, now));
+                        access.pendingCount = 0;
+                    } else if (now - access.lastAccessAt > IDLE_MILLIS) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        fillLocations(rows);
+        try {
+            List<IpAccessEntity> saved = ipAccessRepository.saveAll(rows);
+            for (int i = 0; i < flushed.size(); i++) {
+                Access access = flushed.get(i);
+                synchronized (stripeOf(access)) {
+                    access.row = saved.get(i);
+                }
+            }
+        } catch (Exception e) {
+            // 访问记录仅用于统计，写入失败时丢弃本批，下次重新创建记录
+            log.error("flush {} ip access rows error: ", rows.size(), e);
+            for (Access access : flushed) {
+                synchronized (stripeOf(access)) {
+                    access.row = null;
+                }
+            }
+        }
+    }
+
+    private void flushBlocks() {
+        for (String ip : new ArrayList<>(pendingBlocks)) {
+            try {
+                ipBlacklistService.addToBlacklistSystem(ip);
+                ipAccessListIndex.blockPersisted(ip);
+                pendingBlocks.remove(ip);
+            } catch (Exception e) {
+                log.error("add ip {} to blacklist error: ", ip, e);
+            }
+        }
+    }
+
+    // 调用方持有stripe锁
+    private IpAccessEntity toRow(Access access, long now) {
+        LocalDateTime lastAccessTime = toLocalDateTime(access.lastAccessAt);
+        IpAccessEntity row = access.row;
+        if (row != null && row.getAccessTime() != null
+                && row.getAccessTime().isAfter(toLocalDateTime(now - WINDOW_MILLIS))) {
+            // 同一分钟内，合并到已有记录
+            row.setAccessCount(row.getAccessCount() + access.pendingCount);
+            row.setLastAccessTime(lastAccessTime);
+            return row;
+        }
+        row = new IpAccessEntity();
+        row.setUid(uidUtils.getUid());
+        row.setIp(access.ip);
+        row.setEndpoint(access.endpoint);
+        row.setParams(access.pendingParams);
+        row.setAccessTime(toLocalDateTime(access.pendingSince));
+        row.setAccessCount(access.pendingCount);
+        row.setLastAccessTime(lastAccessTime);
+        return row;
+    }
+
+    // ip归属地查询放在锁外，每个ip只查一次
+    private void fillLocations(List<IpAccessEntity> rows) {
+        Map<String, String> locations = new HashMap<>();
+        for (IpAccessEntity row : rows) {
+            if (row.getIpLocation() == null) {
+                row.setIpLocation(locations.computeIfAbsent(row.getIp(), ipService::getIpLocation));
+            }
+        }
+    }
+
+    private Stripe stripeOf(Access access) {
+        String key = access.ip + " " + access.endpoint;
+        return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static Stripe[] createStripes() {
+        Stripe[] stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    private static final class Stripe {
+
+        private final Map<String, Access> accesses = new HashMap<>();
+    }
+
+    private static final class Access {
+
+        private final String ip;
+
+        private final String endpoint;
+
+        // 每个槽对应的10秒时间段编号及计数
+        private final long[] slotIds = new long[SLOTS];
+
+        private final int[] slotCounts = new int[SLOTS];
+
+        private long lastAccessAt;
+
+        // 自上次写入后的访问
+        private int pendingCount;
+
+        private long pendingSince;
+
+        private String pendingParams;
+
+        // 最近写入的记录，同一分钟内继续累加
+        private IpAccessEntity row;
+
+        Access(String ip, String endpoint) {
+            this.ip = ip;
+            this.endpoint = endpoint;
+        }
+
+        // 计入当前槽，返回窗口内总数
+        int increment(long now) {
+            long slotId = now / SLOT_MILLIS;
+            int index = (int) (slotId % SLOTS);
+            if (slotIds[index] != slotId) {
+                slotIds[index] = slotId;
+                slotCounts[index] = 0;
+            }
+            slotCounts[index]++;
+            int total = 0;
+            for (int i = 0; i < SLOTS; i++) {
+                if (slotId - slotIds[i] < SLOTS) {
+                    total += slotCounts[i];
+                }
+            }
+            return total;
+        }
+    }
+
+}
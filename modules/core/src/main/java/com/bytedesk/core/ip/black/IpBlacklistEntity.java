@@ -19,6 +19,7 @@ import com.bytedesk.core.base.BaseEntity;
 import com.fasterxml.jackson.annotation.JsonFormat;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -30,6 +31,7 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = true)
 @Builder
 @Entity
+@EntityListeners({ IpBlacklistEntityListener.class })
 @Table(name = "bytedesk_core_ip_blacklist")
 @AllArgsConstructor
 @NoArgsConstructor
@@ -0,0 +1,43 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-19 10:20:31
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-19 10:20:31
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.ip.black;
+
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.ip.access.IpAccessListIndex;
+import com.bytedesk.core.utils.ApplicationContextHolder;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+public class IpBlacklistEntityListener {
+
+    @PostPersist
+    @PostUpdate
+    public void postSave(IpBlacklistEntity blacklist) {
+        IpAccessListIndex index = ApplicationContextHolder.getBean(IpAccessListIndex.class);
+        index.putBlacklist(blacklist);
+    }
+
+    @PostRemove
+    public void postRemove(IpBlacklistEntity blacklist) {
+        IpAccessListIndex index = ApplicationContextHolder.getBean(IpAccessListIndex.class);
+        index.removeBlacklist(blacklist);
+    }
+
+}
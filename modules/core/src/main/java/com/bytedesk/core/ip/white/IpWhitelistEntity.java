@@ -14,6 +14,7 @@
 package com.bytedesk.core.ip.white;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -27,6 +28,7 @@ import com.bytedesk.core.base.BaseEntity;
 @EqualsAndHashCode(callSuper = true)
 @Builder
 @Entity
+@EntityListeners({ IpWhitelistEntityListener.class })
 @Table(name = "bytedesk_core_ip_whitelist")
 @AllArgsConstructor
 @NoArgsConstructor
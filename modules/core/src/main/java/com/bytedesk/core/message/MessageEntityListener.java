@@ -14,7 +14,6 @@
 package com.bytedesk.core.message;
 
 import org.springframework.stereotype.Component;
-import org.springframework.util.SerializationUtils;
 
 import com.bytedesk.core.config.BytedeskEventPublisher;
 import com.bytedesk.core.utils.ApplicationContextHolder;
@@ -30,19 +29,20 @@ public class MessageEntityListener {
     @PostPersist
     public void onPostPersist(MessageEntity message) {
         // log.info("message MessageEntityListener: onPostPersist");
-        MessageEntity clonedMessage = SerializationUtils.clone(message);
+        // 只复制监听器用到的字段，不序列化整个实体
+        MessageSnapshot snapshot = MessageSnapshot.from(message);
         // 
         BytedeskEventPublisher bytedeskEventPublisher = ApplicationContextHolder.getBean(BytedeskEventPublisher.class);
-        bytedeskEventPublisher.publishMessageCreateEvent(clonedMessage);
+        bytedeskEventPublisher.publishMessageCreateEvent(snapshot);
     }
 
     @PostUpdate
     public void onPostUpdate(MessageEntity message) {
         // log.info("message MessageEntityListener: onPostUpdate");
-        MessageEntity clonedMessage = SerializationUtils.clone(message);
+        MessageSnapshot snapshot = MessageSnapshot.from(message);
         // 
         BytedeskEventPublisher bytedeskEventPublisher = ApplicationContextHolder.getBean(BytedeskEventPublisher.class);
-        bytedeskEventPublisher.publishMessageUpdateEvent(clonedMessage);
+        bytedeskEventPublisher.publishMessageUpdateEvent(snapshot);
     }
     
 }
@@ -0,0 +1,146 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-16 10:12:35
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-16 10:12:35
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.message;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.lang.NonNull;
+import org.springframework.util.Assert;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.socket.protobuf.model.MessageProto;
+import com.bytedesk.core.utils.MessageConvertUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 消息信封：一条消息在 MessageJsonEvent 处理链路中只解析一次
+ *
+ * 原始字节、json字符串、MessageProtobuf、MessageProto.Message 均为延迟计算，且每种表示最多计算一次，
+ * 各监听器共享同一份解析结果。
+ * 注意：getProtobuf() 返回的对象为共享实例，监听器只读，不要修改其字段
+ */
+@Slf4j
+public final class MessageEnvelope {
+
+    private volatile byte[] bytes;
+
+    private volatile String json;
+
+    private volatile MessageProtobuf protobuf;
+
+    private volatile MessageProto.Message proto;
+
+    // 标记proto已经尝试转换过，转换失败时不再重复解析
+    private volatile boolean protoConverted;
+
+    private MessageEnvelope(byte[] bytes, String json, MessageProtobuf protobuf) {
+        this.bytes = bytes;
+        this.json = json;
+        this.protobuf = protobuf;
+    }
+
+    public static MessageEnvelope fromJson(@NonNull String json) {
+        Assert.notNull(json, "messageJson is null");
+        return new MessageEnvelope(null, json, null);
+    }
+
+    public static MessageEnvelope fromBytes(@NonNull byte[] bytes) {
+        Assert.notNull(bytes, "messageBytes is null");
+        return new MessageEnvelope(bytes, null, null);
+    }
+
+    public static MessageEnvelope fromProtobuf(@NonNull MessageProtobuf messageProtobuf) {
+        Assert.notNull(messageProtobuf, "messageProtobuf is null");
+        return new MessageEnvelope(null, null, messageProtobuf);
+    }
+
+    // utf-8 原始字节
+    public byte[] getBytes() {
+        byte[] result = bytes;
+        if (result == null) {
+            synchronized (this) {
+                result = bytes;
+                if (result == null) {
+                    bytes = result = getJson().getBytes(StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return result;
+    }
+
+    // 发送给stomp客户端的json，即原始json
+    public String getJson() {
+        String result = json;
+        if (result == null) {
+            synchronized (this) {
+                result = json;
+                if (result == null) {
+                    if (bytes != null) {
+                        result = new String(bytes, StandardCharsets.UTF_8);
+                    } else {
+                        result = JSON.toJSONString(protobuf);
+                    }
+                    json = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public MessageProtobuf getProtobuf() {
+        MessageProtobuf result = protobuf;
+        if (result == null) {
+            synchronized (this) {
+                result = protobuf;
+                if (result == null) {
+                    if (json == null && bytes != null) {
+                        // 直接从字节解析，省去一次字符串转换
+                        result = JSON.parseObject(bytes, MessageProtobuf.class);
+                    } else {
+                        result = JSON.parseObject(getJson(), MessageProtobuf.class);
+                    }
+                    protobuf = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // 发送给mqtt客户端的protobuf消息，转换失败返回null
+    public MessageProto.Message getProto() {
+        if (!protoConverted) {
+            synchronized (this) {
+                if (!protoConverted) {
+                    try {
+                        proto = MessageConvertUtils.toProtoBean(MessageProto.Message.newBuilder(), getJson());
+                    } catch (Exception e) {
+                        log.error("Error converting message to proto: ", e);
+                    }
+                    protoConverted = true;
+                }
+            }
+        }
+        return proto;
+    }
+
+    public MessageTypeEnum getType() {
+        return getProtobuf().getType();
+    }
+
+    public String getUid() {
+        return getProtobuf().getUid();
+    }
+
+}
@@ -13,15 +13,13 @@
  */
 package com.bytedesk.core.message;
 
-import java.io.IOException;
 // import java.util.Date;
-import java.util.List;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
 import com.bytedesk.core.message.event.MessageJsonEvent;
-import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
 import com.bytedesk.core.socket.protobuf.model.MessageProto;
-import com.bytedesk.core.utils.MessageConvertUtils;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -32,52 +30,36 @@ public class MessageEventListener {
 
     private final MessageService messageService;
 
-    private final MessagePersistCache messagePersistCache;
-
-    private final MessagePersistService messagePersistService;
-
     private final MessageSocketService messageSocketService;
 
+    private final BytedeskMetrics bytedeskMetrics;
+
     @EventListener
     public void onMessageJsonEvent(MessageJsonEvent event) {
         // log.info("MessageJsonEvent {}", event.getJson());
+        long start = System.nanoTime();
         try {
-            String messageJson =  messageService.processMessageJson(event.getJson());
-            if (messageJson == null) {
-                return;
-            }
+            MessageEnvelope envelope = messageService.processMessage(event.getEnvelope());
+            long persisted = System.nanoTime();
+            bytedeskMetrics.recordMessageStage(BytedeskMetrics.STAGE_PERSIST, persisted - start);
             // Send to Stomp clients
-            messageSocketService.sendJsonMessage(messageJson);
+            messageSocketService.sendJsonMessage(envelope);
             
-            // Send to MQTT clients - with additional error handling
-            try {
-                MessageProto.Message.Builder builder = MessageProto.Message.newBuilder();
-                MessageProto.Message message = MessageConvertUtils.toProtoBean(builder, messageJson);
-                if (message != null) {
-                    messageSocketService.sendProtoMessage(message);
-                } else {
-                    log.error("Failed to convert message to proto format");
-                }
-            } catch (IOException e) {
-                log.error("Error sending proto message: ", e);
+            // Send to MQTT clients
+            MessageProto.Message message = envelope.getProto();
+            if (message != null) {
+                messageSocketService.sendProtoMessage(message);
+            } else {
+                log.error("Failed to convert message to proto format");
             }
+            long finished = System.nanoTime();
+            bytedeskMetrics.recordMessageStage(BytedeskMetrics.STAGE_FANOUT, finished - persisted);
+            bytedeskMetrics.recordMessageProcess(finished - start);
         } catch (Exception e) {
+            bytedeskMetrics.messageError();
             log.error("Error processing message event: ", e);
             // Consider whether to rethrow or handle the error differently
         }
     }
 
-    @EventListener
-    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
-        // log.info("message quartz five second event: " + event);
-        List<String> messageJsonList = messagePersistCache.getListForPersist();
-        if (messageJsonList == null || messageJsonList.isEmpty()) {
-            return;
-        }
-        messageJsonList.forEach(item -> {
-            messagePersistService.persist(item);
-        });
-    }
-
-
 }
@@ -0,0 +1,105 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-16 14:20:11
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-16 14:20:11
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.message;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 消息批量写入
+ *
+ * 主键为IDENTITY，hibernate无法批量插入，此处直接使用jdbc batch insert，
+ * 不经过MessageEntityListener，由调用方负责发布MessageCreateEvent
+ */
+@Slf4j
+@Repository
+@AllArgsConstructor
+public class MessageJdbcRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO bytedesk_core_message "
+            + "(uuid, message_type, status, content, extra, client, message_user, thread_id, "
+            + "version, created_at, updated_at, is_deleted, org_uid, user_uid, level, platform) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 批量插入，并回填自增id
+    @Transactional
+    public void batchInsert(List<MessageEntity> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_SQL, new String[] { "id" }),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        MessageEntity message = messages.get(i);
+                        message.setCreatedAt(now);
+                        message.setUpdatedAt(now);
+                        ps.setString(1, message.getUid());
+                        ps.setString(2, message.getType());
+                        ps.setString(3, message.getStatus());
+                        ps.setString(4, message.getContent());
+                        ps.setString(5, message.getExtra());
+                        ps.setString(6, message.getClient());
+                        ps.setString(7, message.getUser());
+                        ps.setLong(8, message.getThread().getId());
+                        ps.setInt(9, message.getVersion());
+                        ps.setTimestamp(10, Timestamp.valueOf(now));
+                        ps.setTimestamp(11, Timestamp.valueOf(now));
+                        ps.setBoolean(12, message.isDeleted());
+                        ps.setString(13, message.getOrgUid());
+                        ps.setString(14, message.getUserUid());
+                        ps.setString(15, message.getLevel());
+                        ps.setString(16, message.getPlatform());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return messages.size();
+                    }
+                },
+                keyHolder);
+        // 部分驱动不返回批量生成的主键，此时id保持为空
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != messages.size()) {
+            log.debug("batchInsert generated keys size {} not match messages size {}", keys.size(), messages.size());
+            return;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Map<String, Object> key = keys.get(i);
+            Object id = key.containsKey("id") ? key.get("id") : key.values().stream().findFirst().orElse(null);
+            if (id instanceof Number) {
+                messages.get(i).setId(((Number) id).longValue());
+            }
+        }
+    }
+
+}
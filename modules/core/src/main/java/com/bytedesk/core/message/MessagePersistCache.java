@@ -14,6 +14,7 @@
 package com.bytedesk.core.message;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -30,7 +31,9 @@ import lombok.AllArgsConstructor;
 public class MessagePersistCache {
 
     private static final String DEFAULT_PERSIST_KEY = RedisConsts.BYTEDESK_REDIS_PREFIX + "messageList";
+    private static final String DEAD_LETTER_KEY = RedisConsts.BYTEDESK_REDIS_PREFIX + "messageList:dead";
     private static final long EXPIRE_TIME = 1; // 1天
+    private static final long DEAD_LETTER_EXPIRE_TIME = 7; // 7天，供人工排查后重新入队
     private final StringRedisTemplate stringRedisTemplate;
 
     // 假设我们使用"myList"作为缓存中的键
@@ -65,6 +68,49 @@ public class MessagePersistCache {
         return getList(DEFAULT_PERSIST_KEY);
     }
 
+    // 原子弹出最多count条待持久化消息，多节点同时消费也不会重复或丢失
+    public List<String> popForPersist(int count) {
+        List<String> messages = stringRedisTemplate.opsForList().leftPop(DEFAULT_PERSIST_KEY, count);
+        return messages != null ? messages : new ArrayList<>();
+    }
+
+    // 持久化失败时放回队列头部，保持原有顺序
+    public void pushBackForPersist(List<String> messageJsonList) {
+        if (messageJsonList == null || messageJsonList.isEmpty()) {
+            return;
+        }
+        List<String> reversed = new ArrayList<>(messageJsonList);
+        Collections.reverse(reversed);
+        stringRedisTemplate.opsForList().leftPushAll(DEFAULT_PERSIST_KEY, reversed);
+        stringRedisTemplate.expire(DEFAULT_PERSIST_KEY, EXPIRE_TIME, TimeUnit.DAYS);
+    }
+
+    // 无法写入的消息放入死信队列，不再自动重试
+    public void pushDeadLetter(List<String> messageJsonList) {
+        if (messageJsonList == null || messageJsonList.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForList().rightPushAll(DEAD_LETTER_KEY, messageJsonList);
+        stringRedisTemplate.expire(DEAD_LETTER_KEY, DEAD_LETTER_EXPIRE_TIME, TimeUnit.DAYS);
+    }
+
+    // 死信重新放回待持久化队列尾部，修复数据或数据库问题后调用
+    public long requeueDeadLetter(int count) {
+        List<String> messages = stringRedisTemplate.opsForList().leftPop(DEAD_LETTER_KEY, count);
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        stringRedisTemplate.opsForList().rightPushAll(DEFAULT_PERSIST_KEY, messages);
+        stringRedisTemplate.expire(DEFAULT_PERSIST_KEY, EXPIRE_TIME, TimeUnit.DAYS);
+        return messages.size();
+    }
+
+    // 待持久化消息数量
+    public long sizeForPersist() {
+        Long size = stringRedisTemplate.opsForList().size(DEFAULT_PERSIST_KEY);
+        return size != null ? size : 0;
+    }
+
     // 模拟 push 操作：向列表中添加元素
     public void push(String listKey, String messageJSON) {
         // List<String> cachedList = messageCache.getIfPresent(listKey);
@@ -90,14 +136,13 @@ public class MessagePersistCache {
         //     return cachedList;
         // }
         // return null;
+        // range + delete 非原子操作，两者之间push的消息会被删除丢失，改为原子弹出
         Long size = stringRedisTemplate.opsForList().size(listKey);
         if (size == null || size == 0) {
             return new ArrayList<>();
         }
-        List<String> messages = stringRedisTemplate.opsForList().range(listKey, 0, size - 1);
-        // 从缓存中删除列表内容
-        clearCache(listKey);
-        return messages;
+        List<String> messages = stringRedisTemplate.opsForList().leftPop(listKey, size);
+        return messages != null ? messages : new ArrayList<>();
     }
 
     // 清空缓存
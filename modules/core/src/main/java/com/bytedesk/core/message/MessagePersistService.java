@@ -13,35 +13,260 @@
  */
 package com.bytedesk.core.message;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.modelmapper.ModelMapper;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.util.StringUtils;
 
+import com.bytedesk.core.config.BytedeskEventPublisher;
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
 import com.bytedesk.core.thread.ThreadEntity;
 import com.bytedesk.core.thread.ThreadRestService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import jakarta.annotation.Nonnull;
-import lombok.AllArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class MessagePersistService {
 
+    // 不保存到数据库，也不访问数据库的消息类型
+    private static final Set<MessageTypeEnum> TRANSIENT_TYPES = EnumSet.of(
+            MessageTypeEnum.TYPING, MessageTypeEnum.PROCESSING,
+            MessageTypeEnum.PREVIEW, MessageTypeEnum.CONTINUE);
+
+    // 会更新已有消息的回执类型，批量处理时需要先写入之前的消息，保证顺序
+    private static final Set<MessageTypeEnum> RECEIPT_TYPES = EnumSet.of(
+            MessageTypeEnum.RECALL, MessageTypeEnum.DELIVERED, MessageTypeEnum.READ,
+            MessageTypeEnum.RATE_SUBMIT, MessageTypeEnum.RATE_CANCEL,
+            MessageTypeEnum.LEAVE_MSG_SUBMIT,
+            MessageTypeEnum.FAQ_UP, MessageTypeEnum.FAQ_DOWN,
+            MessageTypeEnum.ROBOT_UP, MessageTypeEnum.ROBOT_DOWN,
+            MessageTypeEnum.TRANSFER_ACCEPT, MessageTypeEnum.TRANSFER_REJECT,
+            MessageTypeEnum.INVITE_ACCEPT, MessageTypeEnum.INVITE_REJECT);
+
     private final MessageRestService messageRestService;
 
     private final ThreadRestService threadRestService;
 
+    private final MessageJdbcRepository messageJdbcRepository;
+
+    private final BytedeskEventPublisher bytedeskEventPublisher;
+
     private final ModelMapper modelMapper;
 
+    private final BytedeskMetrics bytedeskMetrics;
+
+    // 最近已写入的消息uid，批量去重时优先查内存，减少数据库查询
+    private final Cache<String, Boolean> persistedUids = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+
+    @PostConstruct
+    public void init() {
+        bytedeskMetrics.monitorCache("message.persisted.uid", persistedUids);
+    }
+
+    /**
+     * 批量持久化：整批只查询一次已存在uid和会话，新消息使用jdbc batch insert写入。
+     * 按原顺序处理，遇到回执等更新类消息时先写入之前累积的新消息。
+     * 数据库连接等临时错误直接抛出，由调用方将整批放回队列重试；
+     * 单条消息本身导致的错误不影响其他消息，返回这些消息，由调用方转入死信队列。
+     *
+     * @return 写入失败的消息
+     */
+    public List<MessageEnvelope> persistBatch(List<MessageEnvelope> envelopes) {
+        List<MessageEnvelope> failed = new ArrayList<>();
+        if (envelopes == null || envelopes.isEmpty()) {
+            return failed;
+        }
+        // 预查询
+        Set<String> candidateUids = new HashSet<>();
+        Set<String> threadUids = new HashSet<>();
+        for (MessageEnvelope envelope : envelopes) {
+            try {
+                MessageProtobuf messageProtobuf = envelope.getProtobuf();
+                if (messageProtobuf == null || messageProtobuf.getThread() == null
+                        || TRANSIENT_TYPES.contains(messageProtobuf.getType())) {
+                    continue;
+                }
+                if (persistedUids.getIfPresent(messageProtobuf.getUid()) == null) {
+                    candidateUids.add(messageProtobuf.getUid());
+                }
+                threadUids.add(messageProtobuf.getThread().getUid());
+            } catch (Exception e) {
+                // 无法解析的消息在下面逐条处理时记录并跳过
+                log.warn("persistBatch parse message error: {}", e.getMessage());
+            }
+        }
+        Set<String> existingUids = messageRestService.findExistingUids(candidateUids);
+        Map<String, ThreadEntity> threadMap = new HashMap<>();
+        threadRestService.findByUidIn(threadUids).forEach(thread -> threadMap.put(thread.getUid(), thread));
+        //
+        Map<String, MessageEntity> pending = new LinkedHashMap<>();
+        // uid -> 合并到该条待写入消息的原始消息，写入失败时整体转入死信
+        Map<String, List<MessageEnvelope>> pendingSources = new HashMap<>();
+        for (MessageEnvelope envelope : envelopes) {
+            try {
+                MessageProtobuf messageProtobuf = envelope.getProtobuf();
+                if (messageProtobuf == null || messageProtobuf.getThread() == null) {
+                    log.warn("persistBatch skip invalid message");
+                    continue;
+                }
+                MessageTypeEnum type = messageProtobuf.getType();
+                if (RECEIPT_TYPES.contains(type)) {
+                    flushPending(pending, pendingSources, failed);
+                }
+                if (dealWithMessageNotification(type, messageProtobuf)) {
+                    continue;
+                }
+                //
+                String uid = messageProtobuf.getUid();
+                MessageEntity pendingMessage = pending.get(uid);
+                if (pendingMessage != null) {
+                    // 同一批次中的流式消息直接合并
+                    if (type.equals(MessageTypeEnum.STREAM)) {
+                        pendingMessage.setContent(pendingMessage.getContent() + messageProtobuf.getContent());
+                        pendingSources.get(uid).add(envelope);
+                    } else {
+                        log.info("message already exists, uid: {}", uid);
+                    }
+                    continue;
+                }
+                if (persistedUids.getIfPresent(uid) != null || existingUids.contains(uid)) {
+                    if (type.equals(MessageTypeEnum.STREAM)) {
+                        flushPending(pending, pendingSources, failed);
+                        appendStreamContent(uid, messageProtobuf.getContent());
+                    } else {
+                        log.info("message already exists, uid: {}", uid);
+                    }
+                    continue;
+                }
+                //
+                String threadUid = messageProtobuf.getThread().getUid();
+                ThreadEntity thread = threadMap.get(threadUid);
+                if (thread == null) {
+                    log.info("thread not found, uid: {}", threadUid);
+                    continue;
+                }
+                pending.put(uid, toMessageEntity(messageProtobuf, thread));
+                pendingSources.put(uid, new ArrayList<>(List.of(envelope)));
+            } catch (Exception e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                log.error("persistBatch error: ", e);
+                failed.add(envelope);
+            }
+        }
+        flushPending(pending, pendingSources, failed);
+        return failed;
+    }
+
+    private void flushPending(Map<String, MessageEntity> pending, Map<String, List<MessageEnvelope>> pendingSources,
+            List<MessageEnvelope> failed) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<MessageEntity> messages = new ArrayList<>(pending.values());
+        pending.clear();
+        Map<String, List<MessageEnvelope>> sources = new HashMap<>(pendingSources);
+        pendingSources.clear();
+        try {
+            messageJdbcRepository.batchInsert(messages);
+            for (MessageEntity message : messages) {
+                persistedUids.put(message.getUid(), Boolean.TRUE);
+                // jdbc写入不经过MessageEntityListener，此处补发事件
+                bytedeskEventPublisher.publishMessageCreateEvent(MessageSnapshot.from(message));
+            }
+        } catch (DataAccessException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            // 批量写入失败（如其他节点已写入相同uid），逐条回退
+            log.warn("batch insert {} messages failed, fallback to single insert: {}", messages.size(), e.getMessage());
+            for (MessageEntity message : messages) {
+                try {
+                    if (!messageRestService.existsByUid(message.getUid())) {
+                        message.setId(null);
+                        messageRestService.save(message);
+                    }
+                    persistedUids.put(message.getUid(), Boolean.TRUE);
+                } catch (Exception ex) {
+                    if (isTransient(ex)) {
+                        throw ex;
+                    }
+                    log.error("persist message {} failed: ", message.getUid(), ex);
+                    failed.addAll(sources.getOrDefault(message.getUid(), List.of()));
+                }
+            }
+        }
+    }
+
+    // 数据库连接、超时等临时错误，稍后重试可能成功
+    static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void appendStreamContent(String uid, String content) {
+        Optional<MessageEntity> message = messageRestService.findByUid(uid);
+        if (message.isPresent()) {
+            MessageEntity m = message.get();
+            m.setContent(m.getContent() + content);
+            messageRestService.save(m);
+        }
+    }
+
+    private MessageEntity toMessageEntity(MessageProtobuf messageProtobuf, ThreadEntity thread) {
+        MessageEntity message = modelMapper.map(messageProtobuf, MessageEntity.class);
+        if (messageProtobuf.getStatus().equals(MessageStatusEnum.SENDING)) {
+            message.setStatus(MessageStatusEnum.SUCCESS.name());
+        }
+        message.setThread(thread);
+        message.setUser(messageProtobuf.getUser().toJson());
+        message.setUserUid(messageProtobuf.getUser().getUid());
+        // 
+        MessageExtra extraObject = MessageExtra.fromJson(messageProtobuf.getExtra()); 
+        if (extraObject != null) {
+            String orgUid = extraObject.getOrgUid();
+            message.setOrgUid(orgUid);
+        }
+        return message;
+    }
+
     public void persist(String messageJSON) {
         // log.info("persist: {}", messageJSON);
-        MessageProtobuf messageProtobuf = MessageProtobuf.fromJson(messageJSON); 
-        //JSON.parseObject(messageJSON, MessageProtobuf.class);
+        persist(MessageEnvelope.fromJson(messageJSON));
+    }
+
+    public void persist(MessageEnvelope envelope) {
+        MessageProtobuf messageProtobuf = envelope.getProtobuf();
         //
         MessageTypeEnum type = messageProtobuf.getType();
         String threadUid = messageProtobuf.getThread().getUid();
@@ -59,12 +284,7 @@ public class MessagePersistService {
             // 流式消息单独处理下
             if (type.equals(MessageTypeEnum.STREAM)) {
                 // 更新消息内容
-                Optional<MessageEntity> message = messageRestService.findByUid(uid);
-                if (message.isPresent()) {
-                    MessageEntity m = message.get();
-                    m.setContent(m.getContent() + messageProtobuf.getContent());
-                    messageRestService.save(m);
-                }
+                appendStreamContent(uid, messageProtobuf.getContent());
                 return;
             }
             log.info("message already exists, uid: {}", uid);
@@ -72,30 +292,14 @@ public class MessagePersistService {
             return;
         }
         //
-        MessageEntity message = modelMapper.map(messageProtobuf, MessageEntity.class);
-        if (messageProtobuf.getStatus().equals(MessageStatusEnum.SENDING)) {
-            message.setStatus(MessageStatusEnum.SUCCESS.name());
-        }
         Optional<ThreadEntity> threadOpt = threadRestService.findByUid(threadUid);
-        if (threadOpt.isPresent()) {
-            ThreadEntity thread = threadOpt.get();
-            message.setThread(thread);
-        } else {
+        if (!threadOpt.isPresent()) {
             log.info("thread not found, uid: {}", threadUid);
             return;
         }
-        // message.setThreadUid(threadUid);
-        // message.setTopic(threadTopic);
-        message.setUser(messageProtobuf.getUser().toJson());
-        message.setUserUid(messageProtobuf.getUser().getUid());
-        // 
-        MessageExtra extraObject = MessageExtra.fromJson(messageProtobuf.getExtra()); 
-        if (extraObject != null) {
-            String orgUid = extraObject.getOrgUid();
-            message.setOrgUid(orgUid);
-        }
-        //
+        MessageEntity message = toMessageEntity(messageProtobuf, threadOpt.get());
         messageRestService.save(message);
+        persistedUids.put(uid, Boolean.TRUE);
     }
 
     // 处理消息通知，已处理的消息返回true，未处理的消息返回false
@@ -0,0 +1,203 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-16 15:02:47
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-16 15:02:47
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.message;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 消息持久化写入线程
+ *
+ * 替代原先每5秒 range + delete 整个列表的方式：
+ * 1. 每次从redis原子弹出最多batchSize条，多节点同时消费也不会重复或丢失；
+ * 2. 每轮最多处理maxBatchesPerRound批，避免一次性压垮数据库；
+ * 3. 数据库临时错误时将整批放回队列头部，并按指数退避重试；
+ *    单条消息写入失败时转入死信队列，不阻塞后续消息，也不会静默丢弃；
+ * 4. 暴露积压数量、死信数量和持久化延迟指标。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessagePersistWriter {
+
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final MessagePersistCache messagePersistCache;
+
+    private final MessagePersistService messagePersistService;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${bytedesk.message.persist.batch-size:500}")
+    private int batchSize;
+
+    @Value("${bytedesk.message.persist.max-batches-per-round:20}")
+    private int maxBatchesPerRound;
+
+    @Value("${bytedesk.message.persist.interval-millis:200}")
+    private long intervalMillis;
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+
+    private Counter persistedCounter;
+
+    private Counter failedCounter;
+
+    private Counter deadLetterCounter;
+
+    // 消息创建时间到写入数据库的时间差，createdAt由客户端设置，仅作参考
+    private Timer lagTimer;
+
+    // 连续失败次数与下次允许写入的时间，用于指数退避
+    private int consecutiveFailures = 0;
+
+    private long resumeAtMillis = 0;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("bytedesk.message.persist.backlog", backlog, AtomicLong::get)
+                .description("Number of messages waiting to be persisted")
+                .register(meterRegistry);
+        persistedCounter = Counter.builder("bytedesk.message.persist.total")
+                .description("Number of messages drained for persistence")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("bytedesk.message.persist.failed")
+                .description("Number of message batches failed to persist")
+                .register(meterRegistry);
+        deadLetterCounter = Counter.builder("bytedesk.message.persist.dead.letter")
+                .description("Number of messages moved to the dead letter queue")
+                .register(meterRegistry);
+        lagTimer = Timer.builder("bytedesk.message.persist.lag")
+                .description("Delay between message creation and persistence")
+                .register(meterRegistry);
+        //
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BytedeskMessagePersist");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::drain, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 是否存在积压，可供上游降级判断
+    public boolean isBacklogged() {
+        return backlog.get() > (long) batchSize * maxBatchesPerRound;
+    }
+
+    private void drain() {
+        if (System.currentTimeMillis() < resumeAtMillis) {
+            // 上次写入失败，退避期间跳过
+            return;
+        }
+        try {
+            for (int i = 0; i < maxBatchesPerRound; i++) {
+                List<String> messageJsonList = messagePersistCache.popForPersist(batchSize);
+                if (messageJsonList.isEmpty()) {
+                    break;
+                }
+                if (!persistBatch(messageJsonList)) {
+                    break;
+                }
+                if (messageJsonList.size() < batchSize) {
+                    break;
+                }
+            }
+            backlog.set(messagePersistCache.sizeForPersist());
+        } catch (Exception e) {
+            log.error("message persist drain error: ", e);
+        }
+    }
+
+    boolean persistBatch(List<String> messageJsonList) {
+        List<MessageEnvelope> envelopes = new ArrayList<>(messageJsonList.size());
+        for (String messageJson : messageJsonList) {
+            envelopes.add(MessageEnvelope.fromJson(messageJson));
+        }
+        try {
+            List<MessageEnvelope> failed = messagePersistService.persistBatch(envelopes);
+            if (!failed.isEmpty()) {
+                List<String> failedJsonList = new ArrayList<>(failed.size());
+                for (MessageEnvelope envelope : failed) {
+                    failedJsonList.add(envelope.getJson());
+                }
+                log.error("{} messages failed to persist, move to dead letter queue", failedJsonList.size());
+                messagePersistCache.pushDeadLetter(failedJsonList);
+                deadLetterCounter.increment(failedJsonList.size());
+            }
+        } catch (Exception e) {
+            log.error("persist batch of {} messages failed, push back: ", messageJsonList.size(), e);
+            failedCounter.increment();
+            messagePersistCache.pushBackForPersist(messageJsonList);
+            consecutiveFailures++;
+            long backoffMillis = Math.min(1000L << Math.min(consecutiveFailures - 1, 5), MAX_BACKOFF_MILLIS);
+            resumeAtMillis = System.currentTimeMillis() + backoffMillis;
+            return false;
+        }
+        consecutiveFailures = 0;
+        persistedCounter.increment(messageJsonList.size());
+        recordLag(envelopes);
+        return true;
+    }
+
+    private void recordLag(List<MessageEnvelope> envelopes) {
+        LocalDateTime oldest = null;
+        for (MessageEnvelope envelope : envelopes) {
+            MessageProtobuf messageProtobuf = envelope.getProtobuf();
+            LocalDateTime createdAt = messageProtobuf != null ? messageProtobuf.getCreatedAt() : null;
+            if (createdAt != null && (oldest == null || createdAt.isBefore(oldest))) {
+                oldest = createdAt;
+            }
+        }
+        if (oldest != null) {
+            Duration lag = Duration.between(oldest, LocalDateTime.now());
+            if (!lag.isNegative()) {
+                lagTimer.record(lag);
+            }
+        }
+    }
+
+}
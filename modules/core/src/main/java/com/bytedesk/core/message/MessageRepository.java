@@ -14,6 +14,8 @@
  */
 package com.bytedesk.core.message;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -49,4 +51,8 @@ public interface MessageRepository extends JpaRepository<MessageEntity, Long>, J
             @Param("userUid") String userUid);
 
     boolean existsByUid(String uid);
+
+    // 批量查询已存在的消息uid，用于批量持久化去重
+    @Query("SELECT m.uid FROM MessageEntity m WHERE m.uid IN :uids")
+    List<String> findUidByUidIn(@Param("uids") Collection<String> uids);
 }
@@ -13,7 +13,11 @@
  */
 package com.bytedesk.core.message;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.Caching;
 import org.springframework.cache.annotation.CacheEvict;
@@ -44,6 +48,8 @@ public class MessageRestService extends BaseRestServiceWithExcel<MessageEntity,
 
     private final AuthService authService;
 
+    private final MessageStreamAccumulator messageStreamAccumulator;
+
     @Override
     public Page<MessageEntity> queryByOrgEntity(MessageRequest request) {
         Pageable pageable = request.getPageable();
@@ -51,6 +57,11 @@ public class MessageRestService extends BaseRestServiceWithExcel<MessageEntity,
         return messageRepository.findAll(specs, pageable);
     }
 
+    @Override
+    public List<MessageEntity> queryByOrgEntityBefore(MessageRequest request, Long lastId, int size) {
+        return findByIdBefore(messageRepository, MessageSpecification.search(request), lastId, size);
+    }
+
     public Page<MessageResponse> queryByOrg(MessageRequest request) {
         Page<MessageEntity> messagePage = queryByOrgEntity(request);
         return messagePage.map(this::convertToResponse);
@@ -175,9 +186,22 @@ public class MessageRestService extends BaseRestServiceWithExcel<MessageEntity,
         return messageRepository.existsByUid(uid);
     }
 
+    // 批量返回已存在的消息uid
+    public Set<String> findExistingUids(Collection<String> uids) {
+        if (uids == null || uids.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(messageRepository.findUidByUidIn(uids));
+    }
+
     @Override
     public MessageResponse convertToResponse(MessageEntity entity) {
-        return ConvertUtils.convertToMessageResponse(entity);
+        MessageResponse response = ConvertUtils.convertToMessageResponse(entity);
+        // 流式消息尚未全部写入数据库时，返回内存中已生成的内容
+        if (MessageTypeEnum.STREAM.name().equals(entity.getType())) {
+            messageStreamAccumulator.getContent(entity.getUid()).ifPresent(response::setContent);
+        }
+        return response;
     }
 
     @Override
@@ -15,7 +15,6 @@ package com.bytedesk.core.message;
 
 import org.springframework.stereotype.Service;
 
-import com.alibaba.fastjson2.JSON;
 import com.bytedesk.core.annotation.BlackIpFilter;
 import com.bytedesk.core.annotation.BlackUserFilter;
 import com.bytedesk.core.annotation.TabooJsonFilter;
@@ -43,9 +42,9 @@ public class MessageSendServiceImpl implements IMessageSendService {
     @TabooProtobufFilter(title = "敏感词", action = "sendProtobufMessage")
     @Override
     public void sendProtobufMessage(MessageProtobuf messageProtobuf) {
-        String json = JSON.toJSONString(messageProtobuf);
-        // log.debug("sendProtobufMessage: {}", json);
-        publishMessageJsonEvent(json);
+        // log.debug("sendProtobufMessage: {}", messageProtobuf.getUid());
+        BytedeskEventPublisher bytedeskEventPublisher = ApplicationContextHolder.getBean(BytedeskEventPublisher.class);
+        bytedeskEventPublisher.publishMessageJsonEvent(MessageEnvelope.fromProtobuf(messageProtobuf));
     }
 
     public void publishMessageJsonEvent(String json) {
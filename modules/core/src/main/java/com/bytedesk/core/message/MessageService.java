@@ -13,11 +13,8 @@
  */
 package com.bytedesk.core.message;
 
-import java.time.LocalDateTime;
 import org.springframework.stereotype.Service;
 
-import com.alibaba.fastjson2.JSON;
-
 import lombok.RequiredArgsConstructor;
 
 @Service
@@ -27,22 +24,17 @@ public class MessageService {
     private final MessagePersistCache messagePersistCache;
 
     public String processMessageJson(String messageJson) {
+        return processMessage(MessageEnvelope.fromJson(messageJson)).getJson();
+    }
 
-        MessageProtobuf messageProtobuf = JSON.parseObject(messageJson, MessageProtobuf.class);
-
-        // 收到消息，更新消息状态为发送成功
-        if (messageProtobuf.getStatus().equals(MessageStatusEnum.SENDING)) {
-            messageProtobuf.setStatus(MessageStatusEnum.SUCCESS);
-        }
-
-        // 防止客户端时间错误，使用服务器时间戳
-        messageProtobuf.setCreatedAt(LocalDateTime.now());
-
+    public MessageEnvelope processMessage(MessageEnvelope envelope) {
+        // 信封中的MessageProtobuf为各监听器共享，此处不修改其字段
+        // 发送中状态在持久化时(MessagePersistService)更新为发送成功
         // 保存消息
         // Cache message for persistence
-        messagePersistCache.pushForPersist(messageJson);
+        messagePersistCache.pushForPersist(envelope.getJson());
 
-        return messageJson;
+        return envelope;
     }
 
 
@@ -0,0 +1,105 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-22 15:36:42
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-22 15:36:42
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.message;
+
+import java.time.LocalDateTime;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.rbac.user.UserProtobuf;
+import com.bytedesk.core.rbac.user.UserTypeEnum;
+import com.bytedesk.core.thread.ThreadEntity;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * MessageCreateEvent/MessageUpdateEvent携带的消息快照
+ *
+ * 只复制监听器用到的字段，会话只保留uid和topic，可在异步监听器中安全读取
+ */
+@Getter
+@Builder
+@ToString
+public class MessageSnapshot {
+
+    private final String uid;
+
+    private final String orgUid;
+
+    private final String type;
+
+    private final String status;
+
+    private final String content;
+
+    private final String extra;
+
+    private final String client;
+
+    // json
+    private final String user;
+
+    private final String threadUid;
+
+    private final String threadTopic;
+
+    private final LocalDateTime createdAt;
+
+    private final LocalDateTime updatedAt;
+
+    public static MessageSnapshot from(MessageEntity message) {
+        ThreadEntity thread = message.getThread();
+        return MessageSnapshot.builder()
+                .uid(message.getUid())
+                .orgUid(message.getOrgUid())
+                .type(message.getType())
+                .status(message.getStatus())
+                .content(message.getContent())
+                .extra(message.getExtra())
+                .client(message.getClient())
+                .user(message.getUser())
+                .threadUid(thread != null ? thread.getUid() : null)
+                .threadTopic(thread != null ? thread.getTopic() : null)
+                .createdAt(message.getCreatedAt())
+                .updatedAt(message.getUpdatedAt())
+                .build();
+    }
+
+    public UserProtobuf getUserProtobuf() {
+        return JSON.parseObject(user, UserProtobuf.class);
+    }
+
+    public boolean isFromRobot() {
+        return isFrom(UserTypeEnum.ROBOT);
+    }
+
+    public boolean isFromVisitor() {
+        return isFrom(UserTypeEnum.VISITOR);
+    }
+
+    public boolean isFromSystem() {
+        return isFrom(UserTypeEnum.SYSTEM);
+    }
+
+    public boolean isFromAgent() {
+        return isFrom(UserTypeEnum.AGENT);
+    }
+
+    private boolean isFrom(UserTypeEnum type) {
+        UserProtobuf userProtobuf = getUserProtobuf();
+        return userProtobuf != null && type.name().equalsIgnoreCase(userProtobuf.getType());
+    }
+
+}
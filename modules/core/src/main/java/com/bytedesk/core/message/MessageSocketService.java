@@ -13,6 +13,12 @@
  */
 package com.bytedesk.core.message;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.springframework.lang.NonNull;
@@ -21,23 +27,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import com.bytedesk.core.thread.ThreadTypeEnum;
-import com.bytedesk.core.topic.TopicEntity;
 import com.bytedesk.core.topic.TopicService;
+import com.bytedesk.core.socket.cluster.ClusterMessageRouter;
 import com.bytedesk.core.topic.TopicUtils;
-import com.alibaba.fastjson2.JSON;
-import com.bytedesk.core.socket.mqtt.MqttMessageIdService;
-import com.bytedesk.core.socket.mqtt.MqttSession;
+import com.bytedesk.core.socket.mqtt.MqttInflightService;
 import com.bytedesk.core.socket.mqtt.MqttSessionService;
 import com.bytedesk.core.socket.protobuf.model.MessageProto;
 import com.bytedesk.core.socket.protobuf.model.ThreadProto;
 import com.bytedesk.core.socket.protobuf.model.UserProto;
 
-import io.netty.buffer.Unpooled;
-import io.netty.handler.codec.mqtt.MqttFixedHeader;
-import io.netty.handler.codec.mqtt.MqttMessageFactory;
-import io.netty.handler.codec.mqtt.MqttMessageType;
-import io.netty.handler.codec.mqtt.MqttPublishMessage;
-import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import com.google.protobuf.CodedOutputStream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -49,17 +51,24 @@ public class MessageSocketService {
 
     private final SimpMessagingTemplate simpMessagingTemplate;
 
-    private final MqttMessageIdService mqttMessageIdService;
+    private final MqttInflightService mqttInflightService;
 
     private final MqttSessionService mqttSessionService;
 
     private final TopicService topicService;
 
+    private final ClusterMessageRouter clusterMessageRouter;
+
     // 发送消息给stomp访客端
     public void sendJsonMessage(@NonNull String messageJson) {
         Assert.notNull(messageJson, "messageJson is null");
+        sendJsonMessage(MessageEnvelope.fromJson(messageJson));
+    }
+
+    public void sendJsonMessage(@NonNull MessageEnvelope envelope) {
+        Assert.notNull(envelope, "envelope is null");
         //
-        MessageProtobuf messageObject = JSON.parseObject(messageJson, MessageProtobuf.class);
+        MessageProtobuf messageObject = envelope.getProtobuf();
         if (messageObject.getThread() == null) {
             throw new IllegalArgumentException("The thread field in message is null.");
         }
@@ -72,10 +81,17 @@ public class MessageSocketService {
         // 例如，将 /org/agent/default_agent_uid/1418711693000834 转换为
         // /topic/org.agent.default_agent_uid.1418711693000834
         String topic = TopicUtils.TOPIC_PREFIX + topicStr.replace("/", ".");
-        // log.debug("stomp topic {}, {}", topic, messageJson);
+        // log.debug("stomp topic {}, {}", topic, envelope.getJson());
 
         // 发送给Stomp客户端
-        simpMessagingTemplate.convertAndSend(topic, messageJson);
+        simpMessagingTemplate.convertAndSend(topic, envelope.getJson());
+        // 集群模式下，其他节点上的Stomp订阅者
+        clusterMessageRouter.broadcastStomp(topic, envelope.getJson());
+    }
+
+    // 其他节点转发过来的Stomp消息，仅在本节点投递
+    public void deliverStompLocal(String destination, String payload) {
+        simpMessagingTemplate.convertAndSend(destination, payload);
     }
 
     // 发送消息给mqtt客户端
@@ -111,35 +127,71 @@ public class MessageSocketService {
 
     private void doSendToSubscribers(String topic, @NonNull MessageProto.Message messageProto) {
         // log.debug("doSendToSubscribers: topic={}", topic);
-        Set<TopicEntity> topicSet = topicService.findByTopic(topic);
-        log.info("topicList size {}", topicSet.size());
-        topicSet.forEach(topicElement -> {
-            Set<String> clientIdSet = topicElement.getClientIds();
-            clientIdSet.forEach(clientId -> {
-                doSendMessage(topic, messageProto, clientId);
-            });
-        });
+        Set<String> clientIdSet = topicService.findClientIdsByTopic(topic);
+        log.debug("topic {} clientIds size {}", topic, clientIdSet.size());
+        // 长连接在当前节点的clientId，共享同一份序列化结果
+        List<String> localClientIds = new ArrayList<>();
+        // 长连接在其他节点的clientId，按节点合并后转发
+        Map<String, List<String>> remoteClientIds = null;
+        for (String clientId : clientIdSet) {
+            if (mqttSessionService.containsKey(clientId)) {
+                localClientIds.add(clientId);
+                continue;
+            }
+            String nodeId = clusterMessageRouter.findRemoteNode(clientId);
+            if (nodeId != null) {
+                if (remoteClientIds == null) {
+                    remoteClientIds = new HashMap<>();
+                }
+                remoteClientIds.computeIfAbsent(nodeId, key -> new ArrayList<>()).add(clientId);
+            }
+        }
+        deliverMqttLocal(topic, messageProto, localClientIds);
+        if (remoteClientIds != null) {
+            remoteClientIds.forEach((nodeId, clientIds) -> clusterMessageRouter.forwardMqtt(nodeId, topic, clientIds,
+                    messageProto));
+        }
     }
 
-    private void doSendMessage(String topic, @NonNull MessageProto.Message messageProto, String clientId) {
+    // 发送给本节点上的mqtt客户端，其他节点转发过来的消息也由此投递
+    public void deliverMqttLocal(String topic, @NonNull MessageProto.Message messageProto,
+            Collection<String> clientIds) {
+        if (clientIds.isEmpty()) {
+            return;
+        }
+        // 每条消息只序列化一次到池化的direct buffer，各订阅者共享
+        ByteBuf payload = toByteBuf(messageProto);
+        try {
+            for (String clientId : clientIds) {
+                doSendMessage(topic, payload, clientId);
+            }
+        } finally {
+            payload.release();
+        }
+    }
+
+    private void doSendMessage(String topic, ByteBuf payload, String clientId) {
         log.debug("doSendMessage: topic {} clientId {}", topic, clientId);
-        MqttQoS mqttQoS = MqttQoS.AT_LEAST_ONCE;
-        boolean dup = false;
-        boolean retain = false;
-        byte[] messageBytes = messageProto.toByteArray();
         // 当前活跃长连接信息
         if (mqttSessionService.containsKey(clientId)) {
-            // log.debug("doSendMessage hasSession: topic {} clientId {}", topic, clientId);
             // 订阅者收到MQTT消息的QoS级别, 最终取决于发布消息的QoS和主题订阅的QoS
-            int messageId = mqttMessageIdService.getNextMessageId();
-            //
-            MqttPublishMessage publishMessage = (MqttPublishMessage) MqttMessageFactory.newMessage(
-                    new MqttFixedHeader(MqttMessageType.PUBLISH, dup, mqttQoS, retain, 0),
-                    new MqttPublishVariableHeader(topic, messageId),
-                    Unpooled.buffer().writeBytes(messageBytes));
-            //
-            final MqttSession mqttSession = mqttSessionService.get(clientId);
-            mqttSession.getChannel().writeAndFlush(publishMessage);
+            // 经发送窗口发送，未确认的消息超时重发，客户端重连后重发
+            mqttInflightService.publish(clientId, topic, MqttQoS.AT_LEAST_ONCE, payload);
+        }
+    }
+
+    private static ByteBuf toByteBuf(MessageProto.Message messageProto) {
+        int size = messageProto.getSerializedSize();
+        ByteBuf payload = PooledByteBufAllocator.DEFAULT.directBuffer(size, size);
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(payload.nioBuffer(0, size));
+            messageProto.writeTo(output);
+            output.checkNoSpaceLeft();
+            payload.writerIndex(size);
+            return payload;
+        } catch (IOException | RuntimeException e) {
+            payload.release();
+            throw new IllegalStateException("serialize message failed", e);
         }
     }
 
@@ -21,6 +21,9 @@ import org.springframework.util.StringUtils;
 
 import com.bytedesk.core.base.BaseSpecification;
 import com.bytedesk.core.constant.TypeConsts;
+import com.bytedesk.core.search.SearchDocTypeEnum;
+import com.bytedesk.core.search.SearchFieldEnum;
+import com.bytedesk.core.search.SearchSpecification;
 import com.bytedesk.core.topic.TopicUtils;
 
 import jakarta.persistence.criteria.Join;
@@ -76,7 +79,10 @@ public class MessageSpecification extends BaseSpecification {
             }
             //
             if (StringUtils.hasText(request.getContent())) {
-                predicates.add(criteriaBuilder.like(root.get("content"), "%" + request.getContent() + "%"));
+                Predicate contentPredicate = SearchSpecification.matchTerms(root, query, criteriaBuilder,
+                        request.getOrgUid(), SearchDocTypeEnum.MESSAGE, SearchFieldEnum.CONTENT, request.getContent());
+                predicates.add(contentPredicate != null ? contentPredicate
+                        : criteriaBuilder.like(root.get("content"), "%" + request.getContent() + "%"));
             }
             // 
             String topic = request.getTopic();
@@ -96,7 +102,10 @@ public class MessageSpecification extends BaseSpecification {
             }
             // user.nickname
             if (StringUtils.hasText(request.getNickname())) {
-                predicates.add(criteriaBuilder.like(root.get("user"), "%" + request.getNickname() + "%"));
+                Predicate nicknamePredicate = SearchSpecification.matchTerms(root, query, criteriaBuilder,
+                        request.getOrgUid(), SearchDocTypeEnum.MESSAGE, SearchFieldEnum.NICKNAME, request.getNickname());
+                predicates.add(nicknamePredicate != null ? nicknamePredicate
+                        : criteriaBuilder.like(root.get("user"), "%" + request.getNickname() + "%"));
             }
             //
             if (StringUtils.hasText(request.getClient())) {
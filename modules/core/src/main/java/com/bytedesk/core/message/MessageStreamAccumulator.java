@@ -0,0 +1,232 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-17 09:36:20
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-17 09:36:20
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.message;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 大模型流式消息(STREAM)累加器，按消息uid合并token
+ *
+ * 首个token立即入库，保证消息记录及MessageCreateEvent及时产生；
+ * 后续token在内存中拼接，每隔flushInterval将增量写入一次，收到STREAM_END时写入剩余内容；
+ * 长时间未收到新token的流视为中断，写入剩余内容后移除。
+ * 流式过程中可通过getContent读取当前已生成的完整内容。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageStreamAccumulator {
+
+    private final MessagePersistCache messagePersistCache;
+
+    @Value("${bytedesk.message.stream.flush-interval-millis:1000}")
+    private long flushIntervalMillis;
+
+    @Value("${bytedesk.message.stream.idle-timeout-millis:60000}")
+    private long idleTimeoutMillis;
+
+    private final Map<String, StreamEntry> streams = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BytedeskMessageStream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushExpired, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        // 停机前写入所有未完成的流
+        streams.keySet().forEach(this::complete);
+    }
+
+    public void append(@NonNull MessageProtobuf chunk) {
+        append(chunk, null);
+    }
+
+    /**
+     * 追加一个STREAM token
+     *
+     * @param chunk      content为本次token的流式消息
+     * @param onComplete 流结束（STREAM_END或超时）时回调，参数为完整内容，仅首个token时生效
+     */
+    public void append(@NonNull MessageProtobuf chunk, Consumer<String> onComplete) {
+        Assert.notNull(chunk, "chunk is null");
+        String content = chunk.getContent() != null ? chunk.getContent() : "";
+        StreamEntry entry = streams.get(chunk.getUid());
+        if (entry == null) {
+            StreamEntry created = new StreamEntry(copyOf(chunk), onComplete);
+            synchronized (created) {
+                entry = streams.putIfAbsent(chunk.getUid(), created);
+                if (entry == null) {
+                    // 首个token立即入库
+                    created.content.append(content);
+                    created.flushedLength = created.content.length();
+                    created.lastFlushAt = System.currentTimeMillis();
+                    created.lastAppendAt = created.lastFlushAt;
+                    messagePersistCache.pushForPersist(created.toChunkJson(content));
+                    return;
+                }
+            }
+        }
+        synchronized (entry) {
+            if (entry.completed) {
+                // 已结束的流再次收到token，按普通流式消息处理
+                messagePersistCache.pushForPersist(chunk.toJson());
+                return;
+            }
+            entry.content.append(content);
+            entry.lastAppendAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 结束流：写入剩余内容并移除，回调onComplete
+     *
+     * @return 流的完整内容，不存在该流时返回空
+     */
+    public Optional<String> complete(String uid) {
+        StreamEntry entry = uid != null ? streams.remove(uid) : null;
+        if (entry == null) {
+            return Optional.empty();
+        }
+        String fullContent;
+        synchronized (entry) {
+            flush(entry);
+            entry.completed = true;
+            fullContent = entry.content.toString();
+        }
+        if (entry.onComplete != null) {
+            try {
+                entry.onComplete.accept(fullContent);
+            } catch (Exception e) {
+                log.error("stream {} onComplete error: ", uid, e);
+            }
+        }
+        return Optional.of(fullContent);
+    }
+
+    // 流式过程中读取已生成的完整内容
+    public Optional<String> getContent(String uid) {
+        StreamEntry entry = uid != null ? streams.get(uid) : null;
+        if (entry == null) {
+            return Optional.empty();
+        }
+        synchronized (entry) {
+            return Optional.of(entry.content.toString());
+        }
+    }
+
+    public int size() {
+        return streams.size();
+    }
+
+    private void flushExpired() {
+        long now = System.currentTimeMillis();
+        streams.forEach((uid, entry) -> {
+            try {
+                boolean idle;
+                synchronized (entry) {
+                    idle = now - entry.lastAppendAt >= idleTimeoutMillis;
+                    if (!idle && now - entry.lastFlushAt >= flushIntervalMillis) {
+                        flush(entry);
+                    }
+                }
+                if (idle) {
+                    log.info("stream message {} idle timeout, complete", uid);
+                    complete(uid);
+                }
+            } catch (Exception e) {
+                log.error("flush stream message {} error: ", uid, e);
+            }
+        });
+    }
+
+    // 调用方持有entry锁
+    private void flush(StreamEntry entry) {
+        int length = entry.content.length();
+        if (length > entry.flushedLength) {
+            String delta = entry.content.substring(entry.flushedLength);
+            messagePersistCache.pushForPersist(entry.toChunkJson(delta));
+            entry.flushedLength = length;
+        }
+        entry.lastFlushAt = System.currentTimeMillis();
+    }
+
+    private static MessageProtobuf copyOf(MessageProtobuf message) {
+        return MessageProtobuf.builder()
+                .uid(message.getUid())
+                .type(MessageTypeEnum.STREAM)
+                .status(message.getStatus())
+                .createdAt(message.getCreatedAt())
+                .client(message.getClient())
+                .thread(message.getThread())
+                .user(message.getUser())
+                .extra(message.getExtra())
+                .build();
+    }
+
+    private static class StreamEntry {
+
+        private final MessageProtobuf template;
+
+        private final Consumer<String> onComplete;
+
+        private final StringBuilder content = new StringBuilder();
+
+        private int flushedLength;
+
+        private long lastFlushAt;
+
+        private long lastAppendAt;
+
+        private boolean completed;
+
+        StreamEntry(MessageProtobuf template, Consumer<String> onComplete) {
+            this.template = template;
+            this.onComplete = onComplete;
+        }
+
+        String toChunkJson(String delta) {
+            template.setContent(delta);
+            return template.toJson();
+        }
+    }
+
+}
@@ -127,6 +127,12 @@ public enum MessageTypeEnum {
                 || MessageTypeEnum.DELIVERED == type;
     }
 
+    // 建立全文索引的消息类型，其他类型content为json
+    public static boolean shouldIndex(MessageTypeEnum type) {
+        return MessageTypeEnum.TEXT == type
+                || MessageTypeEnum.STREAM == type;
+    }
+
     public static boolean shouldCache(MessageTypeEnum type) {
         return MessageTypeEnum.TEXT == type
                 || MessageTypeEnum.IMAGE == type
@@ -69,6 +69,26 @@ public class MessageUtils {
         return message;
     }
 
+    // 自动回复，回复到访客消息所在会话
+    public static MessageProtobuf createAutoReplyMessage(ThreadProtobuf threadProtobuf, String orgUid, MessageTypeEnum type, String content) {
+        //
+        UserProtobuf sender = UserUtils.getSystemUser();
+        MessageExtra extra = MessageUtils.getMessageExtra(orgUid);
+        //
+        MessageProtobuf message = MessageProtobuf.builder()
+                .uid(UidUtils.getInstance().getUid())
+                .type(type)
+                .content(content)
+                .status(MessageStatusEnum.SUCCESS)
+                .createdAt(LocalDateTime.now())
+                .client(ClientEnum.SYSTEM)
+                .thread(threadProtobuf)
+                .user(sender)
+                .extra(extra.toJson())
+                .build();
+        return message;
+    }
+
     public static MessageProtobuf createAutoCloseMessage(ThreadEntity thread, String content) {
         return MessageUtils.createThreadMessage(UidUtils.getInstance().getUid(),
                 thread,
@@ -15,7 +15,7 @@ package com.bytedesk.core.message.event;
 
 import org.springframework.context.ApplicationEvent;
 
-import com.bytedesk.core.message.MessageEntity;
+import com.bytedesk.core.message.MessageSnapshot;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -26,9 +26,9 @@ public class MessageCreateEvent extends ApplicationEvent {
 
     private static final long serialVersionUID = 1L;
 
-    private final MessageEntity message;
+    private final MessageSnapshot message;
 
-    public MessageCreateEvent(Object source, MessageEntity message) {
+    public MessageCreateEvent(Object source, MessageSnapshot message) {
         super(source);
         this.message = message;
     }
@@ -15,18 +15,27 @@ package com.bytedesk.core.message.event;
 
 import org.springframework.context.ApplicationEvent;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import com.bytedesk.core.message.MessageEnvelope;
 
-@Data
-@EqualsAndHashCode(callSuper = false)
+import lombok.Getter;
+
+@Getter
 public class MessageJsonEvent extends ApplicationEvent {
 
-    private String json;
+    // 所有监听器共享同一个信封，消息只解析一次
+    private final MessageEnvelope envelope;
 
     public MessageJsonEvent(Object source, String json) {
+        this(source, MessageEnvelope.fromJson(json));
+    }
+
+    public MessageJsonEvent(Object source, MessageEnvelope envelope) {
         super(source);
-        this.json = json;
+        this.envelope = envelope;
+    }
+
+    public String getJson() {
+        return envelope.getJson();
     }
     
 }
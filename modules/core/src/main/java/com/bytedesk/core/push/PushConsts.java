@@ -0,0 +1,30 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 10:06:42
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 10:06:42
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.push;
+
+public class PushConsts {
+
+    private PushConsts() {
+    }
+
+    // DeadlineScheduler中验证码过期的类型
+    public static final String DEADLINE_TYPE_EXPIRE = "push_expire";
+
+    // 扫码登录有效时间(分钟)
+    public static final int SCAN_EXPIRE_MINUTES = 3;
+
+    // 手机/邮箱验证码有效时间(分钟)
+    public static final int CODE_EXPIRE_MINUTES = 15;
+
+}
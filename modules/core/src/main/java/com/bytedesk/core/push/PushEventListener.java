@@ -13,11 +13,13 @@
  */
 package com.bytedesk.core.push;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
+import com.bytedesk.core.deadline.DeadlineScheduler;
 
+import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -28,11 +30,17 @@ public class PushEventListener {
 
     private final PushRestService pushService;
 
-    @EventListener
-    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
-        // log.info("push quartz one min event");
+    private final DeadlineScheduler deadlineScheduler;
+
+    @PostConstruct
+    public void init() {
         // auto outdate code
-        pushService.autoOutdateCode();
+        deadlineScheduler.registerHandler(PushConsts.DEADLINE_TYPE_EXPIRE, pushService::expireCodes);
+    }
+
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        pushService.scheduleExpirePending();
     }
-    
+
 }
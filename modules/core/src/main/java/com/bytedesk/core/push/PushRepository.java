@@ -13,11 +13,15 @@
  */
 package com.bytedesk.core.push;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface PushRepository extends JpaRepository<PushEntity, Long>, JpaSpecificationExecutor<PushEntity> {
 
@@ -35,4 +39,10 @@ public interface PushRepository extends JpaRepository<PushEntity, Long>, JpaSpec
 
     Boolean existsByStatusAndTypeAndReceiverAndContent(String status, String type, String receiver,
             String content);
+
+    // 仅更新仍为fromStatus的记录，多节点重复执行无影响
+    @Modifying
+    @Transactional
+    @Query("UPDATE PushEntity p SET p.status = ?3 WHERE p.uid IN ?1 AND p.status = ?2")
+    int updateStatusByUidIn(Collection<String> uids, String fromStatus, String toStatus);
 }
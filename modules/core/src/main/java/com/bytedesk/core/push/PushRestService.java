@@ -13,10 +13,9 @@
  */
 package com.bytedesk.core.push;
 
-import java.time.ZoneId;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 import org.modelmapper.ModelMapper;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Caching;
@@ -24,12 +23,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import com.bytedesk.core.base.BaseRestService;
 import com.bytedesk.core.config.properties.BytedeskProperties;
 import com.bytedesk.core.constant.I18Consts;
 import com.bytedesk.core.constant.TypeConsts;
+import com.bytedesk.core.deadline.DeadlineScheduler;
 import com.bytedesk.core.exception.EmailExistsException;
 import com.bytedesk.core.exception.MobileExistsException;
 import com.bytedesk.core.ip.IpService;
@@ -69,6 +68,8 @@ public class PushRestService extends BaseRestService<PushEntity, PushRequest, Pu
 
     private final PushFilterService pushFilterService;
 
+    private final DeadlineScheduler deadlineScheduler;
+
     // String receiver, String type, String client, String authType, String platform, String orgUid,
     public Boolean sendCode(AuthRequest authRequest, HttpServletRequest request) {
 
@@ -163,6 +164,12 @@ public class PushRestService extends BaseRestService<PushEntity, PushRequest, Pu
     public Boolean validateCode(String receiver,  String code, HttpServletRequest request) {        
         // check if has already send validate code within 15min
         Optional<PushEntity> pushOptional = findByStatusAndReceiverAndContent(PushStatusEnum.PENDING, receiver, code);
+        if (pushOptional.isPresent() && isExpired(pushOptional.get())) {
+            // 登记过期时间的节点已下线，尚未标记过期
+            pushOptional.get().setStatus(PushStatusEnum.EXPIRED.name());
+            save(pushOptional.get());
+            return false;
+        }
         if (pushOptional.isPresent()) {
             // pushOptional.get().setStatus(StatusConsts.CODE_STATUS_CONFIRM);
             pushOptional.get().setStatus(PushStatusEnum.CONFIRMED.name());
@@ -284,11 +291,16 @@ public class PushRestService extends BaseRestService<PushEntity, PushRequest, Pu
             // TODO: 根据status, 缓存或清空缓存，clear or cache according to status
     })
     public PushEntity save(PushEntity push) {
+        PushEntity savedPush;
         try {
-            return doSave(push);
+            savedPush = doSave(push);
         } catch (ObjectOptimisticLockingFailureException e) {
-            return handleOptimisticLockingFailureException(e, push);
+            savedPush = handleOptimisticLockingFailureException(e, push);
+        }
+        if (savedPush != null) {
+            scheduleExpire(savedPush);
         }
+        return savedPush;
     }
 
     @Override
@@ -317,38 +329,39 @@ public class PushRestService extends BaseRestService<PushEntity, PushRequest, Pu
         return pushRepository.findByStatus(PushStatusEnum.PENDING.name());
     }
 
-    // 自动过期
-    @Async
-    public void autoOutdateCode() {
+    // 启动时登记全部待验证记录的过期时间
+    public void scheduleExpirePending() {
         List<PushEntity> pendingPushes = findStatusPending();
-        // log.info("autoOutdateCode pendingPushes {}", pendingPushes.size());
-        pendingPushes.forEach(push -> {
-            // 计算两个日期之间的毫秒差
-            // long diffInMilliseconds = Math.abs(new Date().getTime() - push.getUpdatedAt().getTime());
-            // 将LocalDateTime转换为时间戳
-            long currentTimeMillis = System.currentTimeMillis();
-            ZoneId systemZone = ZoneId.systemDefault(); // 获取系统默认时区
-            long updatedAtMillis = push.getUpdatedAt().atZone(systemZone).toInstant().toEpochMilli();
-            long diffInMilliseconds = Math.abs(currentTimeMillis - updatedAtMillis);
-
-            // 转换为分钟
-            long diffInMinutes = TimeUnit.MILLISECONDS.toMinutes(diffInMilliseconds);
-            // log.info("autoOutdateCode diffInMinutes {} {}", push.getContent(), diffInMinutes);
-            //
-            // if (push.getType().equals(TypeConsts.TYPE_SCAN)) {
-            if (push.getType().equals(AuthTypeEnum.SCAN_LOGIN.name())) {
-                // log.info("autoOutdateCode scan TypeConsts.TYPE_SCAN");
-                // 扫码有效时间3分钟
-                if (diffInMinutes > 3) {
-                    push.setStatus(PushStatusEnum.EXPIRED.name());
-                    save(push);
-                }
-            } else if (diffInMinutes > 15) {
-                // 手机验证码有效时间15分钟
-                push.setStatus(PushStatusEnum.EXPIRED.name());
-                save(push);
-            }
-        });
+        pendingPushes.forEach(this::scheduleExpire);
+        log.info("schedule expire pending pushes {}", pendingPushes.size());
+    }
+
+    // 待验证时登记过期时间，状态变化后取消
+    public void scheduleExpire(PushEntity push) {
+        if (PushStatusEnum.PENDING.name().equals(push.getStatus())) {
+            deadlineScheduler.schedule(PushConsts.DEADLINE_TYPE_EXPIRE, push.getUid(), getExpireAt(push));
+        } else {
+            deadlineScheduler.cancel(PushConsts.DEADLINE_TYPE_EXPIRE, push.getUid());
+        }
+    }
+
+    // 自动过期，由DeadlineScheduler按批次回调
+    public void expireCodes(List<String> uids) {
+        int count = pushRepository.updateStatusByUidIn(uids, PushStatusEnum.PENDING.name(),
+                PushStatusEnum.EXPIRED.name());
+        log.debug("expire codes {}/{}", count, uids.size());
+    }
+
+    private boolean isExpired(PushEntity push) {
+        return !getExpireAt(push).isAfter(LocalDateTime.now());
+    }
+
+    private LocalDateTime getExpireAt(PushEntity push) {
+        LocalDateTime updatedAt = push.getUpdatedAt() != null ? push.getUpdatedAt() : LocalDateTime.now();
+        // 扫码有效时间3分钟，手机验证码有效时间15分钟
+        return AuthTypeEnum.SCAN_LOGIN.name().equals(push.getType())
+                ? updatedAt.plusMinutes(PushConsts.SCAN_EXPIRE_MINUTES)
+                : updatedAt.plusMinutes(PushConsts.CODE_EXPIRE_MINUTES);
     }
 
     @Override
@@ -0,0 +1,131 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-20 10:05:27
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-20 10:05:27
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.rate_limiter;
+
+import java.security.Principal;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.bytedesk.core.annotation.ApiRateLimiter;
+import com.bytedesk.core.base.BaseRequest;
+import com.bytedesk.core.constant.I18Consts;
+import com.bytedesk.core.exception.RateLimitException;
+import com.bytedesk.core.ip.IpUtils;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 处理@ApiRateLimiter注解：按注解指定的维度获取令牌，
+ * 超限时抛出RateLimitException(http返回429及Retry-After)，或按throwException=false直接丢弃本次调用
+ */
+@Slf4j
+@Aspect
+@Component
+@AllArgsConstructor
+public class ApiRateLimiterAspect {
+
+    private final RateLimiterService rateLimiterService;
+
+    @Around(value = "@annotation(apiRateLimiter)")
+    public Object doAround(ProceedingJoinPoint joinPoint, ApiRateLimiter apiRateLimiter) throws Throwable {
+        double qps = apiRateLimiter.value() > 0 ? apiRateLimiter.value() : apiRateLimiter.qps();
+        if (qps <= 0) {
+            return joinPoint.proceed();
+        }
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        String name = StringUtils.hasText(apiRateLimiter.name()) ? apiRateLimiter.name()
+                : signature.getDeclaringType().getSimpleName() + "." + signature.getName();
+        String key = resolveKey(apiRateLimiter.key(), signature, joinPoint.getArgs());
+        long maxWaitMillis = apiRateLimiter.timeUnit().toMillis(apiRateLimiter.timeout());
+        //
+        long waitMillis = rateLimiterService.acquire(name, key, qps, apiRateLimiter.capacity(), maxWaitMillis);
+        if (waitMillis > maxWaitMillis) {
+            rateLimiterService.rejected(name, apiRateLimiter.key());
+            log.debug("rate limited: name {}, key {}, retry after {}ms", name, key, waitMillis);
+            if (apiRateLimiter.throwException()) {
+                throw new RateLimitException(I18Consts.I18N_TOO_MANY_REQUESTS, (waitMillis + 999) / 1000);
+            }
+            return null;
+        }
+        if (waitMillis > 0) {
+            // 已预占令牌，等待到令牌到达时间
+            Thread.sleep(waitMillis);
+        }
+        return joinPoint.proceed();
+    }
+
+    private String resolveKey(RateLimiterKeyEnum keyType, MethodSignature signature, Object[] args) {
+        if (keyType == RateLimiterKeyEnum.GLOBAL) {
+            return "global";
+        }
+        HttpServletRequest request = getRequest();
+        if (keyType == RateLimiterKeyEnum.VISITOR || keyType == RateLimiterKeyEnum.ORG) {
+            String paramName = keyType == RateLimiterKeyEnum.VISITOR ? "uid" : "orgUid";
+            String value = resolveArg(paramName, signature, args);
+            if (!StringUtils.hasText(value) && request != null) {
+                value = request.getParameter(paramName);
+            }
+            if (StringUtils.hasText(value)) {
+                return value;
+            }
+        }
+        // 按ip，stomp等非http调用取不到ip时按用户
+        if (request != null) {
+            return IpUtils.getClientIp(request);
+        }
+        for (Object arg : args) {
+            if (arg instanceof Principal) {
+                return ((Principal) arg).getName();
+            }
+        }
+        return "unknown";
+    }
+
+    // 从同名参数或请求对象中获取访客uid、组织uid
+    private String resolveArg(String paramName, MethodSignature signature, Object[] args) {
+        String[] parameterNames = signature.getParameterNames();
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof BaseRequest) {
+                BaseRequest baseRequest = (BaseRequest) arg;
+                String value = "uid".equals(paramName) ? baseRequest.getUid() : baseRequest.getOrgUid();
+                if (StringUtils.hasText(value)) {
+                    return value;
+                }
+            } else if (arg instanceof String && parameterNames != null && paramName.equals(parameterNames[i])) {
+                return (String) arg;
+            }
+        }
+        return null;
+    }
+
+    private HttpServletRequest getRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getRequest();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-20 09:12:40
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-20 09:12:40
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.rate_limiter;
+
+/**
+ * 限流维度
+ */
+public enum RateLimiterKeyEnum {
+    // 按客户端ip
+    IP,
+    // 按访客uid，取不到时按ip
+    VISITOR,
+    // 按组织uid，取不到时按ip
+    ORG,
+    // 按mqtt连接clientId，取不到时按ip
+    CLIENT,
+    // 接口整体
+    GLOBAL;
+}
@@ -0,0 +1,174 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-20 09:31:52
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-20 09:31:52
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.rate_limiter;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+import com.bytedesk.core.redis.RedisConsts;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 令牌桶限流
+ *
+ * 采用GCRA(通用信元速率算法)实现令牌桶：每个桶只记录下一个令牌的理论到达时间(TAT)，
+ * 本地桶用一个AtomicLong做CAS更新，无锁；集群模式下TAT保存在redis中，由lua脚本原子更新，
+ * 所有节点共享同一个桶。redis不可用时退化为本地桶，不阻断请求。
+ *
+ * 速率为qps，突发容量为capacity：空闲时最多可连续通过capacity个请求，之后按1/qps的间隔放行。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RateLimiterService {
+
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('TIME') " +
+            "local now = tonumber(t[1]) * 1000000 + tonumber(t[2]) " +
+            "local interval = tonumber(ARGV[1]) " +
+            "local tolerance = tonumber(ARGV[2]) " +
+            "local maxWait = tonumber(ARGV[3]) " +
+            "local tat = tonumber(redis.call('GET', KEYS[1])) or now " +
+            "local base = math.max(tat, now) " +
+            "local wait = base - now - tolerance " +
+            "if wait > maxWait then return wait end " +
+            "local nextTat = base + interval " +
+            "redis.call('SET', KEYS[1], string.format('%.0f', nextTat), 'PX', math.ceil((nextTat - now) / 1000) + 1000) " +
+            "if wait < 0 then return 0 end " +
+            "return wait",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final BytedeskMetrics bytedeskMetrics;
+
+    // 集群部署时使用redis共享令牌桶
+    @Value("${bytedesk.rate-limiter.distributed:${bytedesk.cluster.enabled:false}}")
+    private boolean distributed;
+
+    // name:key -> 本地令牌桶，长时间未访问的桶自动移除
+    private final Cache<String, LocalBucket> localBuckets = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 获取一个令牌
+     *
+     * @param name          限流桶名称
+     * @param key           限流维度取值，如ip、访客uid
+     * @param qps           每秒令牌数
+     * @param capacity      突发容量，小于1时取qps向上取整
+     * @param maxWaitMillis 令牌不足时最多等待的毫秒数
+     * @return 获取令牌需要等待的毫秒数，0表示立即获取；大于maxWaitMillis表示获取失败，即建议的重试等待时间
+     */
+    public long acquire(String name, String key, double qps, int capacity, long maxWaitMillis) {
+        if (qps <= 0) {
+            return 0;
+        }
+        int burst = capacity > 0 ? capacity : (int) Math.max(1, Math.ceil(qps));
+        String bucketKey = name + ":" + key;
+        long maxWaitMicros = TimeUnit.MILLISECONDS.toMicros(Math.max(maxWaitMillis, 0));
+        long waitMicros = -1;
+        if (distributed) {
+            waitMicros = acquireRedis(bucketKey, qps, burst, maxWaitMicros);
+        }
+        if (waitMicros < 0) {
+            waitMicros = localBuckets.get(bucketKey, k -> new LocalBucket())
+                    .acquire(qps, burst, maxWaitMicros, TimeUnit.NANOSECONDS.toMicros(System.nanoTime()));
+        }
+        // 向上取整，避免客户端按0毫秒立即重试
+        return (waitMicros + 999) / 1000;
+    }
+
+    /**
+     * 只使用本地令牌桶获取令牌，不等待
+     *
+     * 用于netty io线程等不能阻塞的场景，如mqtt发布消息：同一连接只会落在一个节点上，按连接限流无需共享
+     *
+     * @return 是否获取成功
+     */
+    public boolean tryAcquireLocal(String name, String key, double qps, int capacity) {
+        if (qps <= 0) {
+            return true;
+        }
+        int burst = capacity > 0 ? capacity : (int) Math.max(1, Math.ceil(qps));
+        return localBuckets.get(name + ":" + key, k -> new LocalBucket())
+                .acquire(qps, burst, 0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime())) == 0;
+    }
+
+    /**
+     * 记录一次被拒绝的调用
+     */
+    public void rejected(String name, RateLimiterKeyEnum keyType) {
+        bytedeskMetrics.rateLimited(name, keyType.name());
+    }
+
+    // redis不可用时返回-1
+    private long acquireRedis(String bucketKey, double qps, int burst, long maxWaitMicros) {
+        long interval = intervalMicros(qps);
+        try {
+            Long wait = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                    Collections.singletonList(RedisConsts.RATE_LIMITER_PREFIX + bucketKey),
+                    String.valueOf(interval),
+                    String.valueOf(interval * (burst - 1)),
+                    String.valueOf(maxWaitMicros));
+            return wait == null ? -1 : Math.max(wait, 0);
+        } catch (Exception e) {
+            log.warn("rate limiter redis unavailable, fallback to local bucket: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    private static long intervalMicros(double qps) {
+        return Math.max(1, Math.round(1_000_000 / qps));
+    }
+
+    /**
+     * 本地令牌桶
+     */
+    private static final class LocalBucket {
+
+        // 下一个令牌的理论到达时间(微秒)
+        private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+        long acquire(double qps, int burst, long maxWaitMicros, long now) {
+            long interval = intervalMicros(qps);
+            long tolerance = interval * (burst - 1);
+            for (;;) {
+                long current = tat.get();
+                long base = Math.max(current, now);
+                long wait = base - now - tolerance;
+                if (wait > maxWaitMicros) {
+                    return wait;
+                }
+                if (tat.compareAndSet(current, base + interval)) {
+                    return Math.max(wait, 0);
+                }
+            }
+        }
+    }
+
+}
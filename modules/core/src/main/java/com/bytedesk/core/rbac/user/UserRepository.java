@@ -18,6 +18,8 @@ import java.util.Optional;
 // import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * https://spring.io/guides/tutorials/react-and-spring-data-rest/
@@ -31,6 +33,10 @@ public interface UserRepository extends JpaRepository<UserEntity, Long>, JpaSpec
 
     Optional<UserEntity> findByUid(String uid);
 
+    // 只查询uid，不加载用户实体
+    @Query("SELECT u.uid FROM UserEntity u WHERE u.id = :id")
+    Optional<String> findUidById(@Param("id") Long id);
+
     Optional<UserEntity> findByEmailAndPlatformAndDeletedFalse(String email, String platform);
 
     Optional<UserEntity> findByMobileAndPlatformAndDeletedFalse(String mobile, String platform);
@@ -20,6 +20,46 @@ public class RedisConsts {
     public static final String BYTEDESK_REDIS_PREFIX = "bytedeskim:";
     // 
     public static final String CONNECTED_MQTT_CLIENT_IDS = BYTEDESK_REDIS_PREFIX + "connected-mqtt-client-ids";
+    // 按用户：userUid -> 在线clientIds有序集合，分数为过期时间戳
+    public static final String CONNECTED_MQTT_USER_PREFIX = BYTEDESK_REDIS_PREFIX + "connected-mqtt-user:";
+    // 集群：clientId -> 持有其长连接的节点
+    public static final String CLUSTER_CLIENT_NODE = BYTEDESK_REDIS_PREFIX + "cluster-client-node";
+    // 集群：节点存活标记前缀，带过期时间
+    public static final String CLUSTER_NODE_ALIVE_PREFIX = BYTEDESK_REDIS_PREFIX + "cluster-node-alive:";
+    // 集群：节点间点对点转发channel前缀
+    public static final String CLUSTER_NODE_CHANNEL_PREFIX = BYTEDESK_REDIS_PREFIX + "cluster-node:";
+    // 集群：广播channel
+    public static final String CLUSTER_BROADCAST_CHANNEL = BYTEDESK_REDIS_PREFIX + "cluster-broadcast";
+    // 工作组路由：agentUid -> 客服负载快照
+    public static final String WORKGROUP_AGENT_LOAD = BYTEDESK_REDIS_PREFIX + "workgroup-agent-load";
+    // 队列计数：queueUid -> 计数hash
+    public static final String QUEUE_COUNTER_PREFIX = BYTEDESK_REDIS_PREFIX + "queue-counter:";
+    // 队列计数：day -> (memberUid -> 成员计数项)
+    public static final String QUEUE_MEMBER_COUNTER_PREFIX = BYTEDESK_REDIS_PREFIX + "queue-member-counter:";
+    // 队列计数：定时重算锁
+    public static final String QUEUE_COUNTER_RECONCILE_LOCK = BYTEDESK_REDIS_PREFIX + "queue-counter-reconcile-lock";
+    // 接口限流：name:key -> 令牌桶理论到达时间(微秒)
+    public static final String RATE_LIMITER_PREFIX = BYTEDESK_REDIS_PREFIX + "rate-limiter:";
+    // UID：工作机器ID租约前缀，workerId -> 持有者标识，带过期时间
+    public static final String UID_WORKER_LEASE_PREFIX = BYTEDESK_REDIS_PREFIX + "uid-worker-lease:";
+    // UID：workerId -> 已发放到的秒数
+    public static final String UID_WORKER_SECOND = BYTEDESK_REDIS_PREFIX + "uid-worker-second";
+    // UID：分配workerId时的探测起点
+    public static final String UID_WORKER_CURSOR = BYTEDESK_REDIS_PREFIX + "uid-worker-cursor";
+    // 机器人答案缓存：kbUid -> 知识库内容版本，知识库内容变化时递增
+    public static final String AI_ANSWER_CACHE_VERSION_PREFIX = BYTEDESK_REDIS_PREFIX + "ai-answer-cache-version:";
+    // 全文索引：全量重建完成标记
+    public static final String SEARCH_INDEX_READY = BYTEDESK_REDIS_PREFIX + "search-index-ready";
+    // 全文索引：按组织重建完成的orgUid集合
+    public static final String SEARCH_INDEX_READY_ORGS = BYTEDESK_REDIS_PREFIX + "search-index-ready-orgs";
+    // 全文索引：重建中或丢弃过文档、索引不完整的orgUid集合
+    public static final String SEARCH_INDEX_STALE_ORGS = BYTEDESK_REDIS_PREFIX + "search-index-stale-orgs";
+    // 会话主动消息：threadUid:updatedAt，多节点同一到期时间只发送一次
+    public static final String THREAD_PROACTIVE_PREFIX = BYTEDESK_REDIS_PREFIX + "thread-proactive:";
+    // 导出：exportUid -> 导出进度json
+    public static final String EXPORT_PROGRESS_PREFIX = BYTEDESK_REDIS_PREFIX + "export-progress:";
+    // 导出：exportUid -> 取消标记，导出节点每写一批检查一次
+    public static final String EXPORT_CANCEL_PREFIX = BYTEDESK_REDIS_PREFIX + "export-cancel:";
 
     
 
@@ -0,0 +1,65 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2026-10-18 10:12:05
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2026-10-18 10:12:05
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 保存实体后按缓存名称和key删除注解缓存
+ *
+ * 实体大多在服务内部调用save保存，经过不了@CacheEvict代理，由doSave中调用这里。
+ * 立即删除一次，事务提交后再删除一次，避免提交前并发读取把旧值写回缓存。
+ * spring.cache.type=none时没有CacheManager，不做任何处理。
+ */
+@Service
+@RequiredArgsConstructor
+public class CacheEvictService {
+
+    private final ObjectProvider<CacheManager> cacheManagerProvider;
+
+    public void evict(String cacheName, Object... keys) {
+        CacheManager cacheManager = cacheManagerProvider.getIfUnique();
+        if (cacheManager == null) {
+            return;
+        }
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            return;
+        }
+        Runnable evict = () -> {
+            for (Object key : keys) {
+                if (key != null) {
+                    cache.evict(key);
+                }
+            }
+        };
+        evict.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict.run();
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-28 10:04:26
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-28 10:04:26
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * 在节点之间广播本地缓存失效
+ */
+public interface CacheInvalidationBus {
+
+    void publish(CacheInvalidationMessage message);
+
+    void subscribe(Consumer<CacheInvalidationMessage> listener);
+}
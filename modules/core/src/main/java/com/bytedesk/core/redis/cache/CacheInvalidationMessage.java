@@ -0,0 +1,38 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-28 10:03:11
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-28 10:03:11
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 缓存失效通知，key为空时清空整个缓存
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidationMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // 发送节点，接收方忽略自己发出的通知
+    private String nodeId;
+
+    private String cacheName;
+
+    private String key;
+}
@@ -14,16 +14,24 @@
 package com.bytedesk.core.redis.cache;
 
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.annotation.CachingConfigurer;
-// import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.interceptor.CacheErrorHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 /**
  * cache config
@@ -34,9 +42,19 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
  * https://www.51cto.com/article/753777.html
  */
 @Configuration
-// @EnableCaching // 开启缓存
+@EnableCaching // 开启缓存
+// spring.cache.type=none时不开启注解缓存，与之前一致
+@ConditionalOnExpression("'${spring.cache.type:none}' == 'redis' or '${spring.cache.type:none}' == 'caffeine'")
 public class RedisCacheConfig implements CachingConfigurer {
 
+    // 一级本地缓存每个缓存名称的最大条数
+    @Value("${bytedesk.cache.local.maximum-size:10000}")
+    private long localMaximumSize;
+
+    // 一级本地缓存写入后过期时间，失效通知丢失时本地旧值最多保留这么久
+    @Value("${bytedesk.cache.local.expire-after-write-seconds:60}")
+    private long localExpireAfterWriteSeconds;
+
     // @Bean
     // public Caffeine<Object, Object> caffeineConfig() {
     // return Caffeine.newBuilder().expireAfterWrite(60, TimeUnit.SECONDS);
@@ -97,16 +115,47 @@ public class RedisCacheConfig implements CachingConfigurer {
     // initialize a collection: could not initialize proxy - no Session
     // * @return
     // */
+    /**
+     * spring.cache.type=redis：一级caffeine + 二级redis，通过redis pub/sub通知其他节点删除本地缓存
+     */
     @Bean
     @ConditionalOnProperty(name ="spring.cache.type", havingValue = "redis")
-    public RedisCacheManager redisCacheManager(RedisConnectionFactory redisConnectionFactory) {
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+            StringRedisTemplate stringRedisTemplate,
+            @Qualifier("cacheInvalidationListenerContainer") RedisMessageListenerContainer cacheInvalidationListenerContainer) {
         RedisCacheConfiguration defaults = RedisCacheConfiguration.defaultCacheConfig()
             .entryTtl(Duration.ofDays(2))
                 .enableTimeToIdle();
-        return RedisCacheManager.builder(redisConnectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
                 // .cacheDefaults(cacheConfiguration())
                 .cacheDefaults(defaults)
                 .build();
+        redisCacheManager.afterPropertiesSet();
+        return new TwoLevelCacheManager(localCacheBuilder(), redisCacheManager,
+                new RedisCacheInvalidationBus(stringRedisTemplate, cacheInvalidationListenerContainer));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name ="spring.cache.type", havingValue = "redis")
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
+    /**
+     * spring.cache.type=caffeine：只有本地缓存，单节点部署和测试使用
+     */
+    @Bean
+    @ConditionalOnProperty(name ="spring.cache.type", havingValue = "caffeine")
+    public TwoLevelCacheManager localCacheManager() {
+        return new TwoLevelCacheManager(localCacheBuilder(), null, new LocalCacheInvalidationBus());
+    }
+
+    private Caffeine<Object, Object> localCacheBuilder() {
+        return Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireAfterWriteSeconds, TimeUnit.SECONDS);
     }
 
     // public RedisCacheConfiguration cacheConfiguration() {
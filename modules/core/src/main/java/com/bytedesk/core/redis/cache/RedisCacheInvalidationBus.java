@@ -0,0 +1,73 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-28 10:07:52
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-28 10:07:52
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.redis.pubsub.RedisPubsubConst;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 通过redis pub/sub广播失效通知
+ *
+ * 通知丢失(如与redis短暂断连)时，其他节点的一级缓存最多在过期时间后恢复一致
+ */
+@Slf4j
+public class RedisCacheInvalidationBus implements CacheInvalidationBus, MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final List<Consumer<CacheInvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisCacheInvalidationBus(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        container.addMessageListener(this, new ChannelTopic(RedisPubsubConst.BYTEDESK_PUBSUB_CHANNEL_CACHE));
+    }
+
+    @Override
+    public void publish(CacheInvalidationMessage message) {
+        try {
+            stringRedisTemplate.convertAndSend(RedisPubsubConst.BYTEDESK_PUBSUB_CHANNEL_CACHE, JSON.toJSONString(message));
+        } catch (Exception e) {
+            log.warn("Publish cache invalidation {} error: {}", message.getCacheName(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidationMessage> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CacheInvalidationMessage invalidation = JSON.parseObject(
+                new String(message.getBody(), StandardCharsets.UTF_8), CacheInvalidationMessage.class);
+        if (invalidation == null) {
+            return;
+        }
+        listeners.forEach(listener -> listener.accept(invalidation));
+    }
+
+}
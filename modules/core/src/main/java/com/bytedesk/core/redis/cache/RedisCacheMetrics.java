@@ -0,0 +1,117 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-23 10:12:36
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-23 10:12:36
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 导出@Cacheable缓存的命中统计，按缓存名称区分本地命中、redis命中和未命中
+ *
+ * TwoLevelCacheManager的缓存在首次使用时才创建，启动时无法全部注册，
+ * 因此每分钟检查一次新出现的缓存名称并注册；缓存名称来自注解，数量固定
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisCacheMetrics {
+
+    private final ObjectProvider<CacheManager> cacheManagerProvider;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Set<String> boundCacheNames = ConcurrentHashMap.newKeySet();
+
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        bindCaches();
+    }
+
+    @EventListener
+    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
+        bindCaches();
+    }
+
+    private void bindCaches() {
+        CacheManager cacheManager = cacheManagerProvider.getIfUnique();
+        if (cacheManager == null) {
+            return;
+        }
+        for (String name : cacheManager.getCacheNames()) {
+            if (boundCacheNames.contains(name)) {
+                continue;
+            }
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof TwoLevelCache twoLevelCache && boundCacheNames.add(name)) {
+                bind(name, twoLevelCache);
+            }
+        }
+    }
+
+    private void bind(String name, TwoLevelCache cache) {
+        FunctionCounter.builder("bytedesk.cache.gets", cache, TwoLevelCache::getLevel1HitCount)
+                .description("Number of cache lookups")
+                .tag("cache", name)
+                .tag("result", "local_hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("bytedesk.cache.gets", cache, TwoLevelCache::getLevel2HitCount)
+                .description("Number of cache lookups")
+                .tag("cache", name)
+                .tag("result", "redis_hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("bytedesk.cache.gets", cache, TwoLevelCache::getMissCount)
+                .description("Number of cache lookups")
+                .tag("cache", name)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("bytedesk.cache.remote.invalidations", cache, TwoLevelCache::getRemoteInvalidationCount)
+                .description("Number of local evictions requested by other nodes")
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("bytedesk.cache.hit.ratio", cache, c -> hitRatio(c.getLevel1HitCount() + c.getLevel2HitCount(), c))
+                .description("Cache hit ratio since startup")
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("bytedesk.cache.local.hit.ratio", cache, c -> hitRatio(c.getLevel1HitCount(), c))
+                .description("Local cache hit ratio since startup")
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("bytedesk.cache.local.size", cache, TwoLevelCache::getLevel1Size)
+                .description("Estimated number of local cache entries")
+                .tag("cache", name)
+                .register(meterRegistry);
+        log.debug("bind cache metrics: {}", name);
+    }
+
+    private static double hitRatio(long hits, TwoLevelCache cache) {
+        long total = cache.getLevel1HitCount() + cache.getLevel2HitCount() + cache.getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-28 10:12:35
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-28 10:12:35
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.lang.Nullable;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+/**
+ * 一级caffeine本地缓存 + 二级redis缓存
+ *
+ * 读：本地 -> redis -> 加载，逐级回填；写、删除：先redis后本地，再通知其他节点删除本地缓存，
+ * 其他节点之后从redis读取新值。通知与并发读交错时其他节点可能回填旧值，最多在本地过期时间后恢复一致。
+ * level2为null时只有本地缓存。
+ *
+ * 本地缓存保存序列化后的副本，每次命中反序列化出新对象，调用方修改返回的实体不会改动缓存中的值，
+ * 与从redis读取时一致；无法序列化的值不放入本地缓存。
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+
+    private final Cache<Object, Object> level1;
+
+    @Nullable
+    private final org.springframework.cache.Cache level2;
+
+    // (cacheName, key) -> 通知其他节点，key为null表示清空
+    private final BiConsumer<String, Object> invalidationPublisher;
+
+    private final RedisSerializer<Object> level1Serializer;
+
+    private final LongAdder level1Hits = new LongAdder();
+
+    private final LongAdder level2Hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder remoteInvalidations = new LongAdder();
+
+    public TwoLevelCache(String name, Cache<Object, Object> level1, @Nullable org.springframework.cache.Cache level2,
+            BiConsumer<String, Object> invalidationPublisher, RedisSerializer<Object> level1Serializer) {
+        super(true);
+        this.name = name;
+        this.level1 = level1;
+        this.level2 = level2;
+        this.invalidationPublisher = invalidationPublisher;
+        this.level1Serializer = level1Serializer;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return level1;
+    }
+
+    @Override
+    @Nullable
+    protected Object lookup(Object key) {
+        Object value = level1.getIfPresent(key);
+        if (value != null) {
+            level1Hits.increment();
+            return fromLevel1(value);
+        }
+        value = lookupLevel2(key);
+        if (value != null) {
+            putLevel1(key, value);
+            return value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Nullable
+    private Object lookupLevel2(Object key) {
+        if (level2 == null) {
+            return null;
+        }
+        ValueWrapper wrapper = level2.get(key);
+        if (wrapper == null) {
+            return null;
+        }
+        level2Hits.increment();
+        return toStoreValue(wrapper.get());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = level1.getIfPresent(key);
+        if (value != null) {
+            level1Hits.increment();
+            return (T) fromStoreValue(fromLevel1(value));
+        }
+        // 本节点同一key只加载一次；返回本次加载的对象，本地缓存中只保留副本
+        Object[] result = new Object[1];
+        level1.get(key, k -> {
+            Object stored = lookupLevel2(k);
+            if (stored == null) {
+                misses.increment();
+                T loaded;
+                try {
+                    loaded = valueLoader.call();
+                } catch (Exception e) {
+                    throw new ValueRetrievalException(k, valueLoader, e);
+                }
+                if (level2 != null) {
+                    level2.put(k, loaded);
+                }
+                stored = toStoreValue(loaded);
+            }
+            result[0] = stored;
+            return toLevel1(stored);
+        });
+        if (result[0] == null) {
+            // 其他线程已加载完成，本线程未执行加载
+            value = level1.getIfPresent(key);
+            if (value != null) {
+                return (T) fromStoreValue(fromLevel1(value));
+            }
+            return get(key, valueLoader);
+        }
+        return (T) fromStoreValue(result[0]);
+    }
+
+    @Override
+    public void put(Object key, @Nullable Object value) {
+        if (level2 != null) {
+            level2.put(key, value);
+        }
+        putLevel1(key, toStoreValue(value));
+        invalidationPublisher.accept(name, key);
+    }
+
+    @Override
+    public void evict(Object key) {
+        if (level2 != null) {
+            level2.evict(key);
+        }
+        level1.invalidate(key);
+        invalidationPublisher.accept(name, key);
+    }
+
+    @Override
+    public void clear() {
+        if (level2 != null) {
+            level2.clear();
+        }
+        level1.invalidateAll();
+        invalidationPublisher.accept(name, null);
+    }
+
+    /**
+     * 收到其他节点的失效通知，只删除本地缓存
+     */
+    public void evictLocal(@Nullable Object key) {
+        remoteInvalidations.increment();
+        if (key == null) {
+            level1.invalidateAll();
+        } else {
+            level1.invalidate(key);
+        }
+    }
+
+    private void putLevel1(Object key, Object storeValue) {
+        Object level1Value = toLevel1(storeValue);
+        if (level1Value != null) {
+            level1.put(key, level1Value);
+        } else {
+            level1.invalidate(key);
+        }
+    }
+
+    /**
+     * 转为本地缓存中保存的形式，无法序列化时返回null
+     */
+    @Nullable
+    private Object toLevel1(Object storeValue) {
+        if (isImmutable(storeValue)) {
+            return storeValue;
+        }
+        try {
+            return new Level1Value(level1Serializer.serialize(storeValue));
+        } catch (SerializationException e) {
+            return null;
+        }
+    }
+
+    private Object fromLevel1(Object level1Value) {
+        if (level1Value instanceof Level1Value serialized) {
+            return level1Serializer.deserialize(serialized.bytes());
+        }
+        return level1Value;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == NullValue.INSTANCE || value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Enum<?>;
+    }
+
+    // 本地缓存中的序列化副本
+    private record Level1Value(byte[] bytes) {
+    }
+
+    public long getLevel1HitCount() {
+        return level1Hits.sum();
+    }
+
+    public long getLevel2HitCount() {
+        return level2Hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getRemoteInvalidationCount() {
+        return remoteInvalidations.sum();
+    }
+
+    public long getLevel1Size() {
+        return level1.estimatedSize();
+    }
+
+}
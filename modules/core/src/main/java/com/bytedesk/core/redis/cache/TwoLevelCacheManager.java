@@ -0,0 +1,90 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-28 10:18:09
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-28 10:18:09
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.lang.Nullable;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 多级缓存管理器，缓存按名称在首次使用时创建
+ *
+ * redisCacheManager为null时只使用本地缓存，失效通知通过CacheInvalidationBus在节点间传递
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    private final Caffeine<Object, Object> level1Builder;
+
+    @Nullable
+    private final RedisCacheManager redisCacheManager;
+
+    private final CacheInvalidationBus invalidationBus;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 本地缓存副本与redis默认的值序列化方式一致
+    private final RedisSerializer<Object> level1Serializer = RedisSerializer.java(getClass().getClassLoader());
+
+    public TwoLevelCacheManager(Caffeine<Object, Object> level1Builder, @Nullable RedisCacheManager redisCacheManager,
+            CacheInvalidationBus invalidationBus) {
+        this.level1Builder = level1Builder;
+        this.redisCacheManager = redisCacheManager;
+        this.invalidationBus = invalidationBus;
+        invalidationBus.subscribe(this::onInvalidation);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n, level1Builder.build(),
+                redisCacheManager != null ? redisCacheManager.getCache(n) : null, this::publishInvalidation, level1Serializer));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private void publishInvalidation(String cacheName, @Nullable Object key) {
+        // 注解中的key均为字符串，其他类型的key无法在其他节点还原，改为清空该缓存
+        String invalidationKey = key instanceof String stringKey ? stringKey : null;
+        invalidationBus.publish(new CacheInvalidationMessage(nodeId, cacheName, invalidationKey));
+    }
+
+    private void onInvalidation(CacheInvalidationMessage message) {
+        if (nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(message.getCacheName());
+        if (cache != null) {
+            log.debug("cache invalidation from {}: {} {}", message.getNodeId(), message.getCacheName(), message.getKey());
+            cache.evictLocal(message.getKey());
+        }
+    }
+
+}
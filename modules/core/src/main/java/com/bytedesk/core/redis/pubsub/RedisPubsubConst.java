@@ -20,5 +20,7 @@ public class RedisPubsubConst {
     
     public static final String BYTEDESK_PUBSUB_CHANNEL_STRING = RedisConsts.BYTEDESK_REDIS_PREFIX + "pubsub";
     public static final String BYTEDESK_PUBSUB_CHANNEL_OBJECT = RedisConsts.BYTEDESK_REDIS_PREFIX + "pubsub_object";
+    // 多级缓存失效通知
+    public static final String BYTEDESK_PUBSUB_CHANNEL_CACHE = RedisConsts.BYTEDESK_REDIS_PREFIX + "pubsub_cache";
     public static final String BYTEDESK_PUBSUB_KEY_EXPIRE = RedisConsts.BYTEDESK_REDIS_PREFIX + "__keyevent@*__:expired";
 }
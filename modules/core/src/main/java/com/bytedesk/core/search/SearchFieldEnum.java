@@ -0,0 +1,23 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:12:31
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:12:31
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+public enum SearchFieldEnum {
+    // 消息内容
+    CONTENT,
+    // 消息发送者、会话访客昵称
+    NICKNAME,
+    // 会话topic
+    TOPIC,
+}
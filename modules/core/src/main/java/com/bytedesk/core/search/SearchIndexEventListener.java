@@ -0,0 +1,70 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:41:36
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:41:36
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.message.MessageSnapshot;
+import com.bytedesk.core.message.event.MessageCreateEvent;
+import com.bytedesk.core.message.event.MessageUpdateEvent;
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
+import com.bytedesk.core.thread.ThreadSnapshot;
+import com.bytedesk.core.thread.event.ThreadCreateEvent;
+import com.bytedesk.core.thread.event.ThreadUpdateEvent;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+@AllArgsConstructor
+public class SearchIndexEventListener {
+
+    private final SearchIndexService searchIndexService;
+
+    @EventListener
+    public void onMessageCreateEvent(MessageCreateEvent event) {
+        MessageSnapshot message = event.getMessage();
+        searchIndexService.indexMessage(message.getUid(), message.getOrgUid(), message.getType(),
+                message.getContent(), message.getUser(), message.getCreatedAt());
+    }
+
+    @EventListener
+    public void onMessageUpdateEvent(MessageUpdateEvent event) {
+        MessageSnapshot message = event.getMessage();
+        searchIndexService.reindexMessageContent(message.getUid(), message.getOrgUid(), message.getType(),
+                message.getContent(), message.getCreatedAt());
+    }
+
+    @EventListener
+    public void onThreadCreateEvent(ThreadCreateEvent event) {
+        ThreadSnapshot thread = event.getThread();
+        searchIndexService.indexThread(thread.getUid(), thread.getOrgUid(), thread.getTopic(), thread.getUser(),
+                thread.getCreatedAt(), false);
+    }
+
+    @EventListener
+    public void onThreadUpdateEvent(ThreadUpdateEvent event) {
+        ThreadSnapshot thread = event.getThread();
+        searchIndexService.indexThread(thread.getUid(), thread.getOrgUid(), thread.getTopic(), thread.getUser(),
+                thread.getCreatedAt(), true);
+    }
+
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        searchIndexService.flush();
+    }
+
+}
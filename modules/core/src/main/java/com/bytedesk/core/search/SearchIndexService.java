@@ -0,0 +1,470 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:25:17
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:25:17
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.base.BaseEntity;
+import com.bytedesk.core.message.MessageEntity;
+import com.bytedesk.core.message.MessageRepository;
+import com.bytedesk.core.message.MessageTypeEnum;
+import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.rbac.user.UserProtobuf;
+import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadRepository;
+import com.bytedesk.core.uid.UidUtils;
+import com.bytedesk.core.uid.utils.NamingThreadFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 消息、会话全文索引
+ *
+ * 索引保存在数据库倒排表bytedesk_core_search_term中，集群各节点共享：
+ * 消息、会话保存时分词放入待写队列，定时批量写入；内容变化时先删除该字段旧词再写入。
+ * 开启前已有的数据需调用rebuild重建，重建完成前查询仍回退为 LIKE；
+ * 待写队列溢出或多次写入失败而丢弃文档的组织同样回退，直到该组织重建完成。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchIndexService {
+
+    // 写入失败的文档重新入队的最大次数，超出后丢弃并需重建
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private final SearchTermRepository searchTermRepository;
+
+    private final SearchTermJdbcRepository searchTermJdbcRepository;
+
+    private final MessageRepository messageRepository;
+
+    private final ThreadRepository threadRepository;
+
+    private final UidUtils uidUtils;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 默认关闭；关闭时不写入索引，查询回退为 LIKE
+    @Value("${bytedesk.search.index.enabled:false}")
+    private boolean enabled;
+
+    // 每批写入的词条数，以及重建时每批读取的消息数
+    @Value("${bytedesk.search.index.batch-size:500}")
+    private int batchSize;
+
+    // 待写入文档数上限，超出后丢弃并需重建
+    @Value("${bytedesk.search.index.max-pending:100000}")
+    private int maxPending;
+
+    // docType:field:docUid -> 待写入文档，同一文档多次变化只写最后一次
+    private final Map<String, PendingDoc> pending = new LinkedHashMap<>();
+
+    // docType:field:docUid -> 已索引文本hash，会话每条消息都会更新，文本未变时跳过
+    private final Cache<String, Integer> indexedCache = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(30, TimeUnit.MINUTES)
+            .build();
+
+    // orgUid -> 索引是否完整可查，重建完成或丢弃文档后其他节点最多1分钟生效
+    private final Cache<String, Boolean> searchableCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    private final ExecutorService rebuildExecutor = Executors
+            .newSingleThreadExecutor(new NamingThreadFactory("SearchIndex-Rebuild", true));
+
+    @PreDestroy
+    public void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 组织的索引是否可用于查询：已全量或按组织重建完成，且之后没有丢弃过文档
+     */
+    public boolean isSearchable(String orgUid) {
+        if (!enabled) {
+            return false;
+        }
+        String key = orgUid != null ? orgUid : "";
+        return searchableCache.get(key, this::loadSearchable);
+    }
+
+    private boolean loadSearchable(String orgUid) {
+        try {
+            if (StringUtils.hasText(orgUid)
+                    && Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(RedisConsts.SEARCH_INDEX_STALE_ORGS, orgUid))) {
+                return false;
+            }
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisConsts.SEARCH_INDEX_READY))) {
+                return true;
+            }
+            return StringUtils.hasText(orgUid)
+                    && Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(RedisConsts.SEARCH_INDEX_READY_ORGS, orgUid));
+        } catch (Exception e) {
+            log.warn("Search index load searchable {} error: {}", orgUid, e.getMessage());
+            return false;
+        }
+    }
+
+    // 文档被丢弃，该组织的索引不再完整，查询回退为 LIKE 直到重建
+    private void markStale(String orgUid) {
+        if (!StringUtils.hasText(orgUid)) {
+            return;
+        }
+        searchableCache.put(orgUid, false);
+        try {
+            stringRedisTemplate.opsForSet().add(RedisConsts.SEARCH_INDEX_STALE_ORGS, orgUid);
+        } catch (Exception e) {
+            log.warn("Search index mark stale {} error: {}", orgUid, e.getMessage());
+        }
+    }
+
+    /**
+     * 消息新建
+     */
+    public void indexMessage(String uid, String orgUid, String type, String content, String user, LocalDateTime createdAt) {
+        if (!enabled) {
+            return;
+        }
+        if (MessageTypeEnum.shouldIndex(MessageTypeEnum.fromValue(type))) {
+            index(SearchDocTypeEnum.MESSAGE, SearchFieldEnum.CONTENT, uid, orgUid, createdAt, content, false);
+        }
+        index(SearchDocTypeEnum.MESSAGE, SearchFieldEnum.NICKNAME, uid, orgUid, createdAt, getNickname(user), false);
+    }
+
+    /**
+     * 消息更新，如流式消息追加内容、撤回
+     */
+    public void reindexMessageContent(String uid, String orgUid, String type, String content, LocalDateTime createdAt) {
+        if (!enabled) {
+            return;
+        }
+        boolean indexable = MessageTypeEnum.shouldIndex(MessageTypeEnum.fromValue(type));
+        if (!indexable && !isIndexedOrPending(cacheKey(SearchDocTypeEnum.MESSAGE, SearchFieldEnum.CONTENT, uid))) {
+            // 非文本消息未建过内容索引，已读回执等状态更新不查询删除
+            return;
+        }
+        index(SearchDocTypeEnum.MESSAGE, SearchFieldEnum.CONTENT, uid, orgUid, createdAt, indexable ? content : null, true);
+    }
+
+    /**
+     * 会话新建或更新
+     */
+    public void indexThread(String uid, String orgUid, String topic, String user, LocalDateTime createdAt, boolean replace) {
+        if (!enabled) {
+            return;
+        }
+        index(SearchDocTypeEnum.THREAD, SearchFieldEnum.TOPIC, uid, orgUid, createdAt, topic, replace);
+        index(SearchDocTypeEnum.THREAD, SearchFieldEnum.NICKNAME, uid, orgUid, createdAt, getNickname(user), replace);
+    }
+
+    private void index(SearchDocTypeEnum docType, SearchFieldEnum field, String docUid, String orgUid,
+            LocalDateTime docCreatedAt, String text, boolean replace) {
+        if (!StringUtils.hasText(docUid)) {
+            return;
+        }
+        String key = cacheKey(docType, field, docUid);
+        int hash = Objects.hashCode(text);
+        Integer previous = indexedCache.getIfPresent(key);
+        if (previous != null && previous == hash) {
+            return;
+        }
+        if (!replace && !StringUtils.hasText(text)) {
+            return;
+        }
+        Set<String> terms = SearchTokenizer.terms(field, text);
+        synchronized (pending) {
+            PendingDoc old = pending.get(key);
+            if (old == null && pending.size() >= maxPending) {
+                drop(docType, docUid, orgUid, "pending queue full");
+                return;
+            }
+            pending.put(key, new PendingDoc(docType, field, docUid, orgUid, docCreatedAt, terms, hash,
+                    replace || (old != null && old.replace()), 0));
+        }
+    }
+
+    private boolean isIndexedOrPending(String key) {
+        if (indexedCache.getIfPresent(key) != null) {
+            return true;
+        }
+        synchronized (pending) {
+            return pending.containsKey(key);
+        }
+    }
+
+    private void drop(SearchDocTypeEnum docType, String docUid, String orgUid, String reason) {
+        log.warn("Search index {}, drop {} {}, rebuild of org {} is required", reason, docType, docUid, orgUid);
+        markStale(orgUid);
+    }
+
+    /**
+     * 批量写入待写队列，由定时事件调用
+     */
+    public void flush() {
+        List<PendingDoc> docs;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            docs = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        try {
+            // 需替换的文档先删除该字段旧词，与写入新词在同一事务中
+            List<String[]> deletes = new ArrayList<>();
+            for (PendingDoc doc : docs) {
+                if (doc.replace()) {
+                    deletes.add(new String[] { doc.docUid(), doc.field().name() });
+                }
+            }
+            searchTermJdbcRepository.replaceTerms(deletes, toTerms(docs), batchSize);
+        } catch (Exception e) {
+            log.error("Search index flush {} docs error: {}", docs.size(), e.getMessage());
+            requeue(docs);
+            return;
+        }
+        // 提交成功后才记录为已索引，之后相同文本跳过
+        for (PendingDoc doc : docs) {
+            indexedCache.put(doc.key(), doc.hash());
+        }
+    }
+
+    // 事务已回滚，重新入队下次重试；期间同一文档有更新时以新的为准
+    private void requeue(List<PendingDoc> docs) {
+        synchronized (pending) {
+            for (PendingDoc doc : docs) {
+                PendingDoc newer = pending.get(doc.key());
+                if (newer != null) {
+                    if (doc.replace() && !newer.replace()) {
+                        pending.put(doc.key(), newer.withReplace());
+                    }
+                } else if (doc.attempts() + 1 >= MAX_FLUSH_ATTEMPTS) {
+                    drop(doc.docType(), doc.docUid(), doc.orgUid(), "flush failed " + MAX_FLUSH_ATTEMPTS + " times");
+                } else if (pending.size() >= maxPending) {
+                    drop(doc.docType(), doc.docUid(), doc.orgUid(), "pending queue full");
+                } else {
+                    pending.put(doc.key(), doc.retry());
+                }
+            }
+        }
+    }
+
+    private List<SearchTermEntity> toTerms(List<PendingDoc> docs) {
+        List<SearchTermEntity> terms = new ArrayList<>();
+        for (PendingDoc doc : docs) {
+            for (String term : doc.terms()) {
+                terms.add(SearchTermEntity.builder()
+                        .uid(uidUtils.getUid())
+                        .orgUid(doc.orgUid())
+                        .term(term)
+                        .docType(doc.docType().name())
+                        .field(doc.field().name())
+                        .docUid(doc.docUid())
+                        .docCreatedAt(doc.docCreatedAt())
+                        .build());
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 从数据库重建索引，orgUid为空时重建全部组织
+     * 
+     * @return false 已有重建任务在执行
+     */
+    public boolean rebuild(String orgUid) {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                // 重建期间旧词已删除，查询回退为 LIKE
+                markRebuilding(orgUid);
+                rebuildMessages(orgUid);
+                rebuildThreads(orgUid);
+                markRebuilt(orgUid);
+            } catch (Exception e) {
+                log.error("Search index rebuild error: {}", e.getMessage(), e);
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    private void markRebuilding(String orgUid) {
+        if (StringUtils.hasText(orgUid)) {
+            stringRedisTemplate.opsForSet().add(RedisConsts.SEARCH_INDEX_STALE_ORGS, orgUid);
+            stringRedisTemplate.opsForSet().remove(RedisConsts.SEARCH_INDEX_READY_ORGS, orgUid);
+            searchableCache.put(orgUid, false);
+        } else {
+            stringRedisTemplate.delete(List.of(RedisConsts.SEARCH_INDEX_READY, RedisConsts.SEARCH_INDEX_READY_ORGS,
+                    RedisConsts.SEARCH_INDEX_STALE_ORGS));
+            searchableCache.invalidateAll();
+        }
+    }
+
+    private void markRebuilt(String orgUid) {
+        if (StringUtils.hasText(orgUid)) {
+            stringRedisTemplate.opsForSet().add(RedisConsts.SEARCH_INDEX_READY_ORGS, orgUid);
+            stringRedisTemplate.opsForSet().remove(RedisConsts.SEARCH_INDEX_STALE_ORGS, orgUid);
+            searchableCache.invalidate(orgUid);
+        } else {
+            stringRedisTemplate.opsForValue().set(RedisConsts.SEARCH_INDEX_READY, "1");
+            searchableCache.invalidateAll();
+        }
+    }
+
+    private void rebuildMessages(String orgUid) {
+        deleteByDocType(SearchDocTypeEnum.MESSAGE, orgUid);
+        // 新消息在前，重建期间最近的消息先可搜索
+        long count = scan(messageRepository, orgUid, messages -> {
+            List<PendingDoc> docs = new ArrayList<>();
+            for (MessageEntity message : messages) {
+                if (MessageTypeEnum.shouldIndex(MessageTypeEnum.fromValue(message.getType()))) {
+                    docs.add(pendingDoc(SearchDocTypeEnum.MESSAGE, SearchFieldEnum.CONTENT, message.getUid(),
+                            message.getOrgUid(), message.getCreatedAt(), message.getContent()));
+                }
+                docs.add(pendingDoc(SearchDocTypeEnum.MESSAGE, SearchFieldEnum.NICKNAME, message.getUid(),
+                        message.getOrgUid(), message.getCreatedAt(), getNickname(message.getUser())));
+            }
+            searchTermJdbcRepository.insertTerms(toTerms(docs), batchSize);
+        });
+        log.info("Search index rebuild {} messages, orgUid {}", count, orgUid);
+    }
+
+    private void rebuildThreads(String orgUid) {
+        deleteByDocType(SearchDocTypeEnum.THREAD, orgUid);
+        long count = scan(threadRepository, orgUid, threads -> {
+            List<PendingDoc> docs = new ArrayList<>();
+            for (ThreadEntity thread : threads) {
+                docs.add(pendingDoc(SearchDocTypeEnum.THREAD, SearchFieldEnum.TOPIC, thread.getUid(),
+                        thread.getOrgUid(), thread.getCreatedAt(), thread.getTopic()));
+                docs.add(pendingDoc(SearchDocTypeEnum.THREAD, SearchFieldEnum.NICKNAME, thread.getUid(),
+                        thread.getOrgUid(), thread.getCreatedAt(), getNickname(thread.getUser())));
+            }
+            searchTermJdbcRepository.insertTerms(toTerms(docs), batchSize);
+        });
+        log.info("Search index rebuild {} threads, orgUid {}", count, orgUid);
+    }
+
+    private void deleteByDocType(SearchDocTypeEnum docType, String orgUid) {
+        if (StringUtils.hasText(orgUid)) {
+            searchTermRepository.deleteByDocTypeAndOrgUid(docType.name(), orgUid);
+        } else {
+            searchTermRepository.deleteByDocType(docType.name());
+        }
+    }
+
+    // 按id倒序分批读取未删除的记录
+    private <T extends BaseEntity> long scan(JpaSpecificationExecutor<T> repository,
+            String orgUid, Consumer<List<T>> consumer) {
+        Specification<T> specs = (root, query, criteriaBuilder) -> StringUtils.hasText(orgUid)
+                ? criteriaBuilder.and(criteriaBuilder.equal(root.get("deleted"), false),
+                        criteriaBuilder.equal(root.get("orgUid"), orgUid))
+                : criteriaBuilder.equal(root.get("deleted"), false);
+        long count = 0;
+        Long lastId = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            Long before = lastId;
+            Specification<T> keyset = before == null ? specs
+                    : specs.and((root, query, criteriaBuilder) -> criteriaBuilder.lessThan(root.get("id"), before));
+            List<T> entities = repository.findBy(keyset,
+                    query -> query.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(batchSize).all());
+            if (entities.isEmpty()) {
+                break;
+            }
+            consumer.accept(entities);
+            count += entities.size();
+            lastId = entities.get(entities.size() - 1).getId();
+        }
+        return count;
+    }
+
+    private PendingDoc pendingDoc(SearchDocTypeEnum docType, SearchFieldEnum field, String docUid, String orgUid,
+            LocalDateTime docCreatedAt, String text) {
+        return new PendingDoc(docType, field, docUid, orgUid, docCreatedAt, SearchTokenizer.terms(field, text),
+                Objects.hashCode(text), false, 0);
+    }
+
+    private String getNickname(String user) {
+        if (!StringUtils.hasText(user)) {
+            return null;
+        }
+        try {
+            UserProtobuf userProtobuf = JSON.parseObject(user, UserProtobuf.class);
+            return userProtobuf != null ? userProtobuf.getNickname() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String cacheKey(SearchDocTypeEnum docType, SearchFieldEnum field, String docUid) {
+        return docType.name() + ":" + field.name() + ":" + docUid;
+    }
+
+    private record PendingDoc(SearchDocTypeEnum docType, SearchFieldEnum field, String docUid, String orgUid,
+            LocalDateTime docCreatedAt, Set<String> terms, int hash, boolean replace, int attempts) {
+
+        String key() {
+            return cacheKey(docType, field, docUid);
+        }
+
+        PendingDoc withReplace() {
+            return new PendingDoc(docType, field, docUid, orgUid, docCreatedAt, terms, hash, true, attempts);
+        }
+
+        PendingDoc retry() {
+            return new PendingDoc(docType, field, docUid, orgUid, docCreatedAt, terms, hash, replace, attempts + 1);
+        }
+    }
+
+}
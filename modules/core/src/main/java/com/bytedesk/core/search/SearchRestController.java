@@ -0,0 +1,55 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:52:44
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:52:44
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bytedesk.core.rbac.role.RolePermissions;
+import com.bytedesk.core.utils.JsonResult;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * 全文索引重建，查询通过原有消息、会话搜索接口
+ */
+@RestController
+@RequestMapping("/api/v1/search")
+@AllArgsConstructor
+public class SearchRestController {
+
+    private final SearchIndexService searchIndexService;
+
+    // orgUid为空时重建全部组织
+    @PreAuthorize(RolePermissions.ROLE_SUPER)
+    @PostMapping("/rebuild")
+    public ResponseEntity<?> rebuild(@RequestParam(required = false) String orgUid) {
+        if (!searchIndexService.rebuild(orgUid)) {
+            return ResponseEntity.ok(JsonResult.error("search index is rebuilding"));
+        }
+        return ResponseEntity.ok(JsonResult.success());
+    }
+
+    @PreAuthorize(RolePermissions.ROLE_SUPER)
+    @GetMapping("/rebuild/status")
+    public ResponseEntity<?> rebuildStatus() {
+        return ResponseEntity.ok(JsonResult.success(searchIndexService.isRebuilding()));
+    }
+
+}
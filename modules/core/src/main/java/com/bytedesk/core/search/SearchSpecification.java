@@ -0,0 +1,73 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:48:03
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:48:03
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.utils.ApplicationContextHolder;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+
+/**
+ * 用全文索引替代 LIKE '%x%'：
+ * uid IN (SELECT doc_uid FROM bytedesk_core_search_term WHERE term IN (...) GROUP BY doc_uid HAVING COUNT(DISTINCT term) = n)
+ * 即包含全部查询词的文档，分页、排序仍由原查询完成
+ */
+public final class SearchSpecification {
+
+    // 查询词过多时只取前面部分
+    private static final int MAX_QUERY_TERMS = 16;
+
+    private SearchSpecification() {
+    }
+
+    /**
+     * @return null 索引未开启或文本未切出词，调用方回退为 LIKE
+     */
+    public static Predicate matchTerms(Root<?> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder,
+            String orgUid, SearchDocTypeEnum docType, SearchFieldEnum field, String text) {
+        if (!ApplicationContextHolder.getBean(SearchIndexService.class).isSearchable(orgUid)) {
+            return null;
+        }
+        Set<String> terms = SearchTokenizer.terms(field, text);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        List<String> queryTerms = new ArrayList<>(terms).subList(0, Math.min(terms.size(), MAX_QUERY_TERMS));
+        //
+        Subquery<String> subquery = query.subquery(String.class);
+        Root<SearchTermEntity> termRoot = subquery.from(SearchTermEntity.class);
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(termRoot.get("term").in(queryTerms));
+        predicates.add(criteriaBuilder.equal(termRoot.get("field"), field.name()));
+        predicates.add(criteriaBuilder.equal(termRoot.get("docType"), docType.name()));
+        if (StringUtils.hasText(orgUid)) {
+            predicates.add(criteriaBuilder.equal(termRoot.get("orgUid"), orgUid));
+        }
+        subquery.select(termRoot.get("docUid"))
+                .where(predicates.toArray(new Predicate[0]))
+                .groupBy(termRoot.get("docUid"))
+                .having(criteriaBuilder.equal(criteriaBuilder.countDistinct(termRoot.get("term")), (long) queryTerms.size()));
+        return root.get("uid").in(subquery);
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:14:48
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:14:48
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import java.time.LocalDateTime;
+
+import com.bytedesk.core.base.BaseEntity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * 全文索引倒排表
+ *
+ * 每个文档字段分词后的每个词一行，按词查文档uid，替代对消息、会话大表的 LIKE '%x%' 全表扫描
+ */
+@Entity
+@Data
+@SuperBuilder
+@Accessors(chain = true)
+@EqualsAndHashCode(callSuper = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "bytedesk_core_search_term", indexes = {
+    @Index(name = "idx_search_term_term", columnList = "term, doc_field, doc_type, org_uid"),
+    @Index(name = "idx_search_term_doc_uid", columnList = "doc_uid")
+})
+public class SearchTermEntity extends BaseEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    @Column(length = SearchTokenizer.MAX_TERM_LENGTH)
+    private String term;
+
+    // SearchDocTypeEnum
+    private String docType;
+
+    // SearchFieldEnum
+    @Column(name = "doc_field")
+    private String field;
+
+    private String docUid;
+
+    private LocalDateTime docCreatedAt;
+}
@@ -0,0 +1,84 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-30 14:27:51
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-30 14:27:51
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * 倒排表批量写入
+ *
+ * 主键为IDENTITY，hibernate的saveAll逐行插入并回读主键；词条写入后只按词查询，不需要主键，
+ * 此处直接使用jdbc batch，删除旧词与写入新词在同一事务中，失败时整批回滚，可原样重试
+ */
+@Repository
+@AllArgsConstructor
+public class SearchTermJdbcRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO bytedesk_core_search_term "
+            + "(uuid, term, doc_type, doc_field, doc_uid, doc_created_at, "
+            + "version, created_at, updated_at, is_deleted, org_uid, level, platform) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL = "DELETE FROM bytedesk_core_search_term WHERE doc_uid = ? AND doc_field = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 删除文档字段的旧词，并写入新词
+     *
+     * @param deletes [docUid, field]
+     */
+    @Transactional
+    public void replaceTerms(List<String[]> deletes, List<SearchTermEntity> terms, int batchSize) {
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, deletes, batchSize, (ps, delete) -> {
+                ps.setString(1, delete[0]);
+                ps.setString(2, delete[1]);
+            });
+        }
+        insertTerms(terms, batchSize);
+    }
+
+    @Transactional
+    public void insertTerms(List<SearchTermEntity> terms, int batchSize) {
+        if (terms.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, terms, batchSize, (ps, term) -> {
+            ps.setString(1, term.getUid());
+            ps.setString(2, term.getTerm());
+            ps.setString(3, term.getDocType());
+            ps.setString(4, term.getField());
+            ps.setString(5, term.getDocUid());
+            ps.setTimestamp(6, term.getDocCreatedAt() != null ? Timestamp.valueOf(term.getDocCreatedAt()) : null);
+            ps.setInt(7, term.getVersion());
+            ps.setTimestamp(8, now);
+            ps.setTimestamp(9, now);
+            ps.setBoolean(10, term.isDeleted());
+            ps.setString(11, term.getOrgUid());
+            ps.setString(12, term.getLevel());
+            ps.setString(13, term.getPlatform());
+        });
+    }
+
+}
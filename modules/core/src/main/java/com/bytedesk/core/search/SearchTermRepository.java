@@ -0,0 +1,33 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:16:02
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:16:02
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface SearchTermRepository extends JpaRepository<SearchTermEntity, Long> {
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SearchTermEntity t WHERE t.docType = :docType")
+    int deleteByDocType(@Param("docType") String docType);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SearchTermEntity t WHERE t.docType = :docType AND t.orgUid = :orgUid")
+    int deleteByDocTypeAndOrgUid(@Param("docType") String docType, @Param("orgUid") String orgUid);
+}
@@ -0,0 +1,96 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-27 09:13:20
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-27 09:13:20
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.util.StringUtils;
+
+import com.github.houbb.segment.support.segment.mode.impl.SegmentModes;
+import com.github.houbb.segment.support.segment.result.impl.SegmentResultHandlers;
+import com.github.houbb.segment.util.SegmentHelper;
+
+/**
+ * 全文索引分词
+ *
+ * 建索引和查询使用同一套规则，查询词集合是文档词集合的子集时即匹配：
+ * CONTENT 使用 segment 词典分词；NICKNAME 较短且多为人名，汉字按单字切分以支持部分姓名查询；
+ * TOPIC 按'/'切分
+ */
+public final class SearchTokenizer {
+
+    public static final int MAX_TERM_LENGTH = 64;
+
+    // 超长文本只索引前面部分
+    private static final int MAX_TEXT_LENGTH = 2000;
+
+    private static final int MAX_TERMS = 256;
+
+    private SearchTokenizer() {
+    }
+
+    public static Set<String> terms(SearchFieldEnum field, String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (!StringUtils.hasText(text)) {
+            return terms;
+        }
+        String normalized = normalize(text);
+        if (field == SearchFieldEnum.TOPIC) {
+            for (String part : normalized.split("/")) {
+                addTerm(terms, part);
+            }
+            return terms;
+        }
+        List<String> words = SegmentHelper.segment(normalized, SegmentModes.search(), SegmentResultHandlers.word());
+        for (String word : words) {
+            if (terms.size() >= MAX_TERMS) {
+                break;
+            }
+            if (field == SearchFieldEnum.NICKNAME && containsHan(word)) {
+                word.codePoints().forEach(codePoint -> addTerm(terms, new String(Character.toChars(codePoint))));
+            } else {
+                addTerm(terms, word);
+            }
+        }
+        return terms;
+    }
+
+    private static String normalize(String text) {
+        if (text.length() > MAX_TEXT_LENGTH) {
+            text = text.substring(0, MAX_TEXT_LENGTH);
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    // 忽略空白和标点
+    private static void addTerm(Set<String> terms, String word) {
+        String term = word.trim();
+        if (term.isEmpty() || term.codePoints().noneMatch(Character::isLetterOrDigit)) {
+            return;
+        }
+        if (term.length() > MAX_TERM_LENGTH) {
+            term = term.substring(0, MAX_TERM_LENGTH);
+        }
+        terms.add(term);
+    }
+
+    private static boolean containsHan(String word) {
+        return word.codePoints().anyMatch(codePoint -> Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN);
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-17 17:05:40
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-17 17:05:40
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.socket.cluster;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.message.MessageSocketService;
+import com.bytedesk.core.socket.protobuf.model.ClusterProto;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 接收其他节点转发的消息帧，投递给本节点的mqtt/stomp客户端
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class ClusterFrameListener implements MessageListener {
+
+    private final ClusterSessionRegistry clusterSessionRegistry;
+
+    private final MessageSocketService messageSocketService;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        ClusterProto.Frame frame;
+        try {
+            frame = ClusterProto.Frame.parseFrom(message.getBody());
+        } catch (InvalidProtocolBufferException e) {
+            log.error("cluster frame parse error: {}", e.getMessage());
+            return;
+        }
+        if (clusterSessionRegistry.getNodeId().equals(frame.getFromNode())) {
+            // 自己发出的广播
+            return;
+        }
+        for (ClusterProto.MqttDelivery delivery : frame.getMqttList()) {
+            try {
+                messageSocketService.deliverMqttLocal(delivery.getTopic(), delivery.getMessage(),
+                        delivery.getClientIdsList());
+            } catch (Exception e) {
+                log.error("cluster mqtt delivery to topic {} error: ", delivery.getTopic(), e);
+            }
+        }
+        for (ClusterProto.StompDelivery delivery : frame.getStompList()) {
+            try {
+                messageSocketService.deliverStompLocal(delivery.getDestination(), delivery.getPayload());
+            } catch (Exception e) {
+                log.error("cluster stomp delivery to {} error: ", delivery.getDestination(), e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-17 16:48:12
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-17 16:48:12
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.socket.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.socket.protobuf.model.ClusterProto;
+import com.bytedesk.core.socket.protobuf.model.MessageProto;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 集群节点间消息转发
+ *
+ * 发往其他节点的消息按目标节点暂存，每隔flushInterval或累计batchSize条后合并为一个
+ * ClusterProto.Frame，以protobuf二进制经redis pub/sub发送到目标节点的channel；
+ * stomp消息由各节点内存broker分发，无法得知订阅者所在节点，因此广播给所有节点。
+ * 接收端见 ClusterFrameListener。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClusterMessageRouter {
+
+    // 广播帧在pending中的key
+    private static final String BROADCAST = "";
+
+    private final ClusterSessionRegistry clusterSessionRegistry;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${bytedesk.cluster.forward.batch-size:200}")
+    private int batchSize;
+
+    @Value("${bytedesk.cluster.forward.flush-interval-millis:10}")
+    private long flushIntervalMillis;
+
+    private final Map<String, PendingFrame> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BytedeskClusterRouter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushAll, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        flushAll();
+    }
+
+    public boolean isEnabled() {
+        return clusterSessionRegistry.isEnabled();
+    }
+
+    /**
+     * clientId长连接所在的其他节点
+     *
+     * @return 不在线、位于当前节点或未开启集群时返回null
+     */
+    public String findRemoteNode(String clientId) {
+        String owner = clusterSessionRegistry.getOwnerNode(clientId);
+        if (owner == null || owner.equals(clusterSessionRegistry.getNodeId())) {
+            return null;
+        }
+        return owner;
+    }
+
+    // 转发mqtt消息给目标节点上的clientIds
+    public void forwardMqtt(String nodeId, String topic, Collection<String> clientIds,
+            MessageProto.Message messageProto) {
+        if (!isEnabled() || clientIds.isEmpty()) {
+            return;
+        }
+        ClusterProto.MqttDelivery delivery = ClusterProto.MqttDelivery.newBuilder()
+                .setTopic(topic)
+                .addAllClientIds(clientIds)
+                .setMessage(messageProto)
+                .build();
+        enqueue(nodeId, delivery);
+    }
+
+    // 广播stomp消息给其他节点
+    public void broadcastStomp(String destination, String payload) {
+        if (!isEnabled()) {
+            return;
+        }
+        ClusterProto.StompDelivery delivery = ClusterProto.StompDelivery.newBuilder()
+                .setDestination(destination)
+                .setPayload(payload)
+                .build();
+        enqueue(BROADCAST, delivery);
+    }
+
+    private void enqueue(String nodeId, Object delivery) {
+        PendingFrame frame = pending.computeIfAbsent(nodeId, key -> new PendingFrame());
+        frame.deliveries.offer(delivery);
+        if (frame.size.incrementAndGet() >= batchSize && executor != null) {
+            // 积累到一批，立即发送
+            executor.execute(() -> flush(nodeId, frame));
+        }
+    }
+
+    private void flushAll() {
+        pending.forEach(this::flush);
+    }
+
+    private void flush(String nodeId, PendingFrame frame) {
+        while (frame.size.get() > 0) {
+            ClusterProto.Frame.Builder builder = ClusterProto.Frame.newBuilder()
+                    .setFromNode(clusterSessionRegistry.getNodeId());
+            int count = 0;
+            Object delivery;
+            while (count < batchSize && (delivery = frame.deliveries.poll()) != null) {
+                frame.size.decrementAndGet();
+                if (delivery instanceof ClusterProto.MqttDelivery) {
+                    builder.addMqtt((ClusterProto.MqttDelivery) delivery);
+                } else {
+                    builder.addStomp((ClusterProto.StompDelivery) delivery);
+                }
+                count++;
+            }
+            if (count == 0) {
+                return;
+            }
+            publish(nodeId, builder.build().toByteArray(), count);
+        }
+    }
+
+    private void publish(String nodeId, byte[] body, int count) {
+        String channel = BROADCAST.equals(nodeId)
+                ? RedisConsts.CLUSTER_BROADCAST_CHANNEL
+                : RedisConsts.CLUSTER_NODE_CHANNEL_PREFIX + nodeId;
+        byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.execute((RedisCallback<Long>) (RedisConnection connection) ->
+                    connection.publish(channelBytes, body));
+        } catch (Exception e) {
+            // 节点间转发为尽力而为，不重试
+            log.error("cluster forward {} deliveries to {} error: {}", count, channel, e.getMessage());
+        }
+    }
+
+    private static class PendingFrame {
+
+        private final Queue<Object> deliveries = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+    }
+
+}
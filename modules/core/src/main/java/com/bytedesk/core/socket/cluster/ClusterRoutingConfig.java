@@ -0,0 +1,42 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-17 17:12:26
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-17 17:12:26
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.socket.cluster;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import com.bytedesk.core.redis.RedisConsts;
+
+@Configuration
+@ConditionalOnProperty(name = "bytedesk.cluster.enabled", havingValue = "true", matchIfMissing = false)
+public class ClusterRoutingConfig {
+
+    // 监听发往本节点的转发帧及集群广播帧
+    @Bean
+    RedisMessageListenerContainer clusterMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+            ClusterFrameListener clusterFrameListener, ClusterSessionRegistry clusterSessionRegistry) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(clusterFrameListener,
+                new ChannelTopic(RedisConsts.CLUSTER_NODE_CHANNEL_PREFIX + clusterSessionRegistry.getNodeId()));
+        container.addMessageListener(clusterFrameListener,
+                new ChannelTopic(RedisConsts.CLUSTER_BROADCAST_CHANNEL));
+        return container;
+    }
+
+}
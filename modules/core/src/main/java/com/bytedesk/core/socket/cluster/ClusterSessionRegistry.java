@@ -0,0 +1,175 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-17 16:20:35
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-17 16:20:35
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.socket.cluster;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+import com.bytedesk.core.config.properties.BytedeskProperties;
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
+import com.bytedesk.core.redis.RedisConsts;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 集群会话注册表：记录每个mqtt clientId的长连接位于哪个节点
+ *
+ * clientId -> nodeId 保存在redis hash中，各节点每5秒刷新一次存活标记，
+ * 节点宕机后其存活标记过期，其上的clientId视为离线，不再向其转发。
+ * 为避免每条消息都访问redis，查询结果在本地短暂缓存。
+ * 未开启集群(bytedesk.cluster.enabled)时所有方法均为空操作。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClusterSessionRegistry {
+
+    private static final Duration NODE_ALIVE_TTL = Duration.ofSeconds(30);
+
+    // 仅当clientId仍归属当前节点时才删除，避免误删已重连到其他节点的记录
+    private static final DefaultRedisScript<Long> UNREGISTER_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then return redis.call('HDEL', KEYS[1], ARGV[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final BytedeskProperties bytedeskProperties;
+
+    private final BytedeskMetrics bytedeskMetrics;
+
+    @Getter
+    private String nodeId;
+
+    private final Cache<String, String> ownerCache = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofSeconds(2))
+            .recordStats()
+            .build();
+
+    private final Cache<String, Boolean> aliveCache = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterWrite(Duration.ofSeconds(5))
+            .recordStats()
+            .build();
+
+    @PostConstruct
+    public void init() {
+        bytedeskMetrics.monitorCache("cluster.session.owner", ownerCache);
+        bytedeskMetrics.monitorCache("cluster.node.alive", aliveCache);
+        nodeId = bytedeskProperties.getCluster().getNodeId();
+        if (!StringUtils.hasText(nodeId)) {
+            nodeId = getHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        if (isEnabled()) {
+            log.info("cluster enabled, nodeId {}", nodeId);
+            heartbeat();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (isEnabled()) {
+            try {
+                stringRedisTemplate.delete(RedisConsts.CLUSTER_NODE_ALIVE_PREFIX + nodeId);
+            } catch (Exception e) {
+                log.warn("remove cluster node {} alive flag error: {}", nodeId, e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(bytedeskProperties.getCluster().getEnabled());
+    }
+
+    public void register(String clientId) {
+        if (!isEnabled()) {
+            return;
+        }
+        stringRedisTemplate.opsForHash().put(RedisConsts.CLUSTER_CLIENT_NODE, clientId, nodeId);
+        ownerCache.put(clientId, nodeId);
+    }
+
+    public void unregister(String clientId) {
+        if (!isEnabled()) {
+            return;
+        }
+        stringRedisTemplate.execute(UNREGISTER_SCRIPT,
+                Collections.singletonList(RedisConsts.CLUSTER_CLIENT_NODE), clientId, nodeId);
+        ownerCache.invalidate(clientId);
+    }
+
+    /**
+     * 查询clientId所在的存活节点
+     *
+     * @return 节点标识，不在线或节点已失效时返回null
+     */
+    public String getOwnerNode(String clientId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String owner = ownerCache.get(clientId, key -> {
+            Object value = stringRedisTemplate.opsForHash().get(RedisConsts.CLUSTER_CLIENT_NODE, key);
+            return value != null ? value.toString() : null;
+        });
+        if (owner == null || nodeId.equals(owner)) {
+            return owner;
+        }
+        return isNodeAlive(owner) ? owner : null;
+    }
+
+    public boolean isNodeAlive(String node) {
+        return aliveCache.get(node,
+                key -> Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisConsts.CLUSTER_NODE_ALIVE_PREFIX + key)));
+    }
+
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        if (isEnabled()) {
+            heartbeat();
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            stringRedisTemplate.opsForValue().set(RedisConsts.CLUSTER_NODE_ALIVE_PREFIX + nodeId,
+                    String.valueOf(System.currentTimeMillis()), NODE_ALIVE_TTL);
+        } catch (Exception e) {
+            log.warn("cluster node {} heartbeat error: {}", nodeId, e.getMessage());
+        }
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "node";
+        }
+    }
+
+}
@@ -13,45 +13,101 @@
  */
 package com.bytedesk.core.socket.mqtt;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import com.bytedesk.core.config.BytedeskEventPublisher;
 import com.bytedesk.core.redis.RedisConsts;
 
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * mqtt在线状态
+ *
+ * 连接、心跳、断开只更新本地内存表，不在netty io线程上访问redis；
+ * syncToRedis定时将变化批量(pipeline)同步到redis有序集合，供集群内其他节点查询；
+ * 用户首个clientId上线、最后一个clientId下线或心跳超时时发布MqttPresenceChangeEvent。
+ */
+@Slf4j
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class MqttConnectionService {
 
+    // 心跳超时时间，客户端每30秒发送一次心跳
+    private static final long CONNECTED_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    // 距离上次同步超过该时间才再次同步到redis，保证redis中的过期时间始终领先
+    private static final long REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
     private final StringRedisTemplate stringRedisTemplate;
 
+    private final BytedeskEventPublisher bytedeskEventPublisher;
+
+    // clientId -> 本节点连接状态
+    private final Map<String, Presence> localClients = new ConcurrentHashMap<>();
+
+    // userUid -> 本节点在线的clientIds
+    private final Map<String, Set<String>> localUsers = new ConcurrentHashMap<>();
+
+    // 已断开，待从redis中删除
+    private final Set<String> pendingRemovals = ConcurrentHashMap.newKeySet();
+
     public void addConnected(String clientId) {
         if (!StringUtils.hasText(clientId)) {
             return;
         }
-        // 获取当前时间戳，并加上60秒
-        long expireAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
-        // 将clientId添加到有序集合中，并设置其分数为过期时间戳
-        stringRedisTemplate.opsForZSet().add(RedisConsts.CONNECTED_MQTT_CLIENT_IDS, clientId, expireAt);
+        long expireAt = System.currentTimeMillis() + CONNECTED_TTL_MILLIS;
+        Presence presence = localClients.computeIfAbsent(clientId, key -> new Presence());
+        presence.expireAt = expireAt;
+        pendingRemovals.remove(clientId);
+        // 用户的首个clientId
+        String userUid = getUserUid(clientId);
+        boolean[] online = { false };
+        localUsers.compute(userUid, (key, clientIds) -> {
+            if (clientIds == null) {
+                clientIds = ConcurrentHashMap.newKeySet();
+                online[0] = true;
+            }
+            clientIds.add(clientId);
+            return clientIds;
+        });
+        if (online[0]) {
+            bytedeskEventPublisher.publishMqttPresenceChangeEvent(userUid, true);
+        }
     }
 
     public void disconnected(String clientId) {
         if (!StringUtils.hasText(clientId)) {
             return;
         }
-        stringRedisTemplate.opsForZSet().remove(RedisConsts.CONNECTED_MQTT_CLIENT_IDS, clientId);
+        if (localClients.remove(clientId) != null) {
+            removeLocal(clientId);
+        }
+        pendingRemovals.add(clientId);
     }
 
     public boolean isConnected(String clientId) {
         if (!StringUtils.hasText(clientId)) {
             return false;
         }
+        Presence presence = localClients.get(clientId);
+        if (presence != null && System.currentTimeMillis() < presence.expireAt) {
+            return true;
+        }
+        // 其他节点上的连接
         Double score = stringRedisTemplate.opsForZSet().score(RedisConsts.CONNECTED_MQTT_CLIENT_IDS, clientId);
         if (score == null) {
             return false;
@@ -63,28 +119,145 @@ public class MqttConnectionService {
     // 定期清理过期的clientId
     public void cleanExpiredClients() {
         long now = System.currentTimeMillis();
+        // 本节点心跳超时的clientId
+        localClients.forEach((clientId, presence) -> {
+            if (presence.expireAt <= now && localClients.remove(clientId, presence)) {
+                log.info("mqtt clientId {} heartbeat timeout", clientId);
+                removeLocal(clientId);
+                pendingRemovals.add(clientId);
+            }
+        });
         // 删除有序集合中分数在当前时间之前的元素
         stringRedisTemplate.opsForZSet().removeRangeByScore(RedisConsts.CONNECTED_MQTT_CLIENT_IDS, 0, now);
     }
 
+    /**
+     * 将本节点的变化批量同步到redis
+     */
+    public void syncToRedis() {
+        long now = System.currentTimeMillis();
+        List<String> refreshClientIds = new ArrayList<>();
+        localClients.forEach((clientId, presence) -> {
+            if (now - presence.syncedAt >= REFRESH_MILLIS) {
+                presence.syncedAt = now;
+                refreshClientIds.add(clientId);
+            }
+        });
+        List<String> removeClientIds = new ArrayList<>(pendingRemovals);
+        if (refreshClientIds.isEmpty() && removeClientIds.isEmpty()) {
+            return;
+        }
+        // redis中的过期时间从同步时刻算起，下次同步前不会过期
+        double score = now + CONNECTED_TTL_MILLIS;
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+                for (String clientId : refreshClientIds) {
+                    stringRedisConnection.zAdd(RedisConsts.CONNECTED_MQTT_CLIENT_IDS, score, clientId);
+                    // 按用户的集合随最后一次刷新过期，无需单独清理
+                    String userKey = getUserKey(clientId);
+                    stringRedisConnection.zAdd(userKey, score, clientId);
+                    stringRedisConnection.pExpire(userKey, CONNECTED_TTL_MILLIS);
+                }
+                if (!removeClientIds.isEmpty()) {
+                    stringRedisConnection.zRem(RedisConsts.CONNECTED_MQTT_CLIENT_IDS,
+                            removeClientIds.toArray(new String[0]));
+                    for (String clientId : removeClientIds) {
+                        stringRedisConnection.zRem(getUserKey(clientId), clientId);
+                    }
+                }
+                return null;
+            });
+            pendingRemovals.removeAll(removeClientIds);
+        } catch (Exception e) {
+            // 下次重试
+            log.error("sync mqtt presence to redis error: {}", e.getMessage());
+            refreshClientIds.forEach(clientId -> {
+                Presence presence = localClients.get(clientId);
+                if (presence != null) {
+                    presence.syncedAt = 0;
+                }
+            });
+        }
+    }
+
     // 获取所有clientIds
     // public String[] isConnectedClientIds() {
     //     return stringRedisTemplate.opsForZSet().range(RedisConsts.CONNECTED_MQTT_CLIENT_IDS, 0, -1).toArray(new String[0]);
     // }
 
-    // 获取所有已连接的clientId
+    // 获取所有已连接的clientId，包括集群中其他节点
     public Set<String> getConnectedClientIds() {
         long now = System.currentTimeMillis();
         // 获取所有未过期的clientId
-        return stringRedisTemplate.opsForZSet().rangeByScore(RedisConsts.CONNECTED_MQTT_CLIENT_IDS, now, Double.MAX_VALUE);
+        Set<String> clientIds = stringRedisTemplate.opsForZSet().rangeByScore(RedisConsts.CONNECTED_MQTT_CLIENT_IDS,
+                now, Double.MAX_VALUE);
+        Set<String> result = clientIds != null ? new HashSet<>(clientIds) : new HashSet<>();
+        // 本节点尚未同步到redis的变化
+        result.removeAll(pendingRemovals);
+        localClients.forEach((clientId, presence) -> {
+            if (presence.expireAt > now) {
+                result.add(clientId);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 用户在集群内是否还有未过期的clientId，包括其他节点；本节点已断开、尚未同步到redis的不计入。
+     * 只读取该用户自己的有序集合，会访问redis，不要在netty io线程上调用
+     */
+    public boolean isUserConnected(String userUid) {
+        if (!StringUtils.hasText(userUid)) {
+            return false;
+        }
+        if (localUsers.containsKey(userUid)) {
+            return true;
+        }
+        Set<String> clientIds = stringRedisTemplate.opsForZSet().rangeByScore(
+                RedisConsts.CONNECTED_MQTT_USER_PREFIX + userUid, System.currentTimeMillis(), Double.MAX_VALUE);
+        if (clientIds == null) {
+            return false;
+        }
+        return clientIds.stream().anyMatch(clientId -> !pendingRemovals.contains(clientId));
     }
 
     public Set<String> getConnectedUserUids() {
         // 用户clientId格式: userUid/client/deviceUid
         // 将clientId按/分割，取第一个元素为userUid
         Set<String> clientIds = getConnectedClientIds();
-        return clientIds.stream().map(clientId -> clientId.split("/")[0]).collect(Collectors.toSet());
+        return clientIds.stream().map(MqttConnectionService::getUserUid).collect(Collectors.toSet());
     }
-    
-    
+
+    private void removeLocal(String clientId) {
+        String userUid = getUserUid(clientId);
+        boolean[] offline = { false };
+        localUsers.computeIfPresent(userUid, (key, clientIds) -> {
+            clientIds.remove(clientId);
+            if (clientIds.isEmpty()) {
+                offline[0] = true;
+                return null;
+            }
+            return clientIds;
+        });
+        if (offline[0]) {
+            bytedeskEventPublisher.publishMqttPresenceChangeEvent(userUid, false);
+        }
+    }
+
+    private static String getUserKey(String clientId) {
+        return RedisConsts.CONNECTED_MQTT_USER_PREFIX + getUserUid(clientId);
+    }
+
+    private static String getUserUid(String clientId) {
+        return clientId.split("/")[0];
+    }
+
+    private static class Presence {
+
+        private volatile long expireAt;
+
+        private volatile long syncedAt;
+    }
+
 }
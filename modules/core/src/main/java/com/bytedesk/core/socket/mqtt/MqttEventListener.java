@@ -16,6 +16,7 @@ package com.bytedesk.core.socket.mqtt;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
 import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
 import com.bytedesk.core.socket.mqtt.event.MqttConnectedEvent;
 import com.bytedesk.core.socket.mqtt.event.MqttDisconnectedEvent;
@@ -42,6 +43,7 @@ public class MqttEventListener {
         // 用户clientId格式: uid/client/deviceUid
         final String uid = clientId.split("/")[0];
         log.info("topic onMqttConnectedEvent uid {}, clientId {}", uid, clientId);
+        mqttConnectionService.addConnected(clientId);
         //
         // topicService.addClientId(clientId);
         topicCacheService.pushClientId(clientId);
@@ -53,6 +55,7 @@ public class MqttEventListener {
         // 用户clientId格式: uid/client/deviceUid
         final String uid = clientId.split("/")[0];
         log.info("topic onMqttDisconnectedEvent uid {}, clientId {}", uid, clientId);
+        mqttConnectionService.disconnected(clientId);
         //
         // topicService.removeClientId(clientId);
         // 暂不删除
@@ -73,6 +76,12 @@ public class MqttEventListener {
         // topicService.unsubscribe(event.getTopic(), event.getClientId());
     }
 
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        // 批量同步在线状态到redis
+        mqttConnectionService.syncToRedis();
+    }
+
     @EventListener
     public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
         // log.info("mqtt QuartzOneMinEvent");
@@ -0,0 +1,403 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-18 09:26:44
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-18 09:26:44
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.socket.mqtt;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageFactory;
+import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * mqtt下行消息发送窗口
+ *
+ * 每个clientId一个窗口：
+ * 1. 未确认的QoS1/2消息最多maxInflight条，超出部分在队列中等待，队列最多maxQueued条，超出丢弃最早的消息；
+ * 2. channel不可写时暂停发送，可写后继续，避免netty出站缓冲无限增长；
+ * 3. 超过retryIntervalMillis未确认则带DUP标志重发，QoS2在收到PUBREC后重发PUBREL；
+ * 4. 非cleanSession会话断开后保留窗口sessionExpirySeconds，重连时重发所有未确认消息。
+ * payload为共享的ByteBuf，窗口持有一个引用，每次发送使用retainedDuplicate，确认或丢弃后释放。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MqttInflightService {
+
+    private final MqttSessionService mqttSessionService;
+
+    private final MqttMessageIdService mqttMessageIdService;
+
+    private final MqttProperties mqttProperties;
+
+    private final Map<String, InflightWindow> windows = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BytedeskMqttRetransmit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::retransmit, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        windows.values().forEach(this::close);
+        windows.clear();
+    }
+
+    /**
+     * 发送消息给clientId
+     *
+     * @param payload 序列化后的消息，可在多个clientId间共享，调用方仍持有并负责释放自己的引用
+     */
+    public void publish(String clientId, String topic, MqttQoS qos, ByteBuf payload) {
+        if (qos == MqttQoS.AT_MOST_ONCE) {
+            Channel channel = getChannel(clientId);
+            if (channel != null) {
+                channel.write(newPublishMessage(topic, qos, 0, payload, false));
+                // 由FlushConsolidationHandler在同一轮事件循环内合并flush
+                channel.flush();
+            }
+            return;
+        }
+        while (true) {
+            InflightWindow window = windows.computeIfAbsent(clientId, InflightWindow::new);
+            synchronized (window) {
+                if (window.closed) {
+                    // 窗口刚被移除，重新获取
+                    continue;
+                }
+                if (window.queue.size() >= mqttProperties.getMaxQueued()) {
+                    OutboundMessage dropped = window.queue.poll();
+                    dropped.payload.release();
+                    log.warn("mqtt outbound queue full, clientId {}, drop message on topic {}", clientId,
+                            dropped.topic);
+                }
+                window.queue.offer(new OutboundMessage(topic, qos, payload.retain()));
+                drain(window);
+                return;
+            }
+        }
+    }
+
+    // PUBACK: QoS1 消息发送完成
+    public void onPubAck(String clientId, int messageId) {
+        InflightWindow window = windows.get(clientId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            OutboundMessage message = window.inflight.get(messageId);
+            if (message != null && message.qos == MqttQoS.AT_LEAST_ONCE) {
+                window.inflight.remove(messageId);
+                message.payload.release();
+            }
+            drain(window);
+        }
+    }
+
+    // PUBREC: QoS2 消息已被接收，之后等待PUBCOMP
+    public void onPubRec(String clientId, int messageId) {
+        InflightWindow window = windows.get(clientId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            OutboundMessage message = window.inflight.get(messageId);
+            if (message != null) {
+                message.released = true;
+                message.sentAt = System.currentTimeMillis();
+                message.retries = 0;
+            }
+        }
+    }
+
+    // PUBCOMP: QoS2 消息发送完成
+    public void onPubComp(String clientId, int messageId) {
+        InflightWindow window = windows.get(clientId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            OutboundMessage message = window.inflight.remove(messageId);
+            if (message != null) {
+                message.payload.release();
+            }
+            drain(window);
+        }
+    }
+
+    // channel重新可写
+    public void onWritable(String clientId) {
+        InflightWindow window = windows.get(clientId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            drain(window);
+        }
+    }
+
+    /**
+     * 客户端连接成功，需在会话存储之后调用
+     */
+    public void onConnected(String clientId, boolean cleanSession) {
+        if (cleanSession) {
+            InflightWindow previous = windows.put(clientId, new InflightWindow(clientId));
+            if (previous != null) {
+                close(previous);
+            }
+            return;
+        }
+        InflightWindow window = windows.computeIfAbsent(clientId, InflightWindow::new);
+        synchronized (window) {
+            window.cleanSession = false;
+            window.disconnectedAt = 0;
+            Channel channel = getChannel(clientId);
+            if (channel == null) {
+                return;
+            }
+            // 重发所有未确认消息
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Integer, OutboundMessage> entry : window.inflight.entrySet()) {
+                OutboundMessage message = entry.getValue();
+                message.sentAt = now;
+                message.retries = 0;
+                channel.write(resend(entry.getKey(), message));
+            }
+            if (!window.inflight.isEmpty()) {
+                log.info("mqtt replay {} unacked messages to clientId {}", window.inflight.size(), clientId);
+            }
+            drain(window);
+            channel.flush();
+        }
+    }
+
+    /**
+     * 连接断开，channel为断开的连接，同一clientId已在新连接上登录时忽略
+     */
+    public void onDisconnected(String clientId, Channel channel) {
+        InflightWindow window = windows.get(clientId);
+        if (window == null) {
+            return;
+        }
+        Channel current = getChannel(clientId);
+        if (current != null && current != channel) {
+            return;
+        }
+        if (window.cleanSession) {
+            if (windows.remove(clientId, window)) {
+                close(window);
+            }
+            return;
+        }
+        synchronized (window) {
+            window.disconnectedAt = System.currentTimeMillis();
+        }
+    }
+
+    public int getInflightCount(String clientId) {
+        InflightWindow window = windows.get(clientId);
+        if (window == null) {
+            return 0;
+        }
+        synchronized (window) {
+            return window.inflight.size();
+        }
+    }
+
+    // 调用方持有window锁
+    private void drain(InflightWindow window) {
+        Channel channel = getChannel(window.clientId);
+        if (channel == null) {
+            return;
+        }
+        boolean written = false;
+        while (window.inflight.size() < mqttProperties.getMaxInflight()
+                && channel.isWritable()
+                && !window.queue.isEmpty()) {
+            OutboundMessage message = window.queue.poll();
+            int messageId = nextMessageId(window);
+            message.sentAt = System.currentTimeMillis();
+            window.inflight.put(messageId, message);
+            channel.write(newPublishMessage(message.topic, message.qos, messageId, message.payload, false));
+            written = true;
+        }
+        if (written) {
+            channel.flush();
+        }
+    }
+
+    private void retransmit() {
+        long now = System.currentTimeMillis();
+        long expiryMillis = TimeUnit.SECONDS.toMillis(mqttProperties.getSessionExpirySeconds());
+        windows.forEach((clientId, window) -> {
+            try {
+                synchronized (window) {
+                    Channel channel = getChannel(clientId);
+                    if (channel == null) {
+                        if (window.disconnectedAt == 0) {
+                            window.disconnectedAt = now;
+                        } else if (now - window.disconnectedAt > expiryMillis) {
+                            windows.remove(clientId, window);
+                            if (!window.inflight.isEmpty() || !window.queue.isEmpty()) {
+                                log.warn("mqtt session {} expired, discard {} unacked and {} queued messages",
+                                        clientId, window.inflight.size(), window.queue.size());
+                            }
+                            close(window);
+                        }
+                        return;
+                    }
+                    boolean written = false;
+                    for (Map.Entry<Integer, OutboundMessage> entry : window.inflight.entrySet()) {
+                        OutboundMessage message = entry.getValue();
+                        if (now - message.sentAt < mqttProperties.getRetryIntervalMillis()
+                                || message.retries >= mqttProperties.getMaxRetries()) {
+                            continue;
+                        }
+                        message.retries++;
+                        message.sentAt = now;
+                        channel.write(resend(entry.getKey(), message));
+                        written = true;
+                    }
+                    if (written) {
+                        channel.flush();
+                    }
+                    drain(window);
+                }
+            } catch (Exception e) {
+                log.error("mqtt retransmit clientId {} error: ", clientId, e);
+            }
+        });
+    }
+
+    // 释放窗口持有的所有payload
+    private void close(InflightWindow window) {
+        synchronized (window) {
+            if (window.closed) {
+                return;
+            }
+            window.closed = true;
+            window.inflight.values().forEach(message -> message.payload.release());
+            window.inflight.clear();
+            window.queue.forEach(message -> message.payload.release());
+            window.queue.clear();
+        }
+    }
+
+    private MqttMessage resend(int messageId, OutboundMessage message) {
+        if (message.released) {
+            return MqttMessageFactory.newMessage(
+                    new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                    MqttMessageIdVariableHeader.from(messageId),
+                    null);
+        }
+        return newPublishMessage(message.topic, message.qos, messageId, message.payload, true);
+    }
+
+    // 跳过窗口内仍在使用的id
+    private int nextMessageId(InflightWindow window) {
+        int messageId = mqttMessageIdService.getNextMessageId();
+        while (window.inflight.containsKey(messageId)) {
+            messageId = mqttMessageIdService.getNextMessageId();
+        }
+        return messageId;
+    }
+
+    private Channel getChannel(String clientId) {
+        MqttSession session = mqttSessionService.get(clientId);
+        if (session == null || session.getChannel() == null || !session.getChannel().isActive()) {
+            return null;
+        }
+        return session.getChannel();
+    }
+
+    // 共享payload，不复制数据，写出后由netty释放duplicate的引用
+    private static MqttMessage newPublishMessage(String topic, MqttQoS qos, int messageId, ByteBuf payload,
+            boolean dup) {
+        return MqttMessageFactory.newMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, dup, qos, false, 0),
+                new MqttPublishVariableHeader(topic, messageId),
+                payload.retainedDuplicate());
+    }
+
+    private static class InflightWindow {
+
+        private final String clientId;
+
+        // messageId -> 未确认消息，按发送顺序
+        private final Map<Integer, OutboundMessage> inflight = new LinkedHashMap<>();
+
+        private final Deque<OutboundMessage> queue = new ArrayDeque<>();
+
+        private boolean cleanSession = true;
+
+        private long disconnectedAt;
+
+        private boolean closed;
+
+        InflightWindow(String clientId) {
+            this.clientId = clientId;
+        }
+    }
+
+    private static class OutboundMessage {
+
+        private final String topic;
+
+        private final MqttQoS qos;
+
+        private final ByteBuf payload;
+
+        private long sentAt;
+
+        private int retries;
+
+        // QoS2 已收到PUBREC，等待PUBCOMP
+        private boolean released;
+
+        OutboundMessage(String topic, MqttQoS qos, ByteBuf payload) {
+            this.topic = topic;
+            this.qos = qos;
+            this.payload = payload;
+        }
+    }
+
+}
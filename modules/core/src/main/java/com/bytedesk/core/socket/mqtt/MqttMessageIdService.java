@@ -13,14 +13,21 @@
  */
 package com.bytedesk.core.socket.mqtt;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.springframework.stereotype.Service;
 
+/**
+ * mqtt packet identifier，取值范围 1~65535，循环使用
+ */
 @Service
 public class MqttMessageIdService {
 
-    private static int counter = 1;
+    private static final int MAX_MESSAGE_ID = 0xFFFF;
+
+    private final AtomicInteger counter = new AtomicInteger();
 
     public int getNextMessageId() {
-        return counter++;
+        return counter.updateAndGet(current -> current >= MAX_MESSAGE_ID ? 1 : current + 1);
     }
 }
@@ -46,4 +46,25 @@ public class MqttProperties {
 
     private int maxPayloadSize = 10240;
 
+    // 每个会话未确认的QoS1/2下行消息最大数量
+    private int maxInflight = 32;
+
+    // 每个会话等待发送的下行消息最大数量，超出后丢弃最早的消息
+    private int maxQueued = 1000;
+
+    // 未收到确认时的重发间隔
+    private long retryIntervalMillis = 10000;
+
+    // 单条消息最大重发次数，超过后等待客户端重连时重发
+    private int maxRetries = 3;
+
+    // 非cleanSession会话断开后，未确认消息保留时长
+    private long sessionExpirySeconds = 3600;
+
+    // 每个连接每秒最多发布的消息数，超出的消息直接丢弃，0表示不限制
+    private double publishRateLimit = 20;
+
+    // 每个连接发布消息的突发容量
+    private int publishBurst = 40;
+
 }
@@ -13,11 +13,16 @@
  */
 package com.bytedesk.core.socket.mqtt;
 
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.stereotype.Service;
 
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+import com.bytedesk.core.socket.cluster.ClusterSessionRegistry;
+
+import jakarta.annotation.PostConstruct;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -25,14 +30,26 @@ import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class MqttSessionService {
 
-    // considering cluster mode, use redis to store sessions
-    private Map<String, MqttSession> clientIdSessionMap = new ConcurrentHashMap<>();
+    // 本节点的长连接，集群模式下clientId所在节点记录在ClusterSessionRegistry中
+    private final Map<String, MqttSession> clientIdSessionMap = new ConcurrentHashMap<>();
+
+    private final ClusterSessionRegistry clusterSessionRegistry;
+
+    private final BytedeskMetrics bytedeskMetrics;
+
+    @PostConstruct
+    public void init() {
+        bytedeskMetrics.bindActiveConnections(BytedeskMetrics.PROTOCOL_MQTT, clientIdSessionMap::size);
+    }
 
     public void put(String clientId, MqttSession mqttSession) {
-        clientIdSessionMap.put(clientId, mqttSession);
+        if (clientIdSessionMap.put(clientId, mqttSession) == null) {
+            bytedeskMetrics.wsConnectionOpened();
+        }
+        clusterSessionRegistry.register(clientId);
     }
 
     public MqttSession get(String clientId) {
@@ -46,6 +63,7 @@ public class MqttSessionService {
     public void remove(String clientId) {
         if (clientIdSessionMap.containsKey(clientId)) {
             clientIdSessionMap.remove(clientId);
+            clusterSessionRegistry.unregister(clientId);
         } else {
             log.warn("Attempted to remove non-existent clientId: {}", clientId);
         }
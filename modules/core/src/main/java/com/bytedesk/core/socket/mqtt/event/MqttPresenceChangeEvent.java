@@ -0,0 +1,37 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-18 14:10:32
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-18 14:10:32
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM – 
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE 
+ *  contact: 270580156@qq.com 
+ *  联系：270580156@qq.com
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved. 
+ */
+package com.bytedesk.core.socket.mqtt.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 用户在本节点的在线状态发生变化：首个clientId上线，或最后一个clientId下线/心跳超时
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class MqttPresenceChangeEvent extends ApplicationEvent {
+
+    private String userUid;
+
+    private boolean online;
+
+    public MqttPresenceChangeEvent(Object source, String userUid, boolean online) {
+        super(source);
+        this.userUid = userUid;
+        this.online = online;
+    }
+}
@@ -158,6 +158,7 @@ public class MqttTransportHandler extends SimpleChannelInboundHandler<MqttMessag
         // }
         //
         log.info("channelInactive {}", clientId);
+        protocolProcess.getMqttInflightService().onDisconnected(clientId, ctx.channel());
         // FIXME: 客户端异常断开的情况，需要清理数据。目前会造成数据不一致，待完善
         // protocolProcess.getMqttSessionStoreService().remove(clientId);
         // protocolProcess.getMqttClientIdStoreService().remove(clientId);
@@ -168,6 +169,18 @@ public class MqttTransportHandler extends SimpleChannelInboundHandler<MqttMessag
         // log.debug("DISCONNECT - channelInactive - clientId: {}", clientId);
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 出站缓冲回落到低水位后，继续发送窗口中等待的消息
+        if (ctx.channel().isWritable()) {
+            String clientId = (String) ctx.channel().attr(AttributeKey.valueOf(MqttConsts.MQTT_CLIENT_ID)).get();
+            if (clientId != null) {
+                protocolProcess.getMqttInflightService().onWritable(clientId);
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext channelHandlerContext, Throwable cause) throws Exception {
         // FIXME: 异常断开，发送will topic消息 java.io.IOException: Connection reset by peer
@@ -18,6 +18,7 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.SslContext;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -73,6 +74,8 @@ public class MqttServerInitializer extends ChannelInitializer<SocketChannel> {
             pipeline.addLast(mSslCtx.newHandler(socketChannel.alloc()));
         }
 
+        // 合并同一轮事件循环内的多次flush，群消息扇出时减少系统调用
+        pipeline.addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
         //
         pipeline.addLast(new MqttDecoder(mMaxPayloadSize));
         pipeline.addLast(MqttEncoder.INSTANCE);
@@ -23,6 +23,7 @@ import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.stream.ChunkedWriteHandler;
 
@@ -57,6 +58,8 @@ public class MqttWebSocketServerInitializer extends ChannelInitializer<SocketCha
         if (mSslCtx != null) {
             pipeline.addLast(mSslCtx.newHandler(socketChannel.alloc()));
         }
+        // 合并同一轮事件循环内的多次flush，群消息扇出时减少系统调用
+        pipeline.addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
         // HttpRequestDecoder和HttpResponseEncoder的一个组合，针对http协议进行编解码
         pipeline.addLast(new HttpServerCodec());
         // 将HttpMessage和HttpContents聚合到一个完成的
@@ -11,6 +11,7 @@ import org.springframework.util.StringUtils;
 import com.bytedesk.core.socket.mqtt.MqttService;
 import com.bytedesk.core.socket.mqtt.MqttAuthService;
 import com.bytedesk.core.socket.mqtt.MqttConsts;
+import com.bytedesk.core.socket.mqtt.MqttInflightService;
 import com.bytedesk.core.socket.mqtt.MqttSession;
 import com.bytedesk.core.socket.mqtt.MqttSessionService;
 import com.bytedesk.core.socket.mqtt.handler.MqttIdleStateHandler;
@@ -28,6 +29,8 @@ public class Connect {
 
     private final MqttService mqttService;
 
+    private final MqttInflightService mqttInflightService;
+
     /**
      * 处理连接请求
      * @param channel
@@ -161,6 +164,8 @@ public class Connect {
 
         // 至此存储会话消息及返回接受客户端连接
         mqttSessionService.put(clientId, mqttSession);
+        // 非cleanSession会话重发未确认的消息
+        mqttInflightService.onConnected(clientId, isCleanSession);
         // 存储clientId
         mqttService.publishMqttConnectedEvent(clientId);
 
@@ -1,10 +1,14 @@
 package com.bytedesk.core.socket.mqtt.protocol;
 
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
 import com.bytedesk.core.message.IMessageSendService;
+import com.bytedesk.core.rate_limiter.RateLimiterService;
 import com.bytedesk.core.socket.mqtt.MqttService;
 import com.bytedesk.core.socket.mqtt.MqttAuthService;
 import com.bytedesk.core.socket.mqtt.MqttConnectionService;
+import com.bytedesk.core.socket.mqtt.MqttInflightService;
 import com.bytedesk.core.socket.mqtt.MqttMessageIdService;
+import com.bytedesk.core.socket.mqtt.MqttProperties;
 import com.bytedesk.core.socket.mqtt.MqttSessionService;
 
 import lombok.Data;
@@ -34,6 +38,18 @@ public class ProtocolProcess {
     @Autowired
     private MqttConnectionService mqttConnectionService;
 
+    @Autowired
+    private MqttInflightService mqttInflightService;
+
+    @Autowired
+    private RateLimiterService rateLimiterService;
+
+    @Autowired
+    private MqttProperties mqttProperties;
+
+    @Autowired
+    private BytedeskMetrics bytedeskMetrics;
+
     private Connect connect;
 
     private Subscribe subscribe;
@@ -56,7 +72,7 @@ public class ProtocolProcess {
 
     public Connect connect() {
         if (connect == null) {
-            connect = new Connect(mqttAuthService, mqttSessionStoreService, mqService);
+            connect = new Connect(mqttAuthService, mqttSessionStoreService, mqService, mqttInflightService);
         }
         return connect;
     }
@@ -77,7 +93,7 @@ public class ProtocolProcess {
 
     public Publish publish() {
         if (publish == null) {
-            publish = new Publish(messageSendService);
+            publish = new Publish(messageSendService, rateLimiterService, mqttProperties, bytedeskMetrics);
         }
         return publish;
     }
@@ -105,21 +121,21 @@ public class ProtocolProcess {
 
     public PubAck pubAck() {
         if (pubAck == null) {
-            pubAck = new PubAck();
+            pubAck = new PubAck(mqttInflightService);
         }
         return pubAck;
     }
 
     public PubRec pubRec() {
         if (pubRec == null) {
-            pubRec = new PubRec();
+            pubRec = new PubRec(mqttInflightService);
         }
         return pubRec;
     }
 
     public PubComp pubComp() {
         if (pubComp == null) {
-            pubComp = new PubComp();
+            pubComp = new PubComp(mqttInflightService);
         }
         return pubComp;
     }
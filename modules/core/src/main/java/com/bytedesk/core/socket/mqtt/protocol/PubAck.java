@@ -14,6 +14,7 @@
 package com.bytedesk.core.socket.mqtt.protocol;
 
 import com.bytedesk.core.socket.mqtt.MqttChannelUtils;
+import com.bytedesk.core.socket.mqtt.MqttInflightService;
 
 import io.netty.channel.Channel;
 import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
@@ -24,12 +25,14 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public class PubAck {
 
+    private final MqttInflightService mqttInflightService;
+
     public void processPubAck(Channel channel, MqttMessageIdVariableHeader variableHeader) {
         //
         String clientId = MqttChannelUtils.getClientId(channel);
         int messageId = variableHeader.messageId();
         log.debug("PUBACK - clientId: {}, messageId: {}", clientId, messageId);
         //
-        // mqttDupPublishMessageStoreService.remove(clientId, messageId);
+        mqttInflightService.onPubAck(clientId, messageId);
     }
 }
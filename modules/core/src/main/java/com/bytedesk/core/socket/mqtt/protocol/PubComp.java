@@ -14,6 +14,7 @@
 package com.bytedesk.core.socket.mqtt.protocol;
 
 import com.bytedesk.core.socket.mqtt.MqttChannelUtils;
+import com.bytedesk.core.socket.mqtt.MqttInflightService;
 
 import io.netty.channel.Channel;
 import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
@@ -24,13 +25,12 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public class PubComp {
 
-    // private final MqttDupPubRelMessageStoreService
-    // mqttDupPubRelMessageStoreService;
+    private final MqttInflightService mqttInflightService;
 
     public void processPubComp(Channel channel, MqttMessageIdVariableHeader variableHeader) {
         String clientId = MqttChannelUtils.getClientId(channel);
         int messageId = variableHeader.messageId();
         log.debug("PUBCOMP - clientId: {}, messageId: {}", clientId, messageId);
-        // mqttDupPubRelMessageStoreService.remove(clientId, messageId);
+        mqttInflightService.onPubComp(clientId, messageId);
     }
 }
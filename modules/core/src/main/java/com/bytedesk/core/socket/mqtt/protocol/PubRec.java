@@ -14,6 +14,7 @@
 package com.bytedesk.core.socket.mqtt.protocol;
 
 import com.bytedesk.core.socket.mqtt.MqttChannelUtils;
+import com.bytedesk.core.socket.mqtt.MqttInflightService;
 
 import io.netty.channel.Channel;
 import io.netty.handler.codec.mqtt.*;
@@ -24,11 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public class PubRec {
 
-        // private final MqttDupPublishMessageStoreService
-        // mqttDupPublishMessageStoreService;
-
-        // private final MqttDupPubRelMessageStoreService
-        // mqttDupPubRelMessageStoreService;
+        private final MqttInflightService mqttInflightService;
 
         public void processPubRec(Channel channel, MqttMessageIdVariableHeader variableHeader) {
                 //
@@ -36,16 +33,13 @@ public class PubRec {
                 String clientId = MqttChannelUtils.getClientId(channel);
                 log.debug("PUBREC - clientId: {}, messageId: {}", clientId, messageId);
                 //
-                // mqttDupPublishMessageStoreService.remove(clientId, messageId);
-                //
-                // MqttDupPubRelMessage dupPubRelMessageStore = new
-                // MqttDupPubRelMessage().setClientId(clientId).setMessageId(messageId);
-                // mqttDupPubRelMessageStoreService.put(clientId, dupPubRelMessageStore);
+                // 等待PUBCOMP，超时未收到时重发PUBREL
+                mqttInflightService.onPubRec(clientId, messageId);
                 //
                 MqttMessage pubRelMessage = MqttMessageFactory.newMessage(
                                 new MqttFixedHeader(MqttMessageType.PUBREL,
                                                 false,
-                                                MqttQoS.AT_MOST_ONCE,
+                                                MqttQoS.AT_LEAST_ONCE,
                                                 false,
                                                 0),
                                 MqttMessageIdVariableHeader.from(
@@ -13,32 +13,52 @@
  */
 package com.bytedesk.core.socket.mqtt.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.mqtt.*;
 
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
 import com.bytedesk.core.message.IMessageSendService;
+import com.bytedesk.core.rate_limiter.RateLimiterKeyEnum;
+import com.bytedesk.core.rate_limiter.RateLimiterService;
 import com.bytedesk.core.socket.mqtt.MqttChannelUtils;
+import com.bytedesk.core.socket.mqtt.MqttProperties;
 import com.bytedesk.core.socket.protobuf.model.MessageProto;
 import com.bytedesk.core.utils.MessageConvertUtils;
+import com.google.protobuf.CodedInputStream;
 
 import lombok.AllArgsConstructor;
-// import lombok.extern.slf4j.Slf4j;
+import lombok.extern.slf4j.Slf4j;
 
-// @Slf4j
+@Slf4j
 @AllArgsConstructor
 public class Publish {
 
+    private static final String RATE_LIMITER_NAME = "Publish.processPublish";
+
     private final IMessageSendService messageSendService;
 
+    private final RateLimiterService rateLimiterService;
+
+    private final MqttProperties mqttProperties;
+
+    private final BytedeskMetrics bytedeskMetrics;
+
     //
     public void processPublish(Channel channel, MqttPublishMessage mqttPublishMessage) {
         // log.debug("processPublish {}", mqttPublishMessage.toString());
         // TODO: 发送：消息发送成功回执
         // String clientId = (String)
         // channel.attr(AttributeKey.valueOf(MqttConsts.MQTT_CLIENT_ID)).get();
-        byte[] messageBytes = new byte[mqttPublishMessage.payload().readableBytes()];
-        this.sendMqMessage(mqttPublishMessage, messageBytes);
-        //
+        // 服务端不保存retain消息，按普通消息投递，转发给订阅者时retain固定为false（见MqttInflightService）
+        if (mqttPublishMessage.fixedHeader().isRetain()) {
+            log.debug("processPublish ignore retain flag, clientId {}", MqttChannelUtils.getClientId(channel));
+        }
+        if (tryAcquire(channel)) {
+            this.sendMqMessage(mqttPublishMessage);
+        }
+        // 超限的消息同样回执，避免客户端重发加重负载
         // QoS=0
         if (mqttPublishMessage.fixedHeader().qosLevel() == MqttQoS.AT_MOST_ONCE) {
             // this.sendMqMessage(clientId, mqttPublishMessage, messageBytes);
@@ -51,25 +71,42 @@ public class Publish {
         else if (mqttPublishMessage.fixedHeader().qosLevel() == MqttQoS.EXACTLY_ONCE) {
             MqttChannelUtils.sendPubRecMessage(channel, mqttPublishMessage.variableHeader().packetId());
         }
-        // retain=1, 保留消息
-        if (mqttPublishMessage.fixedHeader().isRetain()) {
-            mqttPublishMessage.payload().getBytes(mqttPublishMessage.payload().readerIndex(), messageBytes);
+    }
+
+    // 按连接限流，在进入消息处理流程前丢弃刷屏消息
+    private boolean tryAcquire(Channel channel) {
+        String clientId = MqttChannelUtils.getClientId(channel);
+        String key = clientId != null ? clientId : MqttChannelUtils.getChannelIP(channel).orElse("unknown");
+        if (rateLimiterService.tryAcquireLocal(RATE_LIMITER_NAME, key,
+                mqttProperties.getPublishRateLimit(), mqttProperties.getPublishBurst())) {
+            return true;
         }
+        rateLimiterService.rejected(RATE_LIMITER_NAME, RateLimiterKeyEnum.CLIENT);
+        log.debug("processPublish rate limited, clientId {}", clientId);
+        return false;
     }
 
     // 下列过滤不能从直接数据库中读取，否则会增加数据库压力，影响消息发送速度，务必从内存或redis中读取
-    private void sendMqMessage(MqttPublishMessage publishMessage, byte[] messageBytes) {
+    private void sendMqMessage(MqttPublishMessage publishMessage) {
         // TODO: 发送回执
-        // 注意：不能去掉，否则无法解析protobuf
-        publishMessage.payload().getBytes(publishMessage.payload().readerIndex(), messageBytes);
+        // 直接从ByteBuf解析protobuf，不复制到byte[]，也不移动readerIndex
+        ByteBuf payload = publishMessage.payload();
+        bytedeskMetrics.messageReceived(BytedeskMetrics.PROTOCOL_MQTT);
+        long start = System.nanoTime();
         // publish message event, developers can listener to new message
         try {
-            MessageProto.Message messageProto = MessageProto.Message.parseFrom(messageBytes);
+            CodedInputStream input = payload.nioBufferCount() == 1
+                    ? CodedInputStream.newInstance(payload.nioBuffer(payload.readerIndex(), payload.readableBytes()))
+                    : CodedInputStream.newInstance(new ByteBufInputStream(payload.duplicate()));
+            MessageProto.Message messageProto = MessageProto.Message.parseFrom(input);
             String messageJson = MessageConvertUtils.toJson(messageProto);
+            // 接收阶段：解析protobuf并转换为json
+            bytedeskMetrics.recordMessageStage(BytedeskMetrics.STAGE_RECEIVE, System.nanoTime() - start);
             // 
             messageSendService.sendJsonMessage(messageJson);
         } catch (Exception e) {
-            e.printStackTrace();
+            bytedeskMetrics.messageError();
+            log.error("processPublish parse message error: ", e);
         }
     }
 
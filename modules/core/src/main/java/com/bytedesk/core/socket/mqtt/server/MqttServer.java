@@ -14,11 +14,10 @@
 package com.bytedesk.core.socket.mqtt.server;
 
 // import io.netty.bootstrap.ServerBootstrap;
+// import io.netty.buffer.PooledByteBufAllocator;
 // import io.netty.channel.Channel;
 // import io.netty.channel.ChannelOption;
 // import io.netty.channel.EventLoopGroup;
-// import io.netty.channel.nio.NioEventLoopGroup;
-// import io.netty.channel.socket.nio.NioServerSocketChannel;
 // import io.netty.util.ResourceLeakDetector;
 // import jakarta.annotation.PostConstruct;
 // import jakarta.annotation.PreDestroy;
@@ -63,19 +62,20 @@ package com.bytedesk.core.socket.mqtt.server;
 //         ResourceLeakDetector
 //                 .setLevel(ResourceLeakDetector.Level.valueOf(mqttProperties.getLeakDetectorLevel().toUpperCase()));
 
-//         parentEventLoopGroup = new NioEventLoopGroup(mqttProperties.getParentEventLoopGroupThreadCount());
+//         // linux下使用epoll
+//         parentEventLoopGroup = MqttServerUtils.newEventLoopGroup(mqttProperties.getParentEventLoopGroupThreadCount());
 
-//         childEventLoopGroup = new NioEventLoopGroup(mqttProperties.getChildEventLoopGroupThreadCount());
+//         childEventLoopGroup = MqttServerUtils.newEventLoopGroup(mqttProperties.getChildEventLoopGroupThreadCount());
 
 //         ServerBootstrap serverBootstrap = new ServerBootstrap();
 
 //         serverBootstrap.group(parentEventLoopGroup, childEventLoopGroup)
 //                 //
-//                 .channel(NioServerSocketChannel.class)
+//                 .channel(MqttServerUtils.serverChannelClass())
 //                 // 服务端处理客户端连接请求是顺序处理的，所以同一时间只能处理一个客户端连接，多个客户端来的时候，
 //                 // 服务端将不能处理的客户端连接请求放在队列中等待处理，backlog参数指定了队列的大小
 //                 .option(ChannelOption.SO_BACKLOG, 1024)
-//                 // .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+//                 .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
 //                 // 当设置该选项以后，如果在两小时内没有数据的通信时，TCP会自动发送一个活动探测数据报文
 //                 .childOption(ChannelOption.SO_KEEPALIVE, true)
 //                 // Nagle算法是将小的数据包组装为更大的帧然后进行发送，而不是输入一次发送一次,因此在数据包不足的时候会等待其他数据的到了，
@@ -83,7 +83,7 @@ package com.bytedesk.core.socket.mqtt.server;
 //                 // 参数的作用就是禁止使用Nagle算法，使用于小数据即时传输
 //                 .childOption(ChannelOption.TCP_NODELAY, true)
 //                 // .childOption(ChannelOption.SO_REUSEADDR, true)
-//                 // .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+//                 .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
 //                 // 打印log, TODO: 生产环境删除
 //                 // .handler(new LoggingHandler(LogLevel.WARN))
 //                 .childHandler(new MqttServerInitializer(null, protocolProcess, mqttProperties.getMaxPayloadSize()));
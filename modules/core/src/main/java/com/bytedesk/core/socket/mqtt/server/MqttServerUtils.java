@@ -0,0 +1,45 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-18 11:02:15
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-18 11:02:15
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.socket.mqtt.server;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * linux下可用时使用epoll native transport，否则使用nio
+ */
+public class MqttServerUtils {
+
+    private MqttServerUtils() {
+        // This is a utility class, don't instantiate it!
+    }
+
+    public static boolean useEpoll() {
+        return Epoll.isAvailable();
+    }
+
+    public static EventLoopGroup newEventLoopGroup(int threadCount) {
+        return useEpoll() ? new EpollEventLoopGroup(threadCount) : new NioEventLoopGroup(threadCount);
+    }
+
+    public static Class<? extends ServerSocketChannel> serverChannelClass() {
+        return useEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+}
@@ -14,11 +14,10 @@
 package com.bytedesk.core.socket.mqtt.server;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.ResourceLeakDetector;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -64,25 +63,28 @@ public class MqttWebSocketServer {
         ResourceLeakDetector
                 .setLevel(ResourceLeakDetector.Level.valueOf(mqttProperties.getLeakDetectorLevel().toUpperCase()));
 
-        parentEventLoopGroup = new NioEventLoopGroup(mqttProperties.getParentEventLoopGroupThreadCount());
+        // linux下使用epoll
+        parentEventLoopGroup = MqttServerUtils.newEventLoopGroup(mqttProperties.getParentEventLoopGroupThreadCount());
 
-        childEventLoopGroup = new NioEventLoopGroup(mqttProperties.getChildEventLoopGroupThreadCount());
+        childEventLoopGroup = MqttServerUtils.newEventLoopGroup(mqttProperties.getChildEventLoopGroupThreadCount());
 
         ServerBootstrap serverBootstrap = new ServerBootstrap();
 
         serverBootstrap.group(parentEventLoopGroup, childEventLoopGroup)
                 //
-                .channel(NioServerSocketChannel.class)
+                .channel(MqttServerUtils.serverChannelClass())
                 // 服务端处理客户端连接请求是顺序处理的，所以同一时间只能处理一个客户端连接，多个客户端来的时候，
                 // 服务端将不能处理的客户端连接请求放在队列中等待处理，backlog参数指定了队列的大小
                 .option(ChannelOption.SO_BACKLOG, 1024)
-                // .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                 // 当设置该选项以后，如果在两小时内没有数据的通信时，TCP会自动发送一个活动探测数据报文
                 .childOption(ChannelOption.SO_KEEPALIVE, true)
                 // Nagle算法是将小的数据包组装为更大的帧然后进行发送，而不是输入一次发送一次,因此在数据包不足的时候会等待其他数据的到了，
                 // 组装成大的数据包进行发送，虽然该方式有效提高网络的有效
                 // 参数的作用就是禁止使用Nagle算法，使用于小数据即时传输
                 .childOption(ChannelOption.TCP_NODELAY, true)
+                // 使用池化的ByteBuf，减少编解码时的内存分配
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                 // 打印log，TODO: 生产环境删除
                 // .handler(new LoggingHandler(LogLevel.WARN))
                 //
@@ -92,8 +94,8 @@ public class MqttWebSocketServer {
         serverChannel = serverBootstrap.bind(mqttProperties.getHost(), mqttProperties.getWebsocketPort()).sync()
                 .channel();
 
-        log.debug("Mqtt websocket transport started! {}:{}", mqttProperties.getHost(),
-                mqttProperties.getWebsocketPort());
+        log.debug("Mqtt websocket transport started! {}:{}, epoll {}", mqttProperties.getHost(),
+                mqttProperties.getWebsocketPort(), MqttServerUtils.useEpoll());
     }
 
     @PreDestroy
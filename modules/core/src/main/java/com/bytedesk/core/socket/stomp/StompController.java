@@ -21,8 +21,11 @@ import org.springframework.messaging.handler.annotation.*;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import com.bytedesk.core.annotation.ApiRateLimiter;
 // import com.bytedesk.core.annotation.TabooFilter;
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
 import com.bytedesk.core.message.IMessageSendService;
+import com.bytedesk.core.rate_limiter.RateLimiterKeyEnum;
 // import com.bytedesk.core.socket.MqService;
 
 import java.security.Principal;
@@ -41,6 +44,8 @@ public class StompController {
 
     private final IMessageSendService messageSendService;
 
+    private final BytedeskMetrics bytedeskMetrics;
+
     /**
      * stompClient.publish('/app/sid.uid', message)
      * 访客端发送消息
@@ -52,6 +57,7 @@ public class StompController {
      */
     @MessageMapping("/{sid}.{uid}")
     // @TabooFilter(value = "message", throwException = false)
+    @ApiRateLimiter(value = 20.0, capacity = 40, key = RateLimiterKeyEnum.VISITOR, throwException = false)
     public void message(Principal principal,
             @DestinationVariable(value = "sid") String sid,
             @DestinationVariable(value = "uid") String uid,
@@ -59,6 +65,7 @@ public class StompController {
         // principal: null, sid: org.workgroup.df_wg_uid, uid: 1513088171901063, message:
         log.debug("principal: {}, sid: {}, uid: {}, message: {}", principal, sid, uid, message);
         // TODO: 发送回执
+        bytedeskMetrics.messageReceived(BytedeskMetrics.PROTOCOL_STOMP);
         // 转发给mq
         messageSendService.sendJsonMessage(message);
     }
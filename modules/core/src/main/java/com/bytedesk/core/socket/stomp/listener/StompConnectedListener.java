@@ -22,6 +22,8 @@ import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+
 // import com.bytedesk.core.event.BytedeskEventPublisher;
 
 /**
@@ -37,6 +39,9 @@ import org.springframework.web.socket.messaging.SessionConnectedEvent;
 public class StompConnectedListener implements ApplicationListener<SessionConnectedEvent> {
 
     // private final BytedeskEventPublisher bytedeskEventPublisher;
+
+    private final BytedeskMetrics bytedeskMetrics;
+
     @Override
     public void onApplicationEvent(@NonNull SessionConnectedEvent event) {
         log.debug("stomp sessionConnectedEvent {}", event.toString());
@@ -49,6 +54,7 @@ public class StompConnectedListener implements ApplicationListener<SessionConnec
         // 
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         if (headerAccessor != null) {
+            bytedeskMetrics.stompSessionConnected(headerAccessor.getSessionId());
             log.info("headerAccessor {}", headerAccessor.getMessageHeaders());
             // String login = headerAccessor.getLogin();
             // FIXME: nativeHeaders={login=[1513088171901063], 但是 stomp connection with uid:  null，未正确获取到 login 值
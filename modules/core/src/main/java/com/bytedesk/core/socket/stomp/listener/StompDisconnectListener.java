@@ -24,6 +24,8 @@ import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+
 // import com.bytedesk.core.event.BytedeskEventPublisher;
 
 /**
@@ -37,9 +39,12 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 @AllArgsConstructor
 public class StompDisconnectListener implements ApplicationListener<SessionDisconnectEvent> {
 
+    private final BytedeskMetrics bytedeskMetrics;
+
     @Override
     public void onApplicationEvent(@NonNull SessionDisconnectEvent event) {
         log.debug("stomp sessionDisconnectEvent {}", event.toString());
+        bytedeskMetrics.stompSessionDisconnected(event.getSessionId());
         StompHeaderAccessor headerAccessor = MessageHeaderAccessor.getAccessor(event.getMessage(), StompHeaderAccessor.class);
         if (headerAccessor != null) {
             String login = headerAccessor.getLogin();
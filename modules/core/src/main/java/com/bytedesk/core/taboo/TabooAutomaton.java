@@ -0,0 +1,413 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-21 09:16:35
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-21 09:16:35
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.taboo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 敏感词自动机：双数组Aho-Corasick
+ *
+ * 构建后不可变，可被多线程共享；词库变化时整体重建并替换引用。
+ * 状态转移为 t = base[s] + code(c)，check[t] == s 时有效；
+ * fail为失配跳转，output指向当前状态后缀中最近的词尾状态，匹配时一次扫描即可找出所有命中位置。
+ *
+ * 匹配前逐字符归一化：全角转半角、大小写折叠，归一化不改变字符数，命中位置与原文一一对应。
+ */
+public final class TabooAutomaton {
+
+    public static final TabooAutomaton EMPTY = build(List.of());
+
+    private static final int ROOT = 0;
+
+    // 字符 -> 编码，按字符出现频次从1开始编号，未出现的字符为0
+    private final char[] codes;
+
+    private final int[] base;
+
+    private final int[] check;
+
+    private final int[] fail;
+
+    private final int[] output;
+
+    // 词尾状态对应的词长度，非词尾为0
+    private final int[] length;
+
+    private final int size;
+
+    private TabooAutomaton(char[] codes, int[] base, int[] check, int[] fail, int[] output, int[] length, int size) {
+        this.codes = codes;
+        this.base = base;
+        this.check = check;
+        this.fail = fail;
+        this.output = output;
+        this.length = length;
+        this.size = size;
+    }
+
+    /**
+     * 由词表构建，空白词忽略，重复词去重
+     */
+    public static TabooAutomaton build(Collection<String> words) {
+        // 1. 普通字典树
+        Node root = new Node();
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String word : words) {
+            if (word == null) {
+                continue;
+            }
+            String w = normalize(word.trim());
+            if (!w.isEmpty()) {
+                normalized.add(w);
+            }
+        }
+        // 字符按频次编码，高频字符编码小，子节点更集中，双数组更紧凑
+        Map<Character, Integer> frequency = new HashMap<>();
+        for (String word : normalized) {
+            for (int i = 0; i < word.length(); i++) {
+                frequency.merge(word.charAt(i), 1, Integer::sum);
+            }
+        }
+        if (frequency.size() >= Character.MAX_VALUE) {
+            throw new IllegalArgumentException("too many distinct characters: " + frequency.size());
+        }
+        List<Character> alphabet = new ArrayList<>(frequency.keySet());
+        alphabet.sort((a, b) -> frequency.get(b) - frequency.get(a));
+        char[] codes = new char[Character.MAX_VALUE + 1];
+        for (int i = 0; i < alphabet.size(); i++) {
+            codes[alphabet.get(i)] = (char) (i + 1);
+        }
+        for (String word : normalized) {
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.children.computeIfAbsent((int) codes[word.charAt(i)], key -> new Node());
+            }
+            node.length = word.length();
+        }
+        // 2. 按层次放入双数组
+        Builder builder = new Builder();
+        List<Node> order = new ArrayList<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        root.slot = ROOT;
+        builder.occupy(ROOT, -1);
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            order.add(node);
+            if (node.children.isEmpty()) {
+                continue;
+            }
+            int b = builder.findBase(node.children);
+            builder.base[node.slot] = b;
+            for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                Node child = entry.getValue();
+                child.slot = b + entry.getKey();
+                builder.occupy(child.slot, node.slot);
+                queue.add(child);
+            }
+        }
+        int capacity = builder.maxSlot + 1;
+        int[] base = Arrays.copyOf(builder.base, capacity);
+        int[] check = Arrays.copyOf(builder.check, capacity);
+        int[] fail = new int[capacity];
+        int[] output = new int[capacity];
+        int[] length = new int[capacity];
+        // 3. 失配跳转及输出链，按层次计算，父状态的fail总是先于子状态完成
+        for (Node node : order) {
+            length[node.slot] = node.length;
+        }
+        for (Node node : order) {
+            for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                int child = entry.getValue().slot;
+                int c = entry.getKey();
+                int f = ROOT;
+                if (node.slot != ROOT) {
+                    f = fail[node.slot];
+                    while (true) {
+                        int t = transition(base, check, f, c);
+                        if (t >= 0) {
+                            f = t;
+                            break;
+                        }
+                        if (f == ROOT) {
+                            break;
+                        }
+                        f = fail[f];
+                    }
+                }
+                fail[child] = f;
+                output[child] = length[f] > 0 ? f : output[f];
+            }
+        }
+        return new TabooAutomaton(codes, base, check, fail, output, length, normalized.size());
+    }
+
+    /**
+     * 词数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 是否包含敏感词，命中第一个即返回
+     */
+    public boolean matches(String text) {
+        if (size == 0 || text == null || text.isEmpty()) {
+            return false;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, code(text.charAt(i)));
+            if (length[state] > 0 || output[state] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 定位所有命中，每项为[start, end)，按结束位置排列，可能重叠
+     */
+    public List<int[]> locate(String text) {
+        List<int[]> hits = new ArrayList<>();
+        if (size == 0 || text == null || text.isEmpty()) {
+            return hits;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, code(text.charAt(i)));
+            int o = length[state] > 0 ? state : output[state];
+            while (o > 0) {
+                hits.add(new int[] { i + 1 - length[o], i + 1 });
+                o = output[o];
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 命中的敏感词原文
+     */
+    public Set<String> find(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        for (int[] hit : locate(text)) {
+            words.add(text.substring(hit[0], hit[1]));
+        }
+        return words;
+    }
+
+    /**
+     * 将命中的字符替换为mask，未命中时返回原字符串
+     */
+    public String mask(String text, char mask) {
+        if (size == 0 || text == null || text.isEmpty()) {
+            return text;
+        }
+        char[] chars = null;
+        int state = ROOT;
+        // 最近一段连续已替换区间[maskedFrom, maskedUntil)，重叠命中跳过其中的字符
+        int maskedFrom = 0;
+        int maskedUntil = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, code(text.charAt(i)));
+            // 输出链上第一个为以i结尾的最长命中，其起点可能早于之前的命中（如先命中"b"再命中"abc"），
+            // 因此必须从命中起点开始替换，不能从上次替换位置开始
+            int o = length[state] > 0 ? state : output[state];
+            if (o > 0) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                int start = i + 1 - length[o];
+                int j = start;
+                while (j <= i) {
+                    if (j >= maskedFrom && j < maskedUntil) {
+                        j = maskedUntil;
+                        continue;
+                    }
+                    chars[j++] = mask;
+                }
+                maskedFrom = start <= maskedUntil ? Math.min(maskedFrom, start) : start;
+                maskedUntil = i + 1;
+            }
+        }
+        return chars == null ? text : new String(chars);
+    }
+
+    private int next(int state, int c) {
+        if (c == 0) {
+            // 词表中没有的字符
+            return ROOT;
+        }
+        while (true) {
+            int t = transition(base, check, state, c);
+            if (t >= 0) {
+                return t;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static int transition(int[] base, int[] check, int state, int c) {
+        int t = base[state] + c;
+        if (base[state] > 0 && t < check.length && check[t] == state) {
+            return t;
+        }
+        return -1;
+    }
+
+    private int code(char c) {
+        return codes[normalize(c)];
+    }
+
+    /**
+     * 字符归一化：全角转半角，大小写折叠
+     */
+    public static char normalize(char c) {
+        if (c == '　') {
+            return ' ';
+        }
+        if (c >= '！' && c <= '～') {
+            c = (char) (c - 0xFEE0);
+        }
+        return Character.toLowerCase(c);
+    }
+
+    public static String normalize(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = normalize(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static final class Node {
+
+        private final TreeMap<Integer, Node> children = new TreeMap<>();
+
+        private int length;
+
+        private int slot;
+    }
+
+    private static final class Builder {
+
+        private int[] base = new int[1024];
+
+        private int[] check = new int[1024];
+
+        // 槽位占用位图
+        private long[] used = new long[16];
+
+        private int maxSlot;
+
+        // 查找base的起点，更小的base对应的区域已基本占满
+        private int baseFrom = 1;
+
+        Builder() {
+            Arrays.fill(check, -1);
+        }
+
+        void occupy(int slot, int parent) {
+            ensure(slot + 1);
+            used[slot >>> 6] |= 1L << slot;
+            check[slot] = parent;
+            maxSlot = Math.max(maxSlot, slot);
+        }
+
+        /**
+         * 找到能放下所有子节点的base，base从1开始，子节点槽位均大于根
+         *
+         * 每次按64个候选位置并行判断：候选位置p可用当且仅当所有子节点槽位p+offset均未占用，
+         * 对每个子节点取从p+offset开始的64位占用位图按位或，结果中为0的位即为可用位置
+         */
+        int findBase(TreeMap<Integer, Node> children) {
+            int first = children.firstKey();
+            int[] offsets = new int[children.size()];
+            int n = 0;
+            for (Integer c : children.keySet()) {
+                offsets[n++] = c - first;
+            }
+            int from = baseFrom + first;
+            for (int p = from;; p += 64) {
+                long occupied = 0;
+                for (int offset : offsets) {
+                    occupied |= bitsAt(p + offset);
+                    if (occupied == -1L) {
+                        break;
+                    }
+                }
+                if (occupied != -1L) {
+                    int position = p + Long.numberOfTrailingZeros(~occupied);
+                    // 起点到当前位置95%以上已占用时，后续从当前base开始查找
+                    int span = position - from;
+                    if (span > 1024 && countUsed(from, position) * 20L >= span * 19L) {
+                        baseFrom = position - first;
+                    }
+                    return position - first;
+                }
+            }
+        }
+
+        // 从slot开始的64个槽位的占用位图
+        private long bitsAt(int slot) {
+            int word = slot >>> 6;
+            int shift = slot & 63;
+            long low = word < used.length ? used[word] >>> shift : 0;
+            if (shift == 0) {
+                return low;
+            }
+            long high = word + 1 < used.length ? used[word + 1] << (64 - shift) : 0;
+            return low | high;
+        }
+
+        private long countUsed(int from, int to) {
+            long count = 0;
+            for (int slot = from; slot < to; slot += 64) {
+                long bits = bitsAt(slot);
+                if (to - slot < 64) {
+                    bits &= (1L << (to - slot)) - 1;
+                }
+                count += Long.bitCount(bits);
+            }
+            return count;
+        }
+
+        void ensure(int capacity) {
+            if (capacity <= base.length) {
+                return;
+            }
+            int newLength = Math.max(capacity, base.length + (base.length >> 1));
+            base = Arrays.copyOf(base, newLength);
+            int oldLength = check.length;
+            check = Arrays.copyOf(check, newLength);
+            Arrays.fill(check, oldLength, newLength, -1);
+            used = Arrays.copyOf(used, (newLength >>> 6) + 1);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-21 11:20:53
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-21 11:20:53
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.taboo;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.annotation.TabooJsonFilter;
+import com.bytedesk.core.annotation.TabooProtobufFilter;
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+import com.bytedesk.core.message.MessageExtra;
+import com.bytedesk.core.message.MessageProtobuf;
+import com.bytedesk.core.message.MessageTypeEnum;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 处理@TabooJsonFilter/@TabooProtobufFilter：发送前将文本消息中组织配置的敏感词替换为*
+ *
+ * 绝大多数消息不含敏感词：先用合并自动机扫描原始json，未命中时不解析直接放行；
+ * 可能命中时再解析消息，按消息所属组织的词表替换内容。
+ */
+@Slf4j
+@Aspect
+@Component
+@AllArgsConstructor
+public class TabooFilterAspect {
+
+    private final TabooWordService tabooWordService;
+
+    private final BytedeskMetrics bytedeskMetrics;
+
+    @Around("@annotation(tabooJsonFilter)")
+    public Object filterJson(ProceedingJoinPoint joinPoint, TabooJsonFilter tabooJsonFilter) throws Throwable {
+        Object[] args = joinPoint.getArgs();
+        if (args.length == 0 || !(args[0] instanceof String)) {
+            return joinPoint.proceed();
+        }
+        long start = System.nanoTime();
+        String masked = maskJson((String) args[0], tabooJsonFilter.action());
+        bytedeskMetrics.recordMessageStage(BytedeskMetrics.STAGE_FILTER, System.nanoTime() - start);
+        if (masked == null) {
+            return joinPoint.proceed();
+        }
+        args[0] = masked;
+        return joinPoint.proceed(args);
+    }
+
+    // 返回替换后的json，无需替换时返回null
+    private String maskJson(String json, String action) {
+        // 含unicode转义时无法直接扫描原文
+        if (!json.contains("\\u") && !tabooWordService.mayContain(json)) {
+            return null;
+        }
+        MessageProtobuf message = JSON.parseObject(json, MessageProtobuf.class);
+        return mask(message, action) ? message.toJson() : null;
+    }
+
+    @Around("@annotation(tabooProtobufFilter)")
+    public Object filterProtobuf(ProceedingJoinPoint joinPoint, TabooProtobufFilter tabooProtobufFilter) throws Throwable {
+        Object[] args = joinPoint.getArgs();
+        if (args.length > 0 && args[0] instanceof MessageProtobuf) {
+            long start = System.nanoTime();
+            MessageProtobuf message = (MessageProtobuf) args[0];
+            if (tabooWordService.mayContain(message.getContent())) {
+                mask(message, tabooProtobufFilter.action());
+            }
+            bytedeskMetrics.recordMessageStage(BytedeskMetrics.STAGE_FILTER, System.nanoTime() - start);
+        }
+        return joinPoint.proceed();
+    }
+
+    // 只处理访客、客服输入的文本消息，返回内容是否被替换
+    private boolean mask(MessageProtobuf message, String action) {
+        if (message == null || message.getType() != MessageTypeEnum.TEXT) {
+            return false;
+        }
+        String content = message.getContent();
+        MessageExtra extra = MessageExtra.fromJson(message.getExtra());
+        String orgUid = extra != null ? extra.getOrgUid() : null;
+        String masked = tabooWordService.maskMessage(orgUid, content);
+        if (masked == null || masked.equals(content)) {
+            return false;
+        }
+        log.debug("taboo words masked, action {}, message {}", action, message.getUid());
+        message.setContent(masked);
+        return true;
+    }
+
+}
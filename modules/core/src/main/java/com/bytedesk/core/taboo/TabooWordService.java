@@ -0,0 +1,209 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-21 10:42:18
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-21 10:42:18
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.taboo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 敏感词服务，供消息发送、VOC等共用
+ *
+ * 全局词表来自classpath下的sensitive-words.txt，组织词表来自各模块(如kbase的TabooMessageEntity)。
+ * 聊天消息默认只按组织词表替换，全局词表需开启bytedesk.taboo.message-global-words后才用于聊天消息。
+ * 每个组织一个自动机，另有一个包含聊天消息所用词的合并自动机，用于在解析消息之前快速判断是否可能命中；
+ * 词表变化时在调用线程中重建自动机，完成后整体替换引用，匹配线程始终读取完整的旧版本或新版本。
+ */
+@Slf4j
+@Service
+public class TabooWordService {
+
+    public static final String WORDS_FILE = "sensitive-words.txt";
+
+    public static final char MASK = '*';
+
+    // 全局词表是否也用于聊天消息，默认只使用各组织配置的词表
+    @Value("${bytedesk.taboo.message-global-words:false}")
+    private boolean messageGlobalWords;
+
+    private volatile TabooAutomaton globalAutomaton = TabooAutomaton.EMPTY;
+
+    // 聊天消息所用词合并，用于快速判断
+    private volatile TabooAutomaton unionAutomaton = TabooAutomaton.EMPTY;
+
+    // orgUid -> 组织自动机，不含全局词
+    private final Map<String, TabooAutomaton> orgAutomatons = new ConcurrentHashMap<>();
+
+    // 构建合并自动机的词表来源
+    private volatile Set<String> globalWords = Set.of();
+
+    private final Map<String, Set<String>> orgWords = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Set<String> words = new LinkedHashSet<>();
+        try (InputStream is = new ClassPathResource(WORDS_FILE).getInputStream();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    words.add(line);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to load sensitive words", e);
+        }
+        setGlobalWords(words);
+        log.info("Loaded {} sensitive words", globalAutomaton.size());
+    }
+
+    /**
+     * 替换全局词表
+     */
+    public synchronized void setGlobalWords(Collection<String> words) {
+        globalWords = Set.copyOf(words);
+        globalAutomaton = TabooAutomaton.build(globalWords);
+        rebuildUnion();
+    }
+
+    /**
+     * 替换组织词表，words为空时移除该组织
+     */
+    public synchronized void setOrgWords(String orgUid, Collection<String> words) {
+        if (!StringUtils.hasText(orgUid)) {
+            return;
+        }
+        if (words == null || words.isEmpty()) {
+            orgWords.remove(orgUid);
+            orgAutomatons.remove(orgUid);
+        } else {
+            Set<String> copy = Set.copyOf(words);
+            orgWords.put(orgUid, copy);
+            orgAutomatons.put(orgUid, TabooAutomaton.build(copy));
+        }
+        rebuildUnion();
+    }
+
+    /**
+     * 批量替换所有组织词表，只重建一次合并自动机
+     */
+    public synchronized void setAllOrgWords(Map<String, ? extends Collection<String>> wordsByOrg) {
+        Map<String, TabooAutomaton> automatons = new HashMap<>();
+        Map<String, Set<String>> copies = new HashMap<>();
+        wordsByOrg.forEach((orgUid, words) -> {
+            if (StringUtils.hasText(orgUid) && words != null && !words.isEmpty()) {
+                Set<String> copy = Set.copyOf(words);
+                copies.put(orgUid, copy);
+                automatons.put(orgUid, TabooAutomaton.build(copy));
+            }
+        });
+        orgAutomatons.putAll(automatons);
+        orgAutomatons.keySet().retainAll(automatons.keySet());
+        orgWords.putAll(copies);
+        orgWords.keySet().retainAll(copies.keySet());
+        rebuildUnion();
+        log.info("Loaded taboo words of {} orgs", automatons.size());
+    }
+
+    /**
+     * 聊天消息是否可能命中任一组织的敏感词，可直接用于未解析的原始消息
+     */
+    public boolean mayContain(String text) {
+        return unionAutomaton.matches(text);
+    }
+
+    public boolean contains(String orgUid, String text) {
+        if (globalAutomaton.matches(text)) {
+            return true;
+        }
+        TabooAutomaton org = getOrgAutomaton(orgUid);
+        return org != null && org.matches(text);
+    }
+
+    /**
+     * 命中的敏感词原文
+     */
+    public Set<String> find(String orgUid, String text) {
+        Set<String> words = new LinkedHashSet<>(globalAutomaton.find(text));
+        TabooAutomaton org = getOrgAutomaton(orgUid);
+        if (org != null) {
+            words.addAll(org.find(text));
+        }
+        return words;
+    }
+
+    /**
+     * 命中位置，每项为[start, end)
+     */
+    public List<int[]> locate(String orgUid, String text) {
+        List<int[]> hits = new ArrayList<>(globalAutomaton.locate(text));
+        TabooAutomaton org = getOrgAutomaton(orgUid);
+        if (org != null) {
+            hits.addAll(org.locate(text));
+        }
+        return hits;
+    }
+
+    /**
+     * 将敏感词替换为*，未命中时返回原字符串
+     */
+    public String mask(String orgUid, String text) {
+        String masked = globalAutomaton.mask(text, MASK);
+        TabooAutomaton org = getOrgAutomaton(orgUid);
+        return org != null ? org.mask(masked, MASK) : masked;
+    }
+
+    /**
+     * 替换聊天消息中的敏感词，未开启message-global-words时只使用组织词表
+     */
+    public String maskMessage(String orgUid, String text) {
+        if (messageGlobalWords) {
+            return mask(orgUid, text);
+        }
+        TabooAutomaton org = getOrgAutomaton(orgUid);
+        return org != null ? org.mask(text, MASK) : text;
+    }
+
+    private TabooAutomaton getOrgAutomaton(String orgUid) {
+        return orgUid == null ? null : orgAutomatons.get(orgUid);
+    }
+
+    // 调用方持有锁
+    private void rebuildUnion() {
+        Set<String> words = messageGlobalWords ? new HashSet<>(globalWords) : new HashSet<>();
+        orgWords.values().forEach(words::addAll);
+        unionAutomaton = TabooAutomaton.build(words);
+    }
+
+}
@@ -13,8 +13,6 @@
  */
 package com.bytedesk.core.thread;
 
-import org.springframework.util.SerializationUtils;
-
 import org.springframework.stereotype.Component;
 
 import com.bytedesk.core.config.BytedeskEventPublisher;
@@ -35,20 +33,21 @@ public class ThreadEntityListener {
     public void postPersist(ThreadEntity thread) {
         log.info("thread postPersist {}", thread.getUid());
         // send notifications
-        ThreadEntity clonedThread = SerializationUtils.clone(thread);
+        // 只复制监听器用到的字段，不序列化整个实体
+        ThreadSnapshot snapshot = ThreadSnapshot.from(thread);
 
         BytedeskEventPublisher bytedeskEventPublisher = ApplicationContextHolder.getBean(BytedeskEventPublisher.class);
-        bytedeskEventPublisher.publishThreadCreateEvent(clonedThread);
+        bytedeskEventPublisher.publishThreadCreateEvent(snapshot);
     }
 
     @PostUpdate
     public void postUpdate(ThreadEntity thread) {
         log.info("postUpdate {}", thread.getUid());
         // send notifications
-        ThreadEntity clonedThread = SerializationUtils.clone(thread);
+        ThreadSnapshot snapshot = ThreadSnapshot.from(thread);
         
         BytedeskEventPublisher bytedeskEventPublisher = ApplicationContextHolder.getBean(BytedeskEventPublisher.class);
-        bytedeskEventPublisher.publishThreadUpdateEvent(clonedThread);
+        bytedeskEventPublisher.publishThreadUpdateEvent(snapshot);
     }
 
     // @PreRemove
@@ -54,12 +54,15 @@ public class ThreadEventListener {
 
     @EventListener
     public void onThreadCreateEvent(ThreadCreateEvent event) {
-        ThreadEntity thread = event.getThread();
-        UserEntity user = thread.getOwner();
+        ThreadSnapshot thread = event.getThread();
         log.info("thread ThreadCreateEvent: {}", thread.getUid());
 
         // 机器人接待的会话存在user == null的情况，不需要订阅topic
-        if (user == null) {
+        if (!thread.hasOwner()) {
+            return;
+        }
+        String ownerUid = threadRestService.getOwnerUid(thread);
+        if (ownerUid == null) {
             return;
         }
 
@@ -73,7 +76,7 @@ public class ThreadEventListener {
             // 订阅内部会话
             String topicInternal = TopicUtils.formatTopicInternal(topic);
             TopicRequest request = TopicRequest.builder()
-                    .userUid(user.getUid())
+                    .userUid(ownerUid)
                     .build();
             request.getTopics().add(topic);
             request.getTopics().add(topicInternal);
@@ -82,7 +85,7 @@ public class ThreadEventListener {
             // 文件助手、系统通知会话延迟订阅topic
             TopicRequest request = TopicRequest.builder()
                     .topic(thread.getTopic())
-                    .userUid(user.getUid())
+                    .userUid(ownerUid)
                     .build();
             topicCacheService.pushRequest(request);
         }
@@ -13,6 +13,8 @@
  */
 package com.bytedesk.core.thread;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +37,8 @@ public interface ThreadRepository extends JpaRepository<ThreadEntity, Long>, Jpa
         
         Optional<ThreadEntity> findByUid(String uid);
 
+        List<ThreadEntity> findByUidIn(Collection<String> uids);
+
         Boolean existsByUid(String uid);
 
         /** used for member thread type */
@@ -70,6 +74,13 @@ public interface ThreadRepository extends JpaRepository<ThreadEntity, Long>, Jpa
         @Query("SELECT t FROM ThreadEntity t WHERE t.type IN :types AND t.status != :status AND t.deleted = false")
         List<ThreadEntity> findByTypesInAndStatusNotAndDeletedFalse(@Param("types") List<String> types, @Param("status") String status);
 
+        // 按id游标分页，查询最后更新时间早于updatedAt的会话
+        @Query("SELECT t FROM ThreadEntity t WHERE t.type IN :types AND t.status != :status AND t.deleted = false "
+                        + "AND t.updatedAt < :updatedAt AND t.id > :lastId ORDER BY t.id")
+        List<ThreadEntity> findByTypesInAndStatusNotAndUpdatedAtBeforeAndIdAfter(@Param("types") List<String> types,
+                        @Param("status") String status, @Param("updatedAt") LocalDateTime updatedAt,
+                        @Param("lastId") Long lastId, Pageable pageable);
+
         @Query("SELECT COUNT(*) FROM ThreadEntity t WHERE t.topic = :topic AND t.status = :status AND t.deleted = false")
         int countByTopicAndStatusAndDeletedFalse(@Param("topic") String topic, @Param("status") String status);
 
@@ -13,14 +13,16 @@
  */
 package com.bytedesk.core.thread;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.modelmapper.ModelMapper;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.lang.NonNull;
@@ -41,7 +43,9 @@ import com.bytedesk.core.rbac.user.UserEntity;
 import com.bytedesk.core.constant.BytedeskConsts;
 import com.bytedesk.core.constant.I18Consts;
 import com.bytedesk.core.rbac.user.UserProtobuf;
+import com.bytedesk.core.rbac.user.UserRepository;
 import com.bytedesk.core.rbac.user.UserUtils;
+import com.bytedesk.core.redis.cache.CacheEvictService;
 import com.bytedesk.core.tag.TagRequest;
 import com.bytedesk.core.tag.TagRestService;
 import com.bytedesk.core.tag.TagTypeEnum;
@@ -74,6 +78,10 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
 
     private final TagRestService tagRestService;
 
+    private final UserRepository userRepository;
+
+    private final CacheEvictService cacheEvictService;
+
     @Override
     public Page<ThreadEntity> queryByOrgEntity(ThreadRequest request) {
         Pageable pageable = request.getPageable();
@@ -81,6 +89,11 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
         return threadRepository.findAll(specs, pageable);
     }
 
+    @Override
+    public List<ThreadEntity> queryByOrgEntityBefore(ThreadRequest request, Long lastId, int size) {
+        return findByIdBefore(threadRepository, ThreadSpecification.search(request), lastId, size);
+    }
+
     public Page<ThreadResponse> queryByOrg(ThreadRequest request) {
         Page<ThreadEntity> threadPage = queryByOrgEntity(request);
         return threadPage.map(this::convertToResponse);
@@ -143,7 +156,7 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
 
     // 在group会话创建之后，自动为group成员members创建会话
     // 同事群组会话：org/group/{group_uid}
-    public ThreadResponse createGroupMemberThread(ThreadEntity thread, UserEntity owner) {
+    public ThreadResponse createGroupMemberThread(ThreadSnapshot thread, UserEntity owner) {
         //
         Optional<ThreadEntity> threadOptional = findFirstByTopicAndOwner(thread.getTopic(), owner);
         if (threadOptional.isPresent()) {
@@ -513,11 +526,32 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
         return threadRepository.countByTopicAndStatusNotAndDeletedFalse(topic, state);
     }
 
+    /**
+     * 会话事件快照中owner为懒加载代理时没有uid，按外键查询
+     */
+    public String getOwnerUid(ThreadSnapshot thread) {
+        if (thread.getOwnerUid() != null) {
+            return thread.getOwnerUid();
+        }
+        if (thread.getOwnerId() == null) {
+            return null;
+        }
+        return userRepository.findUidById(thread.getOwnerId()).orElse(null);
+    }
+
     @Cacheable(value = "thread", key = "#uid", unless = "#result == null")
     public Optional<ThreadEntity> findByUid(@NonNull String uid) {
         return threadRepository.findByUid(uid);
     }
 
+    // 批量查询，用于消息批量持久化，一次查询解析整批消息的会话
+    public List<ThreadEntity> findByUidIn(@NonNull Collection<String> uids) {
+        if (uids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return threadRepository.findByUidIn(uids);
+    }
+
     public Boolean existsByUid(@NonNull String uid) {
         return threadRepository.existsByUid(uid);
     }
@@ -534,20 +568,19 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
         return threadRepository.findByTopicAndDeleted(topic, false);
     }
 
-    @Cacheable(value = "thread", key = "#topic", unless = "#result == null")
+    @Cacheable(value = "thread", key = "'first-' + #topic", unless = "#result == null")
     public Optional<ThreadEntity> findFirstByTopic(@NonNull String topic) {
         return threadRepository.findFirstByTopicAndDeletedOrderByCreatedAtDesc(topic, false);
     }
 
     // 找到某个访客当前对应某技能组未关闭会话
-    @Cacheable(value = "thread", key = "#topic", unless = "#result == null")
+    @Cacheable(value = "thread", key = "'notClosed-' + #topic", unless = "#result == null")
     public Optional<ThreadEntity> findFirstByTopicNotClosed(String topic) {
         List<String> states = Arrays.asList(new String[] { ThreadProcessStatusEnum.CLOSED.name() });
         return threadRepository.findTopicAndStatusesNotInAndDeleted(topic, states, false);
     }
 
-    // TODO: how to cacheput or cacheevict?
-    @Cacheable(value = "thread", key = "#user.uid-#pageable.getPageNumber()", unless = "#result == null")
+    // 分页结果无法在保存时逐页删除，不缓存
     public Page<ThreadEntity> findByOwner(UserEntity user, Pageable pageable) {
         return threadRepository.findByOwnerAndHideAndDeleted(user, false, false, pageable);
     }
@@ -558,9 +591,30 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
         return threadRepository.findByTypesInAndStatusNotAndDeletedFalse(types, ThreadProcessStatusEnum.CLOSED.name());
     }
 
+    /**
+     * 最后更新时间早于updatedAt的未关闭客服会话，按id游标分页
+     */
+    public List<ThreadEntity> findServiceThreadStateStartedBefore(LocalDateTime updatedAt, Long lastId, int size) {
+        List<String> types = Arrays.asList(new String[] { ThreadTypeEnum.AGENT.name(), ThreadTypeEnum.WORKGROUP.name(),
+                ThreadTypeEnum.ROBOT.name() });
+        return threadRepository.findByTypesInAndStatusNotAndUpdatedAtBeforeAndIdAfter(types,
+                ThreadProcessStatusEnum.CLOSED.name(), updatedAt, lastId, PageRequest.of(0, size));
+    }
+
     @Override
     protected ThreadEntity doSave(ThreadEntity entity) {
-        return threadRepository.save(entity);
+        ThreadEntity savedThread = threadRepository.save(entity);
+        evictCache(savedThread);
+        return savedThread;
+    }
+
+    // 删除findByUid、findFirstByTopic*、findListByTopic的缓存，key与注解保持一致
+    private void evictCache(ThreadEntity thread) {
+        String topic = thread.getTopic();
+        String ownerUid = getOwnerUid(ThreadSnapshot.from(thread));
+        cacheEvictService.evict("thread", thread.getUid(), "first-" + topic, "notClosed-" + topic,
+                ownerUid != null ? topic + "-" + ownerUid : null);
+        cacheEvictService.evict("threads", topic);
     }
 
     @Override
@@ -578,7 +632,7 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
                 if (entity.getContent() != null) {
                     latestEntity.setContent(entity.getContent());
                 }
-                return threadRepository.save(latestEntity);
+                return doSave(latestEntity);
             }
         } catch (Exception ex) {
             log.error("无法处理乐观锁冲突: {}", ex.getMessage(), ex);
@@ -604,10 +658,6 @@ public class ThreadRestService extends BaseRestServiceWithExcel<ThreadEntity, Th
         });
     }
 
-    @Caching(evict = {
-            @CacheEvict(value = "thread", key = "#thread.uid"),
-            @CacheEvict(value = "thread", key = "#thread.topic")
-    })
     public void delete(@NonNull ThreadRequest entity) {
         Optional<ThreadEntity> threadOptional = findByUid(entity.getUid());
         threadOptional.ifPresent(thread -> {
@@ -0,0 +1,131 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-22 15:20:11
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-22 15:20:11
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.thread;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.Hibernate;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.rbac.user.UserEntity;
+import com.bytedesk.core.rbac.user.UserProtobuf;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * ThreadCreateEvent/ThreadUpdateEvent携带的会话快照
+ *
+ * 只复制监听器用到的字段，字段均为不可变值，可在异步监听器中安全读取；
+ * 需要完整会话(如消息列表、标签等)的监听器按uid自行查询
+ */
+@Getter
+@Builder
+@ToString
+public class ThreadSnapshot {
+
+    private final Long id;
+
+    private final String uid;
+
+    private final String orgUid;
+
+    private final String topic;
+
+    private final String type;
+
+    private final String status;
+
+    private final String content;
+
+    private final String client;
+
+    // 会话设置json，用于计算自动关闭时间
+    private final String extra;
+
+    // json
+    private final String user;
+
+    private final String agent;
+
+    // owner为未加载的懒加载代理时为null，此时按ownerId查询，见ThreadRestService.getOwnerUid
+    private final String ownerUid;
+
+    // 从代理中直接读取外键，不触发懒加载
+    private final Long ownerId;
+
+    private final LocalDateTime createdAt;
+
+    private final LocalDateTime updatedAt;
+
+    public static ThreadSnapshot from(ThreadEntity thread) {
+        return ThreadSnapshot.builder()
+                .id(thread.getId())
+                .uid(thread.getUid())
+                .orgUid(thread.getOrgUid())
+                .topic(thread.getTopic())
+                .type(thread.getType())
+                .status(thread.getStatus())
+                .content(thread.getContent())
+                .client(thread.getClient())
+                .extra(thread.getExtra())
+                .user(thread.getUser())
+                .agent(thread.getAgent())
+                .ownerUid(thread.getOwner() != null && Hibernate.isInitialized(thread.getOwner())
+                        ? thread.getOwner().getUid()
+                        : null)
+                .ownerId(ownerIdOf(thread.getOwner()))
+                .createdAt(thread.getCreatedAt())
+                .updatedAt(thread.getUpdatedAt())
+                .build();
+    }
+
+    public boolean hasOwner() {
+        return ownerUid != null || ownerId != null;
+    }
+
+    static Long ownerIdOf(UserEntity owner) {
+        if (owner == null) {
+            return null;
+        }
+        LazyInitializer initializer = HibernateProxy.extractLazyInitializer(owner);
+        if (initializer != null) {
+            return (Long) initializer.getIdentifier();
+        }
+        return owner.getId();
+    }
+
+    public boolean isCustomerService() {
+        return ThreadTypeEnum.AGENT.name().equals(type)
+                || ThreadTypeEnum.WORKGROUP.name().equals(type)
+                || ThreadTypeEnum.ROBOT.name().equals(type)
+                || ThreadTypeEnum.UNIFIED.name().equals(type);
+    }
+
+    public boolean isWorkgroupType() {
+        return ThreadTypeEnum.WORKGROUP.name().equals(type);
+    }
+
+    public boolean isAgentType() {
+        return ThreadTypeEnum.AGENT.name().equals(type);
+    }
+
+    public UserProtobuf getAgentProtobuf() {
+        return JSON.parseObject(agent, UserProtobuf.class);
+    }
+
+}
@@ -22,6 +22,9 @@ import org.springframework.util.StringUtils;
 
 import com.bytedesk.core.base.BaseSpecification;
 import com.bytedesk.core.constant.TypeConsts;
+import com.bytedesk.core.search.SearchDocTypeEnum;
+import com.bytedesk.core.search.SearchFieldEnum;
+import com.bytedesk.core.search.SearchSpecification;
 import com.bytedesk.core.utils.BdPinyinUtils;
 
 import jakarta.persistence.criteria.Expression;
@@ -126,7 +129,10 @@ public class ThreadSpecification extends BaseSpecification {
             }
             //
             if (StringUtils.hasText(request.getTopic())) {
-                predicates.add(criteriaBuilder.like(root.get("topic"), "%" + request.getTopic() + "%"));
+                Predicate topicPredicate = SearchSpecification.matchTerms(root, query, criteriaBuilder,
+                        request.getOrgUid(), SearchDocTypeEnum.THREAD, SearchFieldEnum.TOPIC, request.getTopic());
+                predicates.add(topicPredicate != null ? topicPredicate
+                        : criteriaBuilder.like(root.get("topic"), "%" + request.getTopic() + "%"));
             }
             // 创建一个包含inviteUids、monitorUids和ownerUid的OR条件组
             List<Predicate> filterPredicates = new ArrayList<>();
@@ -191,9 +197,12 @@ public class ThreadSpecification extends BaseSpecification {
             }
 
             //
-            // user 使用 string 存储，此处暂时用like查询
+            // user 使用 string 存储，优先使用全文索引，未开启时用like查询
             if (StringUtils.hasText(request.getUserNickname())) {
-                predicates.add(criteriaBuilder.like(root.get("user"), "%" + request.getUserNickname() + "%"));
+                Predicate nicknamePredicate = SearchSpecification.matchTerms(root, query, criteriaBuilder,
+                        request.getOrgUid(), SearchDocTypeEnum.THREAD, SearchFieldEnum.NICKNAME, request.getUserNickname());
+                predicates.add(nicknamePredicate != null ? nicknamePredicate
+                        : criteriaBuilder.like(root.get("user"), "%" + request.getUserNickname() + "%"));
             }
             //
             if (StringUtils.hasText(request.getClient())) {
@@ -15,7 +15,7 @@ package com.bytedesk.core.thread.event;
 
 import org.springframework.context.ApplicationEvent;
 
-import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadSnapshot;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -24,9 +24,9 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode(callSuper = false)
 public class ThreadCreateEvent extends ApplicationEvent {
 
-    private ThreadEntity thread;
+    private ThreadSnapshot thread;
 
-    public ThreadCreateEvent(Object source, ThreadEntity thread) {
+    public ThreadCreateEvent(Object source, ThreadSnapshot thread) {
         super(source);
         this.thread = thread;
     }
@@ -15,7 +15,7 @@ package com.bytedesk.core.thread.event;
 
 import org.springframework.context.ApplicationEvent;
 
-import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadSnapshot;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -24,9 +24,9 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode(callSuper = false)
 public class ThreadUpdateEvent extends ApplicationEvent {
 
-    private ThreadEntity thread;
+    private ThreadSnapshot thread;
 
-    public ThreadUpdateEvent(Object source, ThreadEntity thread) {
+    public ThreadUpdateEvent(Object source, ThreadSnapshot thread) {
         super(source);
         this.thread = thread;
     }
@@ -16,9 +16,12 @@ package com.bytedesk.core.topic;
 import java.util.List;
 import java.util.Set;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.quartz.event.QuartzDay0Event;
+import com.bytedesk.core.quartz.event.QuartzFiveMinEvent;
 import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
 import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
 import com.bytedesk.core.rbac.user.UserEntity;
@@ -98,6 +101,32 @@ public class TopicEventListener {
         }
     }
 
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        // 加载topic订阅内存索引
+        topicService.rebuildSubscriptionIndex();
+    }
+
+    @EventListener
+    public void onQuartzFiveMinEvent(QuartzFiveMinEvent event) {
+        // 增量同步集群中其他节点的订阅变更
+        try {
+            topicService.syncSubscriptionIndexChanges();
+        } catch (Exception e) {
+            log.error("sync topic subscription index error: ", e);
+        }
+    }
+
+    @EventListener
+    public void onQuartzDay0Event(QuartzDay0Event event) {
+        // 每天全量校对一次，清理物理删除的记录
+        try {
+            topicService.rebuildSubscriptionIndex();
+        } catch (Exception e) {
+            log.error("rebuild topic subscription index error: ", e);
+        }
+    }
+
     @EventListener
     public void onUserLogoutEvent(UserLogoutEvent event) {
         // UserLogoutEvent userLogoutEvent = event.getObject();
@@ -13,9 +13,12 @@
  */
 package com.bytedesk.core.topic;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.Set;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -29,6 +32,9 @@ public interface TopicRepository extends JpaRepository<TopicEntity, Long>, JpaSp
     
     Optional<TopicEntity> findFirstByUserUid(String userUid);
 
+    // 订阅索引增量同步，包含已软删除的记录
+    Page<TopicEntity> findByUpdatedAtAfter(LocalDateTime updatedAt, Pageable pageable);
+
     // boolean existsByTopicAndUid(String topic, String uid);
 
     // exact match 精确匹配
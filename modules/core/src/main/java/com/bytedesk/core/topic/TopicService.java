@@ -13,6 +13,9 @@
  */
 package com.bytedesk.core.topic;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import org.modelmapper.ModelMapper;
@@ -21,6 +24,10 @@ import org.springframework.cache.annotation.Caching;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -35,6 +42,8 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public class TopicService {
 
+    private static final long SUBSCRIPTION_SYNC_OVERLAP_SECONDS = 60;
+
     private final TopicRepository topicRepository;
 
     private final ModelMapper modelMapper;
@@ -43,6 +52,8 @@ public class TopicService {
 
     private final OptimisticLockingHandler optimisticLockingHandler;
 
+    private final TopicSubscriptionIndex topicSubscriptionIndex;
+
     public void create(String topic, String userUid) {
         TopicRequest request = TopicRequest.builder()
                 .topic(topic)
@@ -137,11 +148,11 @@ public class TopicService {
         Optional<TopicEntity> topicOptional = findByClientId(clientId);
         if (topicOptional.isPresent()) {
             TopicEntity topicElement = topicOptional.get();
-            if (topicElement.getTopics().contains(topic)) {
-                log.info("create: {}", topic);
+            if (!topicElement.getTopics().contains(topic)) {
                 return;
             }
-            topicElement.getTopics().add(topic);
+            log.info("unsubscribe: {}", topic);
+            topicElement.getTopics().remove(topic);
             // 
             save(topicElement);
         }
@@ -231,17 +242,62 @@ public class TopicService {
         return topicRepository.findByTopicsContains(topic);
     }
 
+    // 通过内存索引匹配订阅topic的在线clientIds，支持通配符"+"和"#"
+    public Set<String> findClientIdsByTopic(String topic) {
+        return topicSubscriptionIndex.matchClientIds(topic);
+    }
+
+    // 从数据库全量重建内存索引，启动时及每天校对（如其他节点物理删除的记录）时调用
+    public void rebuildSubscriptionIndex() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        List<TopicEntity> topics = new ArrayList<>();
+        Pageable pageable = PageRequest.of(0, 1000);
+        Page<TopicEntity> page;
+        do {
+            page = topicRepository.findAll(pageable);
+            page.forEach(topic -> {
+                if (!topic.isDeleted()) {
+                    topics.add(topic);
+                }
+            });
+            pageable = page.nextPageable();
+        } while (page.hasNext());
+        topicSubscriptionIndex.rebuild(topics, startedAt);
+    }
+
+    // 增量同步上次同步以来更新的记录，集群中其他节点的订阅变更在一个周期内可见
+    public void syncSubscriptionIndexChanges() {
+        LocalDateTime syncedAt = topicSubscriptionIndex.getSyncedAt();
+        if (syncedAt == null) {
+            rebuildSubscriptionIndex();
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now();
+        // 向前多读一段时间，覆盖节点间时钟偏差和提交较慢的事务
+        LocalDateTime since = syncedAt.minusSeconds(SUBSCRIPTION_SYNC_OVERLAP_SECONDS);
+        Pageable pageable = PageRequest.of(0, 1000, Sort.by("id"));
+        Page<TopicEntity> page;
+        do {
+            page = topicRepository.findByUpdatedAtAfter(since, pageable);
+            page.forEach(topicSubscriptionIndex::sync);
+            pageable = page.nextPageable();
+        } while (page.hasNext());
+        topicSubscriptionIndex.setSyncedAt(startedAt);
+    }
+
     @Caching(put = {
         @CachePut(value = "topic", key = "#topic.userUid")
     })
     public TopicEntity save(TopicEntity topic) {
         try {
-            return optimisticLockingHandler.executeWithRetry(
+            TopicEntity savedTopic = optimisticLockingHandler.executeWithRetry(
                 () -> topicRepository.save(topic),
                 "topic",
                 topic.getUid(),
                 topic
             );
+            topicSubscriptionIndex.sync(savedTopic);
+            return savedTopic;
         } catch (ObjectOptimisticLockingFailureException e) {
             log.error("Failed to save topic after retries", e);
             return null;
@@ -253,14 +309,16 @@ public class TopicService {
     public void update(String uid, String userUid) {
         Optional<TopicEntity> optionalTopic = findByUid(uid);
         optionalTopic.ifPresent(topic -> {
+            topicSubscriptionIndex.remove(topic.getUserUid());
             topic.setUserUid(userUid);
-            topicRepository.save(topic);
+            topicSubscriptionIndex.sync(topicRepository.save(topic));
         });
     }
 
     @CacheEvict(value = "topic", key = "#topic.userUid")
     public void delete(TopicEntity topic) {
         topicRepository.delete(topic);
+        topicSubscriptionIndex.remove(topic.getUserUid());
     }
 
     public TopicResponse convertToTopicResponse(TopicEntity topic) {
@@ -0,0 +1,267 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-17 14:08:52
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-17 14:08:52
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.topic;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * topic订阅内存索引
+ *
+ * 按topic层级("/"分隔)组织的订阅树，支持mqtt通配符：
+ * 单层通配符"+"：只能匹配一层主题。例如，"aaa/+"可以匹配"aaa/bbb"，但不能匹配"aaa/bbb/ccc"。
+ * 多层通配符"#"：可以匹配多层主题，且必须是最后一级。例如，"aaa/#"可以匹配"aaa"、"aaa/bbb"、"aaa/bbb/ccc"。
+ *
+ * 每个节点记录订阅到该节点的userUid，用户的在线clientIds单独保存，
+ * 匹配一个topic只需遍历topic层级，不再扫描bytedesk_core_topic全表。
+ * 读操作无锁，写操作串行，数据库仍然是唯一的持久化存储。
+ */
+@Slf4j
+@Component
+public class TopicSubscriptionIndex {
+
+    private static final String LEVEL_SEPARATOR = "/";
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    private volatile Node root = new Node();
+
+    // userUid -> 订阅信息
+    private volatile Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    // 重建期间发生的变更，重建完成后重放
+    private Map<String, Subscription> pendingDuringRebuild;
+
+    // 已同步到的数据库更新时间，增量同步从这里开始
+    private volatile LocalDateTime syncedAt;
+
+    /**
+     * 匹配topic的所有在线clientId
+     */
+    public Set<String> matchClientIds(String topic) {
+        if (!StringUtils.hasText(topic)) {
+            return Collections.emptySet();
+        }
+        Set<String> userUids = matchUserUids(topic);
+        if (userUids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Map<String, Subscription> current = subscriptions;
+        Set<String> clientIds = new HashSet<>();
+        for (String userUid : userUids) {
+            Subscription subscription = current.get(userUid);
+            if (subscription != null) {
+                clientIds.addAll(subscription.clientIds);
+            }
+        }
+        return clientIds;
+    }
+
+    /**
+     * 匹配topic的所有订阅用户
+     */
+    public Set<String> matchUserUids(String topic) {
+        Set<String> result = new HashSet<>();
+        if (StringUtils.hasText(topic)) {
+            match(root, topic.split(LEVEL_SEPARATOR, -1), 0, result);
+        }
+        return result;
+    }
+
+    private void match(Node node, String[] levels, int index, Set<String> result) {
+        // "aaa/#" 同时匹配 "aaa"
+        Node multi = node.children.get(MULTI_LEVEL_WILDCARD);
+        if (multi != null) {
+            result.addAll(multi.userUids);
+        }
+        if (index == levels.length) {
+            result.addAll(node.userUids);
+            return;
+        }
+        Node exact = node.children.get(levels[index]);
+        if (exact != null) {
+            match(exact, levels, index + 1, result);
+        }
+        Node single = node.children.get(SINGLE_LEVEL_WILDCARD);
+        if (single != null) {
+            match(single, levels, index + 1, result);
+        }
+    }
+
+    /**
+     * 使用数据库中的最新记录同步用户的订阅和在线clientIds
+     */
+    public synchronized void sync(TopicEntity topic) {
+        if (topic == null || !StringUtils.hasText(topic.getUserUid())) {
+            return;
+        }
+        if (topic.isDeleted()) {
+            remove(topic.getUserUid());
+            return;
+        }
+        Subscription subscription = new Subscription(topic.getTopics(), topic.getClientIds());
+        apply(topic.getUserUid(), subscription);
+        if (pendingDuringRebuild != null) {
+            pendingDuringRebuild.put(topic.getUserUid(), subscription);
+        }
+    }
+
+    public synchronized void remove(String userUid) {
+        if (!StringUtils.hasText(userUid)) {
+            return;
+        }
+        apply(userUid, null);
+        if (pendingDuringRebuild != null) {
+            pendingDuringRebuild.put(userUid, Subscription.EMPTY);
+        }
+    }
+
+    /**
+     * 全量重建，启动时及每天校对时调用
+     *
+     * @param startedAt 开始读取数据库的时间，之后的变更由增量同步读取
+     */
+    public void rebuild(Iterable<TopicEntity> topics, LocalDateTime startedAt) {
+        synchronized (this) {
+            pendingDuringRebuild = new HashMap<>();
+        }
+        Node newRoot = new Node();
+        Map<String, Subscription> newSubscriptions = new ConcurrentHashMap<>();
+        int count = 0;
+        for (TopicEntity topic : topics) {
+            if (topic.isDeleted() || !StringUtils.hasText(topic.getUserUid())) {
+                continue;
+            }
+            Subscription subscription = new Subscription(topic.getTopics(), topic.getClientIds());
+            newSubscriptions.put(topic.getUserUid(), subscription);
+            for (String filter : subscription.topics) {
+                insert(newRoot, filter, topic.getUserUid());
+            }
+            count++;
+        }
+        synchronized (this) {
+            root = newRoot;
+            subscriptions = newSubscriptions;
+            // 重放重建期间的变更
+            pendingDuringRebuild.forEach((userUid, subscription) ->
+                    apply(userUid, subscription == Subscription.EMPTY ? null : subscription));
+            pendingDuringRebuild = null;
+            syncedAt = startedAt;
+        }
+        log.info("topic subscription index rebuilt, users {}", count);
+    }
+
+    public LocalDateTime getSyncedAt() {
+        return syncedAt;
+    }
+
+    public void setSyncedAt(LocalDateTime syncedAt) {
+        this.syncedAt = syncedAt;
+    }
+
+    public int size() {
+        return subscriptions.size();
+    }
+
+    // 调用方持有锁
+    private void apply(String userUid, Subscription subscription) {
+        Subscription previous = subscription != null
+                ? subscriptions.put(userUid, subscription)
+                : subscriptions.remove(userUid);
+        Set<String> oldTopics = previous != null ? previous.topics : Collections.emptySet();
+        Set<String> newTopics = subscription != null ? subscription.topics : Collections.emptySet();
+        for (String filter : oldTopics) {
+            if (!newTopics.contains(filter)) {
+                delete(root, filter, userUid);
+            }
+        }
+        for (String filter : newTopics) {
+            if (!oldTopics.contains(filter)) {
+                insert(root, filter, userUid);
+            }
+        }
+    }
+
+    private static void insert(Node root, String filter, String userUid) {
+        if (!StringUtils.hasText(filter)) {
+            return;
+        }
+        Node node = root;
+        for (String level : filter.split(LEVEL_SEPARATOR, -1)) {
+            node = node.children.computeIfAbsent(level, key -> new Node());
+        }
+        node.userUids.add(userUid);
+    }
+
+    private static void delete(Node root, String filter, String userUid) {
+        if (!StringUtils.hasText(filter)) {
+            return;
+        }
+        delete(root, filter.split(LEVEL_SEPARATOR, -1), 0, userUid);
+    }
+
+    // 返回该节点是否已为空，便于清理不再使用的分支
+    private static boolean delete(Node node, String[] levels, int index, String userUid) {
+        if (index == levels.length) {
+            node.userUids.remove(userUid);
+        } else {
+            Node child = node.children.get(levels[index]);
+            if (child != null && delete(child, levels, index + 1, userUid)) {
+                node.children.remove(levels[index], child);
+            }
+        }
+        return node.userUids.isEmpty() && node.children.isEmpty();
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+
+        private final Set<String> userUids = ConcurrentHashMap.newKeySet();
+    }
+
+    private static final class Subscription {
+
+        private static final Subscription EMPTY = new Subscription(null, null);
+
+        private final Set<String> topics;
+
+        private final Set<String> clientIds;
+
+        Subscription(Set<String> topics, Set<String> clientIds) {
+            this.topics = copyOf(topics);
+            this.clientIds = copyOf(clientIds);
+        }
+
+        // 数据库中的集合可能包含null或空字符串，Set.copyOf遇到null会抛出异常
+        private static Set<String> copyOf(Set<String> values) {
+            if (values == null || values.isEmpty()) {
+                return Collections.emptySet();
+            }
+            return values.stream().filter(StringUtils::hasText).collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ package com.bytedesk.core.uid;
 import com.bytedesk.core.uid.impl.CachedUidGenerator;
 import com.bytedesk.core.uid.impl.UidProperties;
 import com.bytedesk.core.uid.worker.DisposableWorkerIdAssigner;
+import com.bytedesk.core.uid.worker.LeasedWorkerIdAssigner;
 import com.bytedesk.core.uid.worker.WorkerIdAssigner;
 import com.bytedesk.core.uid.impl.DefaultUidGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +26,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 /**
  * https://github.com/wujun234/uid-generator-spring-boot-starter
@@ -57,7 +59,10 @@ public class UidAutoConfigure {
 
 	@Bean
 	@ConditionalOnMissingBean
-    WorkerIdAssigner workerIdAssigner() {
+    WorkerIdAssigner workerIdAssigner(StringRedisTemplate stringRedisTemplate) {
+		if (uidProperties.isLeaseEnabled()) {
+			return new LeasedWorkerIdAssigner(stringRedisTemplate, uidProperties);
+		}
 		return new DisposableWorkerIdAssigner();
 	}
 }
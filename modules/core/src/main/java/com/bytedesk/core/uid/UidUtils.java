@@ -81,7 +81,7 @@ public class UidUtils {
     }
 
     public String getUid() {
-        return getDefaultSerialUid();
+        return getCacheSerialUid();
     }
 
 }
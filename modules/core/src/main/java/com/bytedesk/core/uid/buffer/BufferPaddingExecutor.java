@@ -79,8 +79,20 @@ public class BufferPaddingExecutor {
      * @param usingSchedule
      */
     public BufferPaddingExecutor(RingBuffer ringBuffer, BufferedUidProvider uidProvider, boolean usingSchedule) {
+        this(ringBuffer, uidProvider, usingSchedule, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+    }
+
+    /**
+     * Constructor with the last consumed second, padding starts from the next second
+     *
+     * @param ringBuffer {@link RingBuffer}
+     * @param uidProvider {@link BufferedUidProvider}
+     * @param usingSchedule
+     * @param lastSecond
+     */
+    public BufferPaddingExecutor(RingBuffer ringBuffer, BufferedUidProvider uidProvider, boolean usingSchedule, long lastSecond) {
         this.running = new AtomicBoolean(false);
-        this.lastSecond = new PaddedAtomicLong(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        this.lastSecond = new PaddedAtomicLong(lastSecond);
         this.ringBuffer = ringBuffer;
         this.uidProvider = uidProvider;
 
@@ -127,6 +139,15 @@ public class BufferPaddingExecutor {
         return running.get();
     }
 
+    /**
+     * The last second we have consumed, may be ahead of the current time
+     *
+     * @return
+     */
+    public long getLastSecond() {
+        return lastSecond.get();
+    }
+
     /**
      * Padding buffer in the thread pool
      */
@@ -86,8 +86,8 @@ public class CachedUidGenerator extends DefaultUidGenerator implements Disposabl
     /**
      * RingBuffer
      */
-    private RingBuffer ringBuffer;
-    private BufferPaddingExecutor bufferPaddingExecutor;
+    private volatile RingBuffer ringBuffer;
+    private volatile BufferPaddingExecutor bufferPaddingExecutor;
 
     public CachedUidGenerator(UidProperties uidProperties) {
         super(uidProperties);
@@ -106,7 +106,11 @@ public class CachedUidGenerator extends DefaultUidGenerator implements Disposabl
     @Override
     public long getUID() {
         try {
-            return ringBuffer.take();
+            RingBuffer buffer = this.ringBuffer;
+            if (buffer == null) {
+                throw new UidGenerateException("Worker id lease lost, refusing UID generate until a new worker id is leased");
+            }
+            return buffer.take();
         } catch (Exception e) {
             LOGGER.error("Generate unique id exception. ", e);
             throw new UidGenerateException(e);
@@ -118,6 +122,31 @@ public class CachedUidGenerator extends DefaultUidGenerator implements Disposabl
         return super.parseUID(uid);
     }
 
+    /**
+     * 填充线程会借用未来的秒数, 以其已消费到的秒数为准
+     */
+    @Override
+    protected long getLastSecond() {
+        BufferPaddingExecutor executor = this.bufferPaddingExecutor;
+        return executor != null ? executor.getLastSecond() : super.getLastSecond();
+    }
+
+    /**
+     * 环中已填充的是原workerId的UID, 整体丢弃, 按新workerId重新填充
+     */
+    @Override
+    protected synchronized void reassignWorkerId() {
+        workerId = -1L;
+        // 新环填充前拒绝获取
+        this.ringBuffer = null;
+        BufferPaddingExecutor previous = this.bufferPaddingExecutor;
+        if (previous != null) {
+            previous.shutdown();
+        }
+        super.reassignWorkerId();
+        initRingBuffer();
+    }
+
     @Override
     public void destroy() throws Exception {
         bufferPaddingExecutor.shutdown();
@@ -135,7 +164,7 @@ public class CachedUidGenerator extends DefaultUidGenerator implements Disposabl
         List<Long> uidList = new ArrayList<>(listSize);
 
         // Allocate the first sequence of the second, the others can be calculated with the offset
-        long firstSeqUid = bitsAllocator.allocate(currentSecond - uidProperties.getEpochSeconds(), workerId, 0L);
+        long firstSeqUid = bitsAllocator.allocate(currentSecond - uidProperties.getEpochSeconds(), checkWorkerId(), 0L);
         for (int offset = 0; offset < listSize; offset++) {
             uidList.add(firstSeqUid + offset);
         }
@@ -149,12 +178,13 @@ public class CachedUidGenerator extends DefaultUidGenerator implements Disposabl
     private void initRingBuffer() {
         // initialize RingBuffer
         int bufferSize = ((int) bitsAllocator.getMaxSequence() + 1) << boostPower;
-        this.ringBuffer = new RingBuffer(bufferSize, paddingFactor);
+        RingBuffer ringBuffer = new RingBuffer(bufferSize, paddingFactor);
         LOGGER.info("Initialized ring buffer size:{}, paddingFactor:{}", bufferSize, paddingFactor);
 
         // initialize RingBufferPaddingExecutor
         boolean usingSchedule = (scheduleInterval != null);
-        this.bufferPaddingExecutor = new BufferPaddingExecutor(ringBuffer, this::nextIdsForOneSecond, usingSchedule);
+        // 从workerId上一个持有者已发放的秒数之后开始填充
+        this.bufferPaddingExecutor = new BufferPaddingExecutor(ringBuffer, this::nextIdsForOneSecond, usingSchedule, super.getLastSecond());
         if (usingSchedule) {
             bufferPaddingExecutor.setScheduleInterval(scheduleInterval);
         }
@@ -162,12 +192,12 @@ public class CachedUidGenerator extends DefaultUidGenerator implements Disposabl
         LOGGER.info("Initialized BufferPaddingExecutor. Using schdule:{}, interval:{}", usingSchedule, scheduleInterval);
 
         // set rejected put/take handle policy
-        this.ringBuffer.setBufferPaddingExecutor(bufferPaddingExecutor);
+        ringBuffer.setBufferPaddingExecutor(bufferPaddingExecutor);
         if (rejectedPutBufferHandler != null) {
-            this.ringBuffer.setRejectedPutHandler(rejectedPutBufferHandler);
+            ringBuffer.setRejectedPutHandler(rejectedPutBufferHandler);
         }
         if (rejectedTakeBufferHandler != null) {
-            this.ringBuffer.setRejectedTakeHandler(rejectedTakeBufferHandler);
+            ringBuffer.setRejectedTakeHandler(rejectedTakeBufferHandler);
         }
 
         // fill in all slots of the RingBuffer
@@ -175,6 +205,9 @@ public class CachedUidGenerator extends DefaultUidGenerator implements Disposabl
 
         // start buffer padding threads
         bufferPaddingExecutor.start();
+
+        // 填充完成后再发布, 重新租用workerId期间getUID不会取到空环
+        this.ringBuffer = ringBuffer;
     }
 
     /**
@@ -19,6 +19,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.bytedesk.core.uid.UidGeneratorService;
 import com.bytedesk.core.uid.exception.UidGenerateException;
+import com.bytedesk.core.uid.utils.PaddedAtomicLong;
 import com.bytedesk.core.uid.worker.WorkerIdAssigner;
 
 import lombok.extern.slf4j.Slf4j;
@@ -66,13 +67,13 @@ public class DefaultUidGenerator implements UidGeneratorService, InitializingBea
      * Bit分配器,Stable fields after spring bean initializing
      */
     protected BitsAllocator bitsAllocator;
-    protected long workerId;
+    protected volatile long workerId;
 
     /**
-     * Volatile fields caused by nextId()
+     * 最近一次发放的[秒数, 序列号]，打包在一个long中: 高位为秒数, 低seqBits位为序列号.
+     * 通过CAS推进, 多线程并发生成时无锁
      */
-    protected long sequence = 0L;
-    protected long lastSecond = -1L;
+    protected final PaddedAtomicLong lastState = new PaddedAtomicLong(0L);
 
     /**
      * Spring property
@@ -90,16 +91,40 @@ public class DefaultUidGenerator implements UidGeneratorService, InitializingBea
         bitsAllocator = new BitsAllocator(uidProperties.getTimeBits(), uidProperties.getWorkerBits(), uidProperties.getSeqBits());
 
         // initialize worker id
-        workerId = workerIdAssigner.assignWorkerId();
-        if (workerId > bitsAllocator.getMaxWorkerId()) {
-            log.error("Worker id " + workerId + " exceeds the max " + bitsAllocator.getMaxWorkerId());
-            workerId = workerId % bitsAllocator.getMaxWorkerId();
-            log.info("new Worker id = " + workerId);
-        }
+        initWorkerId();
 
         log.info("Initialized bits(1, {}, {}, {}) for workerID:{}", uidProperties.getTimeBits(), uidProperties.getWorkerBits(), uidProperties.getSeqBits(), workerId);
     }
 
+    /**
+     * 分配workerId, 并从该workerId此前持有者已发放的秒数之后开始
+     */
+    protected void initWorkerId() {
+        long assigned = workerIdAssigner.assignWorkerId();
+        if (assigned < 0 || assigned > bitsAllocator.getMaxWorkerId()) {
+            // 取模折叠会与其他节点的workerId重复, 直接拒绝
+            throw new UidGenerateException("Worker id " + assigned + " exceeds the max " + bitsAllocator.getMaxWorkerId());
+        }
+
+        // 该workerId此前的持有者可能已发放到当前时间之后(时钟回拨或借用未来秒数), 从其之后开始
+        long startSecond = Math.max(getCurrentSecond(), workerIdAssigner.getLastSecond(assigned) + 1);
+        lastState.set((startSecond - 1) << bitsAllocator.getSequenceBits() | bitsAllocator.getMaxSequence());
+        // lastState重置后再发布workerId, nextId不会用新workerId在旧状态上继续发放
+        workerId = assigned;
+        workerIdAssigner.trackLastSecond(assigned, this::getLastSecond);
+        workerIdAssigner.onWorkerIdLost(assigned, this::reassignWorkerId);
+    }
+
+    /**
+     * workerId已被其他节点回收: 立即停止发放, 重新租用workerId后恢复.
+     * 重新租用失败时抛出异常, 由assigner稍后重试, 期间nextId一直拒绝
+     */
+    protected synchronized void reassignWorkerId() {
+        workerId = -1L;
+        initWorkerId();
+        log.warn("Worker id lease lost, reassigned worker id {}", workerId);
+    }
+
     @Override
     public long getUID() throws UidGenerateException {
         try {
@@ -134,71 +159,73 @@ public class DefaultUidGenerator implements UidGeneratorService, InitializingBea
 
     /**
      * Get UID
+     * <p>
+     * 无锁实现: 读取lastState, 计算下一个[秒数, 序列号], CAS写回, 失败则重试.
+     * 同一秒内序列号递增; 序列号用完时借用下一秒; 时钟回拨时继续在lastSecond上递增.
+     * 借用/回拨超出maxBackwardSeconds时才等待时钟追上.
      *
      * @return UID
      * @throws UidGenerateException in the case: Clock moved backwards; Exceeds the max timestamp
      */
-    protected synchronized long nextId() {
-        long currentSecond = getCurrentSecond();
-
-        // Clock moved backwards, refuse to generate uid
-        if (currentSecond < lastSecond) {
-            long refusedSeconds = lastSecond - currentSecond;
-            if (uidProperties.isEnableBackward()) {
-                if (refusedSeconds <= uidProperties.getMaxBackwardSeconds()) {
-                    log.error("Clock moved backwards. wait for %d seconds", refusedSeconds);
-                    while (currentSecond < lastSecond) {
-                        currentSecond = getCurrentSecond();
-                    }
+    protected long nextId() {
+        final int sequenceBits = bitsAllocator.getSequenceBits();
+        final long maxSequence = bitsAllocator.getMaxSequence();
+        final long currentWorkerId = checkWorkerId();
+        while (true) {
+            long currentSecond = getCurrentSecond();
+            long state = lastState.get();
+            long lastSecond = state >>> sequenceBits;
+
+            long next;
+            if (currentSecond > lastSecond) {
+                // At the different second, sequence restart from zero
+                next = currentSecond << sequenceBits;
+            } else {
+                if (currentSecond < lastSecond && !uidProperties.isEnableBackward()) {
+                    throw new UidGenerateException("Clock moved backwards. Refusing for %d seconds", lastSecond - currentSecond);
+                }
+                if ((state & maxSequence) < maxSequence) {
+                    // At the same second (or clock moved backwards), increase sequence
+                    next = state + 1;
+                } else if (lastSecond + 1 - currentSecond <= uidProperties.getMaxBackwardSeconds()) {
+                    // Exceed the max sequence, borrow the next second
+                    next = (lastSecond + 1) << sequenceBits;
                 } else {
-                    workerId = workerIdAssigner.assignFakeWorkerId();
-                    log.error("Clock moved backwards. Assigned New WorkerId %d", workerId);
-                    if (workerId > bitsAllocator.getMaxWorkerId()) {
-                        log.error("Worker id " + workerId + " exceeds the max " + bitsAllocator.getMaxWorkerId());
-                        workerId = workerId % bitsAllocator.getMaxWorkerId();
-                        log.info("new Worker id = " + workerId);
-                    }
+                    // 超出可借用范围, 等待时钟追上
+                    Thread.onSpinWait();
+                    continue;
                 }
-            } else {
-                throw new UidGenerateException("Clock moved backwards. Refusing for %d seconds", refusedSeconds);
             }
-        }
 
-        // At the same second, increase sequence
-        if (currentSecond == lastSecond) {
-            sequence = (sequence + 1) & bitsAllocator.getMaxSequence();
-            // Exceed the max sequence, we wait the next second to generate uid
-            if (sequence == 0) {
-                currentSecond = getNextSecond(lastSecond);
+            if (lastState.compareAndSet(state, next)) {
+                // Allocate bits for UID
+                return bitsAllocator.allocate((next >>> sequenceBits) - uidProperties.getEpochSeconds(), currentWorkerId, next & maxSequence);
             }
-
-            // At the different second, sequence restart from zero
-        } else {
-            sequence = 0L;
         }
-
-        lastSecond = currentSecond;
-
-        // Allocate bits for UID
-        return bitsAllocator.allocate(currentSecond - uidProperties.getEpochSeconds(), workerId, sequence);
     }
 
     /**
-     * Get next second
+     * 当前workerId, 租约丢失且尚未重新租用时拒绝生成
      */
-    private long getNextSecond(long lastTimestamp) {
-        long timestamp = getCurrentSecond();
-        while (timestamp <= lastTimestamp) {
-            timestamp = getCurrentSecond();
+    protected long checkWorkerId() {
+        long currentWorkerId = workerId;
+        if (currentWorkerId < 0) {
+            throw new UidGenerateException("Worker id lease lost, refusing UID generate until a new worker id is leased");
         }
+        return currentWorkerId;
+    }
 
-        return timestamp;
+    /**
+     * 已发放到的秒数, 租约续期时保存, 供workerId的下一个持有者参考
+     */
+    protected long getLastSecond() {
+        return lastState.get() >>> bitsAllocator.getSequenceBits();
     }
 
     /**
      * Get current second
      */
-    private long getCurrentSecond() {
+    protected long getCurrentSecond() {
         long currentSecond = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
         if (currentSecond - uidProperties.getEpochSeconds() > bitsAllocator.getMaxDeltaSeconds()) {
             throw new UidGenerateException("Timestamp bits is exhausted. Refusing UID generate. Now: " + currentSecond);
@@ -64,6 +64,21 @@ public class UidProperties {
      */
     private long maxBackwardSeconds = 1L;
 
+    /**
+     * 是否通过redis租约分配工作机器ID, 默认:true. false时使用数据库按host:port分配(DisposableWorkerIdAssigner)
+     */
+    private boolean leaseEnabled = true;
+
+    /**
+     * 工作机器ID租约时长（秒），节点宕机后租约过期，workerId可被其他节点回收
+     */
+    private long leaseSeconds = 120L;
+
+    /**
+     * 工作机器ID租约续期间隔（秒），须小于leaseSeconds
+     */
+    private long renewSeconds = 30L;
+
     // public void setEpochStr(String epochStr) {
     //     if (StringUtils.hasText(epochStr)) {
     //         this.epochStr = epochStr;
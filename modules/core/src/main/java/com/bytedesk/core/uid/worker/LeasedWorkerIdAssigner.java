@@ -0,0 +1,241 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-23 10:12:36
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-23 10:12:36
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.uid.worker;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.util.Assert;
+
+import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.uid.exception.UidGenerateException;
+import com.bytedesk.core.uid.impl.UidProperties;
+import com.bytedesk.core.uid.utils.NamingThreadFactory;
+import com.bytedesk.core.uid.utils.NetUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于redis租约分配工作机器ID
+ *
+ * 每个workerId对应一个带过期时间的租约key，持有者定期续期；节点宕机后租约过期，workerId自动回收，
+ * 因此workerId始终在[0, maxWorkerId]范围内，不会像数据库自增id那样越界后取模重复。
+ * 续期和释放时保存该workerId已发放到的秒数，下一个持有者从其之后开始，避免与前一个持有者借用的未来秒数重复。
+ * 每次调用assignWorkerId都会租用一个新的workerId，同一进程内的多个生成器互不重复。
+ * 租约丢失(已被其他节点占用，或超过租约时长未能续期)时通知生成器停止使用该workerId并重新租用。
+ */
+@Slf4j
+public class LeasedWorkerIdAssigner implements WorkerIdAssigner, DisposableBean {
+
+    // 租约仍属于自己或已过期时续期，并保存已发放到的秒数；已被其他节点占用时返回0
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local owner = redis.call('GET', KEYS[1]) "
+                    + "if owner and owner ~= ARGV[1] then return 0 end "
+                    + "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2]) "
+                    + "if tonumber(ARGV[4]) > tonumber(redis.call('HGET', KEYS[2], ARGV[3]) or '-1') then "
+                    + "redis.call('HSET', KEYS[2], ARGV[3], ARGV[4]) end "
+                    + "return 1",
+            Long.class);
+
+    // 仅释放自己持有的租约，并保存已发放到的秒数
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "if tonumber(ARGV[3]) > tonumber(redis.call('HGET', KEYS[2], ARGV[2]) or '-1') then "
+                    + "redis.call('HSET', KEYS[2], ARGV[2], ARGV[3]) end "
+                    + "return 1",
+            Long.class);
+
+    private static final LongSupplier UNKNOWN_SECOND = () -> -1L;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final UidProperties uidProperties;
+
+    private final long maxWorkerId;
+
+    // 租约持有者标识
+    private final String token;
+
+    // 当前持有的workerId -> 租约
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    // 租约已丢失、回调尚未成功执行的workerId -> 回调，下次续期时重试
+    private final Map<Long, Runnable> lostCallbacks = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService renewSchedule;
+
+    public LeasedWorkerIdAssigner(StringRedisTemplate stringRedisTemplate, UidProperties uidProperties) {
+        Assert.isTrue(uidProperties.getRenewSeconds() > 0 && uidProperties.getRenewSeconds() < uidProperties.getLeaseSeconds(),
+                "Renew seconds must be positive and less than lease seconds!");
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.uidProperties = uidProperties;
+        this.maxWorkerId = ~(-1L << uidProperties.getWorkerBits());
+        this.token = NetUtils.getLocalAddress() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Override
+    public long assignWorkerId() {
+        Duration ttl = Duration.ofSeconds(uidProperties.getLeaseSeconds());
+        // 各节点从不同位置开始探测，减少冲突
+        Long cursor = stringRedisTemplate.opsForValue().increment(RedisConsts.UID_WORKER_CURSOR);
+        long start = cursor != null ? cursor : 0L;
+        for (long i = 0; i <= maxWorkerId; i++) {
+            long workerId = (start + i) & maxWorkerId;
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(RedisConsts.UID_WORKER_LEASE_PREFIX + workerId, token, ttl);
+            if (Boolean.TRUE.equals(acquired)) {
+                leases.put(workerId, new Lease(System.currentTimeMillis()));
+                startRenewSchedule();
+                log.info("Leased worker id {} for {}", workerId, token);
+                return workerId;
+            }
+        }
+        throw new UidGenerateException("No free worker id, all " + (maxWorkerId + 1) + " worker ids are leased");
+    }
+
+    @Override
+    public long assignFakeWorkerId() {
+        return assignWorkerId();
+    }
+
+    @Override
+    public long getLastSecond(long workerId) {
+        Object value = stringRedisTemplate.opsForHash().get(RedisConsts.UID_WORKER_SECOND, String.valueOf(workerId));
+        return value != null ? Long.parseLong(value.toString()) : -1L;
+    }
+
+    @Override
+    public void trackLastSecond(long workerId, LongSupplier lastSecond) {
+        Lease lease = leases.get(workerId);
+        if (lease != null) {
+            lease.lastSecond = lastSecond;
+        }
+    }
+
+    @Override
+    public void onWorkerIdLost(long workerId, Runnable callback) {
+        Lease lease = leases.get(workerId);
+        if (lease != null) {
+            lease.onLost = callback;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        ScheduledExecutorService schedule = this.renewSchedule;
+        if (schedule != null) {
+            schedule.shutdownNow();
+        }
+        leases.forEach((workerId, lease) -> {
+            try {
+                stringRedisTemplate.execute(RELEASE_SCRIPT,
+                        Arrays.asList(RedisConsts.UID_WORKER_LEASE_PREFIX + workerId, RedisConsts.UID_WORKER_SECOND),
+                        token, String.valueOf(workerId), String.valueOf(lease.lastSecond.getAsLong()));
+            } catch (Exception e) {
+                log.warn("Release worker id {} error: {}", workerId, e.getMessage());
+            }
+        });
+        leases.clear();
+        lostCallbacks.clear();
+    }
+
+    /**
+     * 续期当前持有的全部租约，租约丢失时通知生成器重新租用
+     */
+    public void renew() {
+        String ttl = String.valueOf(uidProperties.getLeaseSeconds());
+        long leaseMillis = TimeUnit.SECONDS.toMillis(uidProperties.getLeaseSeconds());
+        List<Long> lost = new ArrayList<>();
+        leases.forEach((workerId, lease) -> {
+            try {
+                Long result = stringRedisTemplate.execute(RENEW_SCRIPT,
+                        Arrays.asList(RedisConsts.UID_WORKER_LEASE_PREFIX + workerId, RedisConsts.UID_WORKER_SECOND),
+                        token, ttl, String.valueOf(workerId), String.valueOf(lease.lastSecond.getAsLong()));
+                if (result != null && result == 1L) {
+                    lease.renewedAt = System.currentTimeMillis();
+                } else {
+                    // 续期中断超过租约时长(如长时间GC或与redis断连)，workerId已被其他节点回收
+                    log.error("Worker id {} lease lost, it has been reclaimed by another node", workerId);
+                    lost.add(workerId);
+                }
+            } catch (Exception e) {
+                log.warn("Renew worker id {} error: {}", workerId, e.getMessage());
+                if (System.currentTimeMillis() - lease.renewedAt >= leaseMillis) {
+                    // 无法确认租约是否仍有效，按已丢失处理，不能继续使用可能已被其他节点租用的workerId
+                    log.error("Worker id {} lease expired without renewal", workerId);
+                    lost.add(workerId);
+                }
+            }
+        });
+        for (Long workerId : lost) {
+            Lease lease = leases.remove(workerId);
+            if (lease != null && lease.onLost != null) {
+                lostCallbacks.put(workerId, lease.onLost);
+            }
+        }
+        // 回调中会重新租用workerId，失败(如redis仍不可用)时下次续期重试，期间生成器拒绝发放
+        lostCallbacks.forEach((workerId, callback) -> {
+            try {
+                callback.run();
+                lostCallbacks.remove(workerId);
+            } catch (Exception e) {
+                log.warn("Reassign lost worker id {} error: {}", workerId, e.getMessage());
+            }
+        });
+    }
+
+    private void startRenewSchedule() {
+        if (renewSchedule != null) {
+            return;
+        }
+        synchronized (this) {
+            if (renewSchedule == null) {
+                long interval = uidProperties.getRenewSeconds();
+                ScheduledExecutorService schedule = Executors
+                        .newSingleThreadScheduledExecutor(new NamingThreadFactory("UidWorkerLease-Renew", true));
+                schedule.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.SECONDS);
+                renewSchedule = schedule;
+            }
+        }
+    }
+
+    private static class Lease {
+
+        // 已发放到的秒数
+        volatile LongSupplier lastSecond = UNKNOWN_SECOND;
+
+        // 最近一次续期成功的时间
+        volatile long renewedAt;
+
+        volatile Runnable onLost;
+
+        Lease(long renewedAt) {
+            this.renewedAt = renewedAt;
+        }
+    }
+
+}
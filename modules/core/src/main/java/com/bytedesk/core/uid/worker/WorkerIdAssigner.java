@@ -15,6 +15,8 @@
  */
 package com.bytedesk.core.uid.worker;
 
+import java.util.function.LongSupplier;
+
 import com.bytedesk.core.uid.impl.DefaultUidGenerator;
 
 /**
@@ -38,4 +40,35 @@ public interface WorkerIdAssigner {
      */
     long assignFakeWorkerId();
 
+    /**
+     * The last second issued by the previous holder of the worker id,
+     * the new holder must start after it. -1 if unknown
+     *
+     * @param workerId
+     * @return last issued second
+     */
+    default long getLastSecond(long workerId) {
+        return -1L;
+    }
+
+    /**
+     * Track the last issued second of the worker id, saved when the worker id is renewed or released
+     *
+     * @param workerId
+     * @param lastSecond
+     */
+    default void trackLastSecond(long workerId, LongSupplier lastSecond) {
+    }
+
+    /**
+     * Register a callback invoked when the worker id is no longer held (e.g. its lease expired and
+     * was reclaimed by another node). The callback should stop issuing ids with the worker id and
+     * assign a new one; a callback that throws is invoked again later
+     *
+     * @param workerId
+     * @param callback
+     */
+    default void onWorkerIdLost(long workerId, Runnable callback) {
+    }
+
 }
@@ -18,8 +18,8 @@ import org.springframework.stereotype.Service;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.bytedesk.core.action.ActionRequest;
-import com.bytedesk.core.action.ActionRestService;
 import com.bytedesk.core.action.ActionTypeEnum;
+import com.bytedesk.core.action.disruptor.LogEventService;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -33,10 +33,10 @@ public class OptimisticLockingHandler {
     private static final int MAX_RETRY_ATTEMPTS = 3;
     private static final long RETRY_DELAY_MS = 5000;
 
-    private final ActionRestService actionService;
+    private final LogEventService logEventService;
 
-    public OptimisticLockingHandler(ActionRestService actionService) {
-        this.actionService = actionService;
+    public OptimisticLockingHandler(LogEventService logEventService) {
+        this.logEventService = logEventService;
     }
 
     public <T> T executeWithRetry(RetryCallback<T> callback, String entityName, String entityUid, Object entity) {
@@ -76,7 +76,7 @@ public class OptimisticLockingHandler {
                 .extra(entityJSON)
                 .build();
         actionRequest.setType(ActionTypeEnum.FAILED.name());
-        actionService.create(actionRequest);
+        logEventService.publish(actionRequest);
         log.error("All retry attempts failed for optimistic locking of {}", entityJSON);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,125 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-30 11:16:05
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-30 11:16:05
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.deadline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 分层时间轮的级联下放和超出范围的到期时间
+ */
+class TimingWheelTests {
+
+    private static final String TYPE = "test";
+
+    // 5层 × 64格
+    private static final long MAX_TICKS = (1L << 30) - 1;
+
+    // 起点不与任何一层的格边界对齐
+    private static final long START = 1_000_003L;
+
+    @Test
+    void expiresExactlyAtDeadlineAcrossLevels() {
+        TimingWheel wheel = new TimingWheel(1, START);
+        long[] offsets = { 0, 1, 63, 64, 65, 4095, 4096, 4097, 262_143, 262_144, 262_145,
+                16_777_215, 16_777_216, 16_777_217 };
+        for (long offset : offsets) {
+            wheel.add(TYPE, String.valueOf(offset), START + offset);
+        }
+        for (long offset : offsets) {
+            assertEquals(List.of(), advance(wheel, START + offset - 1), "expired before " + offset);
+            assertEquals(List.of(String.valueOf(offset)), advance(wheel, START + offset), "not expired at " + offset);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void farFutureDeadlineIsPlacedAgainWhenCascaded() {
+        TimingWheel wheel = new TimingWheel(1, START);
+        // 超出5层范围，先放在最高层，下放时重新计算位置
+        long deadline = START + MAX_TICKS + 70_000;
+        wheel.add(TYPE, "far", deadline);
+        wheel.add(TYPE, "edge", START + MAX_TICKS);
+
+        assertEquals(List.of(), advance(wheel, START + MAX_TICKS - 1));
+        assertEquals(List.of("edge"), advance(wheel, START + MAX_TICKS));
+        assertEquals(List.of(), advance(wheel, deadline - 1));
+        assertEquals(List.of("far"), advance(wheel, deadline));
+    }
+
+    @Test
+    void pastDeadlineExpiresOnNextAdvance() {
+        TimingWheel wheel = new TimingWheel(100, START * 100);
+        advance(wheel, START * 100 + 5_000);
+        // 已到期的放入当前格，下一个tick处理
+        wheel.add(TYPE, "past", START * 100);
+        assertEquals(List.of("past"), advance(wheel, START * 100 + 5_100));
+    }
+
+    @Test
+    void replaceAndRemove() {
+        TimingWheel wheel = new TimingWheel(1, START);
+        wheel.add(TYPE, "a", START + 100);
+        wheel.add(TYPE, "b", START + 100);
+        // 重复登记以最后一次为准
+        wheel.add(TYPE, "a", START + 5_000);
+        assertTrue(wheel.remove(TYPE, "b"));
+        assertEquals(1, wheel.size());
+
+        assertEquals(List.of(), advance(wheel, START + 4_999));
+        assertEquals(List.of("a"), advance(wheel, START + 5_000));
+    }
+
+    @Test
+    void randomDeadlinesExpireInTheirAdvanceStep() {
+        Random random = new Random(42);
+        TimingWheel wheel = new TimingWheel(1, START);
+        Map<String, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            // 覆盖0到3层
+            long deadline = START + (long) (random.nextDouble() * random.nextDouble() * 20_000_000L);
+            deadlines.put("k" + i, deadline);
+            wheel.add(TYPE, "k" + i, deadline);
+        }
+        long now = START;
+        int expiredCount = 0;
+        while (wheel.size() > 0) {
+            long from = now;
+            now += 1 + random.nextInt(50_000);
+            for (String key : advance(wheel, now)) {
+                long deadline = deadlines.get(key);
+                assertTrue(deadline > from && deadline <= now, key + " expired outside (" + from + ", " + now + "]");
+                expiredCount++;
+            }
+        }
+        assertEquals(deadlines.size(), expiredCount);
+    }
+
+    private static List<String> advance(TimingWheel wheel, long nowMs) {
+        List<TimingWheel.Entry> expired = new ArrayList<>();
+        wheel.advance(nowMs, expired);
+        List<String> keys = new ArrayList<>();
+        expired.forEach(entry -> keys.add(entry.getKey()));
+        return keys;
+    }
+
+}
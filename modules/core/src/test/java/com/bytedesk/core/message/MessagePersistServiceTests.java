@@ -0,0 +1,162 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-29 14:20:16
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-29 14:20:16
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bytedesk.core.config.BytedeskEventPublisher;
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+import com.bytedesk.core.rbac.user.UserProtobuf;
+import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadProtobuf;
+import com.bytedesk.core.thread.ThreadRestService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 消息批量持久化的数据库失败路径
+ */
+class MessagePersistServiceTests {
+
+    private MessageRestService messageRestService;
+
+    private ThreadRestService threadRestService;
+
+    private MessageJdbcRepository messageJdbcRepository;
+
+    private MessagePersistService messagePersistService;
+
+    @BeforeEach
+    void setUp() {
+        messageRestService = mock(MessageRestService.class);
+        threadRestService = mock(ThreadRestService.class);
+        messageJdbcRepository = mock(MessageJdbcRepository.class);
+        ModelMapper modelMapper = mock(ModelMapper.class);
+        when(modelMapper.map(any(MessageProtobuf.class), eq(MessageEntity.class))).thenAnswer(invocation -> {
+            MessageProtobuf messageProtobuf = invocation.getArgument(0);
+            return MessageEntity.builder().uid(messageProtobuf.getUid()).content(messageProtobuf.getContent()).build();
+        });
+        when(messageRestService.findExistingUids(anyCollection())).thenReturn(Set.of());
+        when(threadRestService.findByUidIn(anyCollection()))
+                .thenReturn(List.of(ThreadEntity.builder().uid("thread1").build()));
+        messagePersistService = new MessagePersistService(messageRestService, threadRestService, messageJdbcRepository,
+                mock(BytedeskEventPublisher.class), modelMapper, mock(BytedeskMetrics.class));
+    }
+
+    @Test
+    void returnsMessagesThatFailIndividually() {
+        doThrow(new DataIntegrityViolationException("duplicate")).when(messageJdbcRepository).batchInsert(anyList());
+        when(messageRestService.existsByUid(anyString())).thenReturn(false);
+        when(messageRestService.save(any(MessageEntity.class)))
+                .thenThrow(new DataIntegrityViolationException("content too long"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        MessageEnvelope bad = envelope("m1", MessageTypeEnum.TEXT, "bad");
+        MessageEnvelope good = envelope("m2", MessageTypeEnum.TEXT, "good");
+        List<MessageEnvelope> failed = messagePersistService.persistBatch(List.of(bad, good));
+
+        assertEquals(List.of(bad), failed);
+    }
+
+    @Test
+    void returnsAllChunksOfFailedStreamMessage() {
+        doThrow(new DataIntegrityViolationException("duplicate")).when(messageJdbcRepository).batchInsert(anyList());
+        when(messageRestService.existsByUid(anyString())).thenReturn(false);
+        when(messageRestService.save(any(MessageEntity.class)))
+                .thenThrow(new DataIntegrityViolationException("content too long"));
+
+        MessageEnvelope first = envelope("m1", MessageTypeEnum.STREAM, "hello ");
+        MessageEnvelope second = envelope("m1", MessageTypeEnum.STREAM, "world");
+        List<MessageEnvelope> failed = messagePersistService.persistBatch(List.of(first, second));
+
+        assertEquals(List.of(first, second), failed);
+    }
+
+    @Test
+    void rethrowsTransientFailureSoWholeBatchIsRetried() {
+        doThrow(new CannotGetJdbcConnectionException("connection refused"))
+                .when(messageJdbcRepository).batchInsert(anyList());
+
+        assertThrows(CannotGetJdbcConnectionException.class,
+                () -> messagePersistService.persistBatch(List.of(envelope("m1", MessageTypeEnum.TEXT, "hi"))));
+        verify(messageRestService, never()).save(any(MessageEntity.class));
+    }
+
+    @Test
+    void writerPushesBackOnTransientFailureAndDeadLettersIndividualFailures() {
+        MessagePersistCache messagePersistCache = mock(MessagePersistCache.class);
+        MessagePersistService service = mock(MessagePersistService.class);
+        MessagePersistWriter writer = new MessagePersistWriter(messagePersistCache, service, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(writer, "intervalMillis", 3_600_000L);
+        writer.init();
+        try {
+            String json = envelope("m1", MessageTypeEnum.TEXT, "hi").getJson();
+            // 临时错误：整批放回队列
+            when(service.persistBatch(anyList())).thenThrow(new CannotGetJdbcConnectionException("down"));
+            assertFalse(writer.persistBatch(List.of(json)));
+            verify(messagePersistCache).pushBackForPersist(List.of(json));
+            // 单条失败：转入死信，不放回队列
+            MessagePersistService failing = mock(MessagePersistService.class);
+            when(failing.persistBatch(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+            MessagePersistWriter deadLetterWriter = new MessagePersistWriter(messagePersistCache, failing,
+                    new SimpleMeterRegistry());
+            ReflectionTestUtils.setField(deadLetterWriter, "intervalMillis", 3_600_000L);
+            deadLetterWriter.init();
+            try {
+                assertTrue(deadLetterWriter.persistBatch(List.of(json)));
+                verify(messagePersistCache).pushDeadLetter(List.of(json));
+            } finally {
+                deadLetterWriter.destroy();
+            }
+        } finally {
+            writer.destroy();
+        }
+    }
+
+    private MessageEnvelope envelope(String uid, MessageTypeEnum type, String content) {
+        UserProtobuf user = UserProtobuf.builder().uid("visitor1").nickname("visitor").build();
+        return MessageEnvelope.fromProtobuf(MessageProtobuf.builder()
+                .uid(uid)
+                .type(type)
+                .content(content)
+                .status(MessageStatusEnum.SUCCESS)
+                .thread(ThreadProtobuf.builder().uid("thread1").topic("org/agent/a/v").build())
+                .user(user)
+                .build());
+    }
+
+}
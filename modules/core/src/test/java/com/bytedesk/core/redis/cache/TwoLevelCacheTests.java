@@ -0,0 +1,124 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2026-10-18 10:41:17
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2026-10-18 10:41:17
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.redis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * 只有本地缓存时的副本隔离与节点间失效通知
+ */
+class TwoLevelCacheTests {
+
+    private Cache node1;
+
+    private Cache node2;
+
+    @BeforeEach
+    void setUp() {
+        // 共用一个进程内通知，模拟两个节点
+        LocalCacheInvalidationBus bus = new LocalCacheInvalidationBus();
+        node1 = new TwoLevelCacheManager(Caffeine.newBuilder(), null, bus).getCache("thread");
+        node2 = new TwoLevelCacheManager(Caffeine.newBuilder(), null, bus).getCache("thread");
+    }
+
+    @Test
+    void mutatingReturnedValueDoesNotChangeCache() {
+        Item item = new Item("open");
+        node1.put("uid", item);
+        item.status = "closed";
+
+        Item cached = node1.get("uid", Item.class);
+        assertEquals("open", cached.status);
+        cached.status = "closed";
+
+        Item again = node1.get("uid", Item.class);
+        assertEquals("open", again.status);
+        assertNotSame(cached, again);
+    }
+
+    @Test
+    void loaderResultIsCopiedIntoCache() {
+        AtomicInteger loads = new AtomicInteger();
+        Item loaded = node1.get("uid", () -> {
+            loads.incrementAndGet();
+            return new Item("open");
+        });
+        loaded.status = "closed";
+
+        Item cached = node1.get("uid", () -> {
+            loads.incrementAndGet();
+            return new Item("other");
+        });
+        assertEquals("open", cached.status);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void evictInvalidatesOtherNode() {
+        node1.put("uid", new Item("open"));
+        node2.put("uid", new Item("open"));
+
+        node1.evict("uid");
+
+        assertNull(node1.get("uid"));
+        assertNull(node2.get("uid"));
+    }
+
+    @Test
+    void putInvalidatesStaleCopyOnOtherNode() {
+        node2.put("uid", new Item("open"));
+
+        node1.put("uid", new Item("closed"));
+
+        assertEquals("closed", node1.get("uid", Item.class).status);
+        assertNull(node2.get("uid"));
+    }
+
+    @Test
+    void nonSerializableValueIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        node1.get("uid", () -> {
+            loads.incrementAndGet();
+            return new Object();
+        });
+        node1.get("uid", () -> {
+            loads.incrementAndGet();
+            return new Object();
+        });
+        assertEquals(2, loads.get());
+    }
+
+    static class Item implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        String status;
+
+        Item(String status) {
+            this.status = status;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-30 15:48:09
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-30 15:48:09
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.search;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bytedesk.core.message.MessageRepository;
+import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.thread.ThreadRepository;
+import com.bytedesk.core.uid.UidUtils;
+
+/**
+ * 索引写入失败、待写队列溢出时的处理，以及重建完成前回退 LIKE
+ */
+class SearchIndexServiceTests {
+
+    private static final String ORG_UID = "org1";
+
+    private SearchTermJdbcRepository searchTermJdbcRepository;
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private SetOperations<String, String> setOperations;
+
+    private SearchIndexService searchIndexService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        searchTermJdbcRepository = mock(SearchTermJdbcRepository.class);
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        setOperations = mock(SetOperations.class);
+        when(stringRedisTemplate.opsForSet()).thenReturn(setOperations);
+        UidUtils uidUtils = mock(UidUtils.class);
+        when(uidUtils.getUid()).thenReturn("uid");
+        searchIndexService = new SearchIndexService(mock(SearchTermRepository.class), searchTermJdbcRepository,
+                mock(MessageRepository.class), mock(ThreadRepository.class), uidUtils, stringRedisTemplate);
+        ReflectionTestUtils.setField(searchIndexService, "enabled", true);
+        ReflectionTestUtils.setField(searchIndexService, "batchSize", 500);
+        ReflectionTestUtils.setField(searchIndexService, "maxPending", 100);
+    }
+
+    @Test
+    void failedFlushIsRetriedAndMarkedIndexedOnlyAfterCommit() {
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .doNothing()
+                .when(searchTermJdbcRepository).replaceTerms(anyList(), anyList(), anyInt());
+
+        indexThread("t1", "org/agent/a1/v1");
+        searchIndexService.flush();
+        // 失败的文档重新入队，下次重试
+        searchIndexService.flush();
+        verify(searchTermJdbcRepository, times(2)).replaceTerms(anyList(), anyList(), anyInt());
+
+        // 已提交，相同文本不再写入
+        indexThread("t1", "org/agent/a1/v1");
+        searchIndexService.flush();
+        verify(searchTermJdbcRepository, times(2)).replaceTerms(anyList(), anyList(), anyInt());
+        verify(setOperations, never()).add(RedisConsts.SEARCH_INDEX_STALE_ORGS, ORG_UID);
+    }
+
+    @Test
+    void droppedDocIsNotMarkedIndexed() {
+        ReflectionTestUtils.setField(searchIndexService, "maxPending", 1);
+        doNothing().when(searchTermJdbcRepository).replaceTerms(anyList(), anyList(), anyInt());
+
+        indexThread("t1", "org/agent/a1/v1");
+        // 队列已满，丢弃，该组织回退 LIKE
+        indexThread("t2", "org/agent/a2/v2");
+        verify(setOperations).add(RedisConsts.SEARCH_INDEX_STALE_ORGS, ORG_UID);
+        assertFalse(searchIndexService.isSearchable(ORG_UID));
+        searchIndexService.flush();
+
+        // 被丢弃的文档没有记录为已索引，再次变化时仍会写入
+        indexThread("t2", "org/agent/a2/v2");
+        searchIndexService.flush();
+        verify(searchTermJdbcRepository, times(2)).replaceTerms(anyList(), anyList(), anyInt());
+    }
+
+    @Test
+    void dropsAfterMaxFlushAttempts() {
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .when(searchTermJdbcRepository).replaceTerms(anyList(), anyList(), anyInt());
+
+        indexThread("t1", "org/agent/a1/v1");
+        for (int i = 0; i < 4; i++) {
+            searchIndexService.flush();
+        }
+        verify(searchTermJdbcRepository, times(3)).replaceTerms(anyList(), anyList(), anyInt());
+        verify(setOperations).add(RedisConsts.SEARCH_INDEX_STALE_ORGS, ORG_UID);
+    }
+
+    @Test
+    void searchableOnlyAfterRebuild() {
+        when(stringRedisTemplate.hasKey(RedisConsts.SEARCH_INDEX_READY)).thenReturn(false);
+        assertFalse(searchIndexService.isSearchable(ORG_UID));
+
+        SearchIndexService rebuiltService = new SearchIndexService(mock(SearchTermRepository.class),
+                searchTermJdbcRepository, mock(MessageRepository.class), mock(ThreadRepository.class),
+                mock(UidUtils.class), stringRedisTemplate);
+        ReflectionTestUtils.setField(rebuiltService, "enabled", true);
+        when(stringRedisTemplate.hasKey(RedisConsts.SEARCH_INDEX_READY)).thenReturn(true);
+        assertTrue(rebuiltService.isSearchable(ORG_UID));
+
+        // 默认关闭
+        ReflectionTestUtils.setField(rebuiltService, "enabled", false);
+        assertFalse(rebuiltService.isSearchable(ORG_UID));
+    }
+
+    private void indexThread(String uid, String topic) {
+        searchIndexService.indexThread(uid, ORG_UID, topic, null, LocalDateTime.now(), false);
+    }
+
+}
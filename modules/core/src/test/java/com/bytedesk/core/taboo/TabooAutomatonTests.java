@@ -0,0 +1,63 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-29 16:20:11
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-29 16:20:11
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.taboo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TabooAutomatonTests {
+
+    @Test
+    void masksLongerWordEndingAfterShorterOne() {
+        TabooAutomaton automaton = TabooAutomaton.build(List.of("abc", "b"));
+        assertEquals("x***x", automaton.mask("xabcx", '*'));
+    }
+
+    @Test
+    void masksChineseNestedWords() {
+        TabooAutomaton automaton = TabooAutomaton.build(List.of("赌博网站", "博"));
+        assertEquals("这是****吗", automaton.mask("这是赌博网站吗", '*'));
+        assertEquals(Set.of("博", "赌博网站"), automaton.find("这是赌博网站吗"));
+    }
+
+    @Test
+    void masksOverlappingWords() {
+        TabooAutomaton automaton = TabooAutomaton.build(List.of("abcd", "cdef", "bc"));
+        assertEquals("x******x", automaton.mask("xabcdefx", '*'));
+        assertEquals("x**y**z", automaton.mask("xbcybcz", '*'));
+    }
+
+    @Test
+    void normalizesFullWidthAndCase() {
+        TabooAutomaton automaton = TabooAutomaton.build(List.of("abc"));
+        assertTrue(automaton.matches("xＡbCx"));
+        assertEquals("x***x", automaton.mask("xＡbCx", '*'));
+    }
+
+    @Test
+    void returnsOriginalWhenNoHit() {
+        TabooAutomaton automaton = TabooAutomaton.build(List.of("abc"));
+        String text = "xabx";
+        assertFalse(automaton.matches(text));
+        assertSame(text, automaton.mask(text, '*'));
+    }
+
+}
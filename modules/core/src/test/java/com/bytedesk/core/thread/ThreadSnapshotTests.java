@@ -0,0 +1,103 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-29 17:05:36
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-29 17:05:36
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.thread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Optional;
+
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bytedesk.core.rbac.user.UserEntity;
+import com.bytedesk.core.rbac.user.UserRepository;
+
+/**
+ * 会话快照在owner为懒加载代理时的uid解析
+ */
+class ThreadSnapshotTests {
+
+    private UserRepository userRepository;
+
+    private ThreadRestService threadRestService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        threadRestService = new ThreadRestService(null, null, null, null, null, null, null, userRepository, null);
+    }
+
+    @Test
+    void resolvesLazyOwnerWithoutInitializingProxy() {
+        LazyInitializer initializer = mock(LazyInitializer.class);
+        when(initializer.isUninitialized()).thenReturn(true);
+        when(initializer.getIdentifier()).thenReturn(42L);
+        UserEntity owner = mock(UserEntity.class, withSettings().extraInterfaces(HibernateProxy.class));
+        when(((HibernateProxy) owner).getHibernateLazyInitializer()).thenReturn(initializer);
+        when(((HibernateProxy) owner).asHibernateProxy()).thenReturn((HibernateProxy) owner);
+        when(userRepository.findUidById(42L)).thenReturn(Optional.of("owner-uid"));
+
+        ThreadSnapshot snapshot = ThreadSnapshot.from(thread(owner));
+
+        assertNull(snapshot.getOwnerUid());
+        assertEquals(42L, snapshot.getOwnerId());
+        assertTrue(snapshot.hasOwner());
+        // 构建快照时不能触发懒加载
+        verify(owner, never()).getUid();
+        verify(initializer, never()).initialize();
+        assertEquals("owner-uid", threadRestService.getOwnerUid(snapshot));
+    }
+
+    @Test
+    void usesLoadedOwnerUidDirectly() {
+        UserEntity owner = UserEntity.builder().uid("owner-uid").build();
+        owner.setId(7L);
+
+        ThreadSnapshot snapshot = ThreadSnapshot.from(thread(owner));
+
+        assertEquals("owner-uid", snapshot.getOwnerUid());
+        assertEquals(7L, snapshot.getOwnerId());
+        assertEquals("owner-uid", threadRestService.getOwnerUid(snapshot));
+        verify(userRepository, never()).findUidById(7L);
+    }
+
+    @Test
+    void noOwner() {
+        ThreadSnapshot snapshot = ThreadSnapshot.from(thread(null));
+
+        assertFalse(snapshot.hasOwner());
+        assertNull(threadRestService.getOwnerUid(snapshot));
+    }
+
+    private static ThreadEntity thread(UserEntity owner) {
+        ThreadEntity thread = ThreadEntity.builder()
+                .uid("thread-uid")
+                .topic("org/agent/a1/v1")
+                .type(ThreadTypeEnum.AGENT.name())
+                .build();
+        thread.setOwner(owner);
+        return thread;
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-29 15:02:40
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-29 15:02:40
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.topic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TopicSubscriptionIndexTests {
+
+    @Test
+    void matchesWildcards() {
+        TopicSubscriptionIndex index = new TopicSubscriptionIndex();
+        index.rebuild(List.of(
+                topic("u1", Set.of("org/agent/a1"), Set.of("u1/web/d1")),
+                topic("u2", Set.of("org/agent/+"), Set.of("u2/web/d1")),
+                topic("u3", Set.of("org/#"), Set.of("u3/web/d1"))), LocalDateTime.now());
+
+        assertEquals(Set.of("u1", "u2", "u3"), index.matchUserUids("org/agent/a1"));
+        assertEquals(Set.of("u3"), index.matchUserUids("org"));
+        assertEquals(Set.of("u3"), index.matchUserUids("org/agent/a1/extra"));
+        assertEquals(Set.of("u1/web/d1", "u2/web/d1", "u3/web/d1"), index.matchClientIds("org/agent/a1"));
+    }
+
+    @Test
+    void ignoresNullTopicsAndClientIds() {
+        TopicSubscriptionIndex index = new TopicSubscriptionIndex();
+        Set<String> topics = new HashSet<>(Arrays.asList("org/agent/a1", null, ""));
+        Set<String> clientIds = new HashSet<>(Arrays.asList(null, "u1/web/d1"));
+        index.rebuild(List.of(topic("u1", topics, clientIds)), LocalDateTime.now());
+        index.sync(topic("u2", new HashSet<>(Arrays.asList((String) null)), null));
+
+        assertEquals(Set.of("u1"), index.matchUserUids("org/agent/a1"));
+        assertEquals(Set.of("u1/web/d1"), index.matchClientIds("org/agent/a1"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void syncRemovesDeletedSubscriptions() {
+        TopicSubscriptionIndex index = new TopicSubscriptionIndex();
+        LocalDateTime startedAt = LocalDateTime.now();
+        index.rebuild(List.of(topic("u1", Set.of("org/agent/a1"), Set.of("u1/web/d1"))), startedAt);
+        assertEquals(startedAt, index.getSyncedAt());
+
+        TopicEntity deleted = topic("u1", Set.of("org/agent/a1"), Set.of("u1/web/d1"));
+        deleted.setDeleted(true);
+        index.sync(deleted);
+
+        assertTrue(index.matchUserUids("org/agent/a1").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    private TopicEntity topic(String userUid, Set<String> topics, Set<String> clientIds) {
+        TopicEntity topic = TopicEntity.builder().userUid(userUid).build();
+        topic.setTopics(topics);
+        topic.setClientIds(clientIds);
+        return topic;
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-30 09:42:18
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-30 09:42:18
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.core.uid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.bytedesk.core.uid.exception.UidGenerateException;
+import com.bytedesk.core.uid.impl.DefaultUidGenerator;
+import com.bytedesk.core.uid.impl.UidProperties;
+import com.bytedesk.core.uid.worker.LeasedWorkerIdAssigner;
+import com.bytedesk.core.uid.worker.WorkerIdAssigner;
+
+/**
+ * 无锁nextId在并发、借用未来秒数、时钟回拨以及workerId租约丢失时的唯一性
+ */
+class DefaultUidGeneratorTests {
+
+    private static final int THREADS = 8;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private UidProperties uidProperties;
+
+    private FakeWorkerIdAssigner assigner;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        uidProperties = new UidProperties();
+        // 时钟固定不动，每秒只有128个序列号，很快就要借用未来的秒数
+        uidProperties.setMaxBackwardSeconds(100_000L);
+        clock.set(uidProperties.getEpochSeconds() + 1_000_000L);
+        assigner = new FakeWorkerIdAssigner();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentIdsAreUniqueWhenBorrowingSeconds() throws Exception {
+        TestUidGenerator generator = generator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        int count = generate(generator, ids, 20_000);
+
+        assertEquals(count, ids.size());
+        // 序列号用完后借用了后续的秒数
+        assertTrue(generator.lastSecond() > clock.get());
+    }
+
+    @Test
+    void concurrentIdsAreUniqueAfterClockRollback() throws Exception {
+        TestUidGenerator generator = generator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        int before = generate(generator, ids, 2_000);
+        long lastSecond = generator.lastSecond();
+        // 时钟回拨30秒，继续在已发放的秒数上递增
+        clock.addAndGet(-30);
+        int after = generate(generator, ids, 2_000);
+
+        assertEquals(before + after, ids.size());
+        assertTrue(generator.lastSecond() > lastSecond);
+    }
+
+    @Test
+    void refusesUntilLostWorkerIdIsReassigned() throws Exception {
+        TestUidGenerator generator = generator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        generate(generator, ids, 100);
+        assertEquals(1L, workerIdOf(generator, generator.getUID()));
+
+        // 租约丢失，重新租用失败(如redis不可用)时拒绝发放
+        assigner.failAssign = true;
+        assertThrows(UidGenerateException.class, () -> assigner.lostCallback.get().run());
+        assertThrows(UidGenerateException.class, generator::getUID);
+
+        // 重试成功后使用新的workerId，从其上一个持有者已发放的秒数之后开始
+        assigner.failAssign = false;
+        assigner.lastSecond = clock.get() + 500;
+        assigner.lostCallback.get().run();
+        long uid = generator.getUID();
+        assertEquals(2L, workerIdOf(generator, uid));
+        assertTrue(generator.lastSecond() > clock.get() + 500);
+        assertTrue(ids.add(uid));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void leasedAssignerReportsLostLease() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.increment(anyString())).thenReturn(5L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        // 续期时发现租约已被其他节点占用
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(0L);
+
+        LeasedWorkerIdAssigner leasedAssigner = new LeasedWorkerIdAssigner(redisTemplate, uidProperties);
+        try {
+            long workerId = leasedAssigner.assignWorkerId();
+            assertEquals(5L, workerId);
+            AtomicInteger lost = new AtomicInteger();
+            leasedAssigner.onWorkerIdLost(workerId, lost::incrementAndGet);
+
+            leasedAssigner.renew();
+            assertEquals(1, lost.get());
+            // 已丢失的租约不再续期，也不会重复通知
+            leasedAssigner.renew();
+            assertEquals(1, lost.get());
+        } finally {
+            leasedAssigner.destroy();
+        }
+    }
+
+    private TestUidGenerator generator() throws Exception {
+        TestUidGenerator generator = new TestUidGenerator(uidProperties, clock);
+        generator.setWorkerIdAssigner(assigner);
+        generator.afterPropertiesSet();
+        return generator;
+    }
+
+    private int generate(TestUidGenerator generator, Set<Long> ids, int perThread) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                boolean unique = true;
+                for (int i = 0; i < perThread; i++) {
+                    unique &= ids.add(generator.getUID());
+                }
+                return unique;
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get(30, TimeUnit.SECONDS), "duplicate uid generated");
+        }
+        return THREADS * perThread;
+    }
+
+    private long workerIdOf(TestUidGenerator generator, long uid) {
+        String parsed = generator.parseUID(uid);
+        String workerId = parsed.substring(parsed.indexOf("\"workerId\":\"") + 12);
+        return Long.parseLong(workerId.substring(0, workerId.indexOf('"')));
+    }
+
+    static class TestUidGenerator extends DefaultUidGenerator {
+
+        private final AtomicLong clock;
+
+        TestUidGenerator(UidProperties uidProperties, AtomicLong clock) {
+            super(uidProperties);
+            this.clock = clock;
+        }
+
+        @Override
+        protected long getCurrentSecond() {
+            return clock.get();
+        }
+
+        long lastSecond() {
+            return getLastSecond();
+        }
+    }
+
+    static class FakeWorkerIdAssigner implements WorkerIdAssigner {
+
+        private final AtomicLong nextWorkerId = new AtomicLong(1);
+
+        private final AtomicReference<Runnable> lostCallback = new AtomicReference<>();
+
+        private volatile boolean failAssign;
+
+        private volatile long lastSecond = -1L;
+
+        @Override
+        public long assignWorkerId() {
+            if (failAssign) {
+                throw new UidGenerateException("No free worker id");
+            }
+            return nextWorkerId.getAndIncrement();
+        }
+
+        @Override
+        public long assignFakeWorkerId() {
+            return assignWorkerId();
+        }
+
+        @Override
+        public long getLastSecond(long workerId) {
+            return lastSecond;
+        }
+
+        @Override
+        public void onWorkerIdLost(long workerId, Runnable callback) {
+            assertNotNull(callback);
+            assertFalse(workerId < 0);
+            lostCallback.set(callback);
+        }
+    }
+
+}
@@ -84,6 +84,10 @@ public class AutoReplyKeywordEntity extends BaseEntity {
     @Builder.Default
     private int replyCount = 0;
 
+    // 优先级，多条规则同时命中时返回优先级最高的
+    @Builder.Default
+    private int priority = 0;
+
     // 有效开始日期
     private LocalDateTime startDate;
 
@@ -15,7 +15,27 @@ package com.bytedesk.kbase.auto_reply.keyword;
 
 import org.springframework.stereotype.Component;
 
+import com.bytedesk.core.utils.ApplicationContextHolder;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
 @Component
 public class AutoReplyKeywordEntityListener {
-    
+
+    // 增量更新内存中的规则，禁用、软删除在put中处理
+    @PostPersist
+    @PostUpdate
+    public void postSave(AutoReplyKeywordEntity keyword) {
+        AutoReplyKeywordMatcherService matcherService = ApplicationContextHolder.getBean(AutoReplyKeywordMatcherService.class);
+        matcherService.put(keyword);
+    }
+
+    @PostRemove
+    public void postRemove(AutoReplyKeywordEntity keyword) {
+        AutoReplyKeywordMatcherService matcherService = ApplicationContextHolder.getBean(AutoReplyKeywordMatcherService.class);
+        matcherService.remove(keyword);
+    }
+
 }
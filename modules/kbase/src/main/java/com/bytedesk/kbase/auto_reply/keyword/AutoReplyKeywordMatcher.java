@@ -0,0 +1,166 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-22 09:40:18
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-22 09:40:18
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.kbase.auto_reply.keyword;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.bytedesk.core.taboo.TabooAutomaton;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 一个组织的关键词规则编译结果，构建后不可变
+ *
+ * 精确匹配：归一化后的整条消息查哈希表；
+ * 模糊匹配：所有模糊关键词构建一个Aho-Corasick自动机，一次扫描找出消息中出现的全部关键词；
+ * 正则匹配：按优先级从高到低逐条尝试，优先级不可能超过已命中规则时提前结束。
+ *
+ * 同时命中多条时，优先级高者优先；优先级相同时精确 > 模糊 > 正则，模糊匹配中关键词更长者优先。
+ */
+@Slf4j
+public final class AutoReplyKeywordMatcher {
+
+    public static final AutoReplyKeywordMatcher EMPTY = build(List.of());
+
+    private static final Comparator<AutoReplyKeywordRule> BY_PRIORITY = Comparator
+            .comparingInt(AutoReplyKeywordRule::getPriority).reversed();
+
+    // 归一化关键词 -> 规则，按优先级降序
+    private final Map<String, List<AutoReplyKeywordRule>> exactRules;
+
+    private final Map<String, List<AutoReplyKeywordRule>> fuzzyRules;
+
+    private final TabooAutomaton fuzzyAutomaton;
+
+    // 按优先级降序
+    private final List<RegularRule> regularRules;
+
+    private final int size;
+
+    private AutoReplyKeywordMatcher(Map<String, List<AutoReplyKeywordRule>> exactRules,
+            Map<String, List<AutoReplyKeywordRule>> fuzzyRules, TabooAutomaton fuzzyAutomaton,
+            List<RegularRule> regularRules, int size) {
+        this.exactRules = exactRules;
+        this.fuzzyRules = fuzzyRules;
+        this.fuzzyAutomaton = fuzzyAutomaton;
+        this.regularRules = regularRules;
+        this.size = size;
+    }
+
+    public static AutoReplyKeywordMatcher build(Collection<AutoReplyKeywordRule> rules) {
+        Map<String, List<AutoReplyKeywordRule>> exactRules = new HashMap<>();
+        Map<String, List<AutoReplyKeywordRule>> fuzzyRules = new HashMap<>();
+        List<RegularRule> regularRules = new ArrayList<>();
+        for (AutoReplyKeywordRule rule : rules) {
+            for (String keyword : rule.getKeywordList()) {
+                switch (rule.getMatchType()) {
+                    case EXACT:
+                        exactRules.computeIfAbsent(normalize(keyword), k -> new ArrayList<>()).add(rule);
+                        break;
+                    case FUZZY:
+                        fuzzyRules.computeIfAbsent(normalize(keyword), k -> new ArrayList<>()).add(rule);
+                        break;
+                    case REGULAR:
+                        try {
+                            regularRules.add(new RegularRule(Pattern.compile(keyword), rule));
+                        } catch (PatternSyntaxException e) {
+                            log.warn("invalid auto reply keyword regex, rule {}: {}", rule.getUid(), keyword);
+                        }
+                        break;
+                }
+            }
+        }
+        exactRules.values().forEach(list -> list.sort(BY_PRIORITY));
+        fuzzyRules.values().forEach(list -> list.sort(BY_PRIORITY));
+        regularRules.sort(Comparator.comparing(RegularRule::rule, BY_PRIORITY));
+        TabooAutomaton fuzzyAutomaton = TabooAutomaton.build(fuzzyRules.keySet());
+        return new AutoReplyKeywordMatcher(exactRules, fuzzyRules, fuzzyAutomaton, regularRules, rules.size());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 返回优先级最高的命中规则，未命中返回null
+     *
+     * @param kbUid 限定知识库，为空时不限制
+     */
+    public AutoReplyKeywordRule match(String text, String kbUid, LocalDateTime now) {
+        if (size == 0 || text == null || text.isBlank()) {
+            return null;
+        }
+        AutoReplyKeywordRule best = null;
+        // 1. 精确匹配
+        List<AutoReplyKeywordRule> exact = exactRules.get(normalize(text));
+        if (exact != null) {
+            best = firstAvailable(exact, kbUid, now);
+        }
+        // 2. 模糊匹配
+        int bestLength = 0;
+        if (!fuzzyRules.isEmpty()) {
+            for (int[] hit : fuzzyAutomaton.locate(text)) {
+                int length = hit[1] - hit[0];
+                List<AutoReplyKeywordRule> fuzzy = fuzzyRules.get(normalize(text.substring(hit[0], hit[1])));
+                AutoReplyKeywordRule rule = fuzzy == null ? null : firstAvailable(fuzzy, kbUid, now);
+                if (rule == null) {
+                    continue;
+                }
+                if (best == null || rule.getPriority() > best.getPriority()
+                        || (rule.getPriority() == best.getPriority()
+                                && best.getMatchType() == AutoReplyKeywordMatchEnum.FUZZY && length > bestLength)) {
+                    best = rule;
+                    bestLength = length;
+                }
+            }
+        }
+        // 3. 正则匹配，只在可能胜出时执行
+        for (RegularRule regular : regularRules) {
+            AutoReplyKeywordRule rule = regular.rule();
+            if (best != null && rule.getPriority() <= best.getPriority()) {
+                break;
+            }
+            if (rule.isAvailable(kbUid, now) && regular.pattern().matcher(text).find()) {
+                best = rule;
+            }
+        }
+        return best;
+    }
+
+    private static AutoReplyKeywordRule firstAvailable(List<AutoReplyKeywordRule> rules, String kbUid, LocalDateTime now) {
+        for (AutoReplyKeywordRule rule : rules) {
+            if (rule.isAvailable(kbUid, now)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    // 与自动机使用相同的归一化：全角转半角，忽略大小写及首尾空白
+    private static String normalize(String text) {
+        return TabooAutomaton.normalize(text.trim());
+    }
+
+    private record RegularRule(Pattern pattern, AutoReplyKeywordRule rule) {
+    }
+
+}
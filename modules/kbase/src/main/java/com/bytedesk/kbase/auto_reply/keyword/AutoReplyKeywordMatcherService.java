@@ -0,0 +1,147 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-22 10:26:53
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-22 10:26:53
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.kbase.auto_reply.keyword;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 关键词自动回复匹配：每个组织一个编译好的AutoReplyKeywordMatcher，匹配时不访问数据库
+ *
+ * 规则增删改由实体监听增量更新到内存，并标记组织待重新编译，下次匹配该组织时重新编译；
+ * 其他节点的修改通过每分钟比较最大更新时间发现，变化时全量重新加载。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AutoReplyKeywordMatcherService {
+
+    private final AutoReplyKeywordRepository autoReplyKeywordRepository;
+
+    // orgUid -> (ruleUid -> rule)
+    private final Map<String, Map<String, AutoReplyKeywordRule>> rulesByOrg = new ConcurrentHashMap<>();
+
+    // orgUid -> 编译结果，规则变化时移除，匹配时重新编译
+    private final Map<String, AutoReplyKeywordMatcher> matchers = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime lastUpdatedAt;
+
+    /**
+     * 匹配访客消息，返回优先级最高的规则，未命中返回null
+     */
+    public AutoReplyKeywordRule match(String orgUid, String kbUid, String text) {
+        if (!hasRules(orgUid)) {
+            return null;
+        }
+        return getMatcher(orgUid).match(text, kbUid, LocalDateTime.now());
+    }
+
+    public boolean hasRules(String orgUid) {
+        return orgUid != null && rulesByOrg.containsKey(orgUid);
+    }
+
+    // 新增、修改、删除规则
+    public void put(AutoReplyKeywordEntity entity) {
+        String orgUid = entity.getOrgUid();
+        if (!StringUtils.hasText(orgUid) || entity.getUid() == null) {
+            return;
+        }
+        AutoReplyKeywordRule rule = AutoReplyKeywordRule.fromEntity(entity);
+        if (rule == null) {
+            remove(entity);
+            return;
+        }
+        rulesByOrg.computeIfAbsent(orgUid, k -> new ConcurrentHashMap<>()).put(rule.getUid(), rule);
+        matchers.remove(orgUid);
+    }
+
+    public void remove(AutoReplyKeywordEntity entity) {
+        String orgUid = entity.getOrgUid();
+        if (!StringUtils.hasText(orgUid) || entity.getUid() == null) {
+            return;
+        }
+        rulesByOrg.computeIfPresent(orgUid, (k, rules) -> {
+            rules.remove(entity.getUid());
+            return rules.isEmpty() ? null : rules;
+        });
+        matchers.remove(orgUid);
+    }
+
+    public synchronized void reloadAll() {
+        LocalDateTime updatedAt = autoReplyKeywordRepository.findMaxUpdatedAt();
+        Map<String, Map<String, AutoReplyKeywordRule>> loaded = new HashMap<>();
+        for (AutoReplyKeywordEntity entity : autoReplyKeywordRepository.findByEnabledTrueAndDeletedFalse()) {
+            AutoReplyKeywordRule rule = AutoReplyKeywordRule.fromEntity(entity);
+            if (rule != null && StringUtils.hasText(rule.getOrgUid())) {
+                loaded.computeIfAbsent(rule.getOrgUid(), k -> new ConcurrentHashMap<>()).put(rule.getUid(), rule);
+            }
+        }
+        rulesByOrg.putAll(loaded);
+        rulesByOrg.keySet().retainAll(loaded.keySet());
+        matchers.clear();
+        lastUpdatedAt = updatedAt;
+        log.info("Loaded auto reply keyword rules of {} orgs", loaded.size());
+    }
+
+    public synchronized void reloadIfChanged() {
+        LocalDateTime updatedAt = autoReplyKeywordRepository.findMaxUpdatedAt();
+        if (!Objects.equals(updatedAt, lastUpdatedAt)) {
+            reloadAll();
+        }
+    }
+
+    private AutoReplyKeywordMatcher getMatcher(String orgUid) {
+        AutoReplyKeywordMatcher matcher = matchers.get(orgUid);
+        if (matcher != null) {
+            return matcher;
+        }
+        // 同一组织只编译一次，编译期间到达的消息等待结果
+        return matchers.computeIfAbsent(orgUid, key -> {
+            Map<String, AutoReplyKeywordRule> rules = rulesByOrg.get(key);
+            return rules == null ? AutoReplyKeywordMatcher.EMPTY : AutoReplyKeywordMatcher.build(rules.values());
+        });
+    }
+
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        try {
+            reloadAll();
+        } catch (Exception e) {
+            log.error("load auto reply keyword rules error: ", e);
+        }
+    }
+
+    @EventListener
+    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
+        try {
+            reloadIfChanged();
+        } catch (Exception e) {
+            log.error("reload auto reply keyword rules error: ", e);
+        }
+    }
+
+}
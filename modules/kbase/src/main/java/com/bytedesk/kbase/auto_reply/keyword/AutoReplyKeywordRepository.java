@@ -13,16 +13,25 @@
  */
 package com.bytedesk.kbase.auto_reply.keyword;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 
 
 public interface AutoReplyKeywordRepository extends JpaRepository<AutoReplyKeywordEntity, Long>, JpaSpecificationExecutor<AutoReplyKeywordEntity> {
     
     Optional<AutoReplyKeywordEntity> findByUid(String uid);
 
+    List<AutoReplyKeywordEntity> findByEnabledTrueAndDeletedFalse();
+
+    // 用于判断其他节点是否修改过规则
+    @Query("SELECT MAX(k.updatedAt) FROM AutoReplyKeywordEntity k")
+    LocalDateTime findMaxUpdatedAt();
+
     // List<AutoReplyKeyword> findByAutoReplyKeywordListContaining(String keyword);
 
     // @Query("SELECT k FROM AutoReplyKeyword k WHERE :keyword MEMBER OF k.keywordList")
@@ -53,6 +53,10 @@ public class AutoReplyKeywordRequest extends BaseRequest {
     // 回复次数
     @Builder.Default
     private Integer replyCount = 0;
+
+    // 优先级
+    @Builder.Default
+    private Integer priority = 0;
     
     private LocalDateTime startDate;
 
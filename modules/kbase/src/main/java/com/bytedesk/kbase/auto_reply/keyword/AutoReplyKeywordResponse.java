@@ -47,6 +47,9 @@ public class AutoReplyKeywordResponse extends BaseResponse {
     // 回复次数
     private Integer replyCount;
 
+    // 优先级
+    private Integer priority;
+
     // 有效开始日期
     private LocalDateTime startDate;
 
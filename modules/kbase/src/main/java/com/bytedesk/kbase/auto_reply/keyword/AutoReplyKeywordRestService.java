@@ -16,7 +16,6 @@ package com.bytedesk.kbase.auto_reply.keyword;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 
 import org.modelmapper.ModelMapper;
 import org.springframework.cache.annotation.Cacheable;
@@ -54,6 +53,8 @@ public class AutoReplyKeywordRestService extends BaseRestServiceWithExcel<AutoRe
 
     private final AuthService authService;
 
+    private final AutoReplyKeywordMatcherService matcherService;
+
     @Override
     public Page<AutoReplyKeywordEntity> queryByOrgEntity(AutoReplyKeywordRequest request) {
         Pageable pageable = request.getPageable();
@@ -84,29 +85,10 @@ public class AutoReplyKeywordRestService extends BaseRestServiceWithExcel<AutoRe
         return keywordRepository.findByUid(uid);
     }
 
+    // 使用内存中编译好的规则匹配，返回优先级最高规则的随机一条回复
     public String getKeywordReply(String keyword, String kbUid, String orgUid) {
-        AutoReplyKeywordRequest request = AutoReplyKeywordRequest.builder().build();
-        request.getKeywordList().add(keyword);
-        request.setKbUid(kbUid);
-        request.setOrgUid(orgUid);
-        //
-        Specification<AutoReplyKeywordEntity> spec = AutoReplyKeywordSpecification.search(request);
-        List<AutoReplyKeywordEntity> keywordObjects = keywordRepository.findAll(spec);
-        if (keywordObjects.isEmpty()) {
-            return null;
-        }
-        // 使用第一条返回结果, TODO: 后续需要优化
-        AutoReplyKeywordEntity keywordObject = keywordObjects.get(0);
-        //
-        // 随机选择一个回复
-        Random random = new Random();
-        String reply = null;
-        if (!keywordObject.getReplyList().isEmpty()) {
-            int randomIndex = random.nextInt(keywordObject.getReplyList().size());
-            reply = keywordObject.getReplyList().get(randomIndex);
-        }
-        // 
-        return reply;
+        AutoReplyKeywordRule rule = matcherService.match(orgUid, kbUid, keyword);
+        return rule == null ? null : rule.randomReply();
     }
 
     @Override
@@ -141,6 +123,9 @@ public class AutoReplyKeywordRestService extends BaseRestServiceWithExcel<AutoRe
         keyword.setMatchType(request.getMatchType());
         keyword.setContentType(request.getContentType());
         keyword.setEnabled(request.getEnabled());
+        if (request.getPriority() != null) {
+            keyword.setPriority(request.getPriority());
+        }
         //
         AutoReplyKeywordEntity savedAutoReplyKeyword = save(keyword);
         if (savedAutoReplyKeyword == null) {
@@ -0,0 +1,103 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-22 09:12:40
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-22 09:12:40
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.kbase.auto_reply.keyword;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.message.MessageTypeEnum;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 关键词规则快照，由实体复制而来，不可变，匹配时不访问数据库
+ */
+@Getter
+@Builder
+public class AutoReplyKeywordRule {
+
+    private final String uid;
+
+    private final String orgUid;
+
+    private final String kbUid;
+
+    private final List<String> keywordList;
+
+    private final List<String> replyList;
+
+    private final AutoReplyKeywordMatchEnum matchType;
+
+    private final MessageTypeEnum contentType;
+
+    private final boolean transfer;
+
+    private final int priority;
+
+    private final LocalDateTime startDate;
+
+    private final LocalDateTime endDate;
+
+    // 禁用、已删除或无关键词、无回复的规则返回null
+    public static AutoReplyKeywordRule fromEntity(AutoReplyKeywordEntity entity) {
+        if (entity.isDeleted() || !entity.isEnabled()
+                || entity.getKeywordList() == null || entity.getKeywordList().isEmpty()
+                || entity.getReplyList() == null || entity.getReplyList().isEmpty()) {
+            return null;
+        }
+        AutoReplyKeywordMatchEnum matchType;
+        try {
+            matchType = AutoReplyKeywordMatchEnum.fromValue(entity.getMatchType());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return AutoReplyKeywordRule.builder()
+                .uid(entity.getUid())
+                .orgUid(entity.getOrgUid())
+                .kbUid(entity.getKbUid())
+                .keywordList(List.copyOf(entity.getKeywordList().stream().filter(StringUtils::hasText).toList()))
+                .replyList(List.copyOf(entity.getReplyList()))
+                .matchType(matchType)
+                .contentType(MessageTypeEnum.fromValue(entity.getContentType()))
+                .transfer(entity.isTransfer())
+                .priority(entity.getPriority())
+                .startDate(entity.getStartDate())
+                .endDate(entity.getEndDate())
+                .build();
+    }
+
+    // 知识库及有效期是否匹配，kbUid为空时不限制知识库
+    public boolean isAvailable(String kbUid, LocalDateTime now) {
+        if (StringUtils.hasText(kbUid) && StringUtils.hasText(this.kbUid) && !kbUid.equals(this.kbUid)) {
+            return false;
+        }
+        if (startDate != null && now.isBefore(startDate)) {
+            return false;
+        }
+        return endDate == null || !now.isAfter(endDate);
+    }
+
+    // 多个回复时随机返回一个
+    public String randomReply() {
+        if (replyList.size() == 1) {
+            return replyList.get(0);
+        }
+        return replyList.get(ThreadLocalRandom.current().nextInt(replyList.size()));
+    }
+
+}
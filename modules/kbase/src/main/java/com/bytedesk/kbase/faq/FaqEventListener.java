@@ -19,7 +19,7 @@ import org.springframework.stereotype.Component;
 
 import com.alibaba.excel.EasyExcel;
 import com.alibaba.fastjson2.JSON;
-import com.bytedesk.core.message.MessageEntity;
+import com.bytedesk.core.message.MessageSnapshot;
 import com.bytedesk.core.message.MessageStatusEnum;
 import com.bytedesk.core.message.event.MessageUpdateEvent;
 import com.bytedesk.core.upload.UploadEntity;
@@ -49,7 +49,7 @@ public class FaqEventListener {
 
     @EventListener
     public void onMessageUpdateEvent(MessageUpdateEvent event) {
-        MessageEntity message = event.getMessage();
+        MessageSnapshot message = event.getMessage();
         //
         if (message.getStatus().equals(MessageStatusEnum.RATE_UP.name())
                 || message.getStatus().equals(MessageStatusEnum.RATE_DOWN.name())) {
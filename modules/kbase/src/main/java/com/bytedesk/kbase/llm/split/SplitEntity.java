@@ -85,4 +85,7 @@ public class SplitEntity extends BaseEntity {
     // kbaseEntity 的 uid
     private String kbUid;
 
+    // content 的md5，重新向量化时内容未变化的分块直接复用
+    private String contentHash;
+
 }
@@ -13,6 +13,7 @@
  */
 package com.bytedesk.kbase.llm.split;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -24,5 +25,9 @@ public interface SplitRepository extends JpaRepository<SplitEntity, Long>, JpaSp
 
     Optional<SplitEntity> findByDocId(String docId);
 
+    List<SplitEntity> findByDocIdIn(List<String> docIdList);
+
+    List<SplitEntity> findByTypeUidAndDeletedFalse(String typeUid);
+
     // Boolean existsByPlatform(String platform);
 }
@@ -64,4 +64,7 @@ public class SplitRequest extends BaseRequest {
     // kbaseEntity 的 uid
     private String kbUid;
 
+    // content 的md5
+    private String contentHash;
+
 }
@@ -183,16 +183,45 @@ public class SplitRestService extends BaseRestServiceWithExcel<SplitEntity, Spli
     }
 
     public void deleteByDocList(List<String> docIdList) {
-        // 遍历 docIdList
-        for (String docId : docIdList) {
-            // 查找 docId 对应的所有 split
-            Optional<SplitEntity> splitList = splitRepository.findByDocId(docId);
-            // 删除
-            splitList.ifPresent(split -> {
-                split.setDeleted(true);
-                save(split);
-            });
-        }
+        // 一次查出 docIdList 对应的所有 split，批量标记删除
+        List<SplitEntity> splitList = splitRepository.findByDocIdIn(docIdList);
+        splitList.forEach(split -> split.setDeleted(true));
+        splitRepository.saveAll(splitList);
+    }
+
+    // 来源(file/text/qa/faq/website)现有的分块
+    public List<SplitEntity> findByTypeUid(String typeUid) {
+        return splitRepository.findByTypeUidAndDeletedFalse(typeUid);
+    }
+
+    /**
+     * 批量创建，向量化时每批分块一次saveAll，不逐条create
+     * 在后台线程执行，userUid取自request
+     */
+    public List<SplitEntity> createAll(List<SplitRequest> requests) {
+        List<SplitEntity> entities = requests.stream()
+            .<SplitEntity>map(request -> SplitEntity.builder()
+                .uid(uidUtils.getUid())
+                .name(request.getName())
+                .content(request.getContent())
+                .contentHash(request.getContentHash())
+                .type(request.getType())
+                .docId(request.getDocId())
+                .typeUid(request.getTypeUid())
+                .enabled(request.isEnabled())
+                .startDate(request.getStartDate())
+                .endDate(request.getEndDate())
+                .categoryUid(request.getCategoryUid())
+                .kbUid(request.getKbUid())
+                .userUid(request.getUserUid())
+                .orgUid(request.getOrgUid())
+                .build())
+            .toList();
+        return splitRepository.saveAll(entities);
+    }
+
+    public List<SplitEntity> saveAll(List<SplitEntity> entities) {
+        return splitRepository.saveAll(entities);
     }
 
     @Override
@@ -14,11 +14,25 @@
 package com.bytedesk.kbase.taboo_message;
 
 import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.utils.ApplicationContextHolder;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Component
 public class TabooMessageEntityListener {
 
-    
+    // 只标记组织，由TabooMessageWordLoader合并后重建自动机，批量导入时不会逐条重建
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void postChange(TabooMessageEntity tabooMessage) {
+        TabooMessageWordLoader loader = ApplicationContextHolder.getBean(TabooMessageWordLoader.class);
+        loader.markDirty(tabooMessage.getOrgUid());
+    }
+
 }
@@ -13,12 +13,29 @@
  */
 package com.bytedesk.kbase.taboo_message;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface TabooMessageRepository extends JpaRepository<TabooMessageEntity, Long>, JpaSpecificationExecutor<TabooMessageEntity> {
     
     Optional<TabooMessageEntity> findByUid(String uid);
+
+    List<TabooMessageEntity> findByDeletedFalse();
+
+    List<TabooMessageEntity> findByOrgUidAndDeletedFalse(String orgUid);
+
+    // 用于判断其他节点是否修改过敏感词
+    @Query("SELECT MAX(t.updatedAt) FROM TabooMessageEntity t")
+    LocalDateTime findMaxUpdatedAt();
+
+    // 用于判断除指定组织外，其他组织是否被修改过
+    @Query("SELECT MAX(t.updatedAt) FROM TabooMessageEntity t WHERE t.orgUid NOT IN :orgUids")
+    LocalDateTime findMaxUpdatedAtByOrgUidNotIn(@Param("orgUids") Collection<String> orgUids);
 }
@@ -16,7 +16,7 @@ package com.bytedesk.kbase.taboo_message;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.message.MessageEnvelope;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageTypeEnum;
 import com.bytedesk.core.message.event.MessageJsonEvent;
@@ -40,9 +40,7 @@ public class TabooMessageVipEventListener {
     @EventListener
     public void onMessageJsonEvent(MessageJsonEvent event) {
         // log.info("MessageJsonEvent {}", event.getJson());
-        String messageJson = event.getJson();
-
-        processMessage(messageJson);
+        processMessage(event.getEnvelope());
     }
 
     // @EventListener
@@ -65,8 +63,8 @@ public class TabooMessageVipEventListener {
     //     }
     // }
 
-    private void processMessage(String messageJson) {
-        MessageProtobuf messageProtobuf = JSON.parseObject(messageJson, MessageProtobuf.class);
+    private void processMessage(MessageEnvelope envelope) {
+        MessageProtobuf messageProtobuf = envelope.getProtobuf();
         if (messageProtobuf.getType().equals(MessageTypeEnum.STREAM)) {
             // ai回答暂不处理
             return;
@@ -0,0 +1,140 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-21 14:08:36
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-21 14:08:36
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.kbase.taboo_message;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
+import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
+import com.bytedesk.core.taboo.TabooWordService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 将各组织的敏感词同步到TabooWordService
+ *
+ * 本节点的修改由实体监听标记组织，每5秒合并重建一次；
+ * 其他节点的修改通过每分钟比较最大更新时间发现，变化时全量重新加载。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TabooMessageWordLoader {
+
+    private final TabooMessageRepository tabooMessageRepository;
+
+    private final TabooWordService tabooWordService;
+
+    private final Set<String> dirtyOrgs = ConcurrentHashMap.newKeySet();
+
+    private volatile LocalDateTime lastUpdatedAt;
+
+    public void markDirty(String orgUid) {
+        if (StringUtils.hasText(orgUid)) {
+            dirtyOrgs.add(orgUid);
+        }
+    }
+
+    public synchronized void reloadAll() {
+        LocalDateTime updatedAt = tabooMessageRepository.findMaxUpdatedAt();
+        Map<String, List<String>> wordsByOrg = tabooMessageRepository.findByDeletedFalse().stream()
+                .filter(taboo -> StringUtils.hasText(taboo.getOrgUid()) && StringUtils.hasText(taboo.getContent()))
+                .collect(Collectors.groupingBy(TabooMessageEntity::getOrgUid, HashMap::new,
+                        Collectors.mapping(TabooMessageEntity::getContent, Collectors.toList())));
+        tabooWordService.setAllOrgWords(wordsByOrg);
+        lastUpdatedAt = updatedAt;
+    }
+
+    public synchronized void reloadDirty() {
+        if (dirtyOrgs.isEmpty()) {
+            return;
+        }
+        List<String> orgUids = new ArrayList<>(dirtyOrgs);
+        dirtyOrgs.removeAll(orgUids);
+        // 其他组织在上次同步后被其他节点修改过时，不推进同步时间，由定时检查全量加载
+        LocalDateTime otherUpdatedAt = tabooMessageRepository.findMaxUpdatedAtByOrgUidNotIn(orgUids);
+        boolean othersSynced = otherUpdatedAt == null
+                || (lastUpdatedAt != null && !otherUpdatedAt.isAfter(lastUpdatedAt));
+        LocalDateTime loadedUpdatedAt = null;
+        for (String orgUid : orgUids) {
+            List<TabooMessageEntity> taboos = tabooMessageRepository.findByOrgUidAndDeletedFalse(orgUid);
+            List<String> words = new ArrayList<>(taboos.size());
+            for (TabooMessageEntity taboo : taboos) {
+                if (StringUtils.hasText(taboo.getContent())) {
+                    words.add(taboo.getContent());
+                }
+                if (taboo.getUpdatedAt() != null
+                        && (loadedUpdatedAt == null || taboo.getUpdatedAt().isAfter(loadedUpdatedAt))) {
+                    loadedUpdatedAt = taboo.getUpdatedAt();
+                }
+            }
+            tabooWordService.setOrgWords(orgUid, words);
+        }
+        // 本节点的修改已生效，只推进到实际加载到的最大更新时间，
+        // 不能取全表最大值，否则加载之后其他节点的修改会被跳过
+        if (othersSynced && loadedUpdatedAt != null
+                && (lastUpdatedAt == null || loadedUpdatedAt.isAfter(lastUpdatedAt))) {
+            lastUpdatedAt = loadedUpdatedAt;
+        }
+    }
+
+    public synchronized void reloadIfChanged() {
+        LocalDateTime updatedAt = tabooMessageRepository.findMaxUpdatedAt();
+        if (!Objects.equals(updatedAt, lastUpdatedAt)) {
+            reloadAll();
+        }
+    }
+
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        try {
+            reloadAll();
+        } catch (Exception e) {
+            log.error("load taboo words error: ", e);
+        }
+    }
+
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        try {
+            reloadDirty();
+        } catch (Exception e) {
+            log.error("reload taboo words error: ", e);
+        }
+    }
+
+    @EventListener
+    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
+        try {
+            reloadIfChanged();
+        } catch (Exception e) {
+            log.error("reload taboo words error: ", e);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-22 11:05:37
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-22 11:05:37
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.service.agent;
+
+import java.util.Optional;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.bytedesk.core.message.IMessageSendService;
+import com.bytedesk.core.message.MessageExtra;
+import com.bytedesk.core.message.MessageProtobuf;
+import com.bytedesk.core.message.MessageTypeEnum;
+import com.bytedesk.core.message.MessageUtils;
+import com.bytedesk.core.message.event.MessageJsonEvent;
+import com.bytedesk.core.rbac.user.UserTypeEnum;
+import com.bytedesk.core.thread.ThreadProtobuf;
+import com.bytedesk.core.thread.ThreadTypeEnum;
+import com.bytedesk.core.topic.TopicUtils;
+import com.bytedesk.kbase.auto_reply.keyword.AutoReplyKeywordMatcherService;
+import com.bytedesk.kbase.auto_reply.keyword.AutoReplyKeywordRule;
+import com.bytedesk.kbase.auto_reply.settings.AutoReplySettings;
+import com.bytedesk.kbase.auto_reply.settings.AutoReplyTypeEnum;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 客服关键词自动回复：访客发送文本消息时，按客服的自动回复设置匹配关键词规则
+ *
+ * 规则匹配在内存中完成；组织没有任何规则时不查询客服，直接返回
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AgentAutoReplyEventListener {
+
+    private final AutoReplyKeywordMatcherService autoReplyKeywordMatcherService;
+
+    private final AgentRestService agentRestService;
+
+    private final IMessageSendService messageSendService;
+
+    @EventListener
+    public void onMessageJsonEvent(MessageJsonEvent event) {
+        MessageProtobuf message = event.getEnvelope().getProtobuf();
+        if (message.getType() != MessageTypeEnum.TEXT
+                || message.getUser() == null
+                || !UserTypeEnum.VISITOR.name().equals(message.getUser().getType())) {
+            return;
+        }
+        ThreadProtobuf thread = message.getThread();
+        if (thread == null || thread.getType() != ThreadTypeEnum.AGENT) {
+            return;
+        }
+        MessageExtra extra = MessageExtra.fromJson(message.getExtra());
+        String orgUid = extra != null ? extra.getOrgUid() : null;
+        if (!autoReplyKeywordMatcherService.hasRules(orgUid)) {
+            return;
+        }
+        try {
+            reply(message, thread, orgUid);
+        } catch (Exception e) {
+            log.error("agent keyword auto reply error: ", e);
+        }
+    }
+
+    private void reply(MessageProtobuf message, ThreadProtobuf thread, String orgUid) {
+        String agentUid = TopicUtils.getAgentUidFromThreadTopic(thread.getTopic());
+        Optional<AgentEntity> agentOptional = agentRestService.findByUid(agentUid);
+        if (!agentOptional.isPresent()) {
+            return;
+        }
+        AutoReplySettings settings = agentOptional.get().getAutoReplySettings();
+        if (settings == null || !settings.isAutoReplyEnabled()
+                || !AutoReplyTypeEnum.KEYWORD.name().equals(settings.getAutoReplyType())) {
+            return;
+        }
+        AutoReplyKeywordRule rule = autoReplyKeywordMatcherService.match(orgUid, settings.getKbUid(), message.getContent());
+        if (rule == null) {
+            return;
+        }
+        log.debug("agent keyword auto reply: message {}, rule {}", message.getUid(), rule.getUid());
+        MessageProtobuf reply = MessageUtils.createAutoReplyMessage(thread, orgUid, rule.getContentType(), rule.randomReply());
+        messageSendService.sendProtobufMessage(reply);
+    }
+
+}
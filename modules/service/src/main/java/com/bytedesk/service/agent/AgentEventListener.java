@@ -32,8 +32,7 @@ import com.bytedesk.core.rbac.organization.event.OrganizationCreateEvent;
 import com.bytedesk.core.rbac.user.UserEntity;
 import com.bytedesk.core.rbac.user.UserProtobuf;
 import com.bytedesk.core.socket.mqtt.MqttConnectionService;
-import com.bytedesk.core.socket.mqtt.event.MqttConnectedEvent;
-import com.bytedesk.core.socket.mqtt.event.MqttDisconnectedEvent;
+import com.bytedesk.core.socket.mqtt.event.MqttPresenceChangeEvent;
 import com.bytedesk.core.thread.ThreadEntity;
 import com.bytedesk.core.thread.event.ThreadAcceptEvent;
 import com.bytedesk.core.thread.event.ThreadCloseEvent;
@@ -44,12 +43,12 @@ import com.bytedesk.kbase.kbase.KbaseTypeEnum;
 import com.bytedesk.service.agent.event.AgentCreateEvent;
 import com.bytedesk.service.utils.ThreadMessageUtil;
 
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Component
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class AgentEventListener {
 
     private final AgentRestService agentService;
@@ -95,41 +94,35 @@ public class AgentEventListener {
         knowledgebaseService.create(kbaseQuickReply);
     }
 
+    // 用户在本节点首个客户端上线，或最后一个客户端下线；下线时其他节点仍有连接则保持在线
     @EventListener
-    public void onMqttConnectedEvent(MqttConnectedEvent event) {
-        String clientId = event.getClientId();
-        // 用户clientId格式: uid/client/deviceUid
-        final String uid = clientId.split("/")[0];
-        log.info("agent onMqttConnectedEvent uid {}, clientId {}", uid, clientId);
-        agentService.updateConnect(uid, true);
-    }
-
-    @EventListener
-    public void onMqttDisconnectedEvent(MqttDisconnectedEvent event) {
-        String clientId = event.getClientId();
-        // 用户clientId格式: uid/client/deviceUid
-        final String uid = clientId.split("/")[0];
-        log.info("agent onMqttDisconnectedEvent uid {}, clientId {}", uid, clientId);
-        agentService.updateConnect(uid, false);
+    public void onMqttPresenceChangeEvent(MqttPresenceChangeEvent event) {
+        log.info("agent onMqttPresenceChangeEvent uid {}, online {}", event.getUserUid(), event.isOnline());
+        if (event.isOnline()) {
+            agentService.updateConnect(event.getUserUid(), true);
+        } else {
+            agentService.updateDisconnected(event.getUserUid());
+        }
     }
 
-    // 更新agent在线状态
+    // 以数据库中agent的在线状态与集群在线状态校对，仅更新不一致的agent
     @EventListener
     public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
         // log.info("agent QuartzOneMinEvent");
+        Set<String> userUids = mqttConnectionService.getConnectedUserUids();
+        // 数据库中在线，但集群内已没有连接，更新为离线
         List<AgentEntity> agents = agentService.findAllConnected();
-        Set<String> userIds = mqttConnectionService.getConnectedUserUids();
-        // 遍历agents，判断是否在线，如果不在，则更新为离线状态
         for (AgentEntity agent : agents) {
             String userUid = agent.getUserUid();
-            if (!userIds.contains(userUid)) {
+            if (!userUids.contains(userUid)) {
                 log.info("agent updateConnect uid {} offline", userUid);
                 agentService.updateConnect(userUid, false);
             }
         }
-        // 遍历userIds，更新为在线状态
-        for (String userUid : userIds) {
-            agentService.updateConnect(userUid, true);            
+        // 集群内有连接，但数据库中离线，更新为在线
+        for (String userUid : agentService.findDisconnectedUserUids(userUids)) {
+            log.info("agent updateConnect uid {} online", userUid);
+            agentService.updateConnect(userUid, true);
         }
     }
 
@@ -13,6 +13,7 @@
  */
 package com.bytedesk.service.agent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,6 +35,8 @@ public interface AgentRepository extends JpaRepository<AgentEntity, Long>, JpaSp
 
     Optional<AgentEntity> findByUserUid(String userUid);
 
+    List<AgentEntity> findAllByUserUid(String userUid);
+
     List<AgentEntity> findByOrgUid(String orgUid);
 
     Optional<AgentEntity> findByEmailAndOrgUidAndDeletedFalse(String email, String orgUid);
@@ -44,6 +47,8 @@ public interface AgentRepository extends JpaRepository<AgentEntity, Long>, JpaSp
 
     List<AgentEntity> findByConnectedAndDeletedFalse(boolean connected);
 
+    List<AgentEntity> findByUserUidInAndConnectedFalseAndDeletedFalse(Collection<String> userUids);
+
     Boolean existsByUserUidAndOrgUidAndDeletedFalse(String userUid, String orgUid);
 
     @Transactional
@@ -13,6 +13,9 @@
  */
 package com.bytedesk.service.agent;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
@@ -21,9 +24,6 @@ import java.util.Set;
 
 import org.modelmapper.ModelMapper;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.CachePut;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -35,14 +35,15 @@ import org.springframework.util.StringUtils;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.bytedesk.core.action.ActionRequest;
-import com.bytedesk.core.action.ActionRestService;
 import com.bytedesk.core.action.ActionTypeEnum;
+import com.bytedesk.core.action.disruptor.LogEventService;
 import com.bytedesk.core.base.BaseRestService;
 import com.bytedesk.core.config.BytedeskEventPublisher;
 import com.bytedesk.core.rbac.auth.AuthService;
 import com.bytedesk.core.rbac.user.UserEntity;
 import com.bytedesk.core.rbac.user.UserProtobuf;
 import com.bytedesk.core.rbac.user.UserService;
+import com.bytedesk.core.redis.cache.CacheEvictService;
 import com.bytedesk.core.socket.mqtt.MqttConnectionService;
 import com.bytedesk.core.thread.ThreadEntity;
 import com.bytedesk.core.thread.ThreadProcessStatusEnum;
@@ -86,7 +87,7 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
 
     private final BytedeskEventPublisher bytedeskEventPublisher;
 
-    private final ActionRestService actionService;
+    private final LogEventService logEventService;
 
     private final ServiceSettingsService serviceSettingsService;
 
@@ -94,6 +95,11 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
 
     private final ThreadRestService threadRestService;
 
+    private final CacheEvictService cacheEvictService;
+
+    // 校对在线状态时每批查询的userUid数量
+    private static final int DISCONNECTED_QUERY_BATCH_SIZE = 500;
+
     public Page<AgentResponse> queryByOrg(AgentRequest request) {
         Pageable pageable = request.getPageable();
         Specification<AgentEntity> spec = AgentSpecification.search(request);
@@ -352,7 +358,38 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
     public void updateConnect(String userUid, boolean connected) {
         // 参数uid是userUid，非agent uid，所以无法直接更新
         agentRepository.updateConnectedByUserUid(connected, userUid);
-        // TODO: redis cache agent online status
+        agentRepository.findAllByUserUid(userUid).forEach(this::evictCache);
+    }
+
+    /**
+     * 用户在本节点的最后一个客户端下线，集群内其他节点仍有连接时保持在线
+     */
+    @Async
+    @Transactional
+    public void updateDisconnected(String userUid) {
+        // 访客等非agent用户直接返回，不访问redis
+        List<AgentEntity> agents = agentRepository.findAllByUserUid(userUid);
+        if (agents.isEmpty()) {
+            return;
+        }
+        if (mqttConnectionService.isUserConnected(userUid)) {
+            log.info("agent {} still connected on other node", userUid);
+            return;
+        }
+        agentRepository.updateConnectedByUserUid(false, userUid);
+        agents.forEach(this::evictCache);
+    }
+
+    // 在线用户中数据库里仍为离线的agent，分批查询，访客不在agent表中
+    public Set<String> findDisconnectedUserUids(Collection<String> connectedUserUids) {
+        List<String> userUids = new ArrayList<>(connectedUserUids);
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < userUids.size(); i += DISCONNECTED_QUERY_BATCH_SIZE) {
+            List<String> batch = userUids.subList(i, Math.min(i + DISCONNECTED_QUERY_BATCH_SIZE, userUids.size()));
+            agentRepository.findByUserUidInAndConnectedFalseAndDeletedFalse(batch)
+                    .forEach(agent -> result.add(agent.getUserUid()));
+        }
+        return result;
     }
 
     @Cacheable(value = "agent", key = "#uid", unless = "#result == null")
@@ -360,22 +397,22 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
         return agentRepository.findByUid(uid);
     }
 
-    @Cacheable(value = "agent", key = "#userUid", unless = "#result == null")
+    @Cacheable(value = "agent", key = "'user-' + #userUid", unless = "#result == null")
     public Optional<AgentEntity> findByUserUid(String userUid) {
         return agentRepository.findByUserUid(userUid);
     }
 
-    @Cacheable(value = "agent", key = "#mobile", unless = "#result == null")
+    @Cacheable(value = "agent", key = "'mobile-' + #mobile + '-' + #orgUid", unless = "#result == null")
     public Optional<AgentEntity> findByMobileAndOrgUid(String mobile, String orgUid) {
         return agentRepository.findByMobileAndOrgUidAndDeletedFalse(mobile, orgUid);
     }
 
-    @Cacheable(value = "agent", key = "#email", unless = "#result == null")
+    @Cacheable(value = "agent", key = "'email-' + #email + '-' + #orgUid", unless = "#result == null")
     public Optional<AgentEntity> findByEmailAndOrgUid(String email, String orgUid) {
         return agentRepository.findByEmailAndOrgUidAndDeletedFalse(email, orgUid);
     }
 
-    @Cacheable(value = "agent", key = "#userUid", unless = "#result == null")
+    @Cacheable(value = "agent", key = "'user-' + #userUid + '-' + #orgUid", unless = "#result == null")
     public Optional<AgentEntity> findByUserUidAndOrgUid(String userUid, String orgUid) {
         return agentRepository.findByUserUidAndOrgUidAndDeletedFalse(userUid, orgUid);
     }
@@ -396,11 +433,6 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
         return agentRepository.findByConnectedAndDeletedFalse(connected);
     }
 
-    @Caching(put = {
-            @CachePut(value = "agent", key = "#agent.uid"),
-            @CachePut(value = "agent", key = "#agent.mobile", unless = "#agent.mobile == null"),
-            @CachePut(value = "agent", key = "#agent.email", unless = "#agent.email == null"),
-    })
     @Override
     public AgentEntity save(AgentEntity agent) {
         try {
@@ -412,12 +444,24 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
     
     @Override
     protected AgentEntity doSave(AgentEntity entity) {
-        return agentRepository.save(entity);
+        AgentEntity savedAgent = agentRepository.save(entity);
+        evictCache(savedAgent);
+        return savedAgent;
+    }
+
+    // 删除findBy*的缓存，key与注解保持一致
+    private void evictCache(AgentEntity agent) {
+        String orgUid = agent.getOrgUid();
+        cacheEvictService.evict("agent", agent.getUid(),
+                "user-" + agent.getUserUid(),
+                "user-" + agent.getUserUid() + "-" + orgUid,
+                agent.getMobile() != null ? "mobile-" + agent.getMobile() + "-" + orgUid : null,
+                agent.getEmail() != null ? "email-" + agent.getEmail() + "-" + orgUid : null);
     }
 
-    @CacheEvict(value = "agent", key = "#uid")
     public void deleteByUid(String uid) {
         agentRepository.updateDeletedByUid(true, uid);
+        agentRepository.findByUid(uid).ifPresent(this::evictCache);
     }
 
     @Override
@@ -451,7 +495,7 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
             while (retryCount < MAX_RETRY_ATTEMPTS) {
                 try {
                     // 尝试更新Topic对象
-                    agentRepository.save(agent);
+                    doSave(agent);
                     // 更新成功，无需进一步处理
                     log.info("Optimistic locking succeeded for agent: {}", agent.getUid());
                     break; // 跳出内部循环
@@ -491,7 +535,7 @@ public class AgentRestService extends BaseRestService<AgentEntity, AgentRequest,
                 .extra(agentJSON)
                 .build();
         actionRequest.setType(ActionTypeEnum.FAILED.name());
-        actionService.create(actionRequest);
+        logEventService.publish(actionRequest);
         // bytedeskEventPublisher.publishActionCreateEvent(actionRequest);
         log.error("All retry attempts failed for optimistic locking of agent: {}", agent.getUid());
         // 根据业务逻辑决定如何处理失败，例如通知用户稍后重试或执行其他操作
@@ -19,7 +19,7 @@ import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import com.alibaba.fastjson2.JSON;
-import com.bytedesk.core.message.MessageEntity;
+import com.bytedesk.core.message.MessageSnapshot;
 import com.bytedesk.core.message.MessageStatusEnum;
 import com.bytedesk.core.message.event.MessageUpdateEvent;
 import com.bytedesk.service.queue_member.QueueMemberEntity;
@@ -39,7 +39,7 @@ public class MessageLeaveEventListener {
 
     @EventListener
     public void onMessageUpdateEvent(MessageUpdateEvent event) {
-        MessageEntity message = event.getMessage();
+        MessageSnapshot message = event.getMessage();
         // log.info("message leave_msg update event: {}", message);
         //
         if (message.getStatus().equals(MessageStatusEnum.LEAVE_MSG_SUBMIT.name())) {
@@ -49,7 +49,7 @@ public class MessageLeaveEventListener {
                     .contact(extra.getContact())
                     .content(extra.getContent())
                     .images(extra.getImages())
-                    .threadUid(message.getThread().getUid())
+                    .threadUid(message.getThreadUid())
                     // .thread(message.getThread())
                     .user(message.getUser())
                     .client(message.getClient())
@@ -58,7 +58,7 @@ public class MessageLeaveEventListener {
             MessageLeaveService.create(request);
 
             // 更新queue_member表
-            Optional<QueueMemberEntity> queueMemberOptional = queueMemberRestService.findByThreadUid(message.getThread().getUid());
+            Optional<QueueMemberEntity> queueMemberOptional = queueMemberRestService.findByThreadUid(message.getThreadUid());
             if (queueMemberOptional.isPresent()) {
                 QueueMemberEntity queueMember = queueMemberOptional.get();
                 queueMember.setLeaveMsg(true);
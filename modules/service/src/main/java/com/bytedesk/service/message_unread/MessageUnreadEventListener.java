@@ -17,7 +17,7 @@ import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import com.bytedesk.core.enums.ClientEnum;
-import com.bytedesk.core.message.MessageEntity;
+import com.bytedesk.core.message.MessageSnapshot;
 import com.bytedesk.core.message.MessageTypeEnum;
 import com.bytedesk.core.message.event.MessageCreateEvent;
 import com.bytedesk.core.message.event.MessageUpdateEvent;
@@ -36,7 +36,7 @@ public class MessageUnreadEventListener {
 
     @EventListener
     public void onMessageCreateEvent(MessageCreateEvent event) {
-        MessageEntity message = event.getMessage();
+        MessageSnapshot message = event.getMessage();
         if (MessageTypeEnum.STREAM.name().equalsIgnoreCase(message.getType()) || 
             MessageTypeEnum.NOTICE.name().equalsIgnoreCase(message.getType()) ||
             MessageTypeEnum.SYSTEM.name().equalsIgnoreCase(message.getType())) {
@@ -125,7 +125,7 @@ public class MessageUnreadEventListener {
 
     @EventListener
     public void onMessageUpdateEvent(MessageUpdateEvent event) {
-        MessageEntity message = event.getMessage();
+        MessageSnapshot message = event.getMessage();
         if (MessageTypeEnum.STREAM.name().equalsIgnoreCase(message.getType()) || 
             MessageTypeEnum.NOTICE.name().equalsIgnoreCase(message.getType()) || 
             MessageTypeEnum.SYSTEM.name().equalsIgnoreCase(message.getType())) {
@@ -0,0 +1,410 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-18 15:40:21
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-18 15:40:21
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.service.queue;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadProcessStatusEnum;
+import com.bytedesk.core.thread.ThreadSnapshot;
+import com.bytedesk.service.queue_member.QueueMemberEntity;
+import com.bytedesk.service.queue_member.QueueMemberRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 队列计数器
+ *
+ * 队列统计数据(排队中、对话中、留言数、每小时接待人数等)保存在redis hash中，
+ * 不再每次读取都加载当天全部QueueMemberEntity及其会话。
+ *
+ * 每个队列成员按当前状态生成一组计数项(token)，格式为"queueUid|field"或"queueUid|field=amount"，
+ * 成员或其会话状态变化时，lua脚本对比新旧计数项，只对变化的字段做HINCRBY，多节点并发更新也不会重复计数。
+ * 定时根据数据库中当天的队列成员全量重算，修正偏差。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QueueCounterService {
+
+    public static final String FIELD_TOTAL = "totalCount";
+    public static final String FIELD_ROBOTING = "robotingCount";
+    public static final String FIELD_OFFLINE = "offlineCount";
+    public static final String FIELD_LEAVE_MSG = "leaveMsgCount";
+    public static final String FIELD_ROBOT_TO_AGENT = "robotToAgentCount";
+    public static final String FIELD_QUEUING = "queuingCount";
+    public static final String FIELD_CHATTING = "chattingCount";
+    public static final String FIELD_CLOSED = "closedCount";
+    public static final String FIELD_WAIT_TIME = "waitTime";
+    public static final String FIELD_SERVED = "servedCount";
+    public static final String FIELD_RESOLVE_TIME = "resolveTime";
+    public static final String FIELD_RESOLVED = "resolvedCount";
+    public static final String FIELD_HOUR_PREFIX = "hour:";
+    // 已分配的排队号码
+    public static final String FIELD_NUMBER = "number";
+
+    private static final String[] COUNT_FIELDS = { FIELD_TOTAL, FIELD_ROBOTING, FIELD_OFFLINE, FIELD_LEAVE_MSG,
+            FIELD_ROBOT_TO_AGENT, FIELD_QUEUING, FIELD_CHATTING, FIELD_CLOSED, FIELD_WAIT_TIME, FIELD_SERVED,
+            FIELD_RESOLVE_TIME, FIELD_RESOLVED };
+
+    // 队列按天创建，计数保留两天
+    private static final Duration COUNTER_TTL = Duration.ofDays(2);
+
+    private static final Duration RECONCILE_LOCK_TTL = Duration.ofMinutes(10);
+
+    private static final int RECONCILE_PAGE_SIZE = 500;
+
+    // KEYS[1]: 成员计数项hash, ARGV[1]: 成员uid, ARGV[2]: 新计数项, ARGV[3]: 队列计数key前缀, ARGV[4]: 过期秒数
+    private static final DefaultRedisScript<Long> APPLY_SCRIPT = new DefaultRedisScript<>(
+            "local old = redis.call('HGET', KEYS[1], ARGV[1]) "
+                    + "if old == ARGV[2] then return 0 end "
+                    + "local function parse(s) local t = {} if s then for token in string.gmatch(s, '[^,]+') do t[token] = true end end return t end "
+                    + "local function apply(token, sign) "
+                    + "  local sep = string.find(token, '|', 1, true) "
+                    + "  local field = string.sub(token, sep + 1) "
+                    + "  local amount = 1 "
+                    + "  local eq = string.find(field, '=', 1, true) "
+                    + "  if eq then amount = tonumber(string.sub(field, eq + 1)) field = string.sub(field, 1, eq - 1) end "
+                    + "  local key = ARGV[3] .. string.sub(token, 1, sep - 1) "
+                    + "  redis.call('HINCRBY', key, field, sign * amount) "
+                    + "  redis.call('EXPIRE', key, ARGV[4]) "
+                    + "end "
+                    + "local oldTokens = parse(old) "
+                    + "local newTokens = parse(ARGV[2]) "
+                    + "for token in pairs(oldTokens) do if not newTokens[token] then apply(token, -1) end end "
+                    + "for token in pairs(newTokens) do if not oldTokens[token] then apply(token, 1) end end "
+                    + "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[4]) "
+                    + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final QueueMemberRepository queueMemberRepository;
+
+    // memberUid -> 最近一次写入的计数项，相同则跳过，减少redis访问
+    private final Cache<String, String> appliedTokens = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    // threadUid -> 最近一次处理的会话状态
+    private final Cache<String, String> threadStatuses = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    /**
+     * 分配下一个排队号码
+     */
+    public int nextNumber(QueueEntity queue) {
+        String key = getQueueKey(queue.getUid());
+        Long number = stringRedisTemplate.opsForHash().increment(key, FIELD_NUMBER, 1);
+        stringRedisTemplate.expire(key, COUNTER_TTL);
+        return number != null ? number.intValue() : 1;
+    }
+
+    public int getQueuingCount(QueueEntity queue) {
+        if (queue == null) {
+            return 0;
+        }
+        Object value = stringRedisTemplate.opsForHash().get(getQueueKey(queue.getUid()), FIELD_QUEUING);
+        return value != null ? Math.max(Integer.parseInt(value.toString()), 0) : 0;
+    }
+
+    /**
+     * 使用计数器填充队列统计数据
+     */
+    public QueueResponse fillCounters(QueueResponse response) {
+        if (response == null || !StringUtils.hasText(response.getUid())) {
+            return response;
+        }
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(getQueueKey(response.getUid()));
+        Map<String, Long> counters = new HashMap<>(entries.size());
+        entries.forEach((field, value) -> counters.put(field.toString(), Long.parseLong(value.toString())));
+        //
+        response.setTotalCount(getCount(counters, FIELD_TOTAL));
+        response.setRobotingCount(getCount(counters, FIELD_ROBOTING));
+        response.setOfflineCount(getCount(counters, FIELD_OFFLINE));
+        response.setLeaveMsgCount(getCount(counters, FIELD_LEAVE_MSG));
+        response.setRobotToAgentCount(getCount(counters, FIELD_ROBOT_TO_AGENT));
+        response.setQueuingCount(getCount(counters, FIELD_QUEUING));
+        response.setChattingCount(getCount(counters, FIELD_CHATTING));
+        response.setClosedCount(getCount(counters, FIELD_CLOSED));
+        response.setAvgWaitTime(getAverage(counters, FIELD_WAIT_TIME, FIELD_SERVED));
+        response.setAvgResolveTime(getAverage(counters, FIELD_RESOLVE_TIME, FIELD_RESOLVED));
+        List<Integer> threadsCountByHour = new ArrayList<>(24);
+        for (int hour = 0; hour < 24; hour++) {
+            threadsCountByHour.add(getCount(counters, getHourField(hour)));
+        }
+        response.setThreadsCountByHour(threadsCountByHour);
+        return response;
+    }
+
+    /**
+     * 队列成员变化，需在持有session时调用（如实体监听器中），事务提交后写入redis
+     */
+    public void update(QueueMemberEntity member) {
+        ThreadEntity thread = member.getThread();
+        update(member, thread != null ? thread.getCreatedAt() : null, thread != null ? thread.getStatus() : null);
+    }
+
+    /**
+     * 会话状态变化，查找对应的队列成员更新计数
+     */
+    @Transactional(readOnly = true)
+    public void updateByThread(ThreadSnapshot thread) {
+        if (thread == null || !StringUtils.hasText(thread.getUid())) {
+            return;
+        }
+        // 会话内容等频繁更新，仅在状态变化时处理
+        if (Objects.equals(threadStatuses.getIfPresent(thread.getUid()), thread.getStatus())) {
+            return;
+        }
+        threadStatuses.put(thread.getUid(), thread.getStatus());
+        queueMemberRepository.findByThreadUid(thread.getUid()).ifPresent(member -> update(member, thread.getCreatedAt(), thread.getStatus()));
+    }
+
+    /**
+     * 根据数据库中当天的队列成员全量重算，多节点只有一个节点执行
+     */
+    @Transactional(readOnly = true)
+    public void reconcile() {
+        String lockKey = RedisConsts.QUEUE_COUNTER_RECONCILE_LOCK;
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "1", RECONCILE_LOCK_TTL);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            String day = today.format(DateTimeFormatter.ISO_DATE);
+            Map<String, String> memberTokens = new HashMap<>();
+            Map<String, Map<String, Long>> queueCounters = new HashMap<>();
+            int pageNumber = 0;
+            Page<QueueMemberEntity> page;
+            do {
+                page = queueMemberRepository.findByVisitorEnqueueTimeAfter(today.atStartOfDay(),
+                        PageRequest.of(pageNumber++, RECONCILE_PAGE_SIZE));
+                for (QueueMemberEntity member : page.getContent()) {
+                    ThreadEntity thread = member.getThread();
+                    List<String> tokens = toTokens(member, thread != null ? thread.getCreatedAt() : null,
+                            thread != null ? thread.getStatus() : null);
+                    memberTokens.put(member.getUid(), String.join(",", tokens));
+                    for (String token : tokens) {
+                        accumulate(queueCounters, token);
+                    }
+                }
+            } while (page.hasNext());
+            writeReconciled(day, memberTokens, queueCounters);
+            appliedTokens.invalidateAll();
+            log.info("queue counters reconciled, members {}, queues {}", memberTokens.size(), queueCounters.size());
+        } finally {
+            stringRedisTemplate.delete(lockKey);
+        }
+    }
+
+    private void update(QueueMemberEntity member, LocalDateTime threadCreatedAt, String threadStatus) {
+        if (member == null || !StringUtils.hasText(member.getUid())) {
+            return;
+        }
+        String memberUid = member.getUid();
+        String day = getDay(member);
+        String tokens = String.join(",", toTokens(member, threadCreatedAt, threadStatus));
+        if (tokens.equals(appliedTokens.getIfPresent(memberUid))) {
+            return;
+        }
+        Runnable apply = () -> apply(memberUid, day, tokens);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    private void apply(String memberUid, String day, String tokens) {
+        try {
+            stringRedisTemplate.execute(APPLY_SCRIPT,
+                    List.of(RedisConsts.QUEUE_MEMBER_COUNTER_PREFIX + day),
+                    memberUid, tokens, RedisConsts.QUEUE_COUNTER_PREFIX, String.valueOf(COUNTER_TTL.getSeconds()));
+            appliedTokens.put(memberUid, tokens);
+        } catch (Exception e) {
+            // 由定时重算修正
+            log.error("update queue counters of member {} error: ", memberUid, e);
+        }
+    }
+
+    /**
+     * 成员对所属各队列的计数贡献
+     */
+    private List<String> toTokens(QueueMemberEntity member, LocalDateTime threadCreatedAt, String threadStatus) {
+        // 排序保证相同状态生成相同的字符串
+        TreeSet<String> fields = new TreeSet<>();
+        fields.add(FIELD_TOTAL);
+        if (member.isLeaveMsg()) {
+            fields.add(FIELD_LEAVE_MSG);
+        }
+        if (member.isRobotToAgent()) {
+            fields.add(FIELD_ROBOT_TO_AGENT);
+        }
+        if (threadStatus != null) {
+            if (threadCreatedAt != null) {
+                fields.add(getHourField(threadCreatedAt.getHour()));
+            }
+            if (member.isAgentOffline()) {
+                fields.add(FIELD_OFFLINE);
+            }
+            if (ThreadProcessStatusEnum.ROBOTING.name().equals(threadStatus)) {
+                fields.add(FIELD_ROBOTING);
+            } else if (ThreadProcessStatusEnum.QUEUING.name().equals(threadStatus)) {
+                fields.add(FIELD_QUEUING);
+            } else if (ThreadProcessStatusEnum.CHATTING.name().equals(threadStatus)) {
+                fields.add(FIELD_CHATTING);
+            } else if (ThreadProcessStatusEnum.CLOSED.name().equals(threadStatus)) {
+                fields.add(FIELD_CLOSED);
+            }
+            if (member.getAgentAcceptTime() != null) {
+                fields.add(FIELD_SERVED);
+                fields.add(FIELD_WAIT_TIME + "=" + getWaitTime(member, threadStatus));
+                if (ThreadProcessStatusEnum.CLOSED.name().equals(threadStatus) && member.getAgentCloseTime() != null) {
+                    fields.add(FIELD_RESOLVED);
+                    fields.add(FIELD_RESOLVE_TIME + "="
+                            + Duration.between(member.getAgentAcceptTime(), member.getAgentCloseTime()).getSeconds());
+                }
+            }
+        }
+        //
+        List<String> tokens = new ArrayList<>();
+        for (QueueEntity queue : new QueueEntity[] { member.getWorkgroupQueue(), member.getAgentQueue(),
+                member.getRobotQueue() }) {
+            if (queue == null) {
+                continue;
+            }
+            for (String field : fields) {
+                tokens.add(queue.getUid() + "|" + field);
+            }
+        }
+        return tokens;
+    }
+
+    // 同QueueMemberEntity.getWaitTime，会话状态以传入的为准
+    private static long getWaitTime(QueueMemberEntity member, String threadStatus) {
+        if (member.getVisitorEnqueueTime() == null || ThreadProcessStatusEnum.OFFLINE.name().equals(threadStatus)) {
+            return 0;
+        }
+        LocalDateTime endWaitTime = member.getRobotAcceptTime() != null ? member.getRobotAcceptTime()
+                : member.getAgentAcceptTime();
+        return Duration.between(member.getVisitorEnqueueTime(), endWaitTime).getSeconds();
+    }
+
+    private void writeReconciled(String day, Map<String, String> memberTokens,
+            Map<String, Map<String, Long>> queueCounters) {
+        long ttlSeconds = COUNTER_TTL.getSeconds();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+            String memberKey = RedisConsts.QUEUE_MEMBER_COUNTER_PREFIX + day;
+            if (!memberTokens.isEmpty()) {
+                stringRedisConnection.hMSet(memberKey, memberTokens);
+                stringRedisConnection.expire(memberKey, ttlSeconds);
+            }
+            queueCounters.forEach((queueUid, counters) -> {
+                Map<String, String> values = new HashMap<>();
+                for (String field : COUNT_FIELDS) {
+                    values.put(field, String.valueOf(counters.getOrDefault(field, 0L)));
+                }
+                for (int hour = 0; hour < 24; hour++) {
+                    values.put(getHourField(hour), String.valueOf(counters.getOrDefault(getHourField(hour), 0L)));
+                }
+                String queueKey = getQueueKey(queueUid);
+                stringRedisConnection.hMSet(queueKey, values);
+                stringRedisConnection.expire(queueKey, ttlSeconds);
+            });
+            return null;
+        });
+        // 排队号码不能小于已分配人数
+        queueCounters.forEach((queueUid, counters) -> {
+            long total = counters.getOrDefault(FIELD_TOTAL, 0L);
+            Object number = stringRedisTemplate.opsForHash().get(getQueueKey(queueUid), FIELD_NUMBER);
+            if (number == null || Long.parseLong(number.toString()) < total) {
+                stringRedisTemplate.opsForHash().put(getQueueKey(queueUid), FIELD_NUMBER, String.valueOf(total));
+            }
+        });
+    }
+
+    private static void accumulate(Map<String, Map<String, Long>> queueCounters, String token) {
+        int sep = token.indexOf('|');
+        String queueUid = token.substring(0, sep);
+        String field = token.substring(sep + 1);
+        long amount = 1;
+        int eq = field.indexOf('=');
+        if (eq > 0) {
+            amount = Long.parseLong(field.substring(eq + 1));
+            field = field.substring(0, eq);
+        }
+        queueCounters.computeIfAbsent(queueUid, key -> new HashMap<>()).merge(field, amount, Long::sum);
+    }
+
+    private static String getDay(QueueMemberEntity member) {
+        LocalDateTime enqueueTime = member.getVisitorEnqueueTime() != null ? member.getVisitorEnqueueTime()
+                : LocalDateTime.now();
+        return enqueueTime.toLocalDate().format(DateTimeFormatter.ISO_DATE);
+    }
+
+    private static String getQueueKey(String queueUid) {
+        return RedisConsts.QUEUE_COUNTER_PREFIX + queueUid;
+    }
+
+    private static String getHourField(int hour) {
+        return FIELD_HOUR_PREFIX + (hour < 10 ? "0" + hour : String.valueOf(hour));
+    }
+
+    private static int getCount(Map<String, Long> counters, String field) {
+        return (int) Math.max(counters.getOrDefault(field, 0L), 0L);
+    }
+
+    private static int getAverage(Map<String, Long> counters, String sumField, String countField) {
+        long count = counters.getOrDefault(countField, 0L);
+        return count > 0 ? (int) (counters.getOrDefault(sumField, 0L) / count) : 0;
+    }
+
+}
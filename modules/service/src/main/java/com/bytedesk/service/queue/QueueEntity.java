@@ -36,6 +36,7 @@ import java.util.List;
  * 1. 客服账号，某个客服账号当天接待服务多少人
  * 2. 工作组，某个工作组当天接待服务多少人
  * 3. 机器人，某个机器人当天接待服务多少人
+ * 排队人数、每小时接待人数等统计数据由QueueCounterService维护，不再遍历成员列表计算
  * 
  * @author jackning
  * @date 2024-02-22
@@ -92,261 +93,6 @@ public class QueueEntity extends BaseEntity {
         @Builder.Default
         private List<QueueMemberEntity> robotQueueMembers = new ArrayList<>();
 
-        // 将queueMembers中的thread, 按照thread.created按照24小时分组，统计每个分组的数量？
-        public List<Integer> getThreadsCountByHour() {
-                List<Integer> threadsCountByHour = new ArrayList<>();
-                for (int i = 0; i < 24; i++) {
-                        // 读取workgroupQueueMembers.thread.created 按照24小时分组，统计每个分组的数量
-                        final int hour = i;
-                        int count = (int) workgroupQueueMembers.stream().filter(member -> member.getThread() != null
-                                        && member.getThread().getCreatedAt().getHour() == hour).count();
-                        // 读取agentQueueMembers.thread.created 按照24小时分组，统计每个分组的数量
-                        count += (int) agentQueueMembers.stream().filter(member -> member.getThread() != null
-                                        && member.getThread().getCreatedAt().getHour() == hour).count();
-                        // 读取robotQueueMembers.thread.created 按照24小时分组，统计每个分组的数量
-                        count += (int) robotQueueMembers.stream().filter(member -> member.getThread() != null
-                                        && member.getThread().getCreatedAt().getHour() == hour).count();
-                        threadsCountByHour.add(count);
-                }
-                return threadsCountByHour;
-        }
-
-        /**
-         * 获取当天请求服务总人数（当前分配的排队号码）
-         */
-        public int getTotalCount() {
-                return agentQueueMembers.size() + robotQueueMembers.size() + workgroupQueueMembers.size();
-        }
-
-        /**
-         * 获取请求时客服离线的人数（包括当前离线和曾经离线但已关闭的）
-         */
-        public int getOfflineCount() {
-                int count1 = (int) agentQueueMembers.stream()
-                                .filter(member -> (member.getThread() != null && member.isAgentOffline()))
-                                .count();
-
-                int count2 = (int) robotQueueMembers.stream()
-                                .filter(member -> (member.getThread() != null && member.isAgentOffline()))
-                                .count();
-
-                int count3 = (int) workgroupQueueMembers.stream()
-                                .filter(member -> (member.getThread() != null && member.isAgentOffline()))
-                                .count();
-
-                return count1 + count2 + count3;
-        }
-
-        // leaveMsgCount
-        public int getLeaveMsgCount() {
-                int count1 = (int) agentQueueMembers.stream()
-                                .filter(member -> (member.isLeaveMsg()))
-                                .count();
-
-                int count2 = (int) robotQueueMembers.stream()
-                                .filter(member -> (member.isLeaveMsg()))
-                                .count();
-
-                int count3 = (int) workgroupQueueMembers.stream()
-                                .filter(member -> (member.isLeaveMsg()))
-                                .count();
-
-                return count1 + count2 + count3;
-        }
-
-        // robotToAgentCount
-        public int getRobotToAgentCount() {
-                int count1 = (int) agentQueueMembers.stream()
-                                .filter(member -> member.isRobotToAgent())
-                                .count();
-
-                int count2 = (int) robotQueueMembers.stream()
-                                .filter(member -> member.isRobotToAgent())
-                                .count();
-
-                int count3 = (int) workgroupQueueMembers.stream()
-                                .filter(member -> member.isRobotToAgent())
-                                .count();
-
-                return count1 + count2 + count3;
-        }
-
-        // getRobotingCount
-        public int getRobotingCount() {
-                int count1 = (int) agentQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isRoboting())
-                                .count();
-
-                int count2 = (int) robotQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isRoboting())
-                                .count();
-
-                int count3 = (int) workgroupQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isRoboting())
-                                .count();
-
-                return count1 + count2 + count3;
-        }
-
-        /**
-         * 获取当前排队中的人数
-         */
-        public int getQueuingCount() {
-                int count1 = (int) agentQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isQueuing())
-                                .count();
-
-                int count2 = (int) robotQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isQueuing())
-                                .count();
-
-                int count3 = (int) workgroupQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isQueuing())
-                                .count();
-
-                return count1 + count2 + count3;
-        }
-
-        /**
-         * 获取当前正在会话的人数
-         */
-        public int getChattingCount() {
-                int count1 = (int) agentQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isChatting())
-                                .count();
-
-                int count2 = (int) robotQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isChatting())
-                                .count();
-
-                int count3 = (int) workgroupQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isChatting())
-                                .count();
-
-                return count1 + count2 + count3;
-        }
-
-        /**
-         * 获取已结束会话的人数
-         */
-        public int getClosedCount() {
-                int count1 = (int) agentQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isClosed())
-                                .count();
-
-                int count2 = (int) robotQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isClosed())
-                                .count();
-
-                int count3 = (int) workgroupQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isClosed())
-                                .count();
-
-                return count1 + count2 + count3;
-        }
-
-        /**
-         * 获取平均等待时间(秒)
-         */
-        public int getAvgWaitTime() {
-                List<QueueMemberEntity> servedMembers1 = agentQueueMembers.stream()
-                                .filter(member -> member.getAgentAcceptTime() != null)
-                                .toList();
-
-                List<QueueMemberEntity> servedMembers2 = robotQueueMembers.stream()
-                                .filter(member -> member.getAgentAcceptTime() != null)
-                                .toList();
-
-                List<QueueMemberEntity> servedMembers3 = workgroupQueueMembers.stream()
-                                .filter(member -> member.getAgentAcceptTime() != null)
-                                .toList();
-
-                int totalCount = servedMembers1.size() + servedMembers2.size() + servedMembers3.size();
-
-                if (totalCount == 0) {
-                        return 0;
-                }
-
-                long totalWaitTime1 = servedMembers1.stream()
-                                .mapToLong(QueueMemberEntity::getWaitTime)
-                                .sum();
-
-                long totalWaitTime2 = servedMembers2.stream()
-                                .mapToLong(QueueMemberEntity::getWaitTime)
-                                .sum();
-
-                long totalWaitTime3 = servedMembers3.stream()
-                                .mapToLong(QueueMemberEntity::getWaitTime)
-                                .sum();
-
-                return (int) ((totalWaitTime1 + totalWaitTime2 + totalWaitTime3) / totalCount);
-        }
-
-        /**
-         * 获取平均解决时间(秒)
-         */
-        public int getAvgResolveTime() {
-                List<QueueMemberEntity> closedMembers1 = agentQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isClosed())
-                                .filter(member -> member.getAgentAcceptTime() != null
-                                                && member.getAgentCloseTime() != null)
-                                .toList();
-
-                List<QueueMemberEntity> closedMembers2 = robotQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isClosed())
-                                .filter(member -> member.getAgentAcceptTime() != null
-                                                && member.getAgentCloseTime() != null)
-                                .toList();
-
-                List<QueueMemberEntity> closedMembers3 = workgroupQueueMembers.stream()
-                                .filter(member -> member.getThread() != null && member.getThread().isClosed())
-                                .filter(member -> member.getAgentAcceptTime() != null
-                                                && member.getAgentCloseTime() != null)
-                                .toList();
-
-                int totalCount = closedMembers1.size() + closedMembers2.size() + closedMembers3.size();
-
-                if (totalCount == 0) {
-                        return 0;
-                }
-
-                long totalResolveTime1 = closedMembers1.stream()
-                                .mapToLong(member -> {
-                                        return java.time.Duration.between(
-                                                        member.getAgentAcceptTime(),
-                                                        member.getAgentCloseTime())
-                                                        .getSeconds();
-                                })
-                                .sum();
-
-                long totalResolveTime2 = closedMembers2.stream()
-                                .mapToLong(member -> {
-                                        return java.time.Duration.between(
-                                                        member.getAgentAcceptTime(),
-                                                        member.getAgentCloseTime())
-                                                        .getSeconds();
-                                })
-                                .sum();
-
-                long totalResolveTime3 = closedMembers3.stream()
-                                .mapToLong(member -> {
-                                        return java.time.Duration.between(
-                                                        member.getAgentAcceptTime(),
-                                                        member.getAgentCloseTime())
-                                                        .getSeconds();
-                                })
-                                .sum();
-
-                return (int) ((totalResolveTime1 + totalResolveTime2 + totalResolveTime3) / totalCount);
-        }
-
-        /**
-         * 获取下一个排队号码
-         */
-        public int getNextNumber() {
-                return getTotalCount() + 1;
-        }
-
         /**
          * 检查是否可以加入队列
          */
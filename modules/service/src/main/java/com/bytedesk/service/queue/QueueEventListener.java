@@ -13,8 +13,14 @@
  */
 package com.bytedesk.service.queue;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import com.bytedesk.core.quartz.event.QuartzHalfHourEvent;
+import com.bytedesk.core.thread.ThreadSnapshot;
+import com.bytedesk.core.thread.event.ThreadUpdateEvent;
+
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -25,6 +31,36 @@ public class QueueEventListener {
 
     // private final QueueRestService queueRestService;
 
+    private final QueueCounterService queueCounterService;
+
+    @EventListener
+    public void onThreadUpdateEvent(ThreadUpdateEvent event) {
+        ThreadSnapshot thread = event.getThread();
+        if (!thread.isCustomerService()) {
+            return;
+        }
+        queueCounterService.updateByThread(thread);
+    }
+
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        reconcileCounters();
+    }
+
+    @EventListener
+    public void onQuartzHalfHourEvent(QuartzHalfHourEvent event) {
+        reconcileCounters();
+    }
+
+    // 根据当天的队列成员重算计数，修正偏差
+    private void reconcileCounters() {
+        try {
+            queueCounterService.reconcile();
+        } catch (Exception e) {
+            log.error("reconcile queue counters error: ", e);
+        }
+    }
+
     // @EventListener
     // public void onThreadCloseEvent(ThreadCloseEvent event) {
     //     ThreadEntity thread = event.getThread();
@@ -43,6 +43,8 @@ public class QueueRestService extends BaseRestServiceWithExcel<QueueEntity, Queu
 
     private final AuthService authService;
 
+    private final QueueCounterService queueCounterService;
+
     @Override
     public Page<QueueEntity> queryByOrgEntity(QueueRequest request) {
         Pageable pageable = request.getPageable();
@@ -157,7 +159,7 @@ public class QueueRestService extends BaseRestServiceWithExcel<QueueEntity, Queu
     @Override
     public QueueResponse convertToResponse(QueueEntity entity) {
         // return modelMapper.map(entity, QueueResponse.class);
-        return ServiceConvertUtils.convertToQueueResponse(entity);
+        return queueCounterService.fillCounters(ServiceConvertUtils.convertToQueueResponse(entity));
     }
 
     public Optional<QueueEntity> findLatestByQueueTopicAndDay(String queueTopic, String day) {
@@ -18,6 +18,7 @@ import com.bytedesk.service.queue.exception.QueueFullException;
 import com.bytedesk.service.queue_member.QueueMemberEntity;
 import com.bytedesk.service.queue_member.QueueMemberRestService;
 import com.bytedesk.service.visitor.VisitorRequest;
+import com.bytedesk.service.workgroup.WorkgroupAgentLoadTable;
 import com.bytedesk.service.workgroup.WorkgroupEntity;
 
 import lombok.AllArgsConstructor;
@@ -34,6 +35,10 @@ public class QueueService {
 
     private final UidUtils uidUtils;
 
+    private final WorkgroupAgentLoadTable agentLoadTable;
+
+    private final QueueCounterService queueCounterService;
+
     @Transactional
     public QueueMemberEntity enqueueRobot(ThreadEntity threadEntity, UserProtobuf agent, VisitorRequest visitorRequest) {
         // 1. 获取或创建队列
@@ -51,7 +56,7 @@ public class QueueService {
             .uid(uidUtils.getUid())
             .robotQueue(queue)
             .thread(threadEntity)
-            .queueNumber(queue.getNextNumber())
+            .queueNumber(queueCounterService.nextNumber(queue))
             .visitorEnqueueTime(LocalDateTime.now())
             .orgUid(threadEntity.getOrgUid())
             .build();
@@ -81,7 +86,7 @@ public class QueueService {
             .uid(uidUtils.getUid())
             .agentQueue(queue)
             .thread(threadEntity)
-            .queueNumber(queue.getNextNumber())
+            .queueNumber(queueCounterService.nextNumber(queue))
             .visitorEnqueueTime(LocalDateTime.now())
             .orgUid(threadEntity.getOrgUid())
             .build();
@@ -90,6 +95,7 @@ public class QueueService {
         if (updatedMember == null) {
             throw new RuntimeException("Failed to update queue member");
         }
+        enqueueAgentLoad(threadEntity, agent);
         // 更新工作组队列
         return updatedMember;
     }
@@ -123,6 +129,7 @@ public class QueueService {
             if (updatedMember == null) {
                 throw new RuntimeException("Failed to update queue member");
             }
+            enqueueAgentLoad(threadEntity, agent);
             // 更新工作组队列
             return updatedMember;
         }
@@ -131,7 +138,7 @@ public class QueueService {
             .uid(uidUtils.getUid())
             .workgroupQueue(workgroupQueue)            
             .thread(threadEntity)
-            .queueNumber(workgroupQueue.getNextNumber())
+            .queueNumber(queueCounterService.nextNumber(workgroupQueue))
             .visitorEnqueueTime(LocalDateTime.now())
             .orgUid(threadEntity.getOrgUid())
             .build();
@@ -146,10 +153,18 @@ public class QueueService {
         if (updatedMember == null) {
             throw new RuntimeException("Failed to update queue member");
         }
+        enqueueAgentLoad(threadEntity, agent);
         // 更新工作组队列
         return updatedMember;
     }
 
+    // 工作组会话分配给人工客服时计入客服负载
+    private void enqueueAgentLoad(ThreadEntity threadEntity, UserProtobuf agent) {
+        if (agent.getType().equals(ThreadTypeEnum.AGENT.name())) {
+            agentLoadTable.enqueue(threadEntity.getUid(), agent.getUid());
+        }
+    }
+
     @Transactional
     private QueueEntity getQueue(ThreadEntity threadEntity, String queueNickname) {
         String threadTopic = threadEntity.getTopic();
@@ -18,9 +18,11 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.SerializationUtils;
 
 import com.bytedesk.core.utils.ApplicationContextHolder;
+import com.bytedesk.service.queue.QueueCounterService;
 import com.bytedesk.service.queue_member.event.QueueMemberCreateEvent;
 
 import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -34,11 +36,16 @@ public class QueueMemberEntityListener {
         // 
         ApplicationEventPublisher eventPublisher = ApplicationContextHolder.getBean(ApplicationEventPublisher.class);
         eventPublisher.publishEvent(new QueueMemberCreateEvent(clonedEntity));
+        // 
+        QueueCounterService queueCounterService = ApplicationContextHolder.getBean(QueueCounterService.class);
+        queueCounterService.update(queueMember);
     }
 
-    // @PostUpdate
-    // public void onPostUpdate(QueueMemberEntity queueMember) {
-    //     log.info("QueueMemberEntityListener onPostUpdate: {}", queueMember.getUid());
-    // }
+    @PostUpdate
+    public void onPostUpdate(QueueMemberEntity queueMember) {
+        // log.info("QueueMemberEntityListener onPostUpdate: {}", queueMember.getUid());
+        QueueCounterService queueCounterService = ApplicationContextHolder.getBean(QueueCounterService.class);
+        queueCounterService.update(queueMember);
+    }
     
 }
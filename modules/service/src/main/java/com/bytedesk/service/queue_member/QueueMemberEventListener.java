@@ -20,11 +20,14 @@ import java.util.Optional;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import com.bytedesk.core.message.MessageEntity;
+import com.bytedesk.core.message.MessageSnapshot;
 import com.bytedesk.core.message.event.MessageCreateEvent;
+import com.bytedesk.core.rbac.user.UserProtobuf;
 import com.bytedesk.core.thread.ThreadEntity;
 import com.bytedesk.core.thread.ThreadRestService;
 import com.bytedesk.core.thread.event.ThreadAcceptEvent;
+import com.bytedesk.service.workgroup.WorkgroupAgentLoadTable;
+
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,6 +40,8 @@ public class QueueMemberEventListener {
 
     private final ThreadRestService threadRestService;
 
+    private final WorkgroupAgentLoadTable agentLoadTable;
+
     @EventListener
     public void onThreadAcceptEvent(ThreadAcceptEvent event) {
         ThreadEntity thread = event.getThread();
@@ -56,20 +61,20 @@ public class QueueMemberEventListener {
 
     @EventListener
     public void onMessageCreateEvent(MessageCreateEvent event) {
-        MessageEntity message = event.getMessage();
+        MessageSnapshot message = event.getMessage();
         if (message == null) {
             return;
         }
         log.debug("QueueMemberEventListener 接收到新消息事件: messageUid={}, threadUid={}, content={}",
-                message.getUid(), message.getThread().getUid(), message.getContent()); 
+                message.getUid(), message.getThreadUid(), message.getContent()); 
         
         // 获取消息对应的会话线程
         ThreadEntity thread = null;
         try {
-            thread = threadRestService.findByUid(message.getThread().getUid()).orElse(null);
+            thread = threadRestService.findByUid(message.getThreadUid()).orElse(null);
             if (thread == null) {
                 log.warn("消息对应的会话不存在: messageUid={}, threadUid={}", 
-                        message.getUid(), message.getThread().getUid());
+                        message.getUid(), message.getThreadUid());
                 return;
             }
             
@@ -99,7 +104,7 @@ public class QueueMemberEventListener {
      * @param message 消息对象
      * @param thread 会话对象
      */
-    private void updateVisitorMessageStats(MessageEntity message, ThreadEntity thread) {
+    private void updateVisitorMessageStats(MessageSnapshot message, ThreadEntity thread) {
         if (thread == null || message == null) {
             return;
         }
@@ -144,7 +149,7 @@ public class QueueMemberEventListener {
      * @param message 消息对象
      * @param thread 会话对象
      */
-    private void updateAgentMessageStats(MessageEntity message, ThreadEntity thread) {
+    private void updateAgentMessageStats(MessageSnapshot message, ThreadEntity thread) {
         if (thread == null || message == null) {
             return;
         }
@@ -175,6 +180,7 @@ public class QueueMemberEventListener {
                 long responseTimeInSeconds = Duration.between(queueMember.getVisitorLastMessageTime(), now).getSeconds();
                 queueMember.setAgentMaxResponseTime((int) responseTimeInSeconds);
                 queueMember.setAgentAvgResponseTime((int) responseTimeInSeconds);
+                agentLoadTable.recordResponseTime(getAgentUid(thread), responseTimeInSeconds);
             } else if (queueMember.getVisitorLastMessageTime() != null) {
                 // 非首次响应，更新平均和最大响应时间
                 long responseTimeInSeconds = Duration.between(queueMember.getVisitorLastMessageTime(), now).getSeconds();
@@ -183,6 +189,7 @@ public class QueueMemberEventListener {
                 if (responseTimeInSeconds > queueMember.getAgentMaxResponseTime()) {
                     queueMember.setAgentMaxResponseTime((int) responseTimeInSeconds);
                 }
+                agentLoadTable.recordResponseTime(getAgentUid(thread), responseTimeInSeconds);
                 
                 // 更新平均响应时间 - 使用累计平均计算方法
                 // (currentAvg * (messageCount-1) + newValue) / messageCount
@@ -212,7 +219,7 @@ public class QueueMemberEventListener {
      * @param message 消息对象
      * @param thread 会话对象
      */
-    private void updateRobotMessageStats(MessageEntity message, ThreadEntity thread) {
+    private void updateRobotMessageStats(MessageSnapshot message, ThreadEntity thread) {
         if (thread == null || message == null) {
             return;
         }
@@ -278,7 +285,7 @@ public class QueueMemberEventListener {
      * @param message 消息对象
      * @param thread 会话对象
      */
-    private void updateSystemMessageStats(MessageEntity message, ThreadEntity thread) {
+    private void updateSystemMessageStats(MessageSnapshot message, ThreadEntity thread) {
         if (thread == null || message == null) {
             return;
         }
@@ -317,7 +324,9 @@ public class QueueMemberEventListener {
         }
     }
 
+    private String getAgentUid(ThreadEntity thread) {
+        UserProtobuf agent = thread.getAgentProtobuf();
+        return agent != null ? agent.getUid() : null;
+    }
 
-
-    
 }
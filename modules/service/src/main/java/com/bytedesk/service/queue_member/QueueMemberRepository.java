@@ -16,6 +16,9 @@ package com.bytedesk.service.queue_member;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -35,6 +38,10 @@ public interface QueueMemberRepository extends JpaRepository<QueueMemberEntity,
     @Query("SELECT qm FROM QueueMemberEntity qm WHERE qm.thread.uid = :threadUid")
     Optional<QueueMemberEntity> findByThreadUid(@Param("threadUid") String threadUid);
 
+    // 队列计数重算，一并加载会话和所属队列
+    @EntityGraph(attributePaths = { "thread", "workgroupQueue", "agentQueue", "robotQueue" })
+    Page<QueueMemberEntity> findByVisitorEnqueueTimeAfter(LocalDateTime startTime, Pageable pageable);
+
 //     List<QueueMemberEntity> findBySummaryStatus(String summaryStatus);
 
 //     List<QueueMemberEntity> findBySummaryStatusOrderByPriorityDesc(String summaryStatus);
@@ -30,6 +30,7 @@ import com.bytedesk.core.rbac.user.UserEntity;
 import com.bytedesk.core.thread.ThreadTypeEnum;
 import com.bytedesk.core.uid.UidUtils;
 import com.bytedesk.core.utils.ConvertUtils;
+import com.bytedesk.service.queue.QueueCounterService;
 import com.bytedesk.service.utils.ServiceConvertUtils;
 
 import lombok.AllArgsConstructor;
@@ -44,6 +45,7 @@ public class QueueMemberRestService extends BaseRestService<QueueMemberEntity, Q
     private final ModelMapper modelMapper;
     private final UidUtils uidUtils;
     private final AuthService authService;
+    private final QueueCounterService queueCounterService;
 
     @Override
     public Page<QueueMemberResponse> queryByOrg(QueueMemberRequest request) {
@@ -176,11 +178,11 @@ public class QueueMemberRestService extends BaseRestService<QueueMemberEntity, Q
         if (entity.getThread() != null && entity.getThread().getType() != null) {
             // 处理不同类型的队列
             if (entity.getThread().getType().equals(ThreadTypeEnum.AGENT.name())) {
-                response.setQueue(ServiceConvertUtils.convertToQueueResponse(entity.getAgentQueue()));
+                response.setQueue(queueCounterService.fillCounters(ServiceConvertUtils.convertToQueueResponse(entity.getAgentQueue())));
             } else if (entity.getThread().getType().equals(ThreadTypeEnum.ROBOT.name())) {
-                response.setQueue(ServiceConvertUtils.convertToQueueResponse(entity.getRobotQueue()));
+                response.setQueue(queueCounterService.fillCounters(ServiceConvertUtils.convertToQueueResponse(entity.getRobotQueue())));
             } else if (entity.getThread().getType().equals(ThreadTypeEnum.WORKGROUP.name())) {
-                response.setQueue(ServiceConvertUtils.convertToQueueResponse(entity.getWorkgroupQueue()));
+                response.setQueue(queueCounterService.fillCounters(ServiceConvertUtils.convertToQueueResponse(entity.getWorkgroupQueue())));
             }
         }
         return response;
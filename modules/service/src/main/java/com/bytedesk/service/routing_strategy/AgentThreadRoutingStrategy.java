@@ -32,6 +32,7 @@ import com.bytedesk.core.thread.event.ThreadProcessCreateEvent;
 import com.bytedesk.core.topic.TopicUtils;
 import com.bytedesk.service.agent.AgentEntity;
 import com.bytedesk.service.agent.AgentRestService;
+import com.bytedesk.service.queue.QueueCounterService;
 import com.bytedesk.service.queue.QueueService;
 import com.bytedesk.service.queue_member.QueueMemberAcceptTypeEnum;
 import com.bytedesk.service.queue_member.QueueMemberEntity;
@@ -66,6 +67,8 @@ public class AgentThreadRoutingStrategy implements ThreadRoutingStrategy {
 
     private final QueueService queueService;
 
+    private final QueueCounterService queueCounterService;
+
     private final QueueMemberRestService queueMemberRestService;
 
     private final MessageRestService messageRestService;
@@ -129,7 +132,7 @@ public class AgentThreadRoutingStrategy implements ThreadRoutingStrategy {
         if (agentEntity.isConnectedAndAvailable()) {
             // 客服在线 且 接待状态
             // 判断是否达到最大接待人数，如果达到则进入排队
-            if (queueMemberEntity.getAgentQueue().getQueuingCount() < agentEntity.getMaxThreadCount()) {
+            if (queueCounterService.getQueuingCount(queueMemberEntity.getAgentQueue()) < agentEntity.getMaxThreadCount()) {
                 // 未满则接待
                 return handleAvailableAgent(thread, agentEntity, queueMemberEntity);
             } else {
@@ -186,13 +189,14 @@ public class AgentThreadRoutingStrategy implements ThreadRoutingStrategy {
         // 已满则排队
         // String queueTip = agent.getQueueSettings().getQueueTip();
         String content = "";
-        if (queueMemberEntity.getAgentQueue().getQueuingCount() == 0) {
+        int queuingCount = queueCounterService.getQueuingCount(queueMemberEntity.getAgentQueue());
+        if (queuingCount == 0) {
             // 客服接待刚满员，下一个就是他，
             content = "请稍后，下一个就是您";
         } else {
             // 前面有排队人数
-            content = " 当前排队人数：" + queueMemberEntity.getAgentQueue().getQueuingCount() + " 大约等待时间："
-                    + queueMemberEntity.getAgentQueue().getQueuingCount() * 2 + "  分钟";
+            content = " 当前排队人数：" + queuingCount + " 大约等待时间："
+                    + queuingCount * 2 + "  分钟";
         }
         // 进入排队队列
         thread.setQueuing().setUnreadCount(0).setContent(content);
@@ -35,6 +35,7 @@ import com.bytedesk.core.thread.event.ThreadProcessCreateEvent;
 import com.bytedesk.core.thread.event.ThreadTransferToAgentEvent;
 import com.bytedesk.core.topic.TopicUtils;
 import com.bytedesk.service.agent.AgentEntity;
+import com.bytedesk.service.queue.QueueCounterService;
 import com.bytedesk.service.queue.QueueService;
 import com.bytedesk.service.queue_member.QueueMemberEntity;
 import com.bytedesk.service.queue_member.QueueMemberRestService;
@@ -72,6 +73,8 @@ public class WorkgroupThreadRoutingStrategy implements ThreadRoutingStrategy {
 
     private final QueueService queueService;
 
+    private final QueueCounterService queueCounterService;
+
     private final QueueMemberRestService queueMemberRestService;;
 
     private final MessageRestService messageRestService;
@@ -192,7 +195,7 @@ public class WorkgroupThreadRoutingStrategy implements ThreadRoutingStrategy {
         //
         if (agentEntity.isConnectedAndAvailable()) {
             // 客服在线 且 接待状态
-            if (queueMemberEntity.getWorkgroupQueue().getQueuingCount() < agentEntity.getMaxThreadCount()) {
+            if (queueCounterService.getQueuingCount(queueMemberEntity.getWorkgroupQueue()) < agentEntity.getMaxThreadCount()) {
                 // 未满则接待
                 return handleAvailableWorkgroup(thread, agentEntity, queueMemberEntity);
             } else {
@@ -249,13 +252,14 @@ public class WorkgroupThreadRoutingStrategy implements ThreadRoutingStrategy {
         // 排队，已满则排队
         // String queueTip = agent.getQueueSettings().getQueueTip();
         String content = "";
-        if (queueMemberEntity.getWorkgroupQueue().getQueuingCount() == 0) {
+        int queuingCount = queueCounterService.getQueuingCount(queueMemberEntity.getWorkgroupQueue());
+        if (queuingCount == 0) {
             // 客服接待刚满员，下一个就是他，
             content = "请稍后，下一个就是您";
         } else {
             // 前面有排队人数
-            content = " 当前排队人数：" + queueMemberEntity.getWorkgroupQueue().getQueuingCount() + " 大约等待时间："
-                    + queueMemberEntity.getWorkgroupQueue().getQueuingCount() * 2 + "  分钟";
+            content = " 当前排队人数：" + queuingCount + " 大约等待时间："
+                    + queuingCount * 2 + "  分钟";
         }
 
         // 进入排队队列
@@ -0,0 +1,261 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-25 11:02:18
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-25 11:02:18
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.service.visitor_thread;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.ai.robot.RobotRestService;
+import com.bytedesk.core.deadline.DeadlineScheduler;
+import com.bytedesk.core.message.IMessageSendService;
+import com.bytedesk.core.message.MessageProtobuf;
+import com.bytedesk.core.message.MessageUtils;
+import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadProcessStatusEnum;
+import com.bytedesk.core.thread.ThreadRestService;
+import com.bytedesk.core.thread.ThreadSnapshot;
+import com.bytedesk.core.thread.ThreadTypeEnum;
+import com.bytedesk.core.topic.TopicUtils;
+import com.bytedesk.kbase.settings.ServiceSettings;
+import com.bytedesk.kbase.settings.ServiceSettingsResponseVisitor;
+import com.bytedesk.service.agent.AgentRestService;
+import com.bytedesk.service.workgroup.WorkgroupRestService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 会话自动关闭和主动消息的到期时间
+ *
+ * 会话创建、更新时按最后更新时间登记到DeadlineScheduler，关闭时取消，到期后重新读取会话确认仍然超时再处理，
+ * 不再每分钟加载全部未关闭会话。到期时间只保存在登记节点的内存中，另有低频补偿扫描兜底
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VisitorThreadDeadlineService {
+
+    public static final String DEADLINE_TYPE_AUTO_CLOSE = "thread_auto_close";
+
+    public static final String DEADLINE_TYPE_PROACTIVE = "thread_proactive";
+
+    // 未设置自动关闭时间时默认30分钟
+    private static final double DEFAULT_AUTO_CLOSE_MINUTES = 30.0;
+
+    private final DeadlineScheduler deadlineScheduler;
+
+    private final ThreadRestService threadRestService;
+
+    private final WorkgroupRestService workgroupRestService;
+
+    private final AgentRestService agentRestService;
+
+    private final RobotRestService robotRestService;
+
+    private final IMessageSendService messageSendService;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 补偿扫描只处理最后更新时间早于该时长的会话，须不小于最长的自动关闭时间
+    @Value("${bytedesk.thread.deadline.catch-up-minutes:60}")
+    private long catchUpMinutes;
+
+    // 每次补偿扫描的最大会话数，其余的下次从游标处继续
+    @Value("${bytedesk.thread.deadline.catch-up-batch-size:500}")
+    private int catchUpBatchSize;
+
+    // 补偿扫描游标，上次扫描到的会话id
+    private long catchUpCursor = 0L;
+
+    // 主动消息设置，每次会话更新都要读取，本地缓存1分钟，与原每分钟扫描读取设置的时效一致
+    private final Cache<String, Optional<ProactiveSettings>> proactiveSettingsCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+
+    public void registerHandlers() {
+        deadlineScheduler.registerHandler(DEADLINE_TYPE_AUTO_CLOSE, this::autoCloseThreads);
+        deadlineScheduler.registerHandler(DEADLINE_TYPE_PROACTIVE, this::sendProactiveMessages);
+    }
+
+    // 启动时从数据库重建
+    public void scheduleStartedThreads() {
+        List<ThreadEntity> threads = threadRestService.findServiceThreadStateStarted();
+        threads.forEach(thread -> schedule(thread.getUid(), thread.getType(), thread.getTopic(),
+                thread.getExtra(), thread.getUpdatedAt()));
+        log.info("schedule started service threads {}", threads.size());
+    }
+
+    /**
+     * 补偿扫描：登记节点宕机或重启期间，其内存中的到期时间随之丢失，
+     * 按id游标分批查询早已超时却仍未关闭的会话，重新登记自动关闭，到期处理时会重新确认状态。
+     * 主动消息已错过时机，不补发
+     */
+    public synchronized void catchUpOverdueThreads() {
+        LocalDateTime updatedBefore = LocalDateTime.now().minusMinutes(catchUpMinutes);
+        List<ThreadEntity> threads = threadRestService.findServiceThreadStateStartedBefore(updatedBefore,
+                catchUpCursor, catchUpBatchSize);
+        for (ThreadEntity thread : threads) {
+            if (isServiceThread(thread.getType()) && thread.getUpdatedAt() != null) {
+                deadlineScheduler.schedule(DEADLINE_TYPE_AUTO_CLOSE, thread.getUid(),
+                        getAutoCloseAt(thread.getExtra(), thread.getUpdatedAt()));
+            }
+        }
+        // 扫描到末尾后下次从头开始
+        catchUpCursor = threads.size() < catchUpBatchSize ? 0L : threads.get(threads.size() - 1).getId();
+        if (!threads.isEmpty()) {
+            log.info("catch up overdue service threads {}", threads.size());
+        }
+    }
+
+    public void schedule(ThreadSnapshot thread) {
+        if (ThreadProcessStatusEnum.CLOSED.name().equals(thread.getStatus())) {
+            cancel(thread.getUid());
+            return;
+        }
+        schedule(thread.getUid(), thread.getType(), thread.getTopic(), thread.getExtra(), thread.getUpdatedAt());
+    }
+
+    public void cancel(String threadUid) {
+        deadlineScheduler.cancel(DEADLINE_TYPE_AUTO_CLOSE, threadUid);
+        deadlineScheduler.cancel(DEADLINE_TYPE_PROACTIVE, threadUid);
+    }
+
+    private void schedule(String threadUid, String type, String topic, String extra, LocalDateTime updatedAt) {
+        if (!isServiceThread(type) || updatedAt == null) {
+            return;
+        }
+        deadlineScheduler.schedule(DEADLINE_TYPE_AUTO_CLOSE, threadUid, getAutoCloseAt(extra, updatedAt));
+        Optional<ProactiveSettings> settings = getProactiveSettings(type, topic);
+        if (settings.isPresent()) {
+            deadlineScheduler.schedule(DEADLINE_TYPE_PROACTIVE, threadUid,
+                    updatedAt.plusSeconds(settings.get().noResponseTimeout()));
+        } else {
+            deadlineScheduler.cancel(DEADLINE_TYPE_PROACTIVE, threadUid);
+        }
+    }
+
+    // auto close thread
+    private void autoCloseThreads(List<String> threadUids) {
+        LocalDateTime now = LocalDateTime.now();
+        for (ThreadEntity thread : threadRestService.findByUidIn(threadUids)) {
+            if (!isOpen(thread)) {
+                continue;
+            }
+            LocalDateTime autoCloseAt = getAutoCloseAt(thread.getExtra(), thread.getUpdatedAt());
+            if (autoCloseAt.isAfter(now)) {
+                // 其他节点更新了会话，按最新时间重新登记
+                deadlineScheduler.schedule(DEADLINE_TYPE_AUTO_CLOSE, thread.getUid(), autoCloseAt);
+                continue;
+            }
+            try {
+                threadRestService.autoClose(thread);
+            } catch (Exception e) {
+                // 其他节点已关闭
+                log.warn("auto close thread {} error: {}", thread.getUid(), e.getMessage());
+            }
+        }
+    }
+
+    // 触发器逻辑：超过一定时间未回复，触发自动回复
+    private void sendProactiveMessages(List<String> threadUids) {
+        LocalDateTime now = LocalDateTime.now();
+        for (ThreadEntity thread : threadRestService.findByUidIn(threadUids)) {
+            if (!isOpen(thread)) {
+                continue;
+            }
+            Optional<ProactiveSettings> settings = getProactiveSettings(thread.getType(), thread.getTopic());
+            if (!settings.isPresent()) {
+                continue;
+            }
+            LocalDateTime triggerAt = thread.getUpdatedAt().plusSeconds(settings.get().noResponseTimeout());
+            if (triggerAt.isAfter(now)) {
+                deadlineScheduler.schedule(DEADLINE_TYPE_PROACTIVE, thread.getUid(), triggerAt);
+                continue;
+            }
+            // 多个节点登记了同一到期时间时只发送一次
+            long updatedAtMillis = thread.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            Boolean claimed = stringRedisTemplate.opsForValue().setIfAbsent(
+                    RedisConsts.THREAD_PROACTIVE_PREFIX + thread.getUid() + ":" + updatedAtMillis, "1",
+                    Duration.ofSeconds(settings.get().noResponseTimeout()).plusMinutes(1));
+            if (!Boolean.TRUE.equals(claimed)) {
+                continue;
+            }
+            log.info("visitor_thread deadline thread: {} trigger {} proactive message", thread.getUid(), thread.getType());
+            MessageProtobuf messageProtobuf = MessageUtils.createSystemMessage(thread, settings.get().proactiveMessage());
+            messageSendService.sendProtobufMessage(messageProtobuf);
+        }
+    }
+
+    private LocalDateTime getAutoCloseAt(String extra, LocalDateTime updatedAt) {
+        Double autoCloseMinutes = null;
+        if (StringUtils.hasText(extra)) {
+            ServiceSettingsResponseVisitor settings = JSON.parseObject(extra, ServiceSettingsResponseVisitor.class);
+            autoCloseMinutes = settings != null ? settings.getAutoCloseMin() : null;
+        }
+        // 添加空值检查，如果为null则使用默认值30分钟
+        double autoCloseValue = (autoCloseMinutes != null) ? autoCloseMinutes : DEFAULT_AUTO_CLOSE_MINUTES;
+        return updatedAt.plusSeconds(Math.round(autoCloseValue * 60));
+    }
+
+    private Optional<ProactiveSettings> getProactiveSettings(String type, String topic) {
+        return proactiveSettingsCache.get(type + ":" + topic, key -> loadProactiveSettings(type, topic));
+    }
+
+    private Optional<ProactiveSettings> loadProactiveSettings(String type, String topic) {
+        Optional<ServiceSettings> settings = Optional.empty();
+        if (ThreadTypeEnum.WORKGROUP.name().equals(type)) {
+            settings = workgroupRestService.findByUid(TopicUtils.getWorkgroupUidFromThreadTopic(topic))
+                    .map(workgroup -> workgroup.getServiceSettings());
+        } else if (ThreadTypeEnum.AGENT.name().equals(type)) {
+            settings = agentRestService.findByUid(TopicUtils.getAgentUidFromThreadTopic(topic))
+                    .map(agent -> agent.getServiceSettings());
+        } else if (ThreadTypeEnum.ROBOT.name().equals(type)) {
+            settings = robotRestService.findByUid(TopicUtils.getRobotUidFromThreadTopic(topic))
+                    .map(robot -> robot.getServiceSettings());
+        }
+        return settings
+                .filter(ServiceSettings::isEnableProactiveTrigger)
+                .map(s -> new ProactiveSettings(s.getNoResponseTimeout(), s.getProactiveMessage()));
+    }
+
+    private static boolean isOpen(ThreadEntity thread) {
+        return !thread.isDeleted()
+                && !ThreadProcessStatusEnum.CLOSED.name().equals(thread.getStatus())
+                && thread.getUpdatedAt() != null;
+    }
+
+    // 与ThreadRestService.findServiceThreadStateStarted的会话类型一致
+    private static boolean isServiceThread(String type) {
+        return ThreadTypeEnum.AGENT.name().equals(type)
+                || ThreadTypeEnum.WORKGROUP.name().equals(type)
+                || ThreadTypeEnum.ROBOT.name().equals(type);
+    }
+
+    private record ProactiveSettings(int noResponseTimeout, String proactiveMessage) {
+    }
+
+}
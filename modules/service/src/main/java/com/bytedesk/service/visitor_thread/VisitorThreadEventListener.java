@@ -13,15 +13,16 @@
  */
 package com.bytedesk.service.visitor_thread;
 
-import java.time.ZoneId;
-import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import com.bytedesk.core.quartz.event.QuartzFiveMinEvent;
 import com.bytedesk.core.thread.event.ThreadCloseEvent;
+import com.bytedesk.core.thread.event.ThreadCreateEvent;
+import com.bytedesk.core.thread.event.ThreadUpdateEvent;
 import com.bytedesk.core.topic.TopicUtils;
 import com.bytedesk.service.agent.AgentEntity;
 import com.bytedesk.service.agent.AgentRestService;
@@ -33,11 +34,10 @@ import com.bytedesk.core.constant.I18Consts;
 import com.bytedesk.core.message.IMessageSendService;
 import com.bytedesk.core.message.MessageProtobuf;
 import com.bytedesk.core.message.MessageUtils;
-import com.bytedesk.core.quartz.event.QuartzOneMinEvent;
 import com.bytedesk.core.thread.ThreadEntity;
-import com.bytedesk.core.thread.ThreadRestService;
 import com.bytedesk.core.thread.ThreadTypeEnum;
 
+import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -46,7 +46,7 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public class VisitorThreadEventListener {
 
-    private final VisitorThreadService visitorThreadService;
+    private final VisitorThreadDeadlineService visitorThreadDeadlineService;
 
     private final WorkgroupRestService workgroupRestService;
 
@@ -56,12 +56,11 @@ public class VisitorThreadEventListener {
 
     private final IMessageSendService messageSendService;
 
-    private final ThreadRestService threadRestService;
-
     @EventListener
     public void onThreadCloseEvent(ThreadCloseEvent event) {
         ThreadEntity thread = event.getThread();
         log.info("visitor onThreadCloseEvent: {}", thread.getUid());
+        visitorThreadDeadlineService.cancel(thread.getUid());
         String topic = thread.getTopic();
         String content = "会话已结束";
         if (thread.isAutoClose()) {
@@ -124,62 +123,34 @@ public class VisitorThreadEventListener {
         messageSendService.sendProtobufMessage(messageProtobuf);
     }
 
+    @PostConstruct
+    public void init() {
+        visitorThreadDeadlineService.registerHandlers();
+    }
+
     @EventListener
-    public void onQuartzOneMinEvent(QuartzOneMinEvent event) {
-        // log.info("visitor_thread quartz one min event: " + event);
-        List<ThreadEntity> threads = threadRestService.findServiceThreadStateStarted();
-        // auto close thread
-        visitorThreadService.autoCloseThread(threads);
-        // 触发器逻辑
-        // 查找所有未关闭的会话，如果超过一定时间未回复，则判断是否触发自动回复
-        threads.forEach(thread -> {
-            // LocalDateTime转为时间戳需借助ZoneId和系统默认时区
-            long currentTimeMillis = System.currentTimeMillis();
-            long updatedAtMillis = thread.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            long diffInMilliseconds = Math.abs(currentTimeMillis - updatedAtMillis);
-            // 转换为分钟
-            long diffInSeconds= TimeUnit.MILLISECONDS.toSeconds(diffInMilliseconds);
-            // 
-            String topic = thread.getTopic();
-            // log.info("visitor_thread quartz one min event thread: " + thread.getUid());
-            if (thread.getType().equals(ThreadTypeEnum.WORKGROUP.name())) {
-                String workgroupUid = TopicUtils.getWorkgroupUidFromThreadTopic(topic);
-                Optional<WorkgroupEntity> workgroupOptional = workgroupRestService.findByUid(workgroupUid);
-                if (workgroupOptional.isPresent()) {
-                    WorkgroupEntity workgroup = workgroupOptional.get();
-                    if (workgroup.getServiceSettings().isEnableProactiveTrigger() && diffInSeconds > workgroup.getServiceSettings().getNoResponseTimeout()) {
-                        // 触发自动回复
-                        log.info("visitor_thread quartz one min event thread: " + thread.getUid() + " trigger workgroup proactive message");
-                        MessageProtobuf messageProtobuf = MessageUtils.createSystemMessage(thread, workgroup.getServiceSettings().getProactiveMessage());
-                        messageSendService.sendProtobufMessage(messageProtobuf);
-                    }
-                }
-            } else if (thread.getType().equals(ThreadTypeEnum.AGENT.name())) {
-                String agentUid = TopicUtils.getAgentUidFromThreadTopic(topic);
-                Optional<AgentEntity> agentOptional = agentRestService.findByUid(agentUid);
-                if (agentOptional.isPresent()) {
-                    AgentEntity agent = agentOptional.get();
-                    if (agent.getServiceSettings().isEnableProactiveTrigger() && diffInSeconds > agent.getServiceSettings().getNoResponseTimeout()) {
-                        // 触发自动回复
-                        log.info("visitor_thread quartz one min event thread: " + thread.getUid() + " trigger agent proactive message");
-                        MessageProtobuf messageProtobuf = MessageUtils.createSystemMessage(thread, agent.getServiceSettings().getProactiveMessage());
-                        messageSendService.sendProtobufMessage(messageProtobuf);
-                    }
-                }
-            } else if (thread.getType().equals(ThreadTypeEnum.ROBOT.name())) {
-                String robotUid = TopicUtils.getRobotUidFromThreadTopic(topic);
-                Optional<RobotEntity> robotOptional = robotRestService.findByUid(robotUid);
-                if (robotOptional.isPresent()) {
-                    RobotEntity robot = robotOptional.get();
-                    if (robot.getServiceSettings().isEnableProactiveTrigger() && diffInSeconds > robot.getServiceSettings().getNoResponseTimeout()) {
-                        // 触发自动回复
-                        log.info("visitor_thread quartz one min event thread: " + thread.getUid() + " trigger robot proactive message");
-                        MessageProtobuf messageProtobuf = MessageUtils.createSystemMessage(thread, robot.getServiceSettings().getProactiveMessage());
-                        messageSendService.sendProtobufMessage(messageProtobuf);
-                    }
-                }
-            }
-        });
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        visitorThreadDeadlineService.scheduleStartedThreads();
+    }
+
+    @EventListener
+    public void onQuartzFiveMinEvent(QuartzFiveMinEvent event) {
+        try {
+            visitorThreadDeadlineService.catchUpOverdueThreads();
+        } catch (Exception e) {
+            log.error("catch up overdue threads error: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onThreadCreateEvent(ThreadCreateEvent event) {
+        visitorThreadDeadlineService.schedule(event.getThread());
+    }
+
+    @EventListener
+    public void onThreadUpdateEvent(ThreadUpdateEvent event) {
+        // 自动关闭和主动消息均从会话最后更新时间开始计时
+        visitorThreadDeadlineService.schedule(event.getThread());
     }
 
 }
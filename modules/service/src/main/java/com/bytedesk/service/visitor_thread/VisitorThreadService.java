@@ -13,10 +13,7 @@
  */
 package com.bytedesk.service.visitor_thread;
 
-import java.time.ZoneId;
-import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 import org.modelmapper.ModelMapper;
 import org.springframework.cache.annotation.Cacheable;
@@ -24,10 +21,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import com.alibaba.fastjson2.JSON;
 import com.bytedesk.ai.robot.RobotEntity;
 import com.bytedesk.ai.utils.ConvertAiUtils;
 import com.bytedesk.core.base.BaseRestService;
@@ -36,7 +31,6 @@ import com.bytedesk.core.thread.ThreadEntity;
 import com.bytedesk.core.thread.ThreadRestService;
 import com.bytedesk.core.thread.ThreadTypeEnum;
 import com.bytedesk.core.uid.UidUtils;
-import com.bytedesk.kbase.settings.ServiceSettingsResponseVisitor;
 import com.bytedesk.service.agent.AgentEntity;
 import com.bytedesk.service.utils.ServiceConvertUtils;
 import com.bytedesk.service.visitor.VisitorRequest;
@@ -245,48 +239,6 @@ public class VisitorThreadService
         throw new UnsupportedOperationException("Unimplemented method 'update'");
     }
 
-    /**
-     * TODO: 座席端25分钟不回复则自动断开，推送满意度
-     * TODO: 客户端2分钟没有回复坐席则自动推送1分钟计时提醒：
-     * TODO: 频繁查库，待优化
-     * 温馨提示：您已经有2分钟未有操作了，如再有1分钟未有操作，系统将自动结束本次对话，感谢您的支持与谅解
-     * 如果1分钟之内无回复，则推送满意度：
-     */
-    @Async
-    public void autoCloseThread(List<ThreadEntity> threads) {
-        // List<ThreadEntity> threads = threadRestService.findStateOpen();
-        // log.info("autoCloseThread size {}", threads.size());
-        threads.forEach(thread -> {
-            // 计算两个日期之间的毫秒差
-            // long diffInMilliseconds = Math.abs(new Date().getTime() -
-            // thread.getUpdatedAt().getTime());
-            // LocalDateTime转为时间戳需借助ZoneId和系统默认时区
-            long currentTimeMillis = System.currentTimeMillis();
-            long updatedAtMillis = thread.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            long diffInMilliseconds = Math.abs(currentTimeMillis - updatedAtMillis);
-            // 转换为分钟
-            long diffInMinutes = TimeUnit.MILLISECONDS.toMinutes(diffInMilliseconds);
-            // log.info("before autoCloseThread threadUid {} threadType {} threadId {}
-            // diffInMinutes {}", thread.getUid(), thread.getType(), thread.getUid(),
-            // diffInMinutes);
-            // if (thread.isCustomerService()) {
-            ServiceSettingsResponseVisitor settings = JSON.parseObject(thread.getExtra(),
-                    ServiceSettingsResponseVisitor.class);
-            Double autoCloseMinutes = settings.getAutoCloseMin();
-            // log.info("autoCloseThread threadUid {} threadType {} autoCloseMinutes {},
-            // diffInMinutes {}", thread.getUid(), thread.getType(), autoCloseMinutes,
-            // diffInMinutes);
-            
-            // 添加空值检查，如果为null则使用默认值30分钟
-            double autoCloseValue = (autoCloseMinutes != null) ? autoCloseMinutes : 30.0;
-            
-            if (diffInMinutes > autoCloseValue) {
-                threadRestService.autoClose(thread);
-            }
-            // }
-        });
-    }
-
     @Override
     public VisitorThreadEntity save(VisitorThreadEntity entity) {
         try {
@@ -0,0 +1,321 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-18 10:12:36
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-18 10:12:36
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.service.workgroup;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.rbac.user.UserProtobuf;
+import com.bytedesk.core.rbac.user.UserTypeEnum;
+import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadProcessStatusEnum;
+import com.bytedesk.core.thread.ThreadSnapshot;
+import com.bytedesk.service.agent.AgentEntity;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 工作组客服负载内存表，供WorkgroupRoutingService路由时使用
+ *
+ * 记录每个客服的接待中会话数、排队数、最大接待数及响应时间滑动平均值(EWMA)，
+ * 由入队(QueueService)、会话状态变化(ThreadCreateEvent/ThreadUpdateEvent)和客服消息增量更新，
+ * 路由时只读内存，不再逐个客服查询bytedesk_service_queue及其成员列表。
+ * 客服可同时属于多个工作组，负载按客服统计，轮询游标按工作组记录。
+ *
+ * 异步事件可能乱序，按会话updatedAt丢弃过期的状态；
+ * 定时通过数据库中未结束的会话校对，修正集群其他节点上发生的变化；
+ * 负载快照定时写入redis，重启后恢复响应时间统计。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WorkgroupAgentLoadTable {
+
+    // 没有响应时间样本时的默认值(秒)
+    public static final double DEFAULT_RESPONSE_SECONDS = 30.0;
+
+    // 已结束会话的记录保留时间，用于丢弃迟到的过期事件
+    private static final long CLOSED_RETAIN_MINUTES = 10;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${bytedesk.workgroup.routing.response-time-alpha:0.2}")
+    private double responseTimeAlpha;
+
+    // agentUid -> 负载
+    private final Map<String, AgentLoad> agentLoads = new ConcurrentHashMap<>();
+
+    // threadUid -> 会话当前占用的客服及状态
+    private final Map<String, ThreadLoad> threadLoads = new ConcurrentHashMap<>();
+
+    // workgroupUid -> 轮询计数
+    private final Map<String, AtomicLong> roundRobinCounters = new ConcurrentHashMap<>();
+
+    public AgentLoad getLoad(AgentEntity agent) {
+        AgentLoad load = agentLoads.computeIfAbsent(agent.getUid(), key -> new AgentLoad());
+        load.maxThreadCount = agent.getMaxThreadCount();
+        return load;
+    }
+
+    public long nextRoundRobin(String workgroupUid) {
+        return roundRobinCounters.computeIfAbsent(workgroupUid, key -> new AtomicLong()).getAndIncrement();
+    }
+
+    /**
+     * 会话分配给客服后立即计入排队数，不等待异步的会话更新事件，
+     * 避免突发请求在事件到达前全部路由到同一个客服
+     */
+    public void enqueue(String threadUid, String agentUid) {
+        if (!StringUtils.hasText(threadUid) || !StringUtils.hasText(agentUid)) {
+            return;
+        }
+        apply(threadUid, agentUid, ThreadProcessStatusEnum.QUEUING.name(), LocalDateTime.now(), false);
+    }
+
+    /**
+     * 会话状态变化
+     */
+    public void update(ThreadSnapshot thread) {
+        if (thread == null || !StringUtils.hasText(thread.getUid())) {
+            return;
+        }
+        if (!thread.isWorkgroupType() && !thread.isAgentType()) {
+            return;
+        }
+        apply(thread.getUid(), getAgentUid(thread.getAgent()), thread.getStatus(), thread.getUpdatedAt(), true);
+    }
+
+    /**
+     * 记录一次客服响应时间
+     */
+    public void recordResponseTime(String agentUid, long seconds) {
+        if (!StringUtils.hasText(agentUid) || seconds < 0) {
+            return;
+        }
+        AgentLoad load = agentLoads.computeIfAbsent(agentUid, key -> new AgentLoad());
+        synchronized (load) {
+            load.avgResponseSeconds = load.sampled
+                    ? load.avgResponseSeconds + responseTimeAlpha * (seconds - load.avgResponseSeconds)
+                    : seconds;
+            load.sampled = true;
+            load.dirty = true;
+        }
+    }
+
+    /**
+     * 使用数据库中未结束的会话校对
+     *
+     * @param threads   查询开始后获取的未结束会话
+     * @param queriedAt 查询开始时间，之后发生的变化以事件为准
+     */
+    public void reconcile(List<ThreadEntity> threads, LocalDateTime queriedAt) {
+        Map<String, ThreadEntity> started = new HashMap<>(threads.size());
+        for (ThreadEntity thread : threads) {
+            started.put(thread.getUid(), thread);
+            if (thread.isWorkgroupType() || thread.isAgentType()) {
+                apply(thread.getUid(), getAgentUid(thread.getAgent()), thread.getStatus(), thread.getUpdatedAt(), true);
+            }
+        }
+        // 内存中仍占用客服，但数据库中已结束的会话
+        threadLoads.forEach((threadUid, threadLoad) -> {
+            if (threadLoad.isTracked() && !started.containsKey(threadUid)
+                    && threadLoad.updatedAt != null && threadLoad.updatedAt.isBefore(queriedAt)) {
+                apply(threadUid, null, ThreadProcessStatusEnum.CLOSED.name(), queriedAt, true);
+            }
+        });
+        log.info("workgroup agent load reconciled, threads {}, agents {}", started.size(), agentLoads.size());
+    }
+
+    /**
+     * 异步持久化：将变化的客服负载批量写入redis，并清理已结束会话的记录
+     */
+    public void syncToRedis() {
+        LocalDateTime retainAfter = LocalDateTime.now().minusMinutes(CLOSED_RETAIN_MINUTES);
+        threadLoads.entrySet().removeIf(entry -> !entry.getValue().isTracked()
+                && entry.getValue().updatedAt != null && entry.getValue().updatedAt.isBefore(retainAfter));
+        //
+        Map<String, String> changed = new HashMap<>();
+        agentLoads.forEach((agentUid, load) -> {
+            if (load.dirty) {
+                load.dirty = false;
+                changed.put(agentUid, load.toSnapshot());
+            }
+        });
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForHash().putAll(RedisConsts.WORKGROUP_AGENT_LOAD, changed);
+        } catch (Exception e) {
+            log.error("sync workgroup agent load to redis error: ", e);
+            changed.keySet().forEach(agentUid -> agentLoads.get(agentUid).dirty = true);
+        }
+    }
+
+    /**
+     * 从redis恢复响应时间统计，会话数以数据库校对结果为准
+     */
+    public void loadFromRedis() {
+        try {
+            Map<Object, Object> snapshots = stringRedisTemplate.opsForHash().entries(RedisConsts.WORKGROUP_AGENT_LOAD);
+            snapshots.forEach((agentUid, snapshot) -> {
+                AgentLoad load = agentLoads.computeIfAbsent(agentUid.toString(), key -> new AgentLoad());
+                load.fromSnapshot(snapshot.toString());
+            });
+            log.info("workgroup agent load restored from redis, agents {}", snapshots.size());
+        } catch (Exception e) {
+            log.error("load workgroup agent load from redis error: ", e);
+        }
+    }
+
+    private void apply(String threadUid, String agentUid, String status, LocalDateTime updatedAt, boolean fromThread) {
+        threadLoads.compute(threadUid, (key, previous) -> {
+            if (previous != null && updatedAt != null && previous.updatedAt != null
+                    && updatedAt.isBefore(previous.updatedAt)) {
+                // 迟到的过期状态
+                return previous;
+            }
+            String nextAgentUid = agentUid;
+            if (fromThread && !StringUtils.hasText(nextAgentUid) && previous != null
+                    && !ThreadProcessStatusEnum.CLOSED.name().equals(status)) {
+                // 会话尚未写入客服信息，沿用入队时分配的客服
+                nextAgentUid = previous.agentUid;
+            }
+            ThreadLoad next = new ThreadLoad(nextAgentUid, status, updatedAt);
+            if (previous != null && previous.isTracked()) {
+                adjust(previous, -1);
+            }
+            if (next.isTracked()) {
+                adjust(next, 1);
+            }
+            return next;
+        });
+    }
+
+    private void adjust(ThreadLoad threadLoad, int delta) {
+        AgentLoad load = agentLoads.computeIfAbsent(threadLoad.agentUid, key -> new AgentLoad());
+        if (threadLoad.isChatting()) {
+            load.activeCount.addAndGet(delta);
+        } else {
+            load.queuingCount.addAndGet(delta);
+        }
+        load.dirty = true;
+    }
+
+    private static String getAgentUid(String agentJson) {
+        if (!StringUtils.hasText(agentJson)) {
+            return null;
+        }
+        UserProtobuf agent = JSON.parseObject(agentJson, UserProtobuf.class);
+        if (agent == null || !UserTypeEnum.AGENT.name().equals(agent.getType())) {
+            return null;
+        }
+        return agent.getUid();
+    }
+
+    /**
+     * 单个客服的负载
+     */
+    public static class AgentLoad {
+
+        private final AtomicInteger activeCount = new AtomicInteger();
+
+        private final AtomicInteger queuingCount = new AtomicInteger();
+
+        private volatile int maxThreadCount;
+
+        private volatile double avgResponseSeconds = DEFAULT_RESPONSE_SECONDS;
+
+        private boolean sampled;
+
+        private volatile boolean dirty;
+
+        public int getActiveCount() {
+            return Math.max(activeCount.get(), 0);
+        }
+
+        public int getQueuingCount() {
+            return Math.max(queuingCount.get(), 0);
+        }
+
+        public int getMaxThreadCount() {
+            return maxThreadCount;
+        }
+
+        public double getAvgResponseSeconds() {
+            return avgResponseSeconds;
+        }
+
+        // 排队数达到最大接待数
+        public boolean isQueueFull() {
+            return getQueuingCount() >= maxThreadCount;
+        }
+
+        String toSnapshot() {
+            return getActiveCount() + ":" + getQueuingCount() + ":" + maxThreadCount + ":" + avgResponseSeconds;
+        }
+
+        synchronized void fromSnapshot(String snapshot) {
+            String[] parts = snapshot.split(":");
+            if (parts.length < 4 || sampled) {
+                return;
+            }
+            try {
+                avgResponseSeconds = Double.parseDouble(parts[3]);
+                sampled = true;
+            } catch (NumberFormatException e) {
+                log.warn("invalid workgroup agent load snapshot {}", snapshot);
+            }
+        }
+    }
+
+    private static final class ThreadLoad {
+
+        private final String agentUid;
+
+        private final String status;
+
+        private final LocalDateTime updatedAt;
+
+        ThreadLoad(String agentUid, String status, LocalDateTime updatedAt) {
+            this.agentUid = agentUid;
+            this.status = status;
+            this.updatedAt = updatedAt;
+        }
+
+        boolean isChatting() {
+            return ThreadProcessStatusEnum.CHATTING.name().equals(status);
+        }
+
+        // 占用客服的会话：排队中或对话中
+        boolean isTracked() {
+            return StringUtils.hasText(agentUid)
+                    && (isChatting() || ThreadProcessStatusEnum.QUEUING.name().equals(status));
+        }
+    }
+
+}
@@ -13,18 +13,26 @@
  */
 package com.bytedesk.service.workgroup;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import com.bytedesk.core.constant.I18Consts;
+import com.bytedesk.core.quartz.event.QuartzFiveMinEvent;
+import com.bytedesk.core.quartz.event.QuartzFiveSecondEvent;
 import com.bytedesk.core.rbac.organization.OrganizationEntity;
 import com.bytedesk.core.rbac.organization.event.OrganizationCreateEvent;
 import com.bytedesk.core.rbac.user.UserEntity;
+import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadRestService;
+import com.bytedesk.core.thread.event.ThreadCreateEvent;
+import com.bytedesk.core.thread.event.ThreadUpdateEvent;
 import com.bytedesk.core.uid.UidUtils;
 import com.bytedesk.service.agent.AgentEntity;
 import com.bytedesk.service.agent.AgentRestService;
@@ -46,6 +54,10 @@ public class WorkgroupEventListener {
 
     private final UidUtils uidUtils;
 
+    private final ThreadRestService threadRestService;
+
+    private final WorkgroupAgentLoadTable agentLoadTable;
+
     @Order(7)
     @EventListener
     public void onOrganizationCreateEvent(OrganizationCreateEvent event) {
@@ -87,5 +99,41 @@ public class WorkgroupEventListener {
         workgroupService.create(workgroupRequest);
     }
 
+    @EventListener
+    public void onApplicationReadyEvent(ApplicationReadyEvent event) {
+        agentLoadTable.loadFromRedis();
+        reconcileAgentLoad();
+    }
+
+    @EventListener
+    public void onThreadCreateEvent(ThreadCreateEvent event) {
+        agentLoadTable.update(event.getThread());
+    }
+
+    @EventListener
+    public void onThreadUpdateEvent(ThreadUpdateEvent event) {
+        agentLoadTable.update(event.getThread());
+    }
+
+    @EventListener
+    public void onQuartzFiveSecondEvent(QuartzFiveSecondEvent event) {
+        agentLoadTable.syncToRedis();
+    }
+
+    @EventListener
+    public void onQuartzFiveMinEvent(QuartzFiveMinEvent event) {
+        reconcileAgentLoad();
+    }
+
+    // 使用数据库中未结束的会话校对客服负载
+    private void reconcileAgentLoad() {
+        try {
+            LocalDateTime queriedAt = LocalDateTime.now();
+            List<ThreadEntity> threads = threadRestService.findServiceThreadStateStarted();
+            agentLoadTable.reconcile(threads, queriedAt);
+        } catch (Exception e) {
+            log.error("reconcile workgroup agent load error: ", e);
+        }
+    }
 
 }
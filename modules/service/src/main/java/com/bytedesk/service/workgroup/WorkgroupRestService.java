@@ -29,6 +29,7 @@ import org.springframework.util.StringUtils;
 import com.bytedesk.core.base.BaseRestService;
 import com.bytedesk.core.rbac.auth.AuthService;
 import com.bytedesk.core.rbac.user.UserEntity;
+import com.bytedesk.core.redis.cache.CacheEvictService;
 import com.bytedesk.core.uid.UidUtils;
 import com.bytedesk.kbase.settings.InviteSettings;
 import com.bytedesk.kbase.settings.ServiceSettings;
@@ -58,6 +59,8 @@ public class WorkgroupRestService extends BaseRestService<WorkgroupEntity, Workg
 
     private final AuthService authService;
 
+    private final CacheEvictService cacheEvictService;
+
     public Page<WorkgroupResponse> queryByOrg(WorkgroupRequest request) {
         Pageable pageable = request.getPageable();
         Specification<WorkgroupEntity> specs = WorkgroupSpecification.search(request);
@@ -249,7 +252,9 @@ public class WorkgroupRestService extends BaseRestService<WorkgroupEntity, Workg
     
     @Override
     protected WorkgroupEntity doSave(WorkgroupEntity entity) {
-        return workgroupRepository.save(entity);
+        WorkgroupEntity savedWorkgroup = workgroupRepository.save(entity);
+        cacheEvictService.evict("workgroup", savedWorkgroup.getUid());
+        return savedWorkgroup;
     }
 
     public void deleteByUid(String uid) {
@@ -283,7 +288,7 @@ public class WorkgroupRestService extends BaseRestService<WorkgroupEntity, Workg
                 latestEntity.setServiceSettings(entity.getServiceSettings());
                 latestEntity.setQueueSettings(entity.getQueueSettings());
                 latestEntity.setInviteSettings(entity.getInviteSettings());
-                return workgroupRepository.save(latestEntity);
+                return doSave(latestEntity);
             }
         } catch (Exception ex) {
             log.error("无法处理乐观锁冲突", ex);
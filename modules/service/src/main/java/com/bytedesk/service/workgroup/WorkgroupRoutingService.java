@@ -1,19 +1,19 @@
 package com.bytedesk.service.workgroup;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
-import com.bytedesk.core.redis.RedisConsts;
+import com.bytedesk.core.config.metrics.BytedeskMetrics;
+import com.bytedesk.core.rbac.user.UserProtobuf;
 import com.bytedesk.core.thread.ThreadEntity;
-import com.bytedesk.core.topic.TopicUtils;
 import com.bytedesk.service.agent.AgentEntity;
-import com.bytedesk.service.queue.QueueEntity;
-import com.bytedesk.service.queue.QueueRestService;
+import com.bytedesk.service.workgroup.WorkgroupAgentLoadTable.AgentLoad;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,28 +21,35 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * 工作组路由服务
  * 根据工作组路由模式选择客服
+ * 客服负载读取自WorkgroupAgentLoadTable，每次路由只遍历一遍可用客服，不访问数据库
  */
 @Slf4j
 @Component
 @AllArgsConstructor
 public class WorkgroupRoutingService {
 
-    private final StringRedisTemplate redisTemplate;
+    private static final Set<String> ROUTING_MODES = Arrays.stream(WorkgroupRoutingModeEnum.values())
+            .map(Enum::name)
+            .collect(Collectors.toSet());
 
-    private static final String COUNTER_KEY_PREFIX = RedisConsts.BYTEDESK_REDIS_PREFIX + "roundRobinCounter:";
+    private final WorkgroupAgentLoadTable agentLoadTable;
 
-    private final QueueRestService queueRestService;
-
-    // 获取当天日期
-    private String getCurrentDay() {
-        return LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-    }
+    private final BytedeskMetrics bytedeskMetrics;
 
     /**
      * 根据工作组路由模式选择客服
      */
     public AgentEntity selectAgent(WorkgroupEntity workgroup, ThreadEntity thread, List<AgentEntity> availableAgents) {
-        // 
+        if (availableAgents.isEmpty()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        AgentEntity agent = doSelectAgent(workgroup, thread, availableAgents);
+        bytedeskMetrics.recordRouting(getRoutingModeTag(workgroup.getRoutingMode()), System.nanoTime() - start);
+        return agent;
+    }
+
+    private AgentEntity doSelectAgent(WorkgroupEntity workgroup, ThreadEntity thread, List<AgentEntity> availableAgents) {
         switch (workgroup.getRoutingMode()) {
             case "ROUND_ROBIN":
                 return selectByRoundRobin(workgroup.getUid(), availableAgents);
@@ -53,7 +60,7 @@ public class WorkgroupRoutingService {
             case "WEIGHTED_RANDOM":
                 return selectByWeightedRandom(availableAgents);
             case "CONSISTENT_HASH":
-                return selectByConsistentHash("thread.getVisitorUid()", availableAgents);
+                return selectByConsistentHash(getVisitorUid(thread), availableAgents);
             case "FASTEST_RESPONSE":
                 return selectByFastestResponse(availableAgents);
             default:
@@ -66,43 +73,30 @@ public class WorkgroupRoutingService {
      * 按顺序将请求分配给每个客服
      */
     private AgentEntity selectByRoundRobin(String workgroupUid, List<AgentEntity> agents) {
-        // 判断agents.size()是否大于0
-        if (agents.isEmpty()) return null;
-        // 获取当前计数器值
-        String counterKey = COUNTER_KEY_PREFIX + workgroupUid;
-        Long counter = redisTemplate.opsForValue().increment(counterKey, 1);
+        long counter = agentLoadTable.nextRoundRobin(workgroupUid);
         // 计算索引
-        int index = Math.toIntExact(counter % agents.size());
+        int index = (int) Math.floorMod(counter, (long) agents.size());
         return agents.get(index);
     }
 
     /**
      * 最小活动数算法
-     * 选择当前会话数最少的客服
+     * 选择当前会话数最少的客服，排队已满的客服不参与
      */
     private AgentEntity selectByLeastActive(List<AgentEntity> agents) {
-        String today = getCurrentDay();
-        
-        return agents.stream()
-            .filter(agent -> {
-                String queueTopic = TopicUtils.getQueueTopicFromUid(agent.getUid());
-                Optional<QueueEntity> queueEntity = queueRestService.findByTopicAndDay(queueTopic, today);
-                return queueEntity.map(queue -> queue.getQueuingCount() < agent.getMaxThreadCount())
-                        .orElse(true); // 如果没有队列信息，默认可以接受更多会话
-            })
-            .min((a1, a2) -> {
-                String queueTopic1 = TopicUtils.getQueueTopicFromUid(a1.getUid());
-                String queueTopic2 = TopicUtils.getQueueTopicFromUid(a2.getUid());
-                
-                Optional<QueueEntity> queueEntity1 = queueRestService.findByTopicAndDay(queueTopic1, today);
-                Optional<QueueEntity> queueEntity2 = queueRestService.findByTopicAndDay(queueTopic2, today);
-                
-                int count1 = queueEntity1.map(QueueEntity::getChattingCount).orElse(0);
-                int count2 = queueEntity2.map(QueueEntity::getChattingCount).orElse(0);
-                
-                return Integer.compare(count1, count2);
-            })
-            .orElse(null);
+        AgentEntity selected = null;
+        int minActive = Integer.MAX_VALUE;
+        for (AgentEntity agent : agents) {
+            AgentLoad load = agentLoadTable.getLoad(agent);
+            if (load.isQueueFull()) {
+                continue;
+            }
+            if (load.getActiveCount() < minActive) {
+                minActive = load.getActiveCount();
+                selected = agent;
+            }
+        }
+        return selected;
     }
 
     /**
@@ -110,70 +104,83 @@ public class WorkgroupRoutingService {
      * 随机选择一个可用客服
      */
     private AgentEntity selectByRandom(List<AgentEntity> agents) {
-        if (agents.isEmpty()) return null;
-        int randomIndex = (int) (Math.random() * agents.size());
+        int randomIndex = ThreadLocalRandom.current().nextInt(agents.size());
         return agents.get(randomIndex);
     }
 
     /**
      * 加权随机算法
-     * 根据客服评分和性能给予不同权重
+     * 根据客服响应时间和当前负载给予不同权重
      */
     private AgentEntity selectByWeightedRandom(List<AgentEntity> agents) {
-        double totalWeight = agents.stream()
-            .mapToDouble(this::calculateWeight)
-            .sum();
-            
-        double random = Math.random() * totalWeight;
+        double[] weights = new double[agents.size()];
+        double totalWeight = 0;
+        for (int i = 0; i < agents.size(); i++) {
+            weights[i] = calculateWeight(agentLoadTable.getLoad(agents.get(i)));
+            totalWeight += weights[i];
+        }
+        // 
+        double random = ThreadLocalRandom.current().nextDouble() * totalWeight;
         double weightSum = 0;
-        
-        for (AgentEntity agent : agents) {
-            weightSum += calculateWeight(agent);
+        for (int i = 0; i < agents.size(); i++) {
+            weightSum += weights[i];
             if (weightSum >= random) {
-                return agent;
+                return agents.get(i);
             }
         }
-        
         return agents.get(agents.size() - 1);
     }
 
     /**
      * 一致性哈希算法
      * 相同访客尽量分配给同一个客服
+     * 使用rendezvous哈希：每个客服与访客uid组合计算得分，取得分最高者，
+     * 客服上下线时只有原本分配给该客服的访客会改变归属
      */
     private AgentEntity selectByConsistentHash(String visitorUid, List<AgentEntity> agents) {
-        if (agents.isEmpty()) return null;
-        
-        // 使用访客ID的哈希值
-        int hash = Math.abs(visitorUid.hashCode());
-        return agents.get(hash % agents.size());
+        if (!StringUtils.hasText(visitorUid)) {
+            return selectByRandom(agents);
+        }
+        AgentEntity selected = null;
+        long maxScore = Long.MIN_VALUE;
+        long visitorHash = visitorUid.hashCode();
+        for (AgentEntity agent : agents) {
+            long score = mix((visitorHash << 32) ^ (agent.getUid().hashCode() & 0xffffffffL));
+            if (selected == null || score > maxScore) {
+                maxScore = score;
+                selected = agent;
+            }
+        }
+        return selected;
     }
 
     /**
      * 最快响应算法
-     * 选择平均响应时间最短的客服
+     * 选择平均响应时间最短的客服，排队已满的客服不参与
      */
     private AgentEntity selectByFastestResponse(List<AgentEntity> agents) {
-        String today = getCurrentDay();
-        
-        return agents.stream()
-            .filter(agent -> {
-                String queueTopic = TopicUtils.getQueueTopicFromUid(agent.getUid());
-                Optional<QueueEntity> queueEntity = queueRestService.findByTopicAndDay(queueTopic, today);
-                return queueEntity.map(queue -> queue.getQueuingCount() < agent.getMaxThreadCount())
-                        .orElse(true); // 如果没有队列信息，默认可以接受更多会话
-            })
-            .min((a1, a2) -> Double.compare(
-                getAverageResponseTime(a1),
-                getAverageResponseTime(a2)))
-            .orElse(null);
+        AgentEntity selected = null;
+        AgentLoad selectedLoad = null;
+        for (AgentEntity agent : agents) {
+            AgentLoad load = agentLoadTable.getLoad(agent);
+            if (load.isQueueFull()) {
+                continue;
+            }
+            if (selectedLoad == null
+                    || load.getAvgResponseSeconds() < selectedLoad.getAvgResponseSeconds()
+                    || (load.getAvgResponseSeconds() == selectedLoad.getAvgResponseSeconds()
+                            && load.getActiveCount() < selectedLoad.getActiveCount())) {
+                selected = agent;
+                selectedLoad = load;
+            }
+        }
+        return selected;
     }
 
     /**
      * 计算客服权重
      */
-    private double calculateWeight(AgentEntity agent) {
-        String today = getCurrentDay();
+    private double calculateWeight(AgentLoad load) {
         double weight = 1.0;
         
         // 1. 评分权重
@@ -181,24 +188,35 @@ public class WorkgroupRoutingService {
         // weight *= (rating / 5.0);
         
         // 2. 响应时间权重
-        double avgResponseTime = getAverageResponseTime(agent);
-        weight *= (1.0 / (avgResponseTime + 1));
+        weight *= (1.0 / (load.getAvgResponseSeconds() + 1));
         
         // 3. 工作负载权重
-        String queueTopic = TopicUtils.getQueueTopicFromUid(agent.getUid());
-        Optional<QueueEntity> queueEntity = queueRestService.findByTopicAndDay(queueTopic, today);
-        int currentLoad = queueEntity.map(QueueEntity::getChattingCount).orElse(0);
-        weight *= (1.0 / (currentLoad + 1));
+        weight *= (1.0 / (load.getActiveCount() + 1));
         
         return weight;
     }
 
-    /**
-     * 获取平均响应时间(秒)
-     */
-    private double getAverageResponseTime(AgentEntity agent) {
-        // TODO: 从统计数据中获取实际响应时间
-        return 30.0; // 默认30秒
+    // 路由模式作为指标标签，未知取值按默认的轮询统计，避免标签取值无限增长
+    private static String getRoutingModeTag(String routingMode) {
+        return ROUTING_MODES.contains(routingMode) ? routingMode : WorkgroupRoutingModeEnum.ROUND_ROBIN.name();
+    }
+
+    private String getVisitorUid(ThreadEntity thread) {
+        if (thread == null) {
+            return null;
+        }
+        UserProtobuf visitor = StringUtils.hasText(thread.getUser()) ? thread.getUserProtobuf() : null;
+        if (visitor != null && StringUtils.hasText(visitor.getUid())) {
+            return visitor.getUid();
+        }
+        return thread.getUid();
+    }
+
+    // 64位混合函数(splitmix64)，使哈希值分布均匀
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
     }
 
     /**
@@ -19,8 +19,8 @@ import java.util.Optional;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import com.bytedesk.core.thread.ThreadEntity;
 import com.bytedesk.core.thread.ThreadRestService;
+import com.bytedesk.core.thread.ThreadSnapshot;
 import com.bytedesk.core.thread.ThreadTypeEnum;
 import com.bytedesk.core.thread.event.ThreadCreateEvent;
 import com.bytedesk.team.member.MemberEntity;
@@ -39,7 +39,7 @@ public class GroupEventListener {
 
     @EventListener
     public void onThreadCreateEvent(ThreadCreateEvent event) {
-        ThreadEntity thread = event.getThread();
+        ThreadSnapshot thread = event.getThread();
         // ThreadRequest request = event.getRequest();
         log.info("group ThreadCreateEvent: {}", thread.getUid());
         //
@@ -50,7 +50,7 @@ public class GroupEventListener {
             log.info("groupUid {}", groupUid);
             Optional<GroupEntity> groupOptional = groupService.findByUid(groupUid);
             if (groupOptional.isPresent()
-                    && groupOptional.get().getCreator().getUid().equals(thread.getOwner().getUid())) {
+                    && groupOptional.get().getCreator().getUid().equals(threadService.getOwnerUid(thread))) {
                 // 仅允许群组创建者首次创建thread时，创建群组成员的thread
                 Iterator<MemberEntity> iterator = groupOptional.get().getMembers().iterator();
                 while (iterator.hasNext()) {
@@ -33,7 +33,7 @@ import com.bytedesk.core.constant.I18Consts;
 import com.bytedesk.core.rbac.organization.OrganizationEntity;
 import com.bytedesk.core.rbac.organization.event.OrganizationCreateEvent;
 import com.bytedesk.core.rbac.user.UserEntity;
-import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadSnapshot;
 import com.bytedesk.core.thread.ThreadTypeEnum;
 import com.bytedesk.core.thread.event.ThreadCreateEvent;
 import com.bytedesk.core.topic.TopicCacheService;
@@ -105,7 +105,7 @@ public class MemberEventListener {
 
     @EventListener
     public void onThreadCreateEvent(ThreadCreateEvent event) {
-        ThreadEntity thread = event.getThread();
+        ThreadSnapshot thread = event.getThread();
         log.info("member ThreadCreateEvent: {}", thread.getUid());
         //
         if (thread.getType().equals(ThreadTypeEnum.MEMBER.name())) {
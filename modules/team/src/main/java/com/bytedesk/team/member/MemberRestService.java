@@ -47,6 +47,7 @@ import com.bytedesk.core.rbac.user.UserService;
 import com.bytedesk.core.topic.TopicUtils;
 import com.bytedesk.core.uid.UidUtils;
 import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.thread.ThreadSnapshot;
 import com.bytedesk.core.thread.ThreadRestService;
 import com.bytedesk.core.thread.ThreadProcessStatusEnum;
 
@@ -353,7 +354,7 @@ public class MemberRestService extends BaseRestServiceWithExcel<MemberEntity, Me
     }
 
      /** 同事私聊会话：org/member/{self_member_uid}/{other_member_uid} */
-    public ThreadEntity createMemberReverseThread(ThreadEntity thread) {
+    public ThreadEntity createMemberReverseThread(ThreadSnapshot thread) {
         // 
         String reverseUid = new StringBuffer(thread.getUid()).reverse().toString();
         Optional<ThreadEntity> reverseThreadOptional = threadService.findByUid(reverseUid);
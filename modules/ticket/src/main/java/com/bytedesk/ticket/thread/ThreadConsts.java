@@ -108,6 +108,16 @@ public class ThreadConsts {
     public static final String ACTIVITY_ID_ROBOT_SERVICE = "robotService";
     public static final String ACTIVITY_ID_HUMAN_SERVICE = "humanService";
     public static final String ACTIVITY_ID_QUEUE_SERVICE = "queueService";
+    public static final String ACTIVITY_ID_START = "start";
+    public static final String ACTIVITY_ID_SLA_NOTIFICATION = "slaNotification";
+    public static final String ACTIVITY_ID_ROBOT_IDLE_TIMEOUT_SERVICE = "robotIdleTimeoutService";
+    public static final String ACTIVITY_ID_HUMAN_IDLE_TIMEOUT_SERVICE = "humanIdleTimeoutService";
+
+    // 活动类型常量 - 与Flowable历史活动类型一致
+    public static final String ACTIVITY_TYPE_START_EVENT = "startEvent";
+    public static final String ACTIVITY_TYPE_END_EVENT = "endEvent";
+    public static final String ACTIVITY_TYPE_SERVICE_TASK = "serviceTask";
+    public static final String ACTIVITY_TYPE_USER_TASK = "userTask";
     
     // 默认超时时间常量
     public static final int DEFAULT_SLA_TIME = 30 * 60 * 1000;           // 默认SLA时间 - 30分钟
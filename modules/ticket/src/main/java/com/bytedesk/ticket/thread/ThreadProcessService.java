@@ -32,6 +32,7 @@ import com.bytedesk.core.thread.ThreadEntity;
 import com.bytedesk.core.thread.ThreadRequest;
 import com.bytedesk.core.thread.ThreadRestService;
 import com.bytedesk.ticket.thread.dto.ThreadHistoryActivityResponse;
+import com.bytedesk.ticket.thread.lifecycle.ThreadLifecycleService;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -45,6 +46,7 @@ public class ThreadProcessService {
     private final TaskService taskService;
     private final HistoryService historyService;
     private final ThreadRestService threadRestService;
+    private final ThreadLifecycleService threadLifecycleService;
 
     /**
      * 查询会话的完整活动历史
@@ -60,6 +62,10 @@ public class ThreadProcessService {
             } else {
                 throw new RuntimeException("processInstanceId不能为空");
             }
+            // 新会话不再创建流程实例，从会话生命周期读取活动历史
+            if (request.getProcessInstanceId() == null) {
+                return threadLifecycleService.queryActivityHistory(request.getUid());
+            }
         }
 
         // 获取活动历史，过滤掉 sequenceFlow 和其他不需要显示的活动
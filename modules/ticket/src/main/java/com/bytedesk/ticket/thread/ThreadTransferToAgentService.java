@@ -13,11 +13,11 @@
  */
 package com.bytedesk.ticket.thread;
 
-import org.flowable.engine.RuntimeService;
 import org.springframework.stereotype.Service;
 
 import com.bytedesk.core.message.MessageEntity;
 import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.ticket.thread.lifecycle.ThreadLifecycleService;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -32,7 +32,7 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class ThreadTransferToAgentService {
 
-    private final RuntimeService runtimeService;
+    private final ThreadLifecycleService threadLifecycleService;
 
     // 转人工关键词列表
     private static final String[] TRANSFER_KEYWORDS = {
@@ -65,37 +65,9 @@ public class ThreadTransferToAgentService {
 
         // 检查是否包含转人工关键词
         boolean requestTransfer = checkTransferRequest(content);
-        if (requestTransfer && thread.getProcessInstanceId() != null) {
+        if (requestTransfer) {
             log.info("检测到访客请求通过关键词转人工: threadUid={}, content={}", thread.getUid(), content);
-
-            // 设置流程变量，标记访客请求转人工
-            try {
-                // 使用常量替代直接的字符串值
-                runtimeService.setVariable(thread.getProcessInstanceId(),
-                        ThreadConsts.THREAD_VARIABLE_VISITOR_REQUESTED_TRANSFER, true);
-
-                // 设置转人工方式为关键词
-                runtimeService.setVariable(thread.getProcessInstanceId(),
-                        ThreadConsts.THREAD_VARIABLE_TRANSFER_TYPE, ThreadConsts.TRANSFER_TYPE_KEYWORD);
-
-                log.info("已设置访客通过关键词请求转人工标记: processInstanceId={}", thread.getProcessInstanceId());
-
-                /*
-                 * visitorRequestedTransfer 变量使用说明:
-                 * 
-                 * 1. 此变量在流程中用于标记访客是否主动请求了转人工服务
-                 * 2. 可以在流程的服务任务（如robotService）中检查此变量，从而决定是否进行转人工操作
-                 * 3. 在BPMN流程文件中可以添加条件表达式，例如：${visitorRequestedTransfer == true}
-                 * 4. 建议在ThreadRobotServiceDelegate等相关服务委托类中使用此变量
-                 * 5. 示例：
-                 * if (execution.getVariable(ThreadConsts.
-                 * THREAD_VARIABLE_VISITOR_REQUESTED_TRANSFER) == Boolean.TRUE) {
-                 * execution.setVariable(ThreadConsts.THREAD_VARIABLE_NEED_HUMAN_SERVICE, true);
-                 * }
-                 */
-            } catch (Exception e) {
-                log.error("设置访客请求转人工标记失败: {}", e.getMessage());
-            }
+            threadLifecycleService.requestTransfer(thread.getUid(), ThreadConsts.TRANSFER_TYPE_KEYWORD);
         }
     }
 
@@ -105,25 +77,12 @@ public class ThreadTransferToAgentService {
      * @param thread 会话线程
      */
     public void processUiTransferRequest(ThreadEntity thread) {
-        if (thread == null || thread.getProcessInstanceId() == null) {
-            log.error("处理UI转人工请求失败：会话或流程实例ID为空");
+        if (thread == null) {
+            log.error("处理UI转人工请求失败：会话为空");
             return;
         }
-
-        try {
-            // 设置流程变量，标记访客通过UI请求转人工
-            runtimeService.setVariable(thread.getProcessInstanceId(),
-                    ThreadConsts.THREAD_VARIABLE_VISITOR_REQUESTED_TRANSFER, true);
-
-            // 设置转人工方式为UI
-            runtimeService.setVariable(thread.getProcessInstanceId(),
-                    ThreadConsts.THREAD_VARIABLE_TRANSFER_TYPE, ThreadConsts.TRANSFER_TYPE_UI);
-
-            log.info("已设置访客通过UI请求转人工标记: threadUid={}, processInstanceId={}",
-                    thread.getUid(), thread.getProcessInstanceId());
-        } catch (Exception e) {
-            log.error("设置访客通过UI请求转人工标记失败: {}", e.getMessage());
-        }
+        threadLifecycleService.requestTransfer(thread.getUid(), ThreadConsts.TRANSFER_TYPE_UI);
+        log.info("已处理访客通过UI请求转人工: threadUid={}", thread.getUid());
     }
 
     /**
@@ -0,0 +1,44 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-24 09:14:21
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-24 09:14:21
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ticket.thread.lifecycle;
+
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 会话生命周期经过的节点，以json数组保存在ThreadLifecycleEntity中，用于会话活动历史
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThreadLifecycleActivity {
+
+    // 与流程定义中的节点id一致
+    private String activityId;
+
+    private String activityName;
+
+    private String activityType;
+
+    private Date startTime;
+
+    private Date endTime;
+
+    private String description;
+}
@@ -0,0 +1,25 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-24 09:13:05
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-24 09:13:05
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ticket.thread.lifecycle;
+
+/**
+ * 会话生命周期结束原因
+ */
+public enum ThreadLifecycleEndReasonEnum {
+    ROBOT_IDLE_TIMEOUT, // 机器人接待中访客超时未发消息
+    HUMAN_IDLE_TIMEOUT, // 人工接待中访客超时未发消息
+    AGENTS_OFFLINE, // 坐席离线
+    THREAD_CLOSED, // 会话被关闭
+    ;
+}
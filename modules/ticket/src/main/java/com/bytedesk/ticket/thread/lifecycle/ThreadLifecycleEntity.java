@@ -0,0 +1,129 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-24 09:16:48
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-24 09:16:48
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ticket.thread.lifecycle;
+
+import java.time.LocalDateTime;
+
+import com.bytedesk.core.base.BaseEntity;
+import com.bytedesk.core.constant.TypeConsts;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * 会话生命周期
+ *
+ * 每个客服会话一行，替代每个会话一个Flowable流程实例：流程变量保存为字段，
+ * 定时器保存为到期时间，nextTimerAt为其中最早的一个，由ThreadLifecycleService定时扫描
+ */
+@Entity
+@Data
+@SuperBuilder
+@Accessors(chain = true)
+@EqualsAndHashCode(callSuper = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "bytedesk_ticket_thread_lifecycle", indexes = {
+    @Index(name = "idx_thread_lifecycle_thread_uid", columnList = "thread_uid", unique = true),
+    @Index(name = "idx_thread_lifecycle_next_timer", columnList = "next_timer_at")
+})
+public class ThreadLifecycleEntity extends BaseEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    private String threadUid;
+
+    // ThreadConsts.THREAD_TYPE_*
+    private String threadType;
+
+    @Builder.Default
+    @Column(name = "lifecycle_state")
+    private String state = ThreadLifecycleStateEnum.ROBOT.name();
+
+    private String visitorUid;
+
+    private String agentUid;
+
+    private String workgroupUid;
+
+    @Builder.Default
+    @Column(name = "is_robot_enabled")
+    private boolean robotEnabled = false;
+
+    @Builder.Default
+    @Column(name = "is_need_human_service")
+    private boolean needHumanService = false;
+
+    @Builder.Default
+    @Column(name = "is_agents_busy")
+    private boolean agentsBusy = false;
+
+    @Builder.Default
+    @Column(name = "is_agents_offline")
+    private boolean agentsOffline = false;
+
+    // 转人工
+    @Builder.Default
+    @Column(name = "is_visitor_requested_transfer")
+    private boolean visitorRequestedTransfer = false;
+
+    private String transferType;
+
+    private String transferReason;
+
+    @Builder.Default
+    private int transferPriority = 0;
+
+    // 超时设置，毫秒
+    @Builder.Default
+    private int slaTime = 0;
+
+    @Builder.Default
+    private int humanIdleTimeout = 0;
+
+    @Builder.Default
+    private int robotIdleTimeout = 0;
+
+    // 进入当前状态的时间，空闲超时从此时或访客最后消息时间起算
+    private LocalDateTime stateStartAt;
+
+    private LocalDateTime queueStartAt;
+
+    private LocalDateTime lastVisitorMessageAt;
+
+    // 定时器到期时间，为空表示未启动或已触发
+    private LocalDateTime slaDueAt;
+
+    private LocalDateTime idleDueAt;
+
+    // 最早到期的定时器
+    private LocalDateTime nextTimerAt;
+
+    private String endReason;
+
+    private LocalDateTime endAt;
+
+    // 经过的节点，json数组，见ThreadLifecycleActivity
+    @Column(columnDefinition = TypeConsts.COLUMN_TYPE_TEXT)
+    private String activities;
+}
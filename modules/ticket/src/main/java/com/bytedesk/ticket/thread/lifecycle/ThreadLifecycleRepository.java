@@ -0,0 +1,39 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-24 09:20:33
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-24 09:20:33
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ticket.thread.lifecycle;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface ThreadLifecycleRepository extends JpaRepository<ThreadLifecycleEntity, Long> {
+
+    Optional<ThreadLifecycleEntity> findByThreadUid(String threadUid);
+
+    List<ThreadLifecycleEntity> findByNextTimerAtBeforeOrderByNextTimerAtAsc(LocalDateTime time, Pageable pageable);
+
+    // 访客发消息时只更新最后消息时间，递增版本号使并发的定时器处理重新读取
+    @Modifying
+    @Transactional
+    @Query("UPDATE ThreadLifecycleEntity t SET t.lastVisitorMessageAt = :time, t.version = t.version + 1 "
+            + "WHERE t.threadUid = :threadUid AND t.nextTimerAt IS NOT NULL")
+    int updateLastVisitorMessageAt(@Param("threadUid") String threadUid, @Param("time") LocalDateTime time);
+}
@@ -0,0 +1,553 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-24 09:25:17
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-24 09:25:17
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ticket.thread.lifecycle;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.alibaba.fastjson2.JSON;
+import com.bytedesk.core.thread.ThreadEntity;
+import com.bytedesk.core.uid.UidUtils;
+import com.bytedesk.service.queue_member.QueueMemberEntity;
+import com.bytedesk.service.queue_member.QueueMemberRestService;
+import com.bytedesk.ticket.thread.ThreadConsts;
+import com.bytedesk.ticket.thread.dto.ThreadHistoryActivityResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 会话生命周期状态机
+ *
+ * 按会话流程(thread-process.bpmn20.xml)的网关和节点流转：机器人接待 -> 转人工 -> 坐席离线?/坐席繁忙? ->
+ * 排队等待 -> 人工接待，以及SLA、机器人空闲、人工空闲三个定时器，但每个会话只保存一行记录，
+ * 不再创建流程实例、流程变量和定时作业。定时器到期时间保存在记录中，每5秒扫描一次最早到期的记录，
+ * 多节点同时处理同一记录时依赖实体版本号，只有一个节点成功。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ThreadLifecycleService {
+
+    private static final int MAX_RETRIES = 3;
+
+    // 保存的活动数上限，避免反复转接的会话记录无限增长
+    private static final int MAX_ACTIVITIES = 50;
+
+    private final ThreadLifecycleRepository threadLifecycleRepository;
+
+    private final QueueMemberRestService queueMemberRestService;
+
+    private final UidUtils uidUtils;
+
+    // 每次扫描处理的到期记录数
+    @Value("${bytedesk.thread.lifecycle.batch-size:200}")
+    private int batchSize;
+
+    // 访客连续发消息时，每个会话在此时间内只更新一次最后消息时间
+    @Value("${bytedesk.thread.lifecycle.visitor-message-throttle-seconds:30}")
+    private long visitorMessageThrottleSeconds;
+
+    private Cache<String, Boolean> recentVisitorMessages;
+
+    @PostConstruct
+    public void init() {
+        recentVisitorMessages = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofSeconds(visitorMessageThrottleSeconds))
+                .build();
+    }
+
+    /**
+     * 会话创建或重新路由：按会话当前状态进入机器人接待、排队、人工接待或离线结束
+     */
+    public void start(ThreadEntity thread) {
+        String threadType = getThreadType(thread);
+        if (threadType == null) {
+            // 暂时仅处理客服会话类型
+            log.warn("未知的会话类型，不处理: threadUid={}", thread.getUid());
+            return;
+        }
+        update(thread.getUid(), true, lifecycle -> {
+            LocalDateTime now = LocalDateTime.now();
+            boolean created = lifecycle.getId() == null;
+            if (created || isClosed(lifecycle)) {
+                reset(lifecycle, thread, threadType);
+                addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_START, "访客发起会话",
+                        ThreadConsts.ACTIVITY_TYPE_START_EVENT, now, true);
+            } else {
+                // 已有生命周期，同步路由结果
+                lifecycle.setAgentsBusy(thread.isQueuing());
+                lifecycle.setAgentsOffline(thread.isOffline());
+                if (ThreadLifecycleStateEnum.ROBOT.name().equals(lifecycle.getState()) && !thread.isRoboting()) {
+                    lifecycle.setNeedHumanService(true);
+                }
+                if (thread.isAgentType() && thread.getAgentProtobuf() != null) {
+                    lifecycle.setAgentUid(thread.getAgentProtobuf().getUid());
+                }
+            }
+            if (ThreadLifecycleStateEnum.ROBOT.name().equals(lifecycle.getState())
+                    && lifecycle.isRobotEnabled() && !lifecycle.isNeedHumanService()) {
+                if (created || isClosed(lifecycle) || lifecycle.getIdleDueAt() == null) {
+                    enterRobot(lifecycle, now);
+                }
+            } else {
+                routeToHuman(lifecycle, now);
+            }
+        });
+    }
+
+    // 坐席繁忙，进入排队
+    public void onAgentQueue(ThreadEntity thread) {
+        Optional<ThreadLifecycleEntity> optional = threadLifecycleRepository.findByThreadUid(thread.getUid());
+        if (!optional.isPresent() || isClosed(optional.get())) {
+            start(thread);
+            return;
+        }
+        update(thread.getUid(), false, lifecycle -> {
+            if (isClosed(lifecycle) || ThreadLifecycleStateEnum.QUEUING.name().equals(lifecycle.getState())) {
+                return;
+            }
+            lifecycle.setAgentsBusy(true);
+            lifecycle.setNeedHumanService(true);
+            routeToHuman(lifecycle, LocalDateTime.now());
+        });
+    }
+
+    // 坐席离线，结束
+    public void onAgentOffline(ThreadEntity thread) {
+        Optional<ThreadLifecycleEntity> optional = threadLifecycleRepository.findByThreadUid(thread.getUid());
+        if (!optional.isPresent() || isClosed(optional.get())) {
+            start(thread);
+            return;
+        }
+        update(thread.getUid(), false, lifecycle -> {
+            if (isClosed(lifecycle)) {
+                return;
+            }
+            lifecycle.setAgentsOffline(true);
+            lifecycle.setNeedHumanService(true);
+            routeToHuman(lifecycle, LocalDateTime.now());
+        });
+    }
+
+    // 客服接入排队中的会话
+    public void onAccept(ThreadEntity thread) {
+        Optional<ThreadLifecycleEntity> optional = threadLifecycleRepository.findByThreadUid(thread.getUid());
+        if (!optional.isPresent()) {
+            start(thread);
+            return;
+        }
+        update(thread.getUid(), false, lifecycle -> {
+            if (!ThreadLifecycleStateEnum.QUEUING.name().equals(lifecycle.getState())) {
+                return;
+            }
+            lifecycle.setAgentsBusy(false);
+            if (thread.getAgentProtobuf() != null) {
+                lifecycle.setAgentUid(thread.getAgentProtobuf().getUid());
+            }
+            enterServing(lifecycle, LocalDateTime.now());
+        });
+    }
+
+    /**
+     * 访客请求转人工，与ThreadRobotServiceDelegate的判断一致：
+     * 纯机器人会话不支持转人工，工作组会话按转人工方式设置优先级后转人工
+     */
+    public void requestTransfer(String threadUid, String transferType) {
+        update(threadUid, false, lifecycle -> {
+            if (!ThreadLifecycleStateEnum.ROBOT.name().equals(lifecycle.getState())) {
+                return;
+            }
+            if (ThreadConsts.THREAD_TYPE_ROBOT.equals(lifecycle.getThreadType())) {
+                log.info("访客请求转人工，但当前是纯机器人会话，不支持转人工: {}, 转人工方式: {}", threadUid, transferType);
+                lifecycle.setVisitorRequestedTransfer(false);
+                lifecycle.setTransferType(null);
+                return;
+            }
+            if (ThreadConsts.TRANSFER_TYPE_UI.equals(transferType)) {
+                lifecycle.setTransferReason("访客通过UI按钮请求");
+                lifecycle.setTransferPriority(3);
+            } else if (ThreadConsts.TRANSFER_TYPE_KEYWORD.equals(transferType)) {
+                lifecycle.setTransferReason("访客通过关键词请求");
+                lifecycle.setTransferPriority(2);
+            } else {
+                lifecycle.setTransferReason("访客请求");
+                lifecycle.setTransferPriority(1);
+            }
+            lifecycle.setTransferType(transferType);
+            lifecycle.setVisitorRequestedTransfer(false);
+            lifecycle.setNeedHumanService(true);
+            routeToHuman(lifecycle, LocalDateTime.now());
+        });
+    }
+
+    // 会话被关闭，停止所有定时器
+    public void close(String threadUid) {
+        update(threadUid, false, lifecycle -> {
+            if (!isClosed(lifecycle)) {
+                end(lifecycle, ThreadLifecycleEndReasonEnum.THREAD_CLOSED, LocalDateTime.now());
+            }
+        });
+    }
+
+    /**
+     * 访客发送消息，空闲定时器到期时据此判断是否真的超时
+     */
+    public void onVisitorMessage(String threadUid) {
+        if (!StringUtils.hasText(threadUid) || recentVisitorMessages.getIfPresent(threadUid) != null) {
+            return;
+        }
+        recentVisitorMessages.put(threadUid, Boolean.TRUE);
+        threadLifecycleRepository.updateLastVisitorMessageAt(threadUid, LocalDateTime.now());
+    }
+
+    /**
+     * 处理到期的定时器，由ThreadProcessEventListener每5秒调用
+     */
+    public void fireDueTimers() {
+        LocalDateTime now = LocalDateTime.now();
+        List<ThreadLifecycleEntity> dueList = threadLifecycleRepository
+                .findByNextTimerAtBeforeOrderByNextTimerAtAsc(now, PageRequest.of(0, batchSize));
+        for (ThreadLifecycleEntity lifecycle : dueList) {
+            try {
+                fire(lifecycle, now);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // 其他节点已处理，或访客刚发送消息，下次扫描重新读取
+                log.debug("thread lifecycle {} changed concurrently", lifecycle.getThreadUid());
+            } catch (Exception e) {
+                log.error("thread lifecycle {} timer error: {}", lifecycle.getThreadUid(), e.getMessage(), e);
+            }
+        }
+    }
+
+    public Optional<ThreadLifecycleEntity> findByThreadUid(String threadUid) {
+        return threadLifecycleRepository.findByThreadUid(threadUid);
+    }
+
+    /**
+     * 会话活动历史，格式与Flowable流程历史一致
+     */
+    public List<ThreadHistoryActivityResponse> queryActivityHistory(String threadUid) {
+        Optional<ThreadLifecycleEntity> optional = threadLifecycleRepository.findByThreadUid(threadUid);
+        if (!optional.isPresent()) {
+            return new ArrayList<>();
+        }
+        List<ThreadLifecycleActivity> activities = getActivities(optional.get());
+        List<ThreadHistoryActivityResponse> responses = new ArrayList<>();
+        for (int i = 0; i < activities.size(); i++) {
+            ThreadLifecycleActivity activity = activities.get(i);
+            Long duration = activity.getEndTime() != null
+                    ? activity.getEndTime().getTime() - activity.getStartTime().getTime()
+                    : null;
+            responses.add(ThreadHistoryActivityResponse.builder()
+                    .id(threadUid + "-" + i)
+                    .activityId(activity.getActivityId())
+                    .activityName(activity.getActivityName())
+                    .activityType(activity.getActivityType())
+                    .startTime(activity.getStartTime())
+                    .endTime(activity.getEndTime())
+                    .durationInMillis(duration)
+                    .description(activity.getDescription())
+                    .build());
+        }
+        return responses;
+    }
+
+    private void fire(ThreadLifecycleEntity lifecycle, LocalDateTime now) {
+        String threadUid = lifecycle.getThreadUid();
+        boolean slaTimeout = false;
+        ThreadLifecycleEndReasonEnum idleTimeout = null;
+        // SLA定时器不中断人工接待，只通知一次
+        if (lifecycle.getSlaDueAt() != null && !lifecycle.getSlaDueAt().isAfter(now)) {
+            lifecycle.setSlaDueAt(null);
+            addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_SLA_NOTIFICATION, "SLA超时通知",
+                    ThreadConsts.ACTIVITY_TYPE_SERVICE_TASK, now, true);
+            slaTimeout = true;
+        }
+        if (lifecycle.getIdleDueAt() != null && !lifecycle.getIdleDueAt().isAfter(now)) {
+            boolean robot = ThreadLifecycleStateEnum.ROBOT.name().equals(lifecycle.getState());
+            int timeout = robot ? lifecycle.getRobotIdleTimeout() : lifecycle.getHumanIdleTimeout();
+            LocalDateTime lastActivityAt = lifecycle.getLastVisitorMessageAt();
+            if (lastActivityAt != null && lastActivityAt.plusNanos(timeout * 1_000_000L).isAfter(now)) {
+                // 访客最近有活动，从最后消息时间重新计时
+                lifecycle.setIdleDueAt(lastActivityAt.plusNanos(timeout * 1_000_000L));
+                log.debug("访客最近有活动，不执行超时处理: threadUid={}", threadUid);
+            } else if (robot) {
+                addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_ROBOT_IDLE_TIMEOUT_SERVICE, "访客超时未发消息",
+                        ThreadConsts.ACTIVITY_TYPE_SERVICE_TASK, now, true);
+                idleTimeout = ThreadLifecycleEndReasonEnum.ROBOT_IDLE_TIMEOUT;
+                end(lifecycle, idleTimeout, now);
+            } else {
+                addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_HUMAN_IDLE_TIMEOUT_SERVICE, "访客在人工接待中超时未发消息",
+                        ThreadConsts.ACTIVITY_TYPE_SERVICE_TASK, now, true);
+                idleTimeout = ThreadLifecycleEndReasonEnum.HUMAN_IDLE_TIMEOUT;
+                end(lifecycle, idleTimeout, now);
+            }
+        }
+        updateNextTimer(lifecycle);
+        // 先保存状态，版本冲突时不执行后续操作
+        threadLifecycleRepository.save(lifecycle);
+        if (slaTimeout) {
+            log.info("SLA timeout for thread: {}, visitor: {}, agent: {}, workgroup: {}, slaTime: {}",
+                    threadUid, lifecycle.getVisitorUid(), lifecycle.getAgentUid(), lifecycle.getWorkgroupUid(),
+                    lifecycle.getSlaTime());
+        }
+        if (idleTimeout != null) {
+            markThreadAsTimeout(threadUid, idleTimeout);
+        }
+    }
+
+    private void routeToHuman(ThreadLifecycleEntity lifecycle, LocalDateTime now) {
+        if (ThreadLifecycleStateEnum.ROBOT.name().equals(lifecycle.getState()) && lifecycle.getId() != null) {
+            // 完成转人工任务
+            closeOpenActivity(lifecycle, now, lifecycle.getTransferReason());
+        }
+        if (lifecycle.isAgentsOffline()) {
+            addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_AGENTS_OFFLINE_SERVICE, "坐席离线处理",
+                    ThreadConsts.ACTIVITY_TYPE_SERVICE_TASK, now, true);
+            end(lifecycle, ThreadLifecycleEndReasonEnum.AGENTS_OFFLINE, now);
+        } else if (lifecycle.isAgentsBusy()) {
+            if (!ThreadLifecycleStateEnum.QUEUING.name().equals(lifecycle.getState())) {
+                startHumanTimers(lifecycle, now);
+                lifecycle.setState(ThreadLifecycleStateEnum.QUEUING.name());
+                lifecycle.setStateStartAt(now);
+                lifecycle.setQueueStartAt(now);
+                closeOpenActivity(lifecycle, now, null);
+                addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_QUEUE_SERVICE, "排队等待",
+                        ThreadConsts.ACTIVITY_TYPE_SERVICE_TASK, now, false);
+                updateNextTimer(lifecycle);
+            }
+        } else {
+            enterServing(lifecycle, now);
+        }
+    }
+
+    private void enterRobot(ThreadLifecycleEntity lifecycle, LocalDateTime now) {
+        lifecycle.setState(ThreadLifecycleStateEnum.ROBOT.name());
+        lifecycle.setStateStartAt(now);
+        lifecycle.setSlaDueAt(null);
+        lifecycle.setIdleDueAt(now.plusNanos(lifecycle.getRobotIdleTimeout() * 1_000_000L));
+        addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_ROBOT_SERVICE, "机器人接待",
+                ThreadConsts.ACTIVITY_TYPE_SERVICE_TASK, now, true);
+        addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_TRANSFER_TO_HUMAN_TASK, "转人工客服",
+                ThreadConsts.ACTIVITY_TYPE_USER_TASK, now, false);
+        updateNextTimer(lifecycle);
+    }
+
+    private void enterServing(ThreadLifecycleEntity lifecycle, LocalDateTime now) {
+        if (ThreadLifecycleStateEnum.SERVING.name().equals(lifecycle.getState())) {
+            return;
+        }
+        // 从排队进入时沿用排队时启动的定时器，与流程中排队节点直接流转到人工接待一致
+        if (!ThreadLifecycleStateEnum.QUEUING.name().equals(lifecycle.getState())) {
+            startHumanTimers(lifecycle, now);
+        }
+        lifecycle.setState(ThreadLifecycleStateEnum.SERVING.name());
+        lifecycle.setStateStartAt(now);
+        closeOpenActivity(lifecycle, now, null);
+        addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_HUMAN_SERVICE, "人工接待",
+                ThreadConsts.ACTIVITY_TYPE_USER_TASK, now, false);
+        updateNextTimer(lifecycle);
+    }
+
+    private void startHumanTimers(ThreadLifecycleEntity lifecycle, LocalDateTime now) {
+        lifecycle.setSlaDueAt(now.plusNanos(lifecycle.getSlaTime() * 1_000_000L));
+        lifecycle.setIdleDueAt(now.plusNanos(lifecycle.getHumanIdleTimeout() * 1_000_000L));
+    }
+
+    private void end(ThreadLifecycleEntity lifecycle, ThreadLifecycleEndReasonEnum reason, LocalDateTime now) {
+        closeOpenActivity(lifecycle, now, null);
+        lifecycle.setState(ThreadLifecycleStateEnum.CLOSED.name());
+        lifecycle.setStateStartAt(now);
+        lifecycle.setEndReason(reason.name());
+        lifecycle.setEndAt(now);
+        lifecycle.setSlaDueAt(null);
+        lifecycle.setIdleDueAt(null);
+        lifecycle.setNextTimerAt(null);
+        addActivity(lifecycle, ThreadConsts.ACTIVITY_ID_END, "会话结束", ThreadConsts.ACTIVITY_TYPE_END_EVENT, now, true);
+        log.info("thread lifecycle ended: threadUid={}, reason={}", lifecycle.getThreadUid(), reason);
+    }
+
+    private void reset(ThreadLifecycleEntity lifecycle, ThreadEntity thread, String threadType) {
+        lifecycle.setOrgUid(thread.getOrgUid());
+        lifecycle.setThreadType(threadType);
+        lifecycle.setVisitorUid(thread.getUserProtobuf() != null ? thread.getUserProtobuf().getUid() : null);
+        lifecycle.setWorkgroupUid(thread.isWorkgroupType() && thread.getWorkgroupProtobuf() != null
+                ? thread.getWorkgroupProtobuf().getUid()
+                : null);
+        lifecycle.setAgentUid(thread.getAgentProtobuf() != null ? thread.getAgentProtobuf().getUid() : null);
+        lifecycle.setRobotEnabled(thread.isRoboting() || thread.isRobotType());
+        lifecycle.setState(ThreadLifecycleStateEnum.ROBOT.name());
+        lifecycle.setNeedHumanService(false);
+        lifecycle.setAgentsBusy(thread.isQueuing());
+        lifecycle.setAgentsOffline(thread.isOffline());
+        lifecycle.setVisitorRequestedTransfer(false);
+        lifecycle.setTransferType(null);
+        lifecycle.setTransferReason(null);
+        lifecycle.setTransferPriority(0);
+        lifecycle.setSlaTime(ThreadConsts.DEFAULT_SLA_TIME);
+        lifecycle.setHumanIdleTimeout(ThreadConsts.DEFAULT_HUMAN_IDLE_TIMEOUT);
+        lifecycle.setRobotIdleTimeout(ThreadConsts.DEFAULT_ROBOT_IDLE_TIMEOUT);
+        lifecycle.setQueueStartAt(null);
+        lifecycle.setLastVisitorMessageAt(null);
+        lifecycle.setSlaDueAt(null);
+        lifecycle.setIdleDueAt(null);
+        lifecycle.setNextTimerAt(null);
+        lifecycle.setEndReason(null);
+        lifecycle.setEndAt(null);
+    }
+
+    private void updateNextTimer(ThreadLifecycleEntity lifecycle) {
+        LocalDateTime sla = lifecycle.getSlaDueAt();
+        LocalDateTime idle = lifecycle.getIdleDueAt();
+        if (sla == null) {
+            lifecycle.setNextTimerAt(idle);
+        } else if (idle == null) {
+            lifecycle.setNextTimerAt(sla);
+        } else {
+            lifecycle.setNextTimerAt(sla.isBefore(idle) ? sla : idle);
+        }
+    }
+
+    /**
+     * 读取并修改生命周期，版本冲突或并发创建时重新读取后重试
+     *
+     * @param create 不存在时是否创建
+     */
+    private void update(String threadUid, boolean create, Consumer<ThreadLifecycleEntity> action) {
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            try {
+                Optional<ThreadLifecycleEntity> optional = threadLifecycleRepository.findByThreadUid(threadUid);
+                if (!optional.isPresent() && !create) {
+                    return;
+                }
+                ThreadLifecycleEntity lifecycle = optional.orElseGet(() -> ThreadLifecycleEntity.builder()
+                        .uid(uidUtils.getUid())
+                        .threadUid(threadUid)
+                        .build());
+                action.accept(lifecycle);
+                threadLifecycleRepository.save(lifecycle);
+                return;
+            } catch (ObjectOptimisticLockingFailureException | DataIntegrityViolationException e) {
+                log.debug("thread lifecycle {} conflict, retry {}", threadUid, i + 1);
+            }
+        }
+        log.warn("thread lifecycle {} update failed after {} retries", threadUid, MAX_RETRIES);
+    }
+
+    private void addActivity(ThreadLifecycleEntity lifecycle, String activityId, String activityName,
+            String activityType, LocalDateTime now, boolean completed) {
+        List<ThreadLifecycleActivity> activities = getActivities(lifecycle);
+        Date time = toDate(now);
+        activities.add(ThreadLifecycleActivity.builder()
+                .activityId(activityId)
+                .activityName(activityName)
+                .activityType(activityType)
+                .startTime(time)
+                .endTime(completed ? time : null)
+                .build());
+        while (activities.size() > MAX_ACTIVITIES) {
+            activities.remove(0);
+        }
+        lifecycle.setActivities(JSON.toJSONString(activities));
+    }
+
+    // 结束当前等待中的节点
+    private void closeOpenActivity(ThreadLifecycleEntity lifecycle, LocalDateTime now, String description) {
+        List<ThreadLifecycleActivity> activities = getActivities(lifecycle);
+        boolean changed = false;
+        for (ThreadLifecycleActivity activity : activities) {
+            if (activity.getEndTime() == null) {
+                activity.setEndTime(toDate(now));
+                if (description != null) {
+                    activity.setDescription(description);
+                }
+                changed = true;
+            }
+        }
+        if (changed) {
+            lifecycle.setActivities(JSON.toJSONString(activities));
+        }
+    }
+
+    private List<ThreadLifecycleActivity> getActivities(ThreadLifecycleEntity lifecycle) {
+        if (!StringUtils.hasText(lifecycle.getActivities())) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(JSON.parseArray(lifecycle.getActivities(), ThreadLifecycleActivity.class));
+    }
+
+    /**
+     * 标记排队记录为超时，与ThreadRobotIdleTimeoutServiceDelegate/ThreadHumanIdleTimeoutServiceDelegate一致
+     */
+    private void markThreadAsTimeout(String threadUid, ThreadLifecycleEndReasonEnum reason) {
+        try {
+            Optional<QueueMemberEntity> optionalQueueMember = queueMemberRestService.findByThreadUid(threadUid);
+            if (optionalQueueMember.isPresent()) {
+                QueueMemberEntity queueMember = optionalQueueMember.get();
+                if (reason == ThreadLifecycleEndReasonEnum.ROBOT_IDLE_TIMEOUT) {
+                    queueMember.setRobotTimeoutAt(LocalDateTime.now());
+                    queueMember.setRobotTimeout(true);
+                } else {
+                    queueMember.setAgentTimeoutAt(LocalDateTime.now());
+                    queueMember.setAgentTimeout(true);
+                }
+                queueMemberRestService.save(queueMember);
+                log.info("Marked {} for thread: {}, queue member: {}", reason, threadUid, queueMember.getUid());
+            } else {
+                log.warn("Could not find queue member for thread: {}", threadUid);
+            }
+        } catch (Exception e) {
+            log.error("Error marking thread as timeout", e);
+        }
+    }
+
+    private static boolean isClosed(ThreadLifecycleEntity lifecycle) {
+        return ThreadLifecycleStateEnum.CLOSED.name().equals(lifecycle.getState());
+    }
+
+    private static String getThreadType(ThreadEntity thread) {
+        if (thread.isAgentType()) {
+            return ThreadConsts.THREAD_TYPE_AGENT;
+        } else if (thread.isWorkgroupType()) {
+            return ThreadConsts.THREAD_TYPE_WORKGROUP;
+        } else if (thread.isRobotType()) {
+            return ThreadConsts.THREAD_TYPE_ROBOT;
+        }
+        return null;
+    }
+
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+}
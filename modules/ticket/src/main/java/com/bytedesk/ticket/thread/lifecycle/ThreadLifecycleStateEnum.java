@@ -0,0 +1,25 @@
+/*
+ * @Author: jackning 270580156@qq.com
+ * @Date: 2025-04-24 09:12:40
+ * @LastEditors: jackning 270580156@qq.com
+ * @LastEditTime: 2025-04-24 09:12:40
+ * @Description: bytedesk.com https://github.com/Bytedesk/bytedesk
+ *   Please be aware of the BSL license restrictions before installing Bytedesk IM –
+ *  selling, reselling, or hosting Bytedesk IM as a service is a breach of the terms and automatically terminates your rights under the license.
+ *  Business Source License 1.1: https://github.com/Bytedesk/bytedesk/blob/main/LICENSE
+ *  contact: 270580156@qq.com
+ *
+ * Copyright (c) 2025 by bytedesk.com, All Rights Reserved.
+ */
+package com.bytedesk.ticket.thread.lifecycle;
+
+/**
+ * 会话生命周期状态，对应会话流程(thread-process.bpmn20.xml)中的等待节点
+ */
+public enum ThreadLifecycleStateEnum {
+    ROBOT, // 机器人接待，robotService/transferToHumanTask
+    QUEUING, // 排队等待，queueService
+    SERVING, // 人工接待，humanService
+    CLOSED, // 会话结束，end
+    ;
+}
@@ -13,21 +13,37 @@
  */
 package com.bytedesk.ticket.thread.listener;
 
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import com.bytedesk.core.message.MessageSnapshot;
+import com.bytedesk.core.message.event.MessageCreateEvent;
+import com.bytedesk.ticket.thread.lifecycle.ThreadLifecycleService;
+
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * 消息事件监听器
  * 
- * 当新消息创建时，检查是否需要触发转人工请求
+ * 当新消息创建时，检查是否需要触发转人工请求；访客消息刷新会话生命周期的最后消息时间，用于空闲超时判断
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class ThreadMessageEventListener {
 
+    private final ThreadLifecycleService threadLifecycleService;
+
+    @EventListener
+    public void onMessageCreateEvent(MessageCreateEvent event) {
+        MessageSnapshot message = event.getMessage();
+        if (message == null || !message.isFromVisitor()) {
+            return;
+        }
+        threadLifecycleService.onVisitorMessage(message.getThreadUid());
+    }
+
     // private final ThreadTransferToAgentService threadTransferToAgentService;
     // private final ThreadRestService threadRestService;
     // private final RuntimeService runtimeService;
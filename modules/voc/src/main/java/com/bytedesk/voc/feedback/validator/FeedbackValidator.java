@@ -3,6 +3,7 @@ package com.bytedesk.voc.feedback.validator;
 import com.bytedesk.voc.config.VocConfig;
 import com.bytedesk.voc.feedback.dto.FeedbackRequest;
 import com.bytedesk.voc.feedback.exception.FeedbackValidationException;
+import com.bytedesk.voc.filter.SensitiveWordFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -11,6 +12,9 @@ public class FeedbackValidator {
     
     @Autowired
     private VocConfig vocConfig;
+
+    @Autowired
+    private SensitiveWordFilter sensitiveWordFilter;
     
     public void validateCreate(FeedbackRequest request) {
         // 检查内容长度
@@ -34,7 +38,6 @@ public class FeedbackValidator {
     }
     
     private boolean containsSensitiveWords(String content) {
-        // TODO: 实现敏感词检查
-        return false;
+        return sensitiveWordFilter.containsSensitiveWords(content);
     }
 } 
\ No newline at end of file
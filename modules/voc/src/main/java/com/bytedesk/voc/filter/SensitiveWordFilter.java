@@ -13,76 +13,43 @@
  */
 package com.bytedesk.voc.filter;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
 
-import jakarta.annotation.PostConstruct;
+import com.bytedesk.core.taboo.TabooWordService;
+
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * VOC敏感词过滤，使用全局敏感词自动机，一次扫描完成检测、查找和替换
+ */
 @Slf4j
 @Component
+@AllArgsConstructor
 public class SensitiveWordFilter {
     
-    private final ConcurrentHashMap<String, Boolean> sensitiveWordMap = new ConcurrentHashMap<>();
-    
-    @PostConstruct
-    public void init() {
-        try {
-            ClassPathResource resource = new ClassPathResource("sensitive-words.txt");
-            try (InputStream is = resource.getInputStream();
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sensitiveWordMap.put(line.trim().toLowerCase(), true);
-                }
-            }
-            log.info("Loaded {} sensitive words", sensitiveWordMap.size());
-        } catch (IOException e) {
-            log.error("Failed to load sensitive words", e);
-        }
-    }
+    private final TabooWordService tabooWordService;
     
     public boolean containsSensitiveWords(String text) {
         if (text == null || text.isEmpty()) {
             return false;
         }
-        
-        String lowerText = text.toLowerCase();
-        return sensitiveWordMap.keySet().stream()
-            .anyMatch(lowerText::contains);
+        return tabooWordService.contains(null, text);
     }
     
     public Set<String> findSensitiveWords(String text) {
-        Set<String> found = new HashSet<>();
         if (text == null || text.isEmpty()) {
-            return found;
+            return Set.of();
         }
-        
-        String lowerText = text.toLowerCase();
-        sensitiveWordMap.keySet().stream()
-            .filter(lowerText::contains)
-            .forEach(found::add);
-            
-        return found;
+        return tabooWordService.find(null, text);
     }
     
     public String filter(String text) {
         if (text == null || text.isEmpty()) {
             return text;
         }
-        
-        String filtered = text;
-        for (String word : sensitiveWordMap.keySet()) {
-            filtered = filtered.replaceAll("(?i)" + word, "*".repeat(word.length()));
-        }
-        return filtered;
+        return tabooWordService.mask(null, text);
     }
-} 
\ No newline at end of file
+} 